@@ -16,6 +16,8 @@
  */
 package com.marcnuri.mnimapsync;
 
+import com.marcnuri.mnimapsync.imap.ShapingProfile;
+
 import java.io.Serializable;
 import java.util.Objects;
 
@@ -33,6 +35,11 @@ public class HostDefinition implements Serializable {
     private String user;
     private String password;
     private boolean ssl;
+    private boolean compress;
+    private int tlsSessionTimeout;
+    private boolean adaptiveThrottling;
+    private long bandwidthLimit;
+    private ShapingProfile shaping;
 
     public String getHost() {
         return host;
@@ -74,6 +81,66 @@ public class HostDefinition implements Serializable {
         this.ssl = ssl;
     }
 
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * Negotiate COMPRESS=DEFLATE (RFC 4978) on every connection to this host if the server
+     * advertises it.
+     */
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public int getTlsSessionTimeout() {
+        return tlsSessionTimeout;
+    }
+
+    /**
+     * Seconds a TLS session negotiated with this host can be resumed by later connections, or 0
+     * for the JVM default (24 hours).
+     */
+    public void setTlsSessionTimeout(int tlsSessionTimeout) {
+        this.tlsSessionTimeout = tlsSessionTimeout;
+    }
+
+    public boolean isAdaptiveThrottling() {
+        return adaptiveThrottling;
+    }
+
+    /**
+     * Adapt the commands in flight and the bytes per second to the throttling responses and
+     * latencies of this host, shared by every connection to it.
+     */
+    public void setAdaptiveThrottling(boolean adaptiveThrottling) {
+        this.adaptiveThrottling = adaptiveThrottling;
+    }
+
+    public long getBandwidthLimit() {
+        return bandwidthLimit;
+    }
+
+    /**
+     * Bytes per second shared fairly by every account connected to this host, or 0 for
+     * unlimited.
+     */
+    public void setBandwidthLimit(long bandwidthLimit) {
+        this.bandwidthLimit = bandwidthLimit;
+    }
+
+    public ShapingProfile getShaping() {
+        return shaping;
+    }
+
+    /**
+     * Emulate the provided network conditions on every connection to this host (benchmarks and
+     * tests).
+     */
+    public void setShaping(ShapingProfile shaping) {
+        this.shaping = shaping;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -85,14 +152,20 @@ public class HostDefinition implements Serializable {
         HostDefinition that = (HostDefinition) o;
         return port == that.port &&
             ssl == that.ssl &&
+            compress == that.compress &&
+            tlsSessionTimeout == that.tlsSessionTimeout &&
+            adaptiveThrottling == that.adaptiveThrottling &&
+            bandwidthLimit == that.bandwidthLimit &&
             Objects.equals(host, that.host) &&
             Objects.equals(user, that.user) &&
-            Objects.equals(password, that.password);
+            Objects.equals(password, that.password) &&
+            Objects.equals(shaping, that.shaping);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(host, port, user, password, ssl);
+        return Objects.hash(host, port, user, password, ssl, compress, tlsSessionTimeout,
+            adaptiveThrottling, bandwidthLimit, shaping);
     }
 
 }
@@ -16,24 +16,54 @@
  */
 package com.marcnuri.mnimapsync;
 
+import com.marcnuri.mnimapsync.batch.BatchOptions;
+import com.marcnuri.mnimapsync.batch.BatchSync;
+import com.marcnuri.mnimapsync.batch.ConnectionScheduler;
+import com.marcnuri.mnimapsync.batch.ManifestReader;
+import com.marcnuri.mnimapsync.batch.QueueWorker;
+import com.marcnuri.mnimapsync.batch.WorkQueue;
 import com.marcnuri.mnimapsync.cli.SyncMonitor;
+import com.marcnuri.mnimapsync.daemon.SyncDaemon;
 import com.marcnuri.mnimapsync.index.Index;
+import com.marcnuri.mnimapsync.index.IndexBudget;
+import com.marcnuri.mnimapsync.index.IndexDiff;
+import com.marcnuri.mnimapsync.index.MessageLocations;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics;
+import com.marcnuri.mnimapsync.metrics.MetricsServer;
+import com.marcnuri.mnimapsync.store.RetryPolicy;
 import com.marcnuri.mnimapsync.store.StoreCopier;
 import com.marcnuri.mnimapsync.store.StoreDeleter;
+import com.marcnuri.mnimapsync.store.StoreFlagger;
 import com.sun.mail.imap.IMAPStore;
 import jakarta.mail.MessagingException;
+import jakarta.mail.search.SearchTerm;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
 import java.sql.SQLException;
 import java.util.Date;
+import java.util.Map;
 import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static com.marcnuri.mnimapsync.cli.ArgumentParser.isBatchMode;
+import static com.marcnuri.mnimapsync.cli.ArgumentParser.parseBatchArguments;
 import static com.marcnuri.mnimapsync.cli.ArgumentParser.parseCliArguments;
+import static com.marcnuri.mnimapsync.cli.CliBatchReport.getBatchReportAsText;
+import static com.marcnuri.mnimapsync.cli.CliBatchReport.getQueueReportAsText;
 import static com.marcnuri.mnimapsync.cli.CliSummaryReport.getSummaryReportAsText;
 import static com.marcnuri.mnimapsync.imap.IMAPUtils.openStore;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.setGlobalBandwidthLimit;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.warmUp;
+import static com.marcnuri.mnimapsync.index.StoreCrawler.populateFromSourceStore;
 import static com.marcnuri.mnimapsync.index.StoreCrawler.populateFromStore;
 
 /**
@@ -43,28 +73,66 @@ import static com.marcnuri.mnimapsync.index.StoreCrawler.populateFromStore;
 @SuppressWarnings("WeakerAccess")
 public class MNIMAPSync {
 
+    /**
+     * Stages a sync goes through, in order.
+     */
+    public enum Phase {
+        IDLE, INDEXING, COPYING, DELETING, FLAGGING, FINISHED
+    }
+
     static final int THREADS = 5;
     public static final int BATCH_SIZE = 200;
     private final SyncOptions syncOptions;
     private final Date startDate;
-    private StoreCopier sourceCopier;
-    private StoreDeleter targetDeleter;
+    private volatile StoreCopier sourceCopier;
+    private volatile StoreDeleter targetDeleter;
+    private volatile StoreFlagger targetFlagger;
+    //Null unless a dry run completed
+    private volatile IndexDiff indexDiff;
     //Used for deleting tasks unnecessary if not deleting
     private final Index sourceIndex;
     private final Index targetIndex;
+    private final ImapMetrics imapMetrics;
+    //Null unless connections are shared with other accounts (batch mode)
+    private final ConnectionScheduler connectionScheduler;
+    private final Map<Phase, Long> phaseStartTimes;
+    private volatile Phase phase;
+    private volatile boolean cancelled;
 
     public MNIMAPSync(SyncOptions syncOptions) {
+        this(syncOptions, new ImapMetrics(), null);
+    }
+
+    /**
+     * @param imapMetrics registry for the IMAP commands, may be shared with other instances
+     * @param connectionScheduler caps the connections used by message batches across instances,
+     * or null for no limit other than {@link SyncOptions#getThreads()}
+     */
+    public MNIMAPSync(SyncOptions syncOptions, ImapMetrics imapMetrics,
+        ConnectionScheduler connectionScheduler) {
+
         this.syncOptions = syncOptions;
         startDate = new Date();
         sourceCopier = null;
-        sourceIndex = new Index();
-        targetIndex = new Index();
+        final IndexBudget indexBudget = syncOptions.getIndexHeapMb() > 0
+            ? new IndexBudget(syncOptions.getIndexHeapMb() * 1024L * 1024L) : null;
+        //Dry runs iterate the source messages, which requires keeping them in heap
+        sourceIndex = new Index(syncOptions.isDryRun() ? null : indexBudget);
+        targetIndex = new Index(indexBudget);
+        this.imapMetrics = imapMetrics;
+        this.connectionScheduler = connectionScheduler;
+        phaseStartTimes = new ConcurrentHashMap<>();
+        setPhase(Phase.IDLE);
     }
 
     private long getElapsedTime() {
         return System.currentTimeMillis() - startDate.getTime();
     }
 
+    public SyncOptions getSyncOptions() {
+        return syncOptions;
+    }
+
     public StoreCopier getSourceCopier() {
         return sourceCopier;
     }
@@ -73,20 +141,143 @@ public class MNIMAPSync {
         return targetDeleter;
     }
 
+    public StoreFlagger getTargetFlagger() {
+        return targetFlagger;
+    }
+
+    /**
+     * @return what the sync would copy and delete, or null unless it's a completed dry run
+     */
+    public IndexDiff getIndexDiff() {
+        return indexDiff;
+    }
+
+    public Index getSourceIndex() {
+        return sourceIndex;
+    }
+
     public Index getTargetIndex() {
         return targetIndex;
     }
 
+    public ImapMetrics getImapMetrics() {
+        return imapMetrics;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Time spent in the provided phase: 0 if it hasn't started, up to now if it's the current one.
+     */
+    public long getPhaseElapsedTimeInMillis(Phase requestedPhase) {
+        final Long start = phaseStartTimes.get(requestedPhase);
+        if (start == null) {
+            return 0L;
+        }
+        for (int it = requestedPhase.ordinal() + 1; it < Phase.values().length; it++) {
+            final Long end = phaseStartTimes.get(Phase.values()[it]);
+            if (end != null) {
+                return end - start;
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    private void setPhase(Phase newPhase) {
+        phaseStartTimes.put(newPhase, System.currentTimeMillis());
+        phase = newPhase;
+    }
+
     public long getElapsedTimeInSeconds() {
         return getElapsedTime() / 1000L;
     }
 
+    private ThreadPoolExecutor newExecutor(HostDefinition... hosts) {
+        if (connectionScheduler == null) {
+            return (ThreadPoolExecutor) Executors.newFixedThreadPool(syncOptions.getThreads());
+        }
+        return connectionScheduler.newExecutor(syncOptions.getThreads(), hosts);
+    }
+
+    /**
+     * Opens the store with a connection warmed up for each thread, unless connections are capped
+     * by a {@link ConnectionScheduler} shared with other instances.
+     */
+    private IMAPStore openWarmStore(HostDefinition host, String side)
+        throws MessagingException, GeneralSecurityException, InterruptedException {
+
+        final IMAPStore ret = openStore(host, syncOptions.getThreads(), imapMetrics, side);
+        if (connectionScheduler == null) {
+            try {
+                warmUp(ret, syncOptions.getThreads(), imapMetrics, side);
+            } catch (InterruptedException ex) {
+                ret.close();
+                throw ex;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Indexes the target store and, if it's crawled in a phase of its own, the source store
+     * concurrently (each one with its own connections and executor).
+     */
+    private void indexStores()
+            throws MessagingException, GeneralSecurityException, InterruptedException, SQLException {
+
+        if (!syncOptions.isCrawlSource()) {
+            indexTargetStore();
+            return;
+        }
+        final ExecutorService sourceCrawl = Executors.newSingleThreadExecutor();
+        final Future<Index> source = sourceCrawl.submit(this::indexSourceStore);
+        sourceCrawl.shutdown();
+        try {
+            indexTargetStore();
+            source.get();
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof MessagingException) {
+                throw (MessagingException) cause;
+            } else if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            } else if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            throw new IllegalStateException("Source crawl failed", cause);
+        } finally {
+            //Stops the source crawl if the target one failed
+            source.cancel(true);
+        }
+    }
+
     private void indexTargetStore()
             throws MessagingException, GeneralSecurityException, InterruptedException, SQLException {
 
-        try (final IMAPStore targetStore = openStore(syncOptions.getTargetHost(),
-            syncOptions.getThreads())) {
-            populateFromStore(targetIndex, targetStore, syncOptions.getThreads());
+        //Dry runs compare the messages of both stores within the filtered range
+        final SearchTerm messageFilter = syncOptions.isDryRun()
+            ? syncOptions.getMessageFilter().toSearchTerm() : null;
+        try (final IMAPStore targetStore = openWarmStore(syncOptions.getTargetHost(),
+            ImapMetrics.TARGET)) {
+            populateFromStore(targetIndex, targetStore,
+                newExecutor(syncOptions.getTargetHost()), syncOptions.getIndexSnapshot() == null
+                    ? null : Paths.get(syncOptions.getIndexSnapshot()),
+                syncOptions.getFolderFilter(), messageFilter);
+        }
+    }
+
+    private Index indexSourceStore()
+            throws MessagingException, GeneralSecurityException, InterruptedException, SQLException {
+
+        try (final IMAPStore sourceStore = openWarmStore(syncOptions.getSourceHost(),
+            ImapMetrics.SOURCE)) {
+            return populateFromSourceStore(sourceIndex, sourceStore,
+                newExecutor(syncOptions.getSourceHost()), syncOptions.getFolderFilter(),
+                syncOptions.getMessageFilter().toSearchTerm());
         }
     }
 
@@ -94,13 +285,28 @@ public class MNIMAPSync {
         throws MessagingException, GeneralSecurityException, InterruptedException {
 
         try (
-            final IMAPStore targetStore = openStore(syncOptions.getTargetHost(),
-                syncOptions.getThreads());
-            final IMAPStore sourceStore = openStore(syncOptions.getSourceHost(),
-                syncOptions.getThreads())
+            final IMAPStore targetStore = openWarmStore(syncOptions.getTargetHost(),
+                ImapMetrics.TARGET);
+            final IMAPStore sourceStore = openWarmStore(syncOptions.getSourceHost(),
+                ImapMetrics.SOURCE)
         ) {
             sourceCopier = new StoreCopier(sourceStore, sourceIndex, targetStore, targetIndex,
-                syncOptions.getThreads());
+                newExecutor(syncOptions.getSourceHost(), syncOptions.getTargetHost()));
+            //Source messages are only looked up by the delete phase, unless already crawled
+            sourceCopier.setIndexSourceMessages(
+                syncOptions.getDelete() && !syncOptions.isCrawlSource());
+            if (syncOptions.isServerSideCopy()) {
+                sourceCopier.setMessageLocations(new MessageLocations());
+            }
+            sourceCopier.setGmail(syncOptions.isGmail());
+            sourceCopier.setRecentFirst(syncOptions.isRecentFirst());
+            sourceCopier.setMessageFilter(syncOptions.getMessageFilter());
+            sourceCopier.setFolderFilter(syncOptions.getFolderFilter());
+            sourceCopier.setRetryPolicy(
+                RetryPolicy.DEFAULT.withMaxRetries(syncOptions.getMaxRetries()));
+            if (cancelled) {
+                sourceCopier.cancel();
+            }
             sourceCopier.copy();
         }
     }
@@ -109,38 +315,117 @@ public class MNIMAPSync {
         throws MessagingException, GeneralSecurityException, InterruptedException {
 
         try (
-            final IMAPStore targetStore = openStore(syncOptions.getTargetHost(),
-                syncOptions.getThreads())
+            final IMAPStore targetStore = openWarmStore(syncOptions.getTargetHost(),
+                ImapMetrics.TARGET)
         ) {
             targetDeleter = new StoreDeleter(sourceIndex, targetIndex, targetStore,
-                syncOptions.getThreads());
+                newExecutor(syncOptions.getTargetHost()));
+            targetDeleter.setMessageFilter(syncOptions.getMessageFilter());
+            targetDeleter.setFolderFilter(syncOptions.getFolderFilter());
+            if (cancelled) {
+                targetDeleter.cancel();
+            }
             targetDeleter.delete();
         }
     }
 
+    private void flagTarget()
+        throws MessagingException, GeneralSecurityException, InterruptedException {
+
+        try (
+            final IMAPStore targetStore = openWarmStore(syncOptions.getTargetHost(),
+                ImapMetrics.TARGET);
+            final IMAPStore sourceStore = openWarmStore(syncOptions.getSourceHost(),
+                ImapMetrics.SOURCE)
+        ) {
+            targetFlagger = new StoreFlagger(sourceStore, sourceIndex, targetStore, targetIndex,
+                newExecutor(syncOptions.getSourceHost(), syncOptions.getTargetHost()));
+            targetFlagger.setFolderFilter(syncOptions.getFolderFilter());
+            if (cancelled) {
+                targetFlagger.cancel();
+            }
+            targetFlagger.flag();
+        }
+    }
+
     public void sync() {
         try {
-            indexTargetStore();
-            copySourceToTarget();
-            //Delete only if source store was completely indexed (this happens if no exceptions where raised)
-            if (syncOptions.getDelete() && !sourceCopier.hasCopyException()) {
+            setPhase(Phase.INDEXING);
+            indexStores();
+            if (cancelled) {
+                return;
+            }
+            if (syncOptions.isDryRun()) {
+                indexDiff = IndexDiff.compute(sourceIndex, targetIndex,
+                    syncOptions.getFolderFilter());
+                return;
+            }
+            if (!syncOptions.isDeleteOnly()) {
+                setPhase(Phase.COPYING);
+                copySourceToTarget();
+            }
+            //Delete only if source store was completely indexed (crawled, or copied with no exceptions)
+            if (syncOptions.getDelete() && !cancelled
+                && (syncOptions.isCrawlSource() || !sourceCopier.hasCopyException())) {
+                setPhase(Phase.DELETING);
                 deleteFromTarget();
             }
+            if (syncOptions.isSyncFlags() && !syncOptions.isDeleteOnly() && !cancelled) {
+                setPhase(Phase.FLAGGING);
+                flagTarget();
+            }
         } catch (MessagingException | GeneralSecurityException | SQLException ex) {
             Logger.getLogger(MNIMAPSync.class.getName()).log(Level.SEVERE, null, ex);
         } catch (InterruptedException ex) {
             Logger.getLogger(MNIMAPSync.class.getName()).log(Level.SEVERE, null, ex);
             Thread.currentThread().interrupt();
+        } finally {
+            setPhase(Phase.FINISHED);
         }
     }
 
+    /**
+     * Stops the sync as soon as the message batches being processed complete.
+     */
+    public void cancel() {
+        cancelled = true;
+        final StoreCopier copier = sourceCopier;
+        if (copier != null) {
+            copier.cancel();
+        }
+        final StoreDeleter deleter = targetDeleter;
+        if (deleter != null) {
+            deleter.cancel();
+        }
+        final StoreFlagger flagger = targetFlagger;
+        if (flagger != null) {
+            flagger.cancel();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
     /**
      * @param args the command line arguments
      */
     @SuppressWarnings({"squid:S106", "UseOfSystemOutOrSystemErr"})
     public static void main(String[] args) {
+        if (isBatchMode(args)) {
+            batch(parseBatchArguments(args));
+            return;
+        }
         try {
-            final MNIMAPSync sync = new MNIMAPSync(parseCliArguments(args));
+            final SyncOptions syncOptions = parseCliArguments(args);
+            setGlobalBandwidthLimit(syncOptions.getBandwidthLimit());
+            if (syncOptions.isDaemon()) {
+                daemon(syncOptions);
+                return;
+            }
+            final MNIMAPSync sync = new MNIMAPSync(syncOptions);
+            final MetricsServer metricsServer = syncOptions.getMetricsPort() > 0
+                ? MetricsServer.start(sync, syncOptions.getMetricsPort()) : null;
             final Timer timer = new Timer(true);
             timer.schedule(
                 new SyncMonitor(sync),
@@ -148,10 +433,95 @@ public class MNIMAPSync {
             sync.sync();
             timer.cancel();
             System.out.println(String.format("\r%s", getSummaryReportAsText(sync)));
+            if (syncOptions.getMetricsJson() != null) {
+                sync.getImapMetrics().writeJson(Paths.get(syncOptions.getMetricsJson()));
+            }
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
         } catch (IllegalArgumentException | IOException ex) {
             System.err.println(ex.getMessage());
         }
     }
 
+    /**
+     * Syncs the accounts and keeps replicating the changes until the process is terminated.
+     */
+    @SuppressWarnings({"squid:S106", "UseOfSystemOutOrSystemErr"})
+    private static void daemon(SyncOptions syncOptions) {
+        final SyncDaemon daemon = new SyncDaemon(syncOptions);
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::close));
+        System.out.println(String.format("Watching %s, full sync every %d minutes",
+            syncOptions.getWatchedFolders(), syncOptions.getReconcileMinutes()));
+        try {
+            daemon.run();
+        } catch (InterruptedException ex) {
+            Logger.getLogger(MNIMAPSync.class.getName()).log(Level.SEVERE, null, ex);
+            Thread.currentThread().interrupt();
+        }
+        System.out.println(String.format("Daemon stopped after %d full syncs: %d messages copied, "
+                + "%d messages deleted", daemon.getReconciliationCount(),
+            daemon.getMessagesCopiedCount(), daemon.getMessagesDeletedCount()));
+    }
+
+    @SuppressWarnings({"squid:S106", "UseOfSystemOutOrSystemErr"})
+    private static void batch(BatchOptions batchOptions) {
+        if (batchOptions.getQueue() != null) {
+            queue(batchOptions);
+            return;
+        }
+        try {
+            final BatchSync batchSync = new BatchSync(batchOptions,
+                ManifestReader.read(Paths.get(batchOptions.getManifest())));
+            System.out.println(String.format("Syncing %d accounts", batchSync.getSyncs().size()));
+            batchSync.sync();
+            System.out.println(getBatchReportAsText(batchSync));
+            if (batchOptions.getMetricsJson() != null) {
+                batchSync.getImapMetrics().writeJson(Paths.get(batchOptions.getMetricsJson()));
+            }
+        } catch (IllegalArgumentException | IOException ex) {
+            System.err.println(ex.getMessage());
+        } catch (InterruptedException ex) {
+            Logger.getLogger(MNIMAPSync.class.getName()).log(Level.SEVERE, null, ex);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Coordinator (enqueues the manifest and waits for the workers) and/or worker of a migration
+     * distributed with a {@link WorkQueue}.
+     */
+    @SuppressWarnings({"squid:S106", "UseOfSystemOutOrSystemErr"})
+    private static void queue(BatchOptions batchOptions) {
+        try (WorkQueue queue = WorkQueue.open(batchOptions.getQueue())) {
+            if (batchOptions.getManifest() != null) {
+                final int queued = queue.enqueue(
+                    ManifestReader.read(Paths.get(batchOptions.getManifest())));
+                System.out.println(String.format("Queued %d new accounts", queued));
+            }
+            if (batchOptions.isWorker()) {
+                final QueueWorker worker = new QueueWorker(queue, batchOptions);
+                worker.run();
+                System.out.println(getBatchReportAsText(worker.getSyncs(),
+                    worker.getImapMetrics(), worker.getElapsedTimeInSeconds()));
+                if (batchOptions.getMetricsJson() != null) {
+                    worker.getImapMetrics().writeJson(Paths.get(batchOptions.getMetricsJson()));
+                }
+            } else {
+                while (!queue.isFinished()) {
+                    System.out.print(String.format("\r%s", queue.getStatusCounts()));
+                    Thread.sleep(5000L);
+                }
+                System.out.println(String.format("\r%s", queue.getStatusCounts()));
+            }
+            System.out.println(getQueueReportAsText(queue));
+        } catch (IllegalArgumentException | IOException | SQLException ex) {
+            System.err.println(ex.getMessage());
+        } catch (InterruptedException ex) {
+            Logger.getLogger(MNIMAPSync.class.getName()).log(Level.SEVERE, null, ex);
+            Thread.currentThread().interrupt();
+        }
+    }
+
 
 }
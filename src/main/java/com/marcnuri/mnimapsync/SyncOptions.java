@@ -16,7 +16,14 @@
  */
 package com.marcnuri.mnimapsync;
 
+import com.marcnuri.mnimapsync.imap.FolderFilter;
+import com.marcnuri.mnimapsync.store.MessageFilter;
+import com.marcnuri.mnimapsync.store.RetryPolicy;
+
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -27,16 +34,41 @@ public class SyncOptions implements Serializable {
 
     private static final long serialVersionUID = -4119342475628224319L;
 
+    static final int RECONCILE_MINUTES = 60;
+
     private final HostDefinition sourceHost;
     private final HostDefinition targetHost;
     private boolean delete;
+    private boolean syncFlags;
+    private boolean serverSideCopy;
+    private boolean gmail;
+    private boolean recentFirst;
+    private boolean crawlSource;
+    private boolean dryRun;
+    private boolean deleteOnly;
     private int threads;
+    private int indexHeapMb;
+    private String indexSnapshot;
+    private String metricsJson;
+    private int metricsPort;
+    private boolean daemon;
+    private final ArrayList<String> watchedFolders;
+    private int reconcileMinutes;
+    private int maxRetries;
+    private long bandwidthLimit;
+    private final MessageFilter messageFilter;
+    private final FolderFilter folderFilter;
 
     public SyncOptions() {
         this.sourceHost = new HostDefinition();
         this.targetHost = new HostDefinition();
         delete = false;
         threads = MNIMAPSync.THREADS;
+        watchedFolders = new ArrayList<>(Collections.singletonList("INBOX"));
+        reconcileMinutes = RECONCILE_MINUTES;
+        maxRetries = RetryPolicy.DEFAULT_MAX_RETRIES;
+        messageFilter = new MessageFilter();
+        folderFilter = new FolderFilter();
     }
 
     public HostDefinition getSourceHost() {
@@ -55,6 +87,88 @@ public class SyncOptions implements Serializable {
         this.delete = delete;
     }
 
+    /**
+     * @return true if flags and keywords of messages already in the target are updated to match
+     * the source
+     */
+    public boolean isSyncFlags() {
+        return syncFlags;
+    }
+
+    public void setSyncFlags(boolean syncFlags) {
+        this.syncFlags = syncFlags;
+    }
+
+    /**
+     * @return true if messages in several source folders are uploaded once and copied server side
+     * to the rest of target folders
+     */
+    public boolean isServerSideCopy() {
+        return serverSideCopy;
+    }
+
+    public void setServerSideCopy(boolean serverSideCopy) {
+        this.serverSideCopy = serverSideCopy;
+    }
+
+    /**
+     * @return true if Gmail sources are copied from "All Mail" and their label folders are
+     * materialized server side in the target
+     */
+    public boolean isGmail() {
+        return gmail;
+    }
+
+    public void setGmail(boolean gmail) {
+        this.gmail = gmail;
+    }
+
+    /**
+     * @return true if INBOX and the newest messages of every folder are copied first
+     */
+    public boolean isRecentFirst() {
+        return recentFirst;
+    }
+
+    public void setRecentFirst(boolean recentFirst) {
+        this.recentFirst = recentFirst;
+    }
+
+    /**
+     * @return true if the source is indexed in a phase of its own, concurrently with the target,
+     * instead of as its messages are copied (always for dry runs and delete-only runs)
+     */
+    public boolean isCrawlSource() {
+        return crawlSource || dryRun || deleteOnly;
+    }
+
+    public void setCrawlSource(boolean crawlSource) {
+        this.crawlSource = crawlSource;
+    }
+
+    /**
+     * @return true if both stores are only indexed to report what would be copied and deleted
+     */
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * @return true if target messages and folders missing in the source are deleted without
+     * copying anything
+     */
+    public boolean isDeleteOnly() {
+        return deleteOnly;
+    }
+
+    public void setDeleteOnly(boolean deleteOnly) {
+        this.deleteOnly = deleteOnly;
+    }
+
     public int getThreads() {
         return threads;
     }
@@ -63,6 +177,122 @@ public class SyncOptions implements Serializable {
         this.threads = threads;
     }
 
+    /**
+     * @return heap in MB for the indexed messages of the source and target stores before spilling
+     * folders to disk, or 0 for no limit
+     */
+    public int getIndexHeapMb() {
+        return indexHeapMb;
+    }
+
+    public void setIndexHeapMb(int indexHeapMb) {
+        this.indexHeapMb = indexHeapMb;
+    }
+
+    /**
+     * @return path of the binary snapshot of the target index reused by the next sync, or null
+     */
+    public String getIndexSnapshot() {
+        return indexSnapshot;
+    }
+
+    public void setIndexSnapshot(String indexSnapshot) {
+        this.indexSnapshot = indexSnapshot;
+    }
+
+    /**
+     * @return path of the file where IMAP command metrics are exported as JSON, or null
+     */
+    public String getMetricsJson() {
+        return metricsJson;
+    }
+
+    public void setMetricsJson(String metricsJson) {
+        this.metricsJson = metricsJson;
+    }
+
+    /**
+     * @return port where OpenMetrics are served during the sync, or 0 if disabled
+     */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    /**
+     * @return true if the target should keep tracking the source after the first sync
+     */
+    public boolean isDaemon() {
+        return daemon;
+    }
+
+    public void setDaemon(boolean daemon) {
+        this.daemon = daemon;
+    }
+
+    /**
+     * @return source folders whose changes are replicated as they happen in daemon mode
+     */
+    public List<String> getWatchedFolders() {
+        return watchedFolders;
+    }
+
+    public void setWatchedFolders(List<String> watchedFolders) {
+        this.watchedFolders.clear();
+        this.watchedFolders.addAll(watchedFolders);
+    }
+
+    /**
+     * @return minutes between full syncs in daemon mode, which pick up the changes in folders that
+     * aren't watched
+     */
+    public int getReconcileMinutes() {
+        return reconcileMinutes;
+    }
+
+    public void setReconcileMinutes(int reconcileMinutes) {
+        this.reconcileMinutes = reconcileMinutes;
+    }
+
+    /**
+     * @return times a message batch is retried after a broken connection before giving up
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @return bytes per second shared by the connections to both hosts, or 0 if unlimited
+     */
+    public long getBandwidthLimit() {
+        return bandwidthLimit;
+    }
+
+    public void setBandwidthLimit(long bandwidthLimit) {
+        this.bandwidthLimit = bandwidthLimit;
+    }
+
+    /**
+     * @return date range and size of the source messages to copy
+     */
+    public MessageFilter getMessageFilter() {
+        return messageFilter;
+    }
+
+    /**
+     * @return include and exclude rules of the folders to sync
+     */
+    public FolderFilter getFolderFilter() {
+        return folderFilter;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -73,14 +303,35 @@ public class SyncOptions implements Serializable {
         }
         SyncOptions that = (SyncOptions) o;
         return delete == that.delete &&
+            syncFlags == that.syncFlags &&
+            serverSideCopy == that.serverSideCopy &&
+            gmail == that.gmail &&
+            recentFirst == that.recentFirst &&
+            crawlSource == that.crawlSource &&
+            dryRun == that.dryRun &&
+            deleteOnly == that.deleteOnly &&
             threads == that.threads &&
+            indexHeapMb == that.indexHeapMb &&
+            metricsPort == that.metricsPort &&
+            daemon == that.daemon &&
+            reconcileMinutes == that.reconcileMinutes &&
+            maxRetries == that.maxRetries &&
+            bandwidthLimit == that.bandwidthLimit &&
             Objects.equals(sourceHost, that.sourceHost) &&
-            Objects.equals(targetHost, that.targetHost);
+            Objects.equals(targetHost, that.targetHost) &&
+            Objects.equals(indexSnapshot, that.indexSnapshot) &&
+            Objects.equals(metricsJson, that.metricsJson) &&
+            Objects.equals(watchedFolders, that.watchedFolders) &&
+            Objects.equals(messageFilter, that.messageFilter) &&
+            Objects.equals(folderFilter, that.folderFilter);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(sourceHost, targetHost, delete, threads);
+        return Objects.hash(sourceHost, targetHost, delete, syncFlags, serverSideCopy, gmail,
+            recentFirst, crawlSource, dryRun, deleteOnly, threads, indexHeapMb, indexSnapshot,
+            metricsJson, metricsPort, daemon, watchedFolders, reconcileMinutes, maxRetries, bandwidthLimit, messageFilter,
+            folderFilter);
     }
 
 }
@@ -0,0 +1,188 @@
+/*
+ * BatchOptions.java
+ *
+ * Created on 2026-10-18, 17:02
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+
+/**
+ * Settings for a run syncing every account listed in a manifest, see {@link ManifestReader}.
+ */
+public class BatchOptions implements Serializable {
+
+  private static final long serialVersionUID = 6032188203474016513L;
+
+  static final int PARALLEL_ACCOUNTS = 4;
+  static final int LEASE_SECONDS = 60;
+
+  private String manifest;
+  private int parallelAccounts;
+  private int maxConnectionsPerHost;
+  private long bandwidthLimit;
+  private long maxBandwidthPerHost;
+  private String metricsJson;
+  private String queue;
+  private boolean worker;
+  private String workerId;
+  private int leaseSeconds;
+
+  public BatchOptions() {
+    parallelAccounts = PARALLEL_ACCOUNTS;
+    workerId = ManagementFactory.getRuntimeMXBean().getName();
+    leaseSeconds = LEASE_SECONDS;
+  }
+
+  public String getManifest() {
+    return manifest;
+  }
+
+  public void setManifest(String manifest) {
+    this.manifest = manifest;
+  }
+
+  /**
+   * @return number of accounts synced at the same time
+   */
+  public int getParallelAccounts() {
+    return parallelAccounts;
+  }
+
+  public void setParallelAccounts(int parallelAccounts) {
+    this.parallelAccounts = parallelAccounts;
+  }
+
+  /**
+   * @return connections used by message batches of all accounts against each server, or 0 if
+   * unlimited
+   */
+  public int getMaxConnectionsPerHost() {
+    return maxConnectionsPerHost;
+  }
+
+  public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+  }
+
+  /**
+   * @return bytes per second shared fairly by all accounts against all servers, or 0 if
+   * unlimited
+   */
+  public long getBandwidthLimit() {
+    return bandwidthLimit;
+  }
+
+  public void setBandwidthLimit(long bandwidthLimit) {
+    this.bandwidthLimit = bandwidthLimit;
+  }
+
+  /**
+   * @return bytes per second shared fairly by all accounts against each server, or 0 if unlimited
+   */
+  public long getMaxBandwidthPerHost() {
+    return maxBandwidthPerHost;
+  }
+
+  public void setMaxBandwidthPerHost(long maxBandwidthPerHost) {
+    this.maxBandwidthPerHost = maxBandwidthPerHost;
+  }
+
+  /**
+   * @return path of the file where IMAP command metrics of all accounts are exported, or null
+   */
+  public String getMetricsJson() {
+    return metricsJson;
+  }
+
+  public void setMetricsJson(String metricsJson) {
+    this.metricsJson = metricsJson;
+  }
+
+  /**
+   * @return location of the {@link WorkQueue} shared with other processes, or null to sync the
+   * manifest in this process only
+   */
+  public String getQueue() {
+    return queue;
+  }
+
+  public void setQueue(String queue) {
+    this.queue = queue;
+  }
+
+  /**
+   * @return true if this process should lease and sync accounts from the queue
+   */
+  public boolean isWorker() {
+    return worker;
+  }
+
+  public void setWorker(boolean worker) {
+    this.worker = worker;
+  }
+
+  public String getWorkerId() {
+    return workerId;
+  }
+
+  public void setWorkerId(String workerId) {
+    this.workerId = workerId;
+  }
+
+  /**
+   * @return time after which an account leased by a worker that stopped sending heartbeats is
+   * handed to another worker
+   */
+  public int getLeaseSeconds() {
+    return leaseSeconds;
+  }
+
+  public void setLeaseSeconds(int leaseSeconds) {
+    this.leaseSeconds = leaseSeconds;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    BatchOptions that = (BatchOptions) o;
+    return parallelAccounts == that.parallelAccounts &&
+        maxConnectionsPerHost == that.maxConnectionsPerHost &&
+        bandwidthLimit == that.bandwidthLimit &&
+        maxBandwidthPerHost == that.maxBandwidthPerHost &&
+        worker == that.worker &&
+        leaseSeconds == that.leaseSeconds &&
+        Objects.equals(manifest, that.manifest) &&
+        Objects.equals(metricsJson, that.metricsJson) &&
+        Objects.equals(queue, that.queue) &&
+        Objects.equals(workerId, that.workerId);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(manifest, parallelAccounts, maxConnectionsPerHost, bandwidthLimit,
+        maxBandwidthPerHost, metricsJson, queue, worker, workerId, leaseSeconds);
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * BatchSync.java
+ *
+ * Created on 2026-10-18, 17:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.SyncOptions;
+import com.marcnuri.mnimapsync.imap.IMAPUtils;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Syncs many accounts in the same process.
+ *
+ * <p>Up to {@link BatchOptions#getParallelAccounts()} accounts are synced at the same time, every
+ * one with its own stores and indexes. All of them share a single {@link ImapMetrics} registry and,
+ * if configured, a {@link ConnectionScheduler} capping the connections per server and bandwidth
+ * limits (global and per server) shared fairly across the accounts.
+ */
+public class BatchSync {
+
+  private final BatchOptions batchOptions;
+  private final ImapMetrics imapMetrics;
+  private final ConnectionScheduler connectionScheduler;
+  private final List<MNIMAPSync> syncs;
+  private long startTime;
+  private long endTime;
+
+  public BatchSync(BatchOptions batchOptions, List<SyncOptions> accounts) {
+    this.batchOptions = batchOptions;
+    imapMetrics = new ImapMetrics();
+    connectionScheduler = batchOptions.getMaxConnectionsPerHost() > 0
+        ? new ConnectionScheduler(batchOptions.getMaxConnectionsPerHost()) : null;
+    IMAPUtils.setGlobalBandwidthLimit(batchOptions.getBandwidthLimit());
+    final List<MNIMAPSync> accountSyncs = new ArrayList<>();
+    for (SyncOptions account : accounts) {
+      limitBandwidthPerHost(account, batchOptions.getMaxBandwidthPerHost());
+      accountSyncs.add(new MNIMAPSync(account, imapMetrics, connectionScheduler));
+    }
+    syncs = Collections.unmodifiableList(accountSyncs);
+  }
+
+  /**
+   * Applies the bandwidth limit per server to the hosts of the account that don't define one.
+   */
+  static void limitBandwidthPerHost(SyncOptions account, long maxBandwidthPerHost) {
+    for (HostDefinition host : new HostDefinition[]{
+        account.getSourceHost(), account.getTargetHost()}) {
+      if (host.getBandwidthLimit() <= 0L) {
+        host.setBandwidthLimit(maxBandwidthPerHost);
+      }
+    }
+  }
+
+  public void sync() throws InterruptedException {
+    startTime = System.currentTimeMillis();
+    final ExecutorService service = Executors.newFixedThreadPool(
+        Math.max(1, Math.min(batchOptions.getParallelAccounts(), syncs.size())));
+    for (MNIMAPSync sync : syncs) {
+      service.execute(sync::sync);
+    }
+    service.shutdown();
+    try {
+      service.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } finally {
+      endTime = System.currentTimeMillis();
+    }
+  }
+
+  public List<MNIMAPSync> getSyncs() {
+    return syncs;
+  }
+
+  public ImapMetrics getImapMetrics() {
+    return imapMetrics;
+  }
+
+  /**
+   * @return the scheduler shared by all accounts, or null if connections per host aren't capped
+   */
+  public ConnectionScheduler getConnectionScheduler() {
+    return connectionScheduler;
+  }
+
+  public long getElapsedTimeInSeconds() {
+    if (startTime == 0L) {
+      return 0L;
+    }
+    return ((endTime == 0L ? System.currentTimeMillis() : endTime) - startTime) / 1000L;
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * ConnectionScheduler.java
+ *
+ * Created on 2026-10-18, 16:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import com.marcnuri.mnimapsync.HostDefinition;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of message batches running at the same time against each IMAP server, shared by
+ * all of the accounts synced in the same process.
+ *
+ * <p>Every batch holds one pooled connection per server it works with, so limiting batches limits
+ * connections. Batches wait until all of the servers they need have capacity and acquire them at
+ * once, so two accounts can never deadlock holding one server each. As soon as a batch from any
+ * account finishes, its slots are handed to whichever batch is waiting for them, keeping the
+ * servers busy while other accounts are indexing or listing folders.
+ */
+public class ConnectionScheduler {
+
+  private final int maxConnectionsPerHost;
+  private final Map<String, Integer> connections;
+
+  public ConnectionScheduler(int maxConnectionsPerHost) {
+    if (maxConnectionsPerHost < 1) {
+      throw new IllegalArgumentException("Max connections per host must be greater than 0");
+    }
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+    this.connections = new HashMap<>();
+  }
+
+  public int getMaxConnectionsPerHost() {
+    return maxConnectionsPerHost;
+  }
+
+  /**
+   * Blocks until a connection slot is available for each of the provided hosts.
+   */
+  public synchronized void acquire(HostDefinition... hosts) throws InterruptedException {
+    final Map<String, Integer> required = required(hosts);
+    while (!isAvailable(required)) {
+      wait();
+    }
+    for (Entry<String, Integer> entry : required.entrySet()) {
+      connections.merge(entry.getKey(), entry.getValue(), Integer::sum);
+    }
+  }
+
+  public synchronized void release(HostDefinition... hosts) {
+    for (Entry<String, Integer> entry : required(hosts).entrySet()) {
+      connections.computeIfPresent(entry.getKey(),
+          (key, count) -> count > entry.getValue() ? count - entry.getValue() : null);
+    }
+    notifyAll();
+  }
+
+  /**
+   * @return number of connection slots currently in use for the provided host
+   */
+  public synchronized int getConnections(HostDefinition host) {
+    return connections.getOrDefault(key(host), 0);
+  }
+
+  /**
+   * Fixed size executor whose tasks hold a connection slot for each of the provided hosts while
+   * they run.
+   */
+  public ThreadPoolExecutor newExecutor(int threads, HostDefinition... hosts) {
+    return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>()) {
+      @Override
+      public void execute(Runnable command) {
+        super.execute(() -> {
+          try {
+            acquire(hosts);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          try {
+            command.run();
+          } finally {
+            release(hosts);
+          }
+        });
+      }
+    };
+  }
+
+  private boolean isAvailable(Map<String, Integer> required) {
+    for (Entry<String, Integer> entry : required.entrySet()) {
+      if (connections.getOrDefault(entry.getKey(), 0) + entry.getValue()
+          > maxConnectionsPerHost) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Map<String, Integer> required(HostDefinition... hosts) {
+    final Map<String, Integer> ret = new HashMap<>();
+    for (HostDefinition host : hosts) {
+      // A batch syncing within the same server must fit even if the cap is 1
+      ret.merge(key(host), 1, (a, b) -> Math.min(a + b, maxConnectionsPerHost));
+    }
+    return ret;
+  }
+
+  private static String key(HostDefinition host) {
+    return host.getHost().toLowerCase(Locale.ENGLISH) + ":" + host.getPort();
+  }
+}
@@ -0,0 +1,292 @@
+/*
+ * ManifestReader.java
+ *
+ * Created on 2026-10-18, 16:48
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.SyncOptions;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads the accounts to sync in batch mode from a CSV or JSON (by file extension) manifest.
+ *
+ * <p>Fields are named after the command-line options: {@code host1}, {@code port1},
+ * {@code user1}, {@code password1}, {@code ssl1}, {@code host2}, {@code port2}, {@code user2},
+ * {@code password2}, {@code ssl2}, {@code delete} and {@code threads}. CSV manifests have a header
+ * row with the field names, values may be double-quoted and lines starting with {@code #} are
+ * ignored. JSON manifests are an array with one flat object per account.
+ */
+public class ManifestReader {
+
+  private static final List<String> REQUIRED = Arrays.asList(
+      "host1", "port1", "user1", "password1", "host2", "port2", "user2", "password2");
+  private static final List<String> OPTIONAL = Arrays.asList("ssl1", "ssl2", "delete", "threads");
+
+  private ManifestReader() {
+  }
+
+  public static List<SyncOptions> read(Path manifest) throws IOException {
+    final String content = new String(Files.readAllBytes(manifest), StandardCharsets.UTF_8);
+    final List<Map<String, String>> rows =
+        manifest.getFileName().toString().toLowerCase(Locale.ENGLISH).endsWith(".json")
+            ? parseJson(content) : parseCsv(content);
+    final List<SyncOptions> ret = new ArrayList<>();
+    for (int it = 0; it < rows.size(); it++) {
+      ret.add(toSyncOptions(it + 1, rows.get(it)));
+    }
+    return ret;
+  }
+
+  static SyncOptions toSyncOptions(int account, Map<String, String> row) {
+    for (String key : row.keySet()) {
+      if (!REQUIRED.contains(key) && !OPTIONAL.contains(key)) {
+        throw new IllegalArgumentException(
+            String.format("Account %d: unknown field %s", account, key));
+      }
+    }
+    for (String key : REQUIRED) {
+      if (row.get(key) == null || row.get(key).isEmpty()) {
+        throw new IllegalArgumentException(
+            String.format("Account %d: %s is required", account, key));
+      }
+    }
+    final SyncOptions ret = new SyncOptions();
+    configureHost(account, ret.getSourceHost(), row, "1");
+    configureHost(account, ret.getTargetHost(), row, "2");
+    ret.setDelete(parseBoolean(row.get("delete")));
+    if (row.get("threads") != null && !row.get("threads").isEmpty()) {
+      ret.setThreads(parseInt(account, "threads", row.get("threads")));
+    }
+    return ret;
+  }
+
+  private static void configureHost(int account, HostDefinition host, Map<String, String> row,
+      String suffix) {
+
+    host.setHost(row.get("host" + suffix));
+    host.setPort(parseInt(account, "port" + suffix, row.get("port" + suffix)));
+    host.setUser(row.get("user" + suffix));
+    host.setPassword(row.get("password" + suffix));
+    host.setSsl(parseBoolean(row.get("ssl" + suffix)));
+  }
+
+  private static boolean parseBoolean(String value) {
+    return value != null && (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("yes")
+        || value.equals("1"));
+  }
+
+  private static int parseInt(int account, String key, String value) {
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+          String.format("Account %d: %s requires a valid integer as a value", account, key));
+    }
+  }
+
+  static List<Map<String, String>> parseCsv(String content) {
+    final List<Map<String, String>> ret = new ArrayList<>();
+    List<String> header = null;
+    for (String line : content.split("\r?\n")) {
+      if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+        continue;
+      }
+      final List<String> values = parseCsvLine(line);
+      if (header == null) {
+        header = values;
+        continue;
+      }
+      if (values.size() > header.size()) {
+        throw new IllegalArgumentException(
+            String.format("Account %d: more values than columns", ret.size() + 1));
+      }
+      final Map<String, String> row = new LinkedHashMap<>();
+      for (int it = 0; it < values.size(); it++) {
+        row.put(header.get(it).trim(), values.get(it));
+      }
+      ret.add(row);
+    }
+    return ret;
+  }
+
+  private static List<String> parseCsvLine(String line) {
+    final List<String> ret = new ArrayList<>();
+    final StringBuilder current = new StringBuilder();
+    boolean quoted = false;
+    for (int it = 0; it < line.length(); it++) {
+      final char c = line.charAt(it);
+      if (quoted) {
+        if (c == '"' && it + 1 < line.length() && line.charAt(it + 1) == '"') {
+          current.append('"');
+          it++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          current.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        ret.add(current.toString());
+        current.setLength(0);
+      } else {
+        current.append(c);
+      }
+    }
+    ret.add(current.toString());
+    return ret;
+  }
+
+  static List<Map<String, String>> parseJson(String content) {
+    return new JsonParser(content).parseManifest();
+  }
+
+  /**
+   * Minimal parser for an array of flat objects with string, number, boolean or null values.
+   */
+  private static final class JsonParser {
+
+    private final String json;
+    private int pos;
+
+    private JsonParser(String json) {
+      this.json = json;
+    }
+
+    private List<Map<String, String>> parseManifest() {
+      final List<Map<String, String>> ret = new ArrayList<>();
+      expect('[');
+      if (!consume(']')) {
+        do {
+          ret.add(parseObject());
+        } while (consume(','));
+        expect(']');
+      }
+      skipWhitespace();
+      if (pos < json.length()) {
+        throw error("Unexpected content after the manifest array");
+      }
+      return ret;
+    }
+
+    private Map<String, String> parseObject() {
+      final Map<String, String> ret = new LinkedHashMap<>();
+      expect('{');
+      if (!consume('}')) {
+        do {
+          skipWhitespace();
+          final String key = parseString();
+          expect(':');
+          ret.put(key, parseValue());
+        } while (consume(','));
+        expect('}');
+      }
+      return ret;
+    }
+
+    private String parseValue() {
+      skipWhitespace();
+      if (pos < json.length() && json.charAt(pos) == '"') {
+        return parseString();
+      }
+      final int start = pos;
+      while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0) {
+        pos++;
+      }
+      final String literal = json.substring(start, pos);
+      if (literal.equals("null")) {
+        return null;
+      }
+      if (literal.equals("true") || literal.equals("false") || literal.matches("-?\\d+")) {
+        return literal;
+      }
+      throw error("Unsupported value " + literal);
+    }
+
+    private String parseString() {
+      if (pos >= json.length() || json.charAt(pos) != '"') {
+        throw error("Expected string");
+      }
+      pos++;
+      final StringBuilder ret = new StringBuilder();
+      while (pos < json.length() && json.charAt(pos) != '"') {
+        char c = json.charAt(pos++);
+        if (c == '\\' && pos < json.length()) {
+          c = json.charAt(pos++);
+          switch (c) {
+            case 'b': ret.append('\b'); break;
+            case 'f': ret.append('\f'); break;
+            case 'n': ret.append('\n'); break;
+            case 'r': ret.append('\r'); break;
+            case 't': ret.append('\t'); break;
+            case 'u':
+              if (pos + 4 > json.length()) {
+                throw error("Invalid unicode escape");
+              }
+              ret.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+              pos += 4;
+              break;
+            default: ret.append(c);
+          }
+        } else {
+          ret.append(c);
+        }
+      }
+      expect('"');
+      return ret.toString();
+    }
+
+    private boolean consume(char c) {
+      skipWhitespace();
+      if (pos < json.length() && json.charAt(pos) == c) {
+        pos++;
+        return true;
+      }
+      return false;
+    }
+
+    private void expect(char c) {
+      if (!consume(c)) {
+        throw error("Expected '" + c + "'");
+      }
+    }
+
+    private void skipWhitespace() {
+      while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+        pos++;
+      }
+    }
+
+    private IllegalArgumentException error(String message) {
+      return new IllegalArgumentException(
+          String.format("Invalid JSON manifest at position %d: %s", pos, message));
+    }
+  }
+}
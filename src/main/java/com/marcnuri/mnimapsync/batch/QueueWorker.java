@@ -0,0 +1,179 @@
+/*
+ * QueueWorker.java
+ *
+ * Created on 2026-10-18, 18:55
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.batch.WorkQueue.Lease;
+import com.marcnuri.mnimapsync.imap.IMAPUtils;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics;
+import com.marcnuri.mnimapsync.store.StoreCopier;
+import com.marcnuri.mnimapsync.store.StoreDeleter;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Leases accounts from a {@link WorkQueue} and syncs them until every queued account has been
+ * processed by this or other workers.
+ *
+ * <p>Leases are renewed every third of their duration while the account is synced. If a renewal
+ * fails because the lease was handed to another worker the sync is cancelled after the batches in
+ * progress, and its result is discarded.
+ */
+public class QueueWorker {
+
+  private static final Logger LOG = Logger.getLogger(QueueWorker.class.getName());
+  private static final long POLL_MILLIS = 1000L;
+
+  private final WorkQueue queue;
+  private final BatchOptions batchOptions;
+  private final long leaseMillis;
+  private final ImapMetrics imapMetrics;
+  private final ConnectionScheduler connectionScheduler;
+  private final List<MNIMAPSync> syncs;
+  private long startTime;
+  private long endTime;
+
+  public QueueWorker(WorkQueue queue, BatchOptions batchOptions) {
+    this.queue = queue;
+    this.batchOptions = batchOptions;
+    leaseMillis = TimeUnit.SECONDS.toMillis(batchOptions.getLeaseSeconds());
+    imapMetrics = new ImapMetrics();
+    connectionScheduler = batchOptions.getMaxConnectionsPerHost() > 0
+        ? new ConnectionScheduler(batchOptions.getMaxConnectionsPerHost()) : null;
+    syncs = new CopyOnWriteArrayList<>();
+    IMAPUtils.setGlobalBandwidthLimit(batchOptions.getBandwidthLimit());
+  }
+
+  public void run() throws InterruptedException {
+    startTime = System.currentTimeMillis();
+    final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+      final Thread thread = new Thread(r, "mnimapsync-heartbeat");
+      thread.setDaemon(true);
+      return thread;
+    });
+    final ExecutorService slots = Executors.newFixedThreadPool(
+        Math.max(1, batchOptions.getParallelAccounts()));
+    for (int it = 0; it < Math.max(1, batchOptions.getParallelAccounts()); it++) {
+      slots.execute(() -> work(heartbeats));
+    }
+    slots.shutdown();
+    try {
+      slots.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } finally {
+      heartbeats.shutdownNow();
+      endTime = System.currentTimeMillis();
+    }
+  }
+
+  private void work(ScheduledExecutorService heartbeats) {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        final Lease lease = queue.lease(batchOptions.getWorkerId(), leaseMillis);
+        if (lease != null) {
+          process(lease, heartbeats);
+        } else if (queue.isFinished()) {
+          return;
+        } else {
+          // Other workers hold the remaining accounts, wait in case their leases expire
+          Thread.sleep(POLL_MILLIS);
+        }
+      }
+    } catch (SQLException | IOException ex) {
+      LOG.log(Level.SEVERE, "Work queue is not available", ex);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void process(Lease lease, ScheduledExecutorService heartbeats) throws SQLException {
+    BatchSync.limitBandwidthPerHost(lease.getSyncOptions(),
+        batchOptions.getMaxBandwidthPerHost());
+    final MNIMAPSync sync = new MNIMAPSync(lease.getSyncOptions(), imapMetrics,
+        connectionScheduler);
+    syncs.add(sync);
+    final long heartbeatMillis = Math.max(1L, leaseMillis / 3);
+    final ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(() -> {
+      try {
+        if (!queue.heartbeat(lease, leaseMillis)) {
+          LOG.warning(() -> String.format("Lease of %s lost, cancelling",
+              WorkQueue.accountKey(lease.getSyncOptions())));
+          sync.cancel();
+        }
+      } catch (SQLException ex) {
+        LOG.log(Level.WARNING, "Couldn't renew lease", ex);
+      }
+    }, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    try {
+      sync.sync();
+    } finally {
+      heartbeat.cancel(false);
+    }
+    if (!sync.isCancelled()) {
+      queue.complete(lease, hasErrors(sync), result(sync));
+    }
+  }
+
+  private static boolean hasErrors(MNIMAPSync sync) {
+    return sync.getTargetIndex().hasCrawlException() || sync.getSourceCopier() == null
+        || sync.getSourceCopier().hasCopyException();
+  }
+
+  private static String result(MNIMAPSync sync) {
+    final StoreCopier copier = sync.getSourceCopier();
+    final StoreDeleter deleter = sync.getTargetDeleter();
+    return String.format(Locale.ENGLISH, "copied=%d skipped=%d deleted=%d errors=%d",
+        copier == null ? 0L : copier.getMessagesCopiedCount(),
+        copier == null ? 0L : copier.getMessagesSkippedCount(),
+        deleter == null ? 0L : deleter.getMessagesDeletedCount(),
+        sync.getTargetIndex().getCrawlExceptions().size()
+            + (copier == null ? 0 : copier.getCopyExceptions().size()));
+  }
+
+  /**
+   * @return accounts synced by this worker, including the ones whose lease was lost
+   */
+  public List<MNIMAPSync> getSyncs() {
+    return Collections.unmodifiableList(syncs);
+  }
+
+  public ImapMetrics getImapMetrics() {
+    return imapMetrics;
+  }
+
+  public long getElapsedTimeInSeconds() {
+    if (startTime == 0L) {
+      return 0L;
+    }
+    return ((endTime == 0L ? System.currentTimeMillis() : endTime) - startTime) / 1000L;
+  }
+}
@@ -0,0 +1,336 @@
+/*
+ * WorkQueue.java
+ *
+ * Created on 2026-10-18, 18:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.SyncOptions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Queue of accounts shared by the worker processes of a distributed migration, backed by an H2
+ * database.
+ *
+ * <p>Workers lease one account at a time and must renew the lease with {@link #heartbeat} before
+ * it expires. Leases of workers that stop renewing them are handed to other workers. Every lease
+ * gets a new attempt number which fences heartbeats and completions of the previous holder, so an
+ * account is never reported twice.
+ *
+ * <p>Lease expiration is computed with the database clock, so workers on different hosts don't
+ * need synchronized clocks.
+ */
+public class WorkQueue implements Closeable {
+
+  /**
+   * Processing state of a queued account.
+   */
+  public enum Status {
+    PENDING, LEASED, DONE, FAILED
+  }
+
+  static final int MAX_ATTEMPTS = 3;
+
+  private final Connection connection;
+
+  private WorkQueue(Connection connection) {
+    this.connection = connection;
+  }
+
+  /**
+   * Opens the queue creating its tables if necessary.
+   *
+   * @param queue a JDBC URL ({@code jdbc:h2:tcp://host/path} to share it between hosts) or the
+   * path of a database file that processes in the same host can share
+   */
+  public static WorkQueue open(String queue) throws SQLException {
+    final String url = queue.startsWith("jdbc:") ? queue
+        : "jdbc:h2:file:" + Paths.get(queue).toAbsolutePath() + ";AUTO_SERVER=TRUE";
+    final WorkQueue ret = new WorkQueue(DriverManager.getConnection(url));
+    ret.createTablesIfNotExists();
+    return ret;
+  }
+
+  private void createTablesIfNotExists() throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "CREATE TABLE IF NOT EXISTS work_items (id INT AUTO_INCREMENT PRIMARY KEY, "
+            + "account VARCHAR(1024) NOT NULL UNIQUE, sync_options BLOB NOT NULL, "
+            + "status VARCHAR(16) NOT NULL, worker VARCHAR(255), lease_expires TIMESTAMP, "
+            + "attempts INT DEFAULT 0 NOT NULL, result VARCHAR(1024))")) {
+      statement.executeUpdate();
+    }
+  }
+
+  /**
+   * Adds the provided accounts to the queue, accounts that were already queued are ignored so the
+   * same manifest can be enqueued again after a coordinator restart.
+   *
+   * @return number of accounts added
+   */
+  public synchronized int enqueue(List<SyncOptions> accounts) throws SQLException, IOException {
+    int ret = 0;
+    for (SyncOptions account : accounts) {
+      try (PreparedStatement statement = connection.prepareStatement(
+          "INSERT INTO work_items (account, sync_options, status) SELECT ?, ?, ? FROM DUAL "
+              + "WHERE NOT EXISTS (SELECT 1 FROM work_items WHERE account = ?)")) {
+        statement.setString(1, accountKey(account));
+        statement.setBytes(2, serialize(account));
+        statement.setString(3, Status.PENDING.name());
+        statement.setString(4, accountKey(account));
+        ret += statement.executeUpdate();
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Leases the next pending account, or one whose lease expired, to the provided worker.
+   *
+   * @return the lease, or null if no account is available right now
+   */
+  public synchronized Lease lease(String worker, long leaseMillis)
+      throws SQLException, IOException {
+
+    failExhaustedLeases();
+    while (true) {
+      final int id;
+      final int attempts;
+      try (PreparedStatement statement = connection.prepareStatement(
+          "SELECT id, attempts FROM work_items WHERE status = ? OR (status = ? "
+              + "AND lease_expires < CURRENT_TIMESTAMP) ORDER BY id LIMIT 1")) {
+        statement.setString(1, Status.PENDING.name());
+        statement.setString(2, Status.LEASED.name());
+        try (ResultSet rs = statement.executeQuery()) {
+          if (!rs.next()) {
+            return null;
+          }
+          id = rs.getInt(1);
+          attempts = rs.getInt(2);
+        }
+      }
+      // Compare and set, another worker may have leased the same item in the meantime
+      try (PreparedStatement statement = connection.prepareStatement(
+          "UPDATE work_items SET status = ?, worker = ?, attempts = ?, lease_expires = "
+              + "DATEADD('MILLISECOND', ?, CURRENT_TIMESTAMP) WHERE id = ? AND attempts = ? "
+              + "AND (status = ? OR (status = ? AND lease_expires < CURRENT_TIMESTAMP))")) {
+        statement.setString(1, Status.LEASED.name());
+        statement.setString(2, worker);
+        statement.setInt(3, attempts + 1);
+        statement.setLong(4, leaseMillis);
+        statement.setInt(5, id);
+        statement.setInt(6, attempts);
+        statement.setString(7, Status.PENDING.name());
+        statement.setString(8, Status.LEASED.name());
+        if (statement.executeUpdate() == 1) {
+          return new Lease(id, worker, attempts + 1, readSyncOptions(id));
+        }
+      }
+    }
+  }
+
+  private void failExhaustedLeases() throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "UPDATE work_items SET status = ?, result = ? WHERE status = ? "
+            + "AND lease_expires < CURRENT_TIMESTAMP AND attempts >= ?")) {
+      statement.setString(1, Status.FAILED.name());
+      statement.setString(2, String.format("Lease expired %d times", MAX_ATTEMPTS));
+      statement.setString(3, Status.LEASED.name());
+      statement.setInt(4, MAX_ATTEMPTS);
+      statement.executeUpdate();
+    }
+  }
+
+  /**
+   * Extends the lease of an account being processed.
+   *
+   * @return false if the lease expired and was handed to another worker
+   */
+  public synchronized boolean heartbeat(Lease lease, long leaseMillis) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "UPDATE work_items SET lease_expires = DATEADD('MILLISECOND', ?, CURRENT_TIMESTAMP) "
+            + "WHERE id = ? AND worker = ? AND attempts = ? AND status = ?")) {
+      statement.setLong(1, leaseMillis);
+      setLease(statement, 2, lease);
+      statement.setString(5, Status.LEASED.name());
+      return statement.executeUpdate() == 1;
+    }
+  }
+
+  /**
+   * Marks a leased account as processed.
+   *
+   * @return false if the lease was lost and the result was discarded
+   */
+  public synchronized boolean complete(Lease lease, boolean failed, String result)
+      throws SQLException {
+
+    try (PreparedStatement statement = connection.prepareStatement(
+        "UPDATE work_items SET status = ?, result = ?, lease_expires = NULL "
+            + "WHERE id = ? AND worker = ? AND attempts = ? AND status = ?")) {
+      statement.setString(1, (failed ? Status.FAILED : Status.DONE).name());
+      statement.setString(2, result);
+      setLease(statement, 3, lease);
+      statement.setString(6, Status.LEASED.name());
+      return statement.executeUpdate() == 1;
+    }
+  }
+
+  /**
+   * @return number of accounts in each status
+   */
+  public synchronized Map<Status, Integer> getStatusCounts() throws SQLException {
+    final Map<Status, Integer> ret = new EnumMap<>(Status.class);
+    for (Status status : Status.values()) {
+      ret.put(status, 0);
+    }
+    try (PreparedStatement statement = connection.prepareStatement(
+        "SELECT status, COUNT(*) FROM work_items GROUP BY status");
+        ResultSet rs = statement.executeQuery()) {
+      while (rs.next()) {
+        ret.put(Status.valueOf(rs.getString(1)), rs.getInt(2));
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @return true if every queued account is either done or failed
+   */
+  public boolean isFinished() throws SQLException {
+    final Map<Status, Integer> counts = getStatusCounts();
+    return counts.get(Status.PENDING) == 0 && counts.get(Status.LEASED) == 0;
+  }
+
+  /**
+   * @return description of every queued account: account, status, worker, attempts and result
+   */
+  public synchronized List<String[]> getItems() throws SQLException {
+    final List<String[]> ret = new ArrayList<>();
+    try (PreparedStatement statement = connection.prepareStatement(
+        "SELECT account, status, worker, attempts, result FROM work_items ORDER BY id");
+        ResultSet rs = statement.executeQuery()) {
+      while (rs.next()) {
+        ret.add(new String[]{rs.getString(1), rs.getString(2), rs.getString(3),
+            String.valueOf(rs.getInt(4)), rs.getString(5)});
+      }
+    }
+    return ret;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      connection.close();
+    } catch (SQLException ex) {
+      throw new IOException(ex);
+    }
+  }
+
+  private SyncOptions readSyncOptions(int id) throws SQLException, IOException {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "SELECT sync_options FROM work_items WHERE id = ?")) {
+      statement.setInt(1, id);
+      try (ResultSet rs = statement.executeQuery()) {
+        rs.next();
+        try (ObjectInputStream ois = new ObjectInputStream(
+            new ByteArrayInputStream(rs.getBytes(1)))) {
+          return (SyncOptions) ois.readObject();
+        } catch (ClassNotFoundException ex) {
+          throw new IOException(ex);
+        }
+      }
+    }
+  }
+
+  private static void setLease(PreparedStatement statement, int index, Lease lease)
+      throws SQLException {
+
+    statement.setInt(index, lease.getId());
+    statement.setString(index + 1, lease.getWorker());
+    statement.setInt(index + 2, lease.getAttempt());
+  }
+
+  private static byte[] serialize(SyncOptions account) throws IOException {
+    final ByteArrayOutputStream ret = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(ret)) {
+      oos.writeObject(account);
+    }
+    return ret.toByteArray();
+  }
+
+  static String accountKey(SyncOptions account) {
+    return hostKey(account.getSourceHost()) + " -> " + hostKey(account.getTargetHost());
+  }
+
+  private static String hostKey(HostDefinition host) {
+    return host.getUser() + "@" + host.getHost().toLowerCase(Locale.ENGLISH) + ":"
+        + host.getPort();
+  }
+
+  /**
+   * An account leased to a worker.
+   */
+  public static final class Lease {
+
+    private final int id;
+    private final String worker;
+    private final int attempt;
+    private final SyncOptions syncOptions;
+
+    private Lease(int id, String worker, int attempt, SyncOptions syncOptions) {
+      this.id = id;
+      this.worker = worker;
+      this.attempt = attempt;
+      this.syncOptions = syncOptions;
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    public String getWorker() {
+      return worker;
+    }
+
+    public int getAttempt() {
+      return attempt;
+    }
+
+    public SyncOptions getSyncOptions() {
+      return syncOptions;
+    }
+  }
+}
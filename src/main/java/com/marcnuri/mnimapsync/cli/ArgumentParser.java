@@ -21,9 +21,82 @@
 package com.marcnuri.mnimapsync.cli;
 
 import com.marcnuri.mnimapsync.SyncOptions;
+import com.marcnuri.mnimapsync.batch.BatchOptions;
 import org.apache.commons.cli.*;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Date;
+
 public class ArgumentParser {
+
+  private static final String BATCH = "batch";
+  private static final String QUEUE = "queue";
+
+  /**
+   * @return true if the arguments request syncing the accounts listed in a manifest, or queued
+   * by a coordinator
+   */
+  public static boolean isBatchMode(String[] arguments) {
+    return Arrays.asList(arguments).contains("--" + BATCH)
+        || Arrays.asList(arguments).contains("--" + QUEUE);
+  }
+
+  public static BatchOptions parseBatchArguments(String[] arguments) {
+    Options options = createBatchOptions();
+    CommandLineParser parser = new DefaultParser();
+    BatchOptions result = new BatchOptions();
+
+    try {
+      CommandLine cmd = parser.parse(options, arguments);
+
+      result.setManifest(cmd.getOptionValue(BATCH));
+      if (cmd.hasOption("parallel-accounts")) {
+        result.setParallelAccounts(
+            parseIntValue("parallel-accounts", cmd.getOptionValue("parallel-accounts")));
+      }
+      if (cmd.hasOption("max-connections-per-host")) {
+        result.setMaxConnectionsPerHost(parseIntValue("max-connections-per-host",
+            cmd.getOptionValue("max-connections-per-host")));
+      }
+      if (cmd.hasOption("bandwidth-limit")) {
+        result.setBandwidthLimit(parseKibValue("bandwidth-limit",
+            cmd.getOptionValue("bandwidth-limit")));
+      }
+      if (cmd.hasOption("max-bandwidth-per-host")) {
+        result.setMaxBandwidthPerHost(parseKibValue("max-bandwidth-per-host",
+            cmd.getOptionValue("max-bandwidth-per-host")));
+      }
+      result.setMetricsJson(cmd.getOptionValue("metrics-json"));
+      result.setQueue(cmd.getOptionValue(QUEUE));
+      result.setWorker(cmd.hasOption("worker"));
+      if (cmd.hasOption("worker-id")) {
+        result.setWorkerId(cmd.getOptionValue("worker-id"));
+      }
+      if (cmd.hasOption("lease-seconds")) {
+        result.setLeaseSeconds(
+            parseIntValue("lease-seconds", cmd.getOptionValue("lease-seconds")));
+      }
+      if (result.getQueue() == null && result.getManifest() == null) {
+        throw new ParseException("Missing required option: batch");
+      }
+      if (result.getQueue() == null && result.isWorker()) {
+        throw new ParseException("worker requires a queue");
+      }
+
+    } catch (ParseException e) {
+      System.err.println("Parsing failed. Reason: " + e.getMessage());
+
+      printHelp(options);
+
+      System.exit(1);
+    }
+
+    return result;
+  }
+
   public static SyncOptions parseCliArguments(String[] arguments) {
     Options options = createOptions();
     CommandLineParser parser = new DefaultParser();
@@ -45,7 +118,87 @@ public class ArgumentParser {
       result.getTargetHost().setSsl(cmd.hasOption("ssl2"));
 
       result.setDelete(cmd.hasOption("delete"));
+      result.setSyncFlags(cmd.hasOption("sync-flags"));
+      result.setServerSideCopy(cmd.hasOption("server-side-copy"));
+      result.setGmail(cmd.hasOption("gmail"));
+      result.setRecentFirst(cmd.hasOption("recent-first"));
+      result.setCrawlSource(cmd.hasOption("crawl-source"));
+      result.setDryRun(cmd.hasOption("dry-run"));
+      if (cmd.hasOption("delete-only")) {
+        result.setDelete(true);
+        result.setDeleteOnly(true);
+      }
+      result.getSourceHost().setCompress(cmd.hasOption("compress"));
+      result.getTargetHost().setCompress(cmd.hasOption("compress"));
+      result.getSourceHost().setAdaptiveThrottling(cmd.hasOption("adaptive-throttling"));
+      result.getTargetHost().setAdaptiveThrottling(cmd.hasOption("adaptive-throttling"));
+      if (cmd.hasOption("tls-session-timeout")) {
+        final int tlsSessionTimeout = parseIntValue("tls-session-timeout",
+            cmd.getOptionValue("tls-session-timeout"));
+        result.getSourceHost().setTlsSessionTimeout(tlsSessionTimeout);
+        result.getTargetHost().setTlsSessionTimeout(tlsSessionTimeout);
+      }
+      if (cmd.hasOption("bandwidth-limit")) {
+        result.setBandwidthLimit(parseKibValue("bandwidth-limit",
+            cmd.getOptionValue("bandwidth-limit")));
+      }
+      if (cmd.hasOption("bandwidth-limit1")) {
+        result.getSourceHost().setBandwidthLimit(parseKibValue("bandwidth-limit1",
+            cmd.getOptionValue("bandwidth-limit1")));
+      }
+      if (cmd.hasOption("bandwidth-limit2")) {
+        result.getTargetHost().setBandwidthLimit(parseKibValue("bandwidth-limit2",
+            cmd.getOptionValue("bandwidth-limit2")));
+      }
+      if (cmd.hasOption("include")) {
+        for (String rule : cmd.getOptionValues("include")) {
+          result.getFolderFilter().addInclude(rule);
+        }
+      }
+      if (cmd.hasOption("exclude")) {
+        for (String rule : cmd.getOptionValues("exclude")) {
+          result.getFolderFilter().addExclude(rule);
+        }
+      }
+      if (cmd.hasOption("since")) {
+        result.getMessageFilter().setSince(parseDateValue("since", cmd.getOptionValue("since")));
+      }
+      if (cmd.hasOption("before")) {
+        result.getMessageFilter().setBefore(
+            parseDateValue("before", cmd.getOptionValue("before")));
+      }
+      if (cmd.hasOption("min-size")) {
+        result.getMessageFilter().setMinSize(
+            parseKibValue("min-size", cmd.getOptionValue("min-size")));
+      }
+      if (cmd.hasOption("max-size")) {
+        result.getMessageFilter().setMaxSize(
+            parseKibValue("max-size", cmd.getOptionValue("max-size")));
+      }
       result.setThreads(parseIntValue("threads", cmd.getOptionValue("threads")));
+      if (cmd.hasOption("index-heap-mb")) {
+        result.setIndexHeapMb(
+            parseIntValue("index-heap-mb", cmd.getOptionValue("index-heap-mb")));
+      }
+      result.setIndexSnapshot(cmd.getOptionValue("index-snapshot"));
+      result.setMetricsJson(cmd.getOptionValue("metrics-json"));
+      if (cmd.hasOption("metrics-port")) {
+        result.setMetricsPort(parseIntValue("metrics-port", cmd.getOptionValue("metrics-port")));
+      }
+      result.setDaemon(cmd.hasOption("daemon"));
+      if (cmd.hasOption("watch")) {
+        result.setWatchedFolders(Arrays.asList(cmd.getOptionValue("watch").split(",")));
+      }
+      if (cmd.hasOption("max-retries")) {
+        result.setMaxRetries(parseIntValue("max-retries", cmd.getOptionValue("max-retries")));
+      }
+      if (cmd.hasOption("reconcile-minutes")) {
+        result.setReconcileMinutes(
+            parseIntValue("reconcile-minutes", cmd.getOptionValue("reconcile-minutes")));
+      }
+      if (result.isDaemon() && (result.isDryRun() || result.isDeleteOnly())) {
+        throw new IllegalArgumentException("daemon can't be combined with dry-run or delete-only");
+      }
 
     } catch (ParseException e) {
       System.err.println("Parsing failed. Reason: " + e.getMessage());
@@ -75,7 +228,51 @@ public class ArgumentParser {
     options.addOption(Option.builder().longOpt("ssl2").desc("Enable SSL for target").build());
 
     options.addOption(Option.builder().longOpt("delete").desc("Enable delete operation").build());
+    options.addOption(Option.builder().longOpt("sync-flags").desc("Update flags and keywords of messages already in the target to match the source").build());
+    options.addOption(Option.builder().longOpt("server-side-copy").desc("Upload messages in several source folders once, copy them server side to the rest").build());
+    options.addOption(Option.builder().longOpt("gmail").desc("Copy Gmail sources from All Mail once, copy labels server side").build());
+    options.addOption(Option.builder().longOpt("recent-first").desc("Copy INBOX first, then the newest messages of every folder").build());
+    options.addOption(Option.builder().longOpt("crawl-source").desc("Index the source in a phase of its own, concurrently with the target, instead of while copying").build());
+    options.addOption(Option.builder().longOpt("dry-run").desc("Index both servers concurrently and report what would be copied and deleted, without changing anything").build());
+    options.addOption(Option.builder().longOpt("delete-only").desc("Delete target messages and folders missing in the source without copying anything").build());
+    options.addOption(Option.builder().longOpt("include").hasArg().desc("Only sync folders matching this glob or regex: rule, can be repeated").build());
+    options.addOption(Option.builder().longOpt("exclude").hasArg().desc("Skip folders (and subfolders) matching this glob or regex: rule, can be repeated").build());
+    options.addOption(Option.builder().longOpt("since").hasArg().desc("Only copy messages received on or after this date (yyyy-MM-dd)").build());
+    options.addOption(Option.builder().longOpt("before").hasArg().desc("Only copy messages received before this date (yyyy-MM-dd)").build());
+    options.addOption(Option.builder().longOpt("min-size").hasArg().desc("Only copy messages of at least these KiB").build());
+    options.addOption(Option.builder().longOpt("max-size").hasArg().desc("Only copy messages of at most these KiB").build());
+    options.addOption(Option.builder().longOpt("compress").desc("Enable COMPRESS=DEFLATE on both servers if supported").build());
+    options.addOption(Option.builder().longOpt("adaptive-throttling").desc("Adapt concurrency and bandwidth to server throttling responses and latencies").build());
+    options.addOption(Option.builder().longOpt("bandwidth-limit").hasArg().desc("KiB/s shared by the connections to both servers (default no limit)").build());
+    options.addOption(Option.builder().longOpt("bandwidth-limit1").hasArg().desc("KiB/s shared by the connections to the source server (default no limit)").build());
+    options.addOption(Option.builder().longOpt("bandwidth-limit2").hasArg().desc("KiB/s shared by the connections to the target server (default no limit)").build());
+    options.addOption(Option.builder().longOpt("max-retries").hasArg().desc("Times a message batch is retried after a connection failure (default 3)").build());
+    options.addOption(Option.builder().longOpt("tls-session-timeout").hasArg().desc("Seconds TLS sessions are resumed by new connections to the same server (default 86400)").build());
     options.addOption(Option.builder().longOpt("threads").hasArg().desc("Number of threads").build());
+    options.addOption(Option.builder().longOpt("index-heap-mb").hasArg().desc("Heap for indexed messages before spilling folders to disk (default no limit)").build());
+    options.addOption(Option.builder().longOpt("index-snapshot").hasArg().desc("Reuse and update a binary snapshot of the target index in this file").build());
+    options.addOption(Option.builder().longOpt("metrics-port").hasArg().desc("Serve OpenMetrics at http://0.0.0.0:<port>/metrics while syncing").build());
+    options.addOption(Option.builder().longOpt("metrics-json").hasArg().desc("Export IMAP command metrics as JSON to this file").build());
+    options.addOption(Option.builder().longOpt("daemon").desc("Keep replicating source changes to the target after the first sync").build());
+    options.addOption(Option.builder().longOpt("watch").hasArg().desc("Comma separated source folders replicated as they change in daemon mode (default INBOX)").build());
+    options.addOption(Option.builder().longOpt("reconcile-minutes").hasArg().desc("Minutes between full syncs in daemon mode (default 60)").build());
+
+    return options;
+  }
+
+  private static Options createBatchOptions() {
+    Options options = new Options();
+
+    options.addOption(Option.builder().longOpt(BATCH).hasArg().desc("CSV or JSON manifest with the accounts to sync").build());
+    options.addOption(Option.builder().longOpt("parallel-accounts").hasArg().desc("Number of accounts synced at the same time").build());
+    options.addOption(Option.builder().longOpt("max-connections-per-host").hasArg().desc("Max connections used by all accounts against each server").build());
+    options.addOption(Option.builder().longOpt("bandwidth-limit").hasArg().desc("KiB/s shared fairly by all accounts (default no limit)").build());
+    options.addOption(Option.builder().longOpt("max-bandwidth-per-host").hasArg().desc("KiB/s shared fairly by all accounts against each server (default no limit)").build());
+    options.addOption(Option.builder().longOpt("metrics-json").hasArg().desc("Export IMAP command metrics as JSON to this file").build());
+    options.addOption(Option.builder().longOpt(QUEUE).hasArg().desc("Work queue shared with other processes (H2 JDBC URL or database file path)").build());
+    options.addOption(Option.builder().longOpt("worker").desc("Lease and sync accounts from the work queue").build());
+    options.addOption(Option.builder().longOpt("worker-id").hasArg().desc("Name of this worker in the work queue").build());
+    options.addOption(Option.builder().longOpt("lease-seconds").hasArg().desc("Time before an account of an unresponsive worker is reassigned").build());
 
     return options;
   }
@@ -84,6 +281,23 @@ public class ArgumentParser {
     HelpFormatter formatter = new HelpFormatter();
     formatter.printHelp("java -jar your-application.jar", options);
   }
+  /**
+   * @return start of the provided day (yyyy-MM-dd) in the default time zone, as IMAP dates are
+   * compared by the server
+   */
+  private static Date parseDateValue(String key, String dateValue) {
+    try {
+      return Date.from(
+          LocalDate.parse(dateValue).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException(String.format("%s requires a valid date (yyyy-MM-dd) as a value", key));
+    }
+  }
+
+  private static long parseKibValue(String key, String kibValue) {
+    return parseIntValue(key, kibValue) * 1024L;
+  }
+
   private static int parseIntValue(String key, String intValue) {
     try {
       return Integer.parseInt(intValue);
@@ -0,0 +1,135 @@
+/*
+ * CliBatchReport.java
+ *
+ * Created on 2026-10-18, 17:24
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.cli;
+
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.MNIMAPSync.Phase;
+import com.marcnuri.mnimapsync.batch.BatchSync;
+import com.marcnuri.mnimapsync.batch.WorkQueue;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics;
+import com.marcnuri.mnimapsync.store.StoreCopier;
+import com.marcnuri.mnimapsync.store.StoreDeleter;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.marcnuri.mnimapsync.cli.CliSummaryReport.imapMetricsAsText;
+
+/**
+ * Aggregated report for all of the accounts synced by a {@link BatchSync} or a queue worker.
+ */
+public class CliBatchReport extends CliReport {
+
+  private static final String BATCH_REPORT_TEMPLATE = "/CliBatchReport.template";
+
+  private CliBatchReport() {
+  }
+
+  public static String getBatchReportAsText(BatchSync batchSync) throws IOException {
+    return getBatchReportAsText(batchSync.getSyncs(), batchSync.getImapMetrics(),
+        batchSync.getElapsedTimeInSeconds());
+  }
+
+  public static String getBatchReportAsText(List<MNIMAPSync> syncs, ImapMetrics imapMetrics,
+      long elapsedTimeInSeconds) throws IOException {
+
+    return replaceTemplateVariables(
+        loadTemplate(BATCH_REPORT_TEMPLATE),
+        initTemplateVariables(syncs, imapMetrics, elapsedTimeInSeconds)
+    );
+  }
+
+  /**
+   * One line per account in a {@link WorkQueue} with its status, the last worker that leased it
+   * and the result reported.
+   */
+  public static String getQueueReportAsText(WorkQueue queue) throws SQLException {
+    final StringBuilder ret = new StringBuilder();
+    ret.append(String.format(Locale.ENGLISH, "  %-58s %-7s %-24s %8s  %s\n",
+        "Account", "Status", "Worker", "Attempts", "Result"));
+    for (String[] item : queue.getItems()) {
+      ret.append(String.format(Locale.ENGLISH, "  %-58s %-7s %-24s %8s  %s\n",
+          item[0], item[1], item[2] == null ? "" : item[2], item[3],
+          item[4] == null ? "" : item[4]));
+    }
+    return ret.toString();
+  }
+
+  private static Map<String, String> initTemplateVariables(List<MNIMAPSync> syncs,
+      ImapMetrics imapMetrics, long elapsedTimeInSeconds) {
+
+    final StringBuilder accounts = new StringBuilder();
+    accounts.append(String.format(Locale.ENGLISH, "  %-28s %-28s %8s %8s %8s %6s %8s\n",
+        "Source", "Target", "Copied", "Skipped", "Deleted", "Errors", "Seconds"));
+    long messagesCopied = 0L;
+    long messagesToCopy = 0L;
+    long messagesDeleted = 0L;
+    long messagesToDelete = 0L;
+    int accountsWithException = 0;
+    for (MNIMAPSync sync : syncs) {
+      final StoreCopier copier = sync.getSourceCopier();
+      final StoreDeleter deleter = sync.getTargetDeleter();
+      final long copied = copier == null ? 0L : copier.getMessagesCopiedCount();
+      final long skipped = copier == null ? 0L : copier.getMessagesSkippedCount();
+      final long deleted = deleter == null ? 0L : deleter.getMessagesDeletedCount();
+      final int errors = sync.getTargetIndex().getCrawlExceptions().size()
+          + (copier == null ? 0 : copier.getCopyExceptions().size());
+      final long syncMillis = sync.getPhaseElapsedTimeInMillis(Phase.INDEXING)
+          + sync.getPhaseElapsedTimeInMillis(Phase.COPYING)
+          + sync.getPhaseElapsedTimeInMillis(Phase.DELETING)
+          + sync.getPhaseElapsedTimeInMillis(Phase.FLAGGING);
+      accounts.append(String.format(Locale.ENGLISH, "  %-28s %-28s %8d %8d %8d %6d %8d\n",
+          account(sync.getSyncOptions().getSourceHost()),
+          account(sync.getSyncOptions().getTargetHost()),
+          copied, skipped, deleted, errors, syncMillis / 1000L));
+      messagesCopied += copied;
+      messagesToCopy += copied + skipped;
+      messagesDeleted += deleted;
+      messagesToDelete += deleter == null ? 0L : deleted + deleter.getMessagesSkippedCount();
+      if (errors > 0) {
+        accountsWithException++;
+      }
+    }
+    final Map<String, String> variables = new HashMap<>();
+    variables.put("accounts", accounts.toString());
+    variables.put("accountsCount", String.valueOf(syncs.size()));
+    variables.put("accountsWithExceptionCount", String.valueOf(accountsWithException));
+    variables.put("messagesCopiedCount", String.valueOf(messagesCopied));
+    variables.put("messagesToCopyCount", String.valueOf(messagesToCopy));
+    variables.put("messagesDeletedCount", String.valueOf(messagesDeleted));
+    variables.put("messagesToDeleteCount", String.valueOf(messagesToDelete));
+    variables.put("messagesPerSecond", String.format(Locale.ENGLISH, "%.2f",
+        elapsedTimeInSeconds == 0L ? 0D : messagesToCopy / (double) elapsedTimeInSeconds));
+    variables.put("elapsedTimeInSeconds", String.valueOf(elapsedTimeInSeconds));
+    variables.put("imapMetrics", imapMetricsAsText(imapMetrics));
+    return variables;
+  }
+
+  private static String account(HostDefinition host) {
+    final String ret = host.getUser() + "@" + host.getHost();
+    return ret.length() > 28 ? ret.substring(0, 27) + "~" : ret;
+  }
+}
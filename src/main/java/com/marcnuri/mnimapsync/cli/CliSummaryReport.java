@@ -21,13 +21,24 @@
 package com.marcnuri.mnimapsync.cli;
 
 import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.index.IndexDiff;
+import com.marcnuri.mnimapsync.metrics.CommandMetrics;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics.Key;
+import com.marcnuri.mnimapsync.metrics.LatencyHistogram;
+import com.marcnuri.mnimapsync.store.QuarantinedMessage;
 import com.marcnuri.mnimapsync.store.StoreCopier;
 import com.marcnuri.mnimapsync.store.StoreDeleter;
+import com.marcnuri.mnimapsync.store.StoreFlagger;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
 
 /**
  * Created by Marc Nuri <marc@marcnuri.com> on 2019-08-30.
@@ -35,6 +46,9 @@ import java.util.Map;
 public class CliSummaryReport extends CliReport {
 
   private static final String SUMMARY_REPORT_TEMPLATE = "/CliSummaryReport.template";
+  private static final double MICROS_PER_MILLI = 1000D;
+  private static final double BYTES_PER_MEGABYTE = 1024D * 1024D;
+  private static final int MAX_QUARANTINED_LINES = 20;
 
   private CliSummaryReport() {
   }
@@ -87,6 +101,82 @@ public class CliSummaryReport extends CliReport {
           .put("messagesDeletedCount", String.valueOf(targetDeleter.getMessagesDeletedCount()));
       variables.put("messagesToDeleteCount", String.valueOf(messagesToDelete));
     }
+    variables.put("quarantineReport", quarantineReportAsText(sourceCopier));
+    variables.put("diffReport", diffReportAsText(syncInstance.getIndexDiff()));
+    variables.put("flagReport", flagReportAsText(syncInstance.getTargetFlagger()));
+    variables.put("imapMetrics", imapMetricsAsText(syncInstance.getImapMetrics()));
     return variables;
   }
+
+  static String quarantineReportAsText(StoreCopier sourceCopier) {
+    final List<QuarantinedMessage> quarantined = sourceCopier == null
+        ? Collections.emptyList() : sourceCopier.getQuarantinedMessages();
+    if (quarantined.isEmpty()) {
+      return "";
+    }
+    final StringBuilder ret = new StringBuilder();
+    ret.append(String.format(Locale.ENGLISH, "  Quarantined:      %d messages\n",
+        quarantined.size()));
+    for (QuarantinedMessage message
+        : quarantined.subList(0, Math.min(quarantined.size(), MAX_QUARANTINED_LINES))) {
+      ret.append("    ").append(message).append('\n');
+    }
+    if (quarantined.size() > MAX_QUARANTINED_LINES) {
+      ret.append(String.format(Locale.ENGLISH, "    ... and %d more\n",
+          quarantined.size() - MAX_QUARANTINED_LINES));
+    }
+    return ret.toString();
+  }
+
+  private static String diffReportAsText(IndexDiff indexDiff) {
+    if (indexDiff == null) {
+      return "";
+    }
+    return String.format(Locale.ENGLISH,
+        "  Dry run:          nothing was copied nor deleted\n"
+            + "  To copy:          %d folders, %d messages\n"
+            + "  To delete:        %d folders, %d messages (with --delete)\n\n",
+        indexDiff.getFoldersToCopy(), indexDiff.getMessagesToCopy(),
+        indexDiff.getFoldersToDelete(), indexDiff.getMessagesToDelete());
+  }
+
+  private static String flagReportAsText(StoreFlagger targetFlagger) {
+    if (targetFlagger == null) {
+      return "";
+    }
+    return String.format(Locale.ENGLISH,
+        "  Messages flagged: %d/%d (%d UID STORE commands)\n\n",
+        targetFlagger.getMessagesFlaggedCount(),
+        targetFlagger.getMessagesFlaggedCount() + targetFlagger.getMessagesSkippedCount(),
+        targetFlagger.getStoreCommandCount());
+  }
+
+  static String imapMetricsAsText(ImapMetrics imapMetrics) {
+    if (imapMetrics == null) {
+      return "";
+    }
+    final SortedMap<Key, CommandMetrics> commands = imapMetrics.getCommandsBySide();
+    if (commands.isEmpty()) {
+      return "";
+    }
+    final StringBuilder ret = new StringBuilder();
+    ret.append(String.format(Locale.ENGLISH,
+        "  %-6s %-12s %9s %7s %9s %9s %9s %9s %9s %9s\n", "Side", "Command", "Count", "Failed",
+        "p50 ms", "p95 ms", "p99 ms", "Max ms", "MB in", "MB out"));
+    for (Entry<Key, CommandMetrics> entry : commands.entrySet()) {
+      final CommandMetrics metrics = entry.getValue();
+      final LatencyHistogram latency = metrics.getLatency();
+      ret.append(String.format(Locale.ENGLISH,
+          "  %-6s %-12s %9d %7d %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f\n",
+          entry.getKey().getSide(), entry.getKey().getCommand(), metrics.getCount(),
+          metrics.getFailures(),
+          latency.getValueAtPercentile(50D) / MICROS_PER_MILLI,
+          latency.getValueAtPercentile(95D) / MICROS_PER_MILLI,
+          latency.getValueAtPercentile(99D) / MICROS_PER_MILLI,
+          latency.getMax() / MICROS_PER_MILLI,
+          metrics.getBytesIn() / BYTES_PER_MEGABYTE,
+          metrics.getBytesOut() / BYTES_PER_MEGABYTE));
+    }
+    return ret.append("\n").toString();
+  }
 }
@@ -0,0 +1,379 @@
+/*
+ * FolderWatcher.java
+ *
+ * Created on 2026-10-18, 20:05
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.daemon;
+
+import com.marcnuri.mnimapsync.index.MessageId;
+import com.sun.mail.imap.AppendUID;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPMessage;
+import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.FetchProfile;
+import jakarta.mail.Flags;
+import jakarta.mail.Folder;
+import jakarta.mail.Message;
+import jakarta.mail.MessageRemovedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.UIDFolder;
+import jakarta.mail.event.MessageCountAdapter;
+import jakarta.mail.event.MessageCountEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.uidSearchAll;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.uidSearchExisting;
+
+/**
+ * Replicates the changes of a source folder to its target folder as they happen.
+ *
+ * <p>The folder is kept open waiting for untagged EXISTS/EXPUNGE responses with IMAP IDLE, or
+ * polled on servers without the IDLE capability. Messages are tracked by UID in the source and by
+ * {@link MessageId} in the target (see {@link WatchedFolder}), so after an EXISTS only the messages
+ * above the last UID seen are fetched, and the messages notified by an EXPUNGE are deleted without
+ * listing the folder.
+ */
+final class FolderWatcher implements Runnable {
+
+  private static final Logger LOG = Logger.getLogger(FolderWatcher.class.getName());
+  static final long POLL_MILLIS = 5000L;
+  private static final long MAX_RETRY_MILLIS = 300000L;
+  // Target messages appended to a server without UIDPLUS, they are deleted by reconciliations
+  private static final long UNKNOWN_UID = -1L;
+
+  private final SyncDaemon daemon;
+  private final IMAPStore sourceStore;
+  private final IMAPStore targetStore;
+  private final WatchedFolder folder;
+  private final Map<Long, MessageId> sourceMessages;
+  private final Map<MessageId, Long> targetMessages;
+  private final CountDownLatch stopLatch;
+  // Set by the (asynchronous) count listener, changes notified before the IDLE started
+  private final AtomicBoolean pendingChanges;
+  private final AtomicBoolean messagesAdded;
+  private final Queue<Message> expungedMessages;
+  private volatile IMAPFolder sourceFolder;
+  private volatile IMAPFolder targetFolder;
+
+  FolderWatcher(SyncDaemon daemon, IMAPStore sourceStore, IMAPStore targetStore,
+      WatchedFolder folder) {
+    this.daemon = daemon;
+    this.sourceStore = sourceStore;
+    this.targetStore = targetStore;
+    this.folder = folder;
+    sourceMessages = folder.getSourceMessages();
+    targetMessages = folder.getTargetMessages();
+    stopLatch = new CountDownLatch(1);
+    pendingChanges = new AtomicBoolean();
+    messagesAdded = new AtomicBoolean();
+    expungedMessages = new ConcurrentLinkedQueue<>();
+  }
+
+  @Override
+  public void run() {
+    long retryMillis = POLL_MILLIS;
+    try {
+      while (!isStopped()) {
+        try {
+          open();
+          // Changes since the last watch (or reconciliation)
+          copyNewMessages();
+          if (daemon.isDelete()) {
+            final Set<MessageId> removed = new HashSet<>(targetMessages.keySet());
+            removed.removeAll(sourceMessages.values());
+            deleteFromTarget(removed);
+          }
+          retryMillis = POLL_MILLIS;
+          watch();
+        } catch (MessagingException ex) {
+          if (isStopped()) {
+            return;
+          }
+          LOG.log(Level.WARNING, String.format("Watch of %s interrupted, retrying in %d seconds",
+              folder.getSourceFolderName(), retryMillis / 1000L), ex);
+          close();
+          stopLatch.await(retryMillis, TimeUnit.MILLISECONDS);
+          retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      close();
+    }
+  }
+
+  private void open() throws MessagingException {
+    messagesAdded.set(false);
+    expungedMessages.clear();
+    sourceFolder = (IMAPFolder) sourceStore.getFolder(folder.getSourceFolderName());
+    sourceFolder.open(Folder.READ_ONLY);
+    if (folder.validateSource(sourceFolder.getUIDValidity())) {
+      // Messages expunged while the folder wasn't watched
+      retainUids(sourceMessages.keySet(), uidSearchAll(sourceFolder));
+    }
+    // EXISTS/EXPUNGE responses received while the IDLE command is being started (or by other
+    // commands) don't end the IDLE, the notification does so they aren't left unprocessed
+    final IMAPFolder watched = sourceFolder;
+    sourceFolder.addMessageCountListener(new MessageCountAdapter() {
+      @Override
+      public void messagesAdded(MessageCountEvent e) {
+        messagesAdded.set(true);
+        pendingChanges.set(true);
+        noop(watched);
+      }
+
+      @Override
+      public void messagesRemoved(MessageCountEvent e) {
+        expungedMessages.addAll(Arrays.asList(e.getMessages()));
+        pendingChanges.set(true);
+        noop(watched);
+      }
+    });
+    targetFolder = (IMAPFolder) targetStore.getFolder(folder.getTargetFolderName());
+    targetFolder.open(Folder.READ_WRITE);
+    if (folder.validateTarget(targetFolder.getUIDValidity())) {
+      // Messages deleted (or appended without UIDPLUS) since the last watch
+      retainUids(targetMessages.values(), uidSearchAll(targetFolder));
+    }
+    final long lastTargetUid = folder.getLastTargetUid();
+    final Message[] messages = targetFolder.getMessagesByUID(lastTargetUid + 1,
+        UIDFolder.LASTUID);
+    targetFolder.fetch(messages, idProfile());
+    for (Message message : messages) {
+      // UID n:* always returns the last message, even if its UID is lower than n
+      final long uid = message == null ? 0L : targetFolder.getUID(message);
+      if (uid <= lastTargetUid) {
+        continue;
+      }
+      folder.setLastTargetUid(uid);
+      try {
+        targetMessages.put(new MessageId(message), uid);
+      } catch (MessageId.MessageIdException ex) {
+        // Never matched by source messages
+      }
+    }
+  }
+
+  private void watch() throws MessagingException, InterruptedException {
+    final boolean idle = sourceStore.hasCapability("IDLE");
+    while (!isStopped()) {
+      if (pendingChanges.getAndSet(false)) {
+        // The NOOP of the listener may have completed before the IDLE, process them right away
+        sourceFolder.getMessageCount();
+      } else if (idle) {
+        // Returns after the server notifies a change or the IDLE is aborted by another command
+        sourceFolder.idle(true);
+      } else if (!stopLatch.await(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+        // Issues a NOOP to receive the pending EXISTS/EXPUNGE responses
+        sourceFolder.getMessageCount();
+      }
+      if (!isStopped()) {
+        if (messagesAdded.getAndSet(false)) {
+          copyNewMessages();
+        }
+        deleteExpungedMessages();
+      }
+    }
+  }
+
+  private void copyNewMessages() throws MessagingException {
+    final long lastUid = folder.getLastSourceUid();
+    final Message[] messages = sourceFolder.getMessagesByUID(lastUid + 1, UIDFolder.LASTUID);
+    sourceFolder.fetch(messages, idProfile());
+    final List<Message> toCopy = new ArrayList<>();
+    final List<MessageId> toCopyIds = new ArrayList<>();
+    for (Message message : messages) {
+      // UID n:* always returns the last message, even if its UID is lower than n
+      final long uid = message == null ? 0L : sourceFolder.getUID(message);
+      if (uid <= lastUid) {
+        continue;
+      }
+      folder.setLastSourceUid(uid);
+      MessageId id = null;
+      try {
+        id = new MessageId(message);
+      } catch (MessageId.MessageIdException ex) {
+        //Usually messages that ran into this exception are spammy, so we skip them.
+      }
+      sourceMessages.put(uid, id);
+      if (id != null && !targetMessages.containsKey(id)) {
+        ((IMAPMessage) message).setPeek(true);
+        toCopy.add(message);
+        toCopyIds.add(id);
+        targetMessages.put(id, UNKNOWN_UID);
+      }
+    }
+    if (toCopy.isEmpty()) {
+      return;
+    }
+    final FetchProfile fullProfile = MessageId.addHeaders(new FetchProfile());
+    fullProfile.add(FetchProfile.Item.CONTENT_INFO);
+    fullProfile.add(FetchProfile.Item.FLAGS);
+    fullProfile.add(IMAPFolder.FetchProfileItem.HEADERS);
+    fullProfile.add(FetchProfile.Item.SIZE);
+    final Message[] copy = toCopy.toArray(new Message[0]);
+    sourceFolder.fetch(copy, fullProfile);
+    final AppendUID[] appended = targetFolder.appendUIDMessages(copy);
+    for (int it = 0; it < appended.length; it++) {
+      if (appended[it] != null) {
+        targetMessages.put(toCopyIds.get(it), appended[it].uid);
+      }
+    }
+    daemon.updateMessagesCopiedCount(copy.length);
+  }
+
+  private void deleteExpungedMessages() throws MessagingException {
+    final List<Long> notified = new ArrayList<>();
+    Message message;
+    while ((message = expungedMessages.poll()) != null) {
+      if (message.getFolder() != sourceFolder) {
+        // Notified before the folder was re-opened, already handled by open
+        continue;
+      }
+      try {
+        // Expunged messages keep the UID fetched by copyNewMessages
+        final long uid = sourceFolder.getUID(message);
+        if (sourceMessages.containsKey(uid)) {
+          notified.add(uid);
+        }
+      } catch (MessageRemovedException ex) {
+        // Expunged before its UID was fetched, so it was never copied
+      }
+    }
+    if (notified.isEmpty()) {
+      return;
+    }
+    // Some servers (e.g. GreenMail while idling) repeat EXPUNGE responses, which expunges the wrong
+    // cached messages, so the UIDs are confirmed with the server before deleting their copies
+    final long[] remaining = uidSearchExisting(sourceFolder,
+        notified.stream().mapToLong(Long::longValue).toArray());
+    final Set<MessageId> expunged = new HashSet<>();
+    for (long uid : notified) {
+      if (Arrays.binarySearch(remaining, uid) < 0) {
+        final MessageId id = sourceMessages.remove(uid);
+        if (id != null) {
+          expunged.add(id);
+        }
+      }
+    }
+    if (daemon.isDelete()) {
+      // Copies of the same message may remain in the source folder
+      expunged.removeAll(sourceMessages.values());
+      deleteFromTarget(expunged);
+    }
+  }
+
+  private void deleteFromTarget(Set<MessageId> ids) throws MessagingException {
+    final List<Message> toDelete = new ArrayList<>();
+    for (MessageId id : ids) {
+      final Long uid = targetMessages.remove(id);
+      final Message message = uid == null || uid == UNKNOWN_UID ? null
+          : targetFolder.getMessageByUID(uid);
+      if (message != null) {
+        toDelete.add(message);
+      }
+    }
+    if (!toDelete.isEmpty()) {
+      final Message[] delete = toDelete.toArray(new Message[0]);
+      targetFolder.setFlags(delete, new Flags(Flags.Flag.DELETED), true);
+      if (targetStore.hasCapability("UIDPLUS")) {
+        targetFolder.expunge(delete);
+      } else {
+        // Same as MessageDeleter, every message flagged as deleted is expunged
+        targetFolder.expunge();
+      }
+      daemon.updateMessagesDeletedCount(delete.length);
+    }
+  }
+
+  /**
+   * Sends a NOOP through both connections so they aren't logged off for inactivity, this also
+   * ends the current IDLE which is then re-issued.
+   */
+  void keepAlive() {
+    noop(sourceFolder);
+    noop(targetFolder);
+  }
+
+  private static void noop(IMAPFolder folder) {
+    try {
+      if (folder != null && folder.isOpen()) {
+        folder.doCommand(protocol -> {
+          protocol.simpleCommand("NOOP", null);
+          return null;
+        });
+      }
+    } catch (MessagingException ex) {
+      LOG.log(Level.FINE, "NOOP failed", ex);
+    }
+  }
+
+  /**
+   * Stops watching the folder, the watcher thread completes once the current IDLE is aborted.
+   */
+  void stop() {
+    stopLatch.countDown();
+    keepAlive();
+  }
+
+  private boolean isStopped() {
+    return stopLatch.getCount() == 0 || daemon.isClosed();
+  }
+
+  private void close() {
+    for (IMAPFolder folder : new IMAPFolder[]{sourceFolder, targetFolder}) {
+      try {
+        if (folder != null && folder.isOpen()) {
+          folder.close(false);
+        }
+      } catch (MessagingException ex) {
+        LOG.log(Level.FINE, "Couldn't close folder", ex);
+      }
+    }
+  }
+
+  /**
+   * Removes the UIDs of the messages that are no longer in the folder.
+   *
+   * @param existing sorted UIDs of the folder
+   */
+  private static void retainUids(Collection<Long> uids, long[] existing) {
+    uids.removeIf(uid -> Arrays.binarySearch(existing, uid) < 0);
+  }
+
+  private static FetchProfile idProfile() {
+    final FetchProfile ret = MessageId.addHeaders(new FetchProfile());
+    ret.add(UIDFolder.FetchProfileItem.UID);
+    return ret;
+  }
+}
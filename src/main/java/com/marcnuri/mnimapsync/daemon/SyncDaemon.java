@@ -0,0 +1,243 @@
+/*
+ * SyncDaemon.java
+ *
+ * Created on 2026-10-18, 19:48
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.daemon;
+
+import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.SyncOptions;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics;
+import com.marcnuri.mnimapsync.store.StoreCopier;
+import com.marcnuri.mnimapsync.store.StoreDeleter;
+import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.MessagingException;
+
+import java.io.Closeable;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.openStore;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.sourceFolderNameToTarget;
+
+/**
+ * Keeps the target account tracking the source until closed.
+ *
+ * <p>A full {@link MNIMAPSync#sync()} (reconciliation) is run on start and then every
+ * {@link SyncOptions#getReconcileMinutes()}. In between, every watched source folder is kept open
+ * in its own connection waiting for changes with IMAP IDLE, so new messages are copied and expunged
+ * messages are deleted (if {@link SyncOptions#getDelete()}) seconds after they happen. Changes in
+ * folders that aren't watched are replicated by the next reconciliation.
+ *
+ * <p>Watches are stopped while a reconciliation runs, so both don't copy the same message. Changes
+ * made after the reconciliation crawled a watched folder aren't lost, the restarted watch catches
+ * up from the last UIDs it saw in each folder (see {@link WatchedFolder}) without fetching the
+ * messages it already knows.
+ */
+public class SyncDaemon implements Closeable {
+
+  private static final Logger LOG = Logger.getLogger(SyncDaemon.class.getName());
+  // RFC 2177: clients should re-issue IDLE at least every 29 minutes to avoid being logged off
+  static final long KEEPALIVE_MINUTES = 25L;
+  static final long RETRY_MILLIS = 60000L;
+  private static final long STOP_TIMEOUT_MILLIS = 5000L;
+
+  private final SyncOptions syncOptions;
+  private final ImapMetrics imapMetrics;
+  private final CountDownLatch closeLatch;
+  private final AtomicInteger reconciliationCount;
+  private final AtomicLong messagesCopiedCount;
+  private final AtomicLong messagesDeletedCount;
+  // Source folder -> messages known by its watches, only used by the thread running the daemon
+  private final Map<String, WatchedFolder> watchedFolders;
+  private volatile MNIMAPSync currentSync;
+  private volatile boolean closed;
+
+  public SyncDaemon(SyncOptions syncOptions) {
+    this(syncOptions, new ImapMetrics());
+  }
+
+  public SyncDaemon(SyncOptions syncOptions, ImapMetrics imapMetrics) {
+    this.syncOptions = syncOptions;
+    this.imapMetrics = imapMetrics;
+    closeLatch = new CountDownLatch(1);
+    reconciliationCount = new AtomicInteger();
+    messagesCopiedCount = new AtomicLong();
+    messagesDeletedCount = new AtomicLong();
+    watchedFolders = new HashMap<>();
+  }
+
+  /**
+   * Alternates reconciliations and folder watches until {@link #close()} is invoked.
+   */
+  public void run() throws InterruptedException {
+    while (!closed) {
+      final MNIMAPSync sync = new MNIMAPSync(syncOptions, imapMetrics, null);
+      currentSync = sync;
+      if (closed) {
+        return;
+      }
+      sync.sync();
+      reconciliationCount.incrementAndGet();
+      final StoreCopier copier = sync.getSourceCopier();
+      final StoreDeleter deleter = sync.getTargetDeleter();
+      messagesCopiedCount.addAndGet(copier == null ? 0L : copier.getMessagesCopiedCount());
+      messagesDeletedCount.addAndGet(deleter == null ? 0L : deleter.getMessagesDeletedCount());
+      if (closed) {
+        return;
+      }
+      if (copier == null || sync.getTargetIndex().getFolderSeparator() == null) {
+        LOG.warning("Reconciliation failed, retrying");
+        closeLatch.await(RETRY_MILLIS, TimeUnit.MILLISECONDS);
+      } else {
+        watch(sync);
+      }
+    }
+  }
+
+  private void watch(MNIMAPSync sync) throws InterruptedException {
+    final List<String> folders = new ArrayList<>();
+    for (String folder : syncOptions.getWatchedFolders()) {
+      if (sync.getSourceIndex().containsFolder(folder)) {
+        folders.add(folder);
+      } else {
+        LOG.warning(() -> String.format("Folder %s doesn't exist in source, not watched", folder));
+      }
+    }
+    final long reconcileMillis = TimeUnit.MINUTES.toMillis(syncOptions.getReconcileMinutes());
+    if (folders.isEmpty()) {
+      closeLatch.await(reconcileMillis, TimeUnit.MILLISECONDS);
+      return;
+    }
+    final ScheduledExecutorService keepalive = Executors.newSingleThreadScheduledExecutor(r -> {
+      final Thread thread = new Thread(r, "mnimapsync-keepalive");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try (
+        final IMAPStore sourceStore = openStore(syncOptions.getSourceHost(), folders.size(),
+            imapMetrics, ImapMetrics.SOURCE);
+        final IMAPStore targetStore = openStore(syncOptions.getTargetHost(), folders.size(),
+            imapMetrics, ImapMetrics.TARGET)
+    ) {
+      final List<FolderWatcher> watchers = new ArrayList<>();
+      final List<Thread> threads = new ArrayList<>();
+      for (String folder : folders) {
+        final String targetFolder = sourceFolderNameToTarget(folder, sync.getSourceIndex(),
+            sync.getTargetIndex());
+        WatchedFolder watchedFolder = watchedFolders.get(folder);
+        if (watchedFolder == null || !watchedFolder.getTargetFolderName().equals(targetFolder)) {
+          watchedFolder = new WatchedFolder(folder, targetFolder);
+          watchedFolders.put(folder, watchedFolder);
+        }
+        final FolderWatcher watcher = new FolderWatcher(this, sourceStore, targetStore,
+            watchedFolder);
+        final Thread thread = new Thread(watcher, "mnimapsync-watch-" + folder);
+        thread.setDaemon(true);
+        thread.start();
+        watchers.add(watcher);
+        threads.add(thread);
+      }
+      keepalive.scheduleAtFixedRate(() -> watchers.forEach(FolderWatcher::keepAlive),
+          KEEPALIVE_MINUTES, KEEPALIVE_MINUTES, TimeUnit.MINUTES);
+      closeLatch.await(reconcileMillis, TimeUnit.MILLISECONDS);
+      watchers.forEach(FolderWatcher::stop);
+      for (int it = 0; it < threads.size(); it++) {
+        threads.get(it).join(STOP_TIMEOUT_MILLIS);
+        if (threads.get(it).isAlive()) {
+          // Its messages may still change, the next watch of the folder starts over
+          watchedFolders.remove(folders.get(it));
+        }
+      }
+    } catch (MessagingException | GeneralSecurityException ex) {
+      LOG.log(Level.SEVERE, "Couldn't open connections to watch folders", ex);
+      closeLatch.await(RETRY_MILLIS, TimeUnit.MILLISECONDS);
+    } finally {
+      keepalive.shutdownNow();
+    }
+  }
+
+  /**
+   * Stops the daemon, a running reconciliation is cancelled once its message batches complete.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    closeLatch.countDown();
+    final MNIMAPSync sync = currentSync;
+    if (sync != null) {
+      sync.cancel();
+    }
+  }
+
+  boolean isClosed() {
+    return closed;
+  }
+
+  boolean isDelete() {
+    return syncOptions.getDelete();
+  }
+
+  void updateMessagesCopiedCount(long delta) {
+    messagesCopiedCount.getAndAdd(delta);
+  }
+
+  void updateMessagesDeletedCount(long delta) {
+    messagesDeletedCount.getAndAdd(delta);
+  }
+
+  /**
+   * @return the reconciliation in progress or the last one completed
+   */
+  public MNIMAPSync getCurrentSync() {
+    return currentSync;
+  }
+
+  public ImapMetrics getImapMetrics() {
+    return imapMetrics;
+  }
+
+  public int getReconciliationCount() {
+    return reconciliationCount.get();
+  }
+
+  /**
+   * @return messages copied by reconciliations and folder watches
+   */
+  public long getMessagesCopiedCount() {
+    return messagesCopiedCount.get();
+  }
+
+  /**
+   * @return messages deleted by reconciliations and folder watches
+   */
+  public long getMessagesDeletedCount() {
+    return messagesDeletedCount.get();
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * WatchedFolder.java
+ *
+ * Created on 2026-10-18, 23:55
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.daemon;
+
+import com.marcnuri.mnimapsync.index.MessageId;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Messages of a watched folder known by its {@link FolderWatcher}, kept between watches so a
+ * watch restarted after a reconciliation only fetches the messages added since the last UID it
+ * saw in each folder.
+ *
+ * <p>The messages of each folder are discarded whenever its UIDVALIDITY changes. Not thread-safe,
+ * it must only be used by one watcher at a time.
+ */
+final class WatchedFolder {
+
+  private static final long UNKNOWN_UID_VALIDITY = -1L;
+
+  private final String sourceFolderName;
+  private final String targetFolderName;
+  // Source UID -> id, null for messages without a valid id which are never copied
+  private final Map<Long, MessageId> sourceMessages;
+  private final Map<MessageId, Long> targetMessages;
+  private long sourceUidValidity;
+  private long lastSourceUid;
+  private long targetUidValidity;
+  private long lastTargetUid;
+
+  WatchedFolder(String sourceFolderName, String targetFolderName) {
+    this.sourceFolderName = sourceFolderName;
+    this.targetFolderName = targetFolderName;
+    sourceMessages = new HashMap<>();
+    targetMessages = new HashMap<>();
+    sourceUidValidity = UNKNOWN_UID_VALIDITY;
+    targetUidValidity = UNKNOWN_UID_VALIDITY;
+  }
+
+  /**
+   * @return true if the source messages are still valid, otherwise they're discarded
+   */
+  boolean validateSource(long uidValidity) {
+    if (uidValidity == sourceUidValidity) {
+      return true;
+    }
+    sourceMessages.clear();
+    lastSourceUid = 0L;
+    sourceUidValidity = uidValidity;
+    return false;
+  }
+
+  /**
+   * @return true if the target messages are still valid, otherwise they're discarded
+   */
+  boolean validateTarget(long uidValidity) {
+    if (uidValidity == targetUidValidity) {
+      return true;
+    }
+    targetMessages.clear();
+    lastTargetUid = 0L;
+    targetUidValidity = uidValidity;
+    return false;
+  }
+
+  String getSourceFolderName() {
+    return sourceFolderName;
+  }
+
+  String getTargetFolderName() {
+    return targetFolderName;
+  }
+
+  Map<Long, MessageId> getSourceMessages() {
+    return sourceMessages;
+  }
+
+  Map<MessageId, Long> getTargetMessages() {
+    return targetMessages;
+  }
+
+  long getLastSourceUid() {
+    return lastSourceUid;
+  }
+
+  void setLastSourceUid(long lastSourceUid) {
+    this.lastSourceUid = lastSourceUid;
+  }
+
+  long getLastTargetUid() {
+    return lastTargetUid;
+  }
+
+  void setLastTargetUid(long lastTargetUid) {
+    this.lastTargetUid = lastTargetUid;
+  }
+}
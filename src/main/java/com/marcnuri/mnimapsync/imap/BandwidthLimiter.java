@@ -0,0 +1,79 @@
+/*
+ * BandwidthLimiter.java
+ *
+ * Created on 2026-10-18, 11:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the number of bytes per second that can go through it.
+ *
+ * <p>The bucket holds up to 100ms worth of tokens. A request larger than the available tokens is
+ * granted immediately and the caller sleeps until the debt is paid off, so large writes don't need
+ * to be split to make progress.
+ */
+final class BandwidthLimiter implements TrafficLimiter {
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private long bytesPerSecond;
+  private double capacity;
+  private double tokens;
+  private long lastRefillNanos;
+
+  BandwidthLimiter(long bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+    this.capacity = Math.max(1D, bytesPerSecond / 10D);
+    this.tokens = capacity;
+    this.lastRefillNanos = System.nanoTime();
+  }
+
+  @Override
+  public void acquire(long bytes) throws InterruptedIOException {
+    final long waitNanos = reserve(bytes);
+    if (waitNanos > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+      }
+    }
+  }
+
+  /**
+   * Changes the rate of the bucket, tokens already in it are kept up to the new capacity.
+   */
+  synchronized void setBytesPerSecond(long bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+    this.capacity = Math.max(1D, bytesPerSecond / 10D);
+    this.tokens = Math.min(tokens, capacity);
+  }
+
+  private synchronized long reserve(long bytes) {
+    final long now = System.nanoTime();
+    tokens = Math.min(capacity,
+        tokens + (now - lastRefillNanos) * (double) bytesPerSecond / NANOS_PER_SECOND);
+    lastRefillNanos = now;
+    tokens -= bytes;
+    return tokens >= 0 ? 0L : (long) (-tokens * NANOS_PER_SECOND / bytesPerSecond);
+  }
+}
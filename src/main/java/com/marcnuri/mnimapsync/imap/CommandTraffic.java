@@ -0,0 +1,85 @@
+/*
+ * CommandTraffic.java
+ *
+ * Created on 2026-10-18, 12:44
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+/**
+ * Bytes transferred on the wire while the current thread executes an IMAP command.
+ *
+ * <p>jakarta.mail writes the command and reads its responses in the calling thread, so
+ * {@link ImapSocket} streams can attribute traffic to the command in scope without needing access
+ * to the protocol instance (which only sees the TLS socket layered on top).
+ *
+ * <p>Scopes can be nested: when a scope stops its bytes are added to the enclosing one, which
+ * allows measuring the traffic of a whole batch of commands.
+ */
+public final class CommandTraffic {
+
+  private static final ThreadLocal<CommandTraffic> CURRENT = new ThreadLocal<>();
+
+  private final CommandTraffic previous;
+  private long bytesIn;
+  private long bytesOut;
+
+  private CommandTraffic(CommandTraffic previous) {
+    this.previous = previous;
+  }
+
+  /**
+   * Starts counting traffic for the current thread until {@link #stop()} is invoked.
+   */
+  public static CommandTraffic start() {
+    final CommandTraffic ret = new CommandTraffic(CURRENT.get());
+    CURRENT.set(ret);
+    return ret;
+  }
+
+  static void read(long bytes) {
+    final CommandTraffic current = CURRENT.get();
+    if (current != null) {
+      current.bytesIn += bytes;
+    }
+  }
+
+  static void written(long bytes) {
+    final CommandTraffic current = CURRENT.get();
+    if (current != null) {
+      current.bytesOut += bytes;
+    }
+  }
+
+  public void stop() {
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      previous.bytesIn += bytesIn;
+      previous.bytesOut += bytesOut;
+      CURRENT.set(previous);
+    }
+  }
+
+  public long getBytesIn() {
+    return bytesIn;
+  }
+
+  public long getBytesOut() {
+    return bytesOut;
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * FolderFilter.java
+ *
+ * Created on 2026-10-18, 10:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.INBOX_MAILBOX;
+
+/**
+ * Include and exclude rules for the folders of both stores, checked while the folder tree is
+ * listed so that excluded folders (and their subfolders) are never opened.
+ *
+ * <p>Rules are written with source folder names using <code>/</code> as the hierarchy separator
+ * whatever the separator of each server is (e.g. <code>Archive/2019</code> matches
+ * <code>Archive.2019</code> in a server that uses dots), the same translation
+ * {@link IMAPUtils#sourceFolderNameToTarget} applies, so a rule selects the same folders in the
+ * source and in the target. Rules are globs (<code>*</code> matches within a level,
+ * <code>**</code> across levels, <code>?</code> a single character) unless prefixed with
+ * <code>regex:</code>.
+ *
+ * <p>A folder is excluded with its subfolders if it matches an exclude rule. If there are
+ * include rules, only the messages of the folders matching one are processed, the rest of the
+ * folders are only listed if they may contain a matching subfolder.
+ */
+public final class FolderFilter implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  public static final String REGEX_PREFIX = "regex:";
+  private static final String GLOB_PREFIX = "glob:";
+  private static final String SEPARATOR = "/";
+
+  private final List<String> includes;
+  private final List<String> excludes;
+  private transient List<Rule> includeRules;
+  private transient List<Rule> excludeRules;
+
+  public FolderFilter() {
+    includes = new ArrayList<>();
+    excludes = new ArrayList<>();
+  }
+
+  public List<String> getIncludes() {
+    return includes;
+  }
+
+  public synchronized void addInclude(String rule) {
+    includes.add(rule);
+    includeRules = null;
+  }
+
+  public List<String> getExcludes() {
+    return excludes;
+  }
+
+  public synchronized void addExclude(String rule) {
+    excludes.add(rule);
+    excludeRules = null;
+  }
+
+  public boolean isEmpty() {
+    return includes.isEmpty() && excludes.isEmpty();
+  }
+
+  /**
+   * @param folderFullName name of the folder in its store
+   * @param separator hierarchy separator of the store
+   * @return true if the folder and its subfolders must be skipped without being opened or listed
+   */
+  public boolean isExcluded(String folderFullName, String separator) {
+    if (folderFullName.isEmpty() || isEmpty()) {
+      return false;
+    }
+    final String name = normalize(folderFullName, separator);
+    for (Rule rule : getExcludeRules()) {
+      // Subfolders of excluded folders are excluded even if checked without listing the tree
+      for (int end = name.indexOf(SEPARATOR); end > 0; end = name.indexOf(SEPARATOR, end + 1)) {
+        if (rule.matches(name.substring(0, end))) {
+          return true;
+        }
+      }
+      if (rule.matches(name)) {
+        return true;
+      }
+    }
+    final List<Rule> rules = getIncludeRules();
+    if (rules.isEmpty()) {
+      return false;
+    }
+    for (Rule rule : rules) {
+      if (rule.matches(name) || rule.mayMatchDescendantOf(name)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param folderFullName name of a folder that isn't {@link #isExcluded(String, String) excluded}
+   * @param separator hierarchy separator of the store
+   * @return true if the messages of the folder must be processed
+   */
+  public boolean isIncluded(String folderFullName, String separator) {
+    final List<Rule> rules = getIncludeRules();
+    if (rules.isEmpty()) {
+      return true;
+    }
+    final String name = normalize(folderFullName, separator);
+    for (Rule rule : rules) {
+      if (rule.matches(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the name using {@link #SEPARATOR} as the hierarchy separator, and INBOX in upper case
+   */
+  static String normalize(String folderFullName, String separator) {
+    String ret = folderFullName.replace(separator, SEPARATOR);
+    if (ret.length() >= INBOX_MAILBOX.length()
+        && ret.substring(0, INBOX_MAILBOX.length()).equalsIgnoreCase(INBOX_MAILBOX)
+        && (ret.length() == INBOX_MAILBOX.length()
+        || ret.startsWith(SEPARATOR, INBOX_MAILBOX.length()))) {
+      ret = INBOX_MAILBOX + ret.substring(INBOX_MAILBOX.length());
+    }
+    return ret;
+  }
+
+  private synchronized List<Rule> getIncludeRules() {
+    if (includeRules == null) {
+      includeRules = compile(includes);
+    }
+    return includeRules;
+  }
+
+  private synchronized List<Rule> getExcludeRules() {
+    if (excludeRules == null) {
+      excludeRules = compile(excludes);
+    }
+    return excludeRules;
+  }
+
+  private static List<Rule> compile(List<String> rules) {
+    final List<Rule> ret = new ArrayList<>();
+    for (String rule : rules) {
+      ret.add(Rule.parse(rule));
+    }
+    return ret;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    FolderFilter that = (FolderFilter) o;
+    return Objects.equals(includes, that.includes) &&
+        Objects.equals(excludes, that.excludes);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(includes, excludes);
+  }
+
+  private static final class Rule {
+
+    private final Pattern pattern;
+    // Characters every matching name starts with, null if unknown (regular expressions)
+    private final String literalPrefix;
+
+    private Rule(Pattern pattern, String literalPrefix) {
+      this.pattern = pattern;
+      this.literalPrefix = literalPrefix;
+    }
+
+    private static Rule parse(String rule) {
+      if (rule.startsWith(REGEX_PREFIX)) {
+        return new Rule(Pattern.compile(rule.substring(REGEX_PREFIX.length())), null);
+      }
+      final String glob = normalize(rule.startsWith(GLOB_PREFIX)
+          ? rule.substring(GLOB_PREFIX.length()) : rule, SEPARATOR);
+      final StringBuilder regex = new StringBuilder();
+      int literalEnd = -1;
+      for (int it = 0; it < glob.length(); it++) {
+        final char c = glob.charAt(it);
+        if (c == '*' || c == '?') {
+          literalEnd = literalEnd < 0 ? it : literalEnd;
+        }
+        if (c == '*' && it + 1 < glob.length() && glob.charAt(it + 1) == '*') {
+          regex.append(".*");
+          it++;
+        } else if (c == '*') {
+          regex.append("[^").append(SEPARATOR).append("]*");
+        } else if (c == '?') {
+          regex.append("[^").append(SEPARATOR).append("]");
+        } else {
+          regex.append(Pattern.quote(String.valueOf(c)));
+        }
+      }
+      final String prefix = literalEnd < 0 ? glob : glob.substring(0, literalEnd);
+      return new Rule(Pattern.compile(regex.toString()), prefix);
+    }
+
+    private boolean matches(String name) {
+      return pattern.matcher(name).matches();
+    }
+
+    private boolean mayMatchDescendantOf(String name) {
+      if (literalPrefix == null) {
+        return true;
+      }
+      final String parent = name + SEPARATOR;
+      return literalPrefix.startsWith(parent) || parent.startsWith(literalPrefix);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * GmailItems.java
+ *
+ * Created on 2026-10-18, 01:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import com.sun.mail.imap.IMAPMessage;
+import com.sun.mail.imap.protocol.BASE64MailboxDecoder;
+import com.sun.mail.imap.protocol.FetchItem;
+import com.sun.mail.imap.protocol.FetchResponse;
+import jakarta.mail.FetchProfile;
+import jakarta.mail.MessagingException;
+
+/**
+ * Gmail IMAP extension (X-GM-EXT-1) fetch items.
+ *
+ * <p>Adding {@link #MESSAGE_ID} or {@link #LABELS} to a {@link FetchProfile} fetches the Gmail
+ * message id (X-GM-MSGID) or labels (X-GM-LABELS) along with the rest of the items. The items
+ * are only parsed by connections of stores opened with an
+ * {@link com.marcnuri.mnimapsync.metrics.ImapMetrics} registry to servers announcing the
+ * extension.
+ */
+public final class GmailItems {
+
+  public static final String CAPABILITY = "X-GM-EXT-1";
+  public static final FetchProfile.Item MESSAGE_ID = new Item("X-GM-MSGID");
+  public static final FetchProfile.Item LABELS = new Item("X-GM-LABELS");
+
+  private static final FetchItem MESSAGE_ID_ITEM = new FetchItem("X-GM-MSGID", MESSAGE_ID) {
+    @Override
+    public Object parseItem(FetchResponse r) {
+      return r.readLong();
+    }
+  };
+  private static final FetchItem LABELS_ITEM = new FetchItem("X-GM-LABELS", LABELS) {
+    @Override
+    public Object parseItem(FetchResponse r) {
+      return r.readAtomStringList();
+    }
+  };
+  static final FetchItem[] FETCH_ITEMS = {MESSAGE_ID_ITEM, LABELS_ITEM};
+
+  private GmailItems() {
+  }
+
+  /**
+   * @return unique and immutable id of the message across every folder of the Gmail account
+   */
+  public static long getMessageId(IMAPMessage message) throws MessagingException {
+    return (Long) message.getItem(MESSAGE_ID_ITEM);
+  }
+
+  /**
+   * @return decoded labels of the message, system labels are prefixed by a backslash (e.g.
+   * <code>\Inbox</code>)
+   */
+  public static String[] getLabels(IMAPMessage message) throws MessagingException {
+    final String[] labels = (String[]) message.getItem(LABELS_ITEM);
+    if (labels == null) {
+      return new String[0];
+    }
+    final String[] ret = new String[labels.length];
+    for (int it = 0; it < labels.length; it++) {
+      ret[it] = BASE64MailboxDecoder.decode(labels[it]);
+    }
+    return ret;
+  }
+
+  private static final class Item extends FetchProfile.Item {
+
+    private Item(String name) {
+      super(name);
+    }
+  }
+}
@@ -22,15 +22,38 @@ package com.marcnuri.mnimapsync.imap;
 
 import com.marcnuri.mnimapsync.HostDefinition;
 import com.marcnuri.mnimapsync.index.Index;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics;
+import com.sun.mail.iap.Argument;
+import com.sun.mail.iap.ProtocolException;
+import com.sun.mail.iap.Response;
+import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPSSLStore;
 import com.sun.mail.imap.IMAPStore;
-import com.sun.mail.util.MailSSLSocketFactory;
+import com.sun.mail.imap.protocol.BASE64MailboxEncoder;
+import com.sun.mail.imap.protocol.IMAPProtocol;
+import com.sun.mail.imap.protocol.IMAPResponse;
+import com.sun.mail.imap.protocol.SearchSequence;
+import com.sun.mail.imap.protocol.UIDSet;
+import jakarta.mail.Folder;
 import jakarta.mail.MessagingException;
+import jakarta.mail.Provider;
 import jakarta.mail.Session;
+import jakarta.mail.search.SearchTerm;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 /**
@@ -39,16 +62,13 @@ import java.util.Properties;
 public class IMAPUtils {
 
   public static final String INBOX_MAILBOX = "INBOX";
-
-  private static MailSSLSocketFactory mailSSLSocketFactory;
-
-  private static MailSSLSocketFactory getSSLSocketFactory() throws GeneralSecurityException {
-    if (mailSSLSocketFactory == null) {
-      mailSSLSocketFactory = new MailSSLSocketFactory();
-      mailSSLSocketFactory.setTrustAllHosts(true);
-    }
-    return mailSSLSocketFactory;
-  }
+  // RFC 7162 recommends clients to limit command lines to 8192 octets
+  static final int MAX_UID_SET_LENGTH = 8000;
+  // Pooled connections idle for longer are checked with a NOOP before being reused (and replaced
+  // if broken), jakarta.mail defaults to 30 minutes
+  static final long POOL_VALIDATION_MILLIS = 60_000L;
+  // Pooled connections idle for longer are logged out, jakarta.mail defaults to 45 seconds
+  static final long POOL_IDLE_TIMEOUT_MILLIS = 300_000L;
 
   private IMAPUtils() {
   }
@@ -62,6 +82,23 @@ public class IMAPUtils {
    */
   public static IMAPStore openStore(HostDefinition hostDefinition, int threads)
       throws MessagingException, GeneralSecurityException {
+    return openStore(hostDefinition, threads, null, null);
+  }
+
+  /**
+   * Open an {@link IMAPStore} for the provided {@link HostDefinition} recording every IMAP command
+   * issued through its connections in the provided {@link ImapMetrics}.
+   *
+   * @param hostDefinition for the IMAPStore connection
+   * @param threads that will be consuming the IMAPStore connection
+   * @param metrics registry where commands are recorded, or null to disable instrumentation (and
+   * {@link HostDefinition#isAdaptiveThrottling()})
+   * @param side label of the store in the metrics ({@link ImapMetrics#SOURCE} or
+   * {@link ImapMetrics#TARGET})
+   * @return the open IMAPStore
+   */
+  public static IMAPStore openStore(HostDefinition hostDefinition, int threads,
+      ImapMetrics metrics, String side) throws MessagingException, GeneralSecurityException {
     final Properties properties = new Properties();
     properties.put("mail.debug", "false");
     properties.put("mail.imap.starttls.enable", true);
@@ -72,21 +109,59 @@ public class IMAPUtils {
     properties.put("mail.mime.encodeparameters",true);
     properties.put("mail.mime.contentdisposition.strict", "false"); // default true
     properties.put("mail.imaps.ssl.checkserveridentity", "false");
-    properties.put("mail.imaps.ssl.trust", "*");
 
     properties.put("mail.mime.charset", "UTF-8"); // Set character encoding
 
 
 
-    properties.setProperty("mail.imap.connectionpoolsize", String.valueOf(threads));
+    // The store connection is kept in the pool along with the folder connection of each thread
+    properties.setProperty("mail.imap.connectionpoolsize", String.valueOf(threads + 1));
+    properties.setProperty("mail.imap.connectionpooltimeout",
+        String.valueOf(POOL_IDLE_TIMEOUT_MILLIS));
+    properties.setProperty("mail.imap.servertimeout", String.valueOf(POOL_VALIDATION_MILLIS));
+    final TrafficLimiter sharedLimiter = SharedBandwidth.limiterFor(hostDefinition);
+    final ImapSocketFactory socketFactory;
+    if (hostDefinition.getShaping() != null || metrics != null || sharedLimiter != null) {
+      // TLS is layered on top of the plain sockets created (or wrapped) by this factory
+      socketFactory = new ImapSocketFactory(hostDefinition.getShaping(), sharedLimiter);
+      properties.put("mail.imap.socketFactory", socketFactory);
+      properties.put("mail.imaps.socketFactory", socketFactory);
+    } else {
+      socketFactory = null;
+    }
     if (hostDefinition.isSsl()) {
       properties.put("mail.imap.ssl.enable", hostDefinition.isSsl());
-      properties.setProperty("mail.imaps.connectionpoolsize", String.valueOf(threads));
+      properties.setProperty("mail.imaps.connectionpoolsize", String.valueOf(threads + 1));
+      properties.setProperty("mail.imaps.connectionpooltimeout",
+          String.valueOf(POOL_IDLE_TIMEOUT_MILLIS));
+      properties.setProperty("mail.imaps.servertimeout", String.valueOf(POOL_VALIDATION_MILLIS));
       properties.put("mail.imaps.socketFactory.port", hostDefinition.getPort());
-      properties.put("mail.imap.ssl.socketFactory", getSSLSocketFactory());
+      // mail.imaps.ssl.trust isn't set, jakarta.mail would create a new SSLContext per connection
+      final TlsSocketFactory sslSocketFactory = new TlsSocketFactory(
+          TlsSocketFactory.getSharedContext(hostDefinition), socketFactory, metrics, side);
+      properties.put("mail.imap.ssl.socketFactory", sslSocketFactory);
+      properties.put("mail.imaps.ssl.socketFactory", sslSocketFactory);
       properties.put("mail.imap.ssl.socketFactory.fallback", false);
     }
+    if (hostDefinition.isCompress()) {
+      properties.put("mail.imap.compress.enable", "true");
+      properties.put("mail.imaps.compress.enable", "true");
+    }
+    if (metrics != null) {
+      properties.put(InstrumentedIMAPProtocol.METRICS_PROPERTY, metrics);
+      properties.put(InstrumentedIMAPProtocol.SIDE_PROPERTY, side);
+      if (hostDefinition.isAdaptiveThrottling()) {
+        properties.put(InstrumentedIMAPProtocol.THROTTLE_PROPERTY,
+            ThrottleController.forHost(hostDefinition));
+      }
+    }
     final Session session = Session.getInstance(properties, null);
+    if (metrics != null) {
+      session.setProvider(new Provider(Provider.Type.STORE, "imap",
+          InstrumentedIMAPStore.class.getName(), "mnIMAPSync", null));
+      session.setProvider(new Provider(Provider.Type.STORE, "imaps",
+          InstrumentedIMAPSSLStore.class.getName(), "mnIMAPSync", null));
+    }
     final IMAPStore ret;
     if (hostDefinition.isSsl()) {
       ret = (IMAPSSLStore) session.getStore("imaps");
@@ -98,6 +173,270 @@ public class IMAPUtils {
     return ret;
   }
 
+  /**
+   * Limits the bytes per second transferred by every store opened from now on, shared fairly
+   * across the accounts being synced.
+   *
+   * @param bytesPerSecond limit for the connections of every host, or 0 for unlimited
+   */
+  public static void setGlobalBandwidthLimit(long bytesPerSecond) {
+    SharedBandwidth.setGlobalBytesPerSecond(bytesPerSecond);
+  }
+
+  /**
+   * Opens the provided number of authenticated connections of the store in parallel and returns
+   * them to its pool, so that the first folder opened by each thread doesn't pay the TCP, TLS and
+   * LOGIN round trips serially.
+   *
+   * <p>Connections that can't be opened are logged and skipped, the store opens them again on
+   * demand.
+   *
+   * @param store open store
+   * @param connections number of connections to open, at most the threads of the store
+   * @param metrics registry where the warm-up is recorded, or null
+   * @param side label of the store in the metrics
+   * @return number of connections opened
+   */
+  public static int warmUp(IMAPStore store, int connections, ImapMetrics metrics, String side)
+      throws InterruptedException {
+
+    final long start = System.nanoTime();
+    final ExecutorService executor = Executors.newFixedThreadPool(connections);
+    int ret = 0;
+    try {
+      // Folders are closed once every connection is open, otherwise they'd reuse each other's
+      final List<Future<Folder>> folders = new ArrayList<>(connections);
+      for (int it = 0; it < connections; it++) {
+        folders.add(executor.submit(() -> {
+          final Folder folder = store.getFolder(INBOX_MAILBOX);
+          folder.open(Folder.READ_ONLY);
+          return folder;
+        }));
+      }
+      for (Future<Folder> folder : folders) {
+        try {
+          folder.get().close(false);
+          ret++;
+        } catch (ExecutionException | MessagingException ex) {
+          Logger.getLogger(IMAPUtils.class.getName()).log(Level.FINE,
+              "Couldn't warm up connection", ex);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    if (metrics != null) {
+      metrics.poolWarmedUp(side, ret, (System.nanoTime() - start) / 1000L);
+    }
+    return ret;
+  }
+
+  /**
+   * Adds or removes a flag to the messages with the provided UIDs in a single <code>UID STORE
+   * +FLAGS.SILENT</code> command (or <code>-FLAGS.SILENT</code>) per {@link #uidSets(long[], int)}
+   * chunk, contiguous UIDs are sent as ranges.
+   *
+   * @param folder open in read-write mode
+   * @param uids of the messages to update
+   * @param flag system flag (e.g. <code>\Seen</code>) or keyword
+   * @param add true to add the flag, false to remove it
+   * @return number of UID STORE commands issued
+   */
+  public static int uidStore(IMAPFolder folder, long[] uids, String flag, boolean add)
+      throws MessagingException {
+
+    final List<String> uidSets = uidSets(uids, MAX_UID_SET_LENGTH);
+    for (String uidSet : uidSets) {
+      folder.doCommand(protocol -> {
+        final Response[] responses = protocol.command(String.format(
+            "UID STORE %s %sFLAGS.SILENT (%s)", uidSet, add ? "+" : "-", flag), null);
+        protocol.notifyResponseHandlers(responses);
+        protocol.handleResult(responses[responses.length - 1]);
+        return null;
+      });
+    }
+    return uidSets.size();
+  }
+
+  /**
+   * Copies the messages with the provided UIDs to another folder of the same store in a single
+   * <code>UID COPY</code> command per {@link #uidSets(long[], int)} chunk, message bodies aren't
+   * transferred.
+   *
+   * @param folder open folder where the messages are
+   * @param uids of the messages to copy
+   * @param targetFolderFullName full name of the folder where messages are copied to
+   * @return number of UID COPY commands issued
+   */
+  public static int uidCopy(IMAPFolder folder, long[] uids, String targetFolderFullName)
+      throws MessagingException {
+
+    final List<String> uidSets = uidSets(uids, MAX_UID_SET_LENGTH);
+    for (String uidSet : uidSets) {
+      folder.doCommand(protocol -> {
+        final Argument args = new Argument();
+        args.writeAtom(uidSet);
+        if (protocol.supportsUtf8()) {
+          args.writeString(targetFolderFullName, StandardCharsets.UTF_8);
+        } else {
+          args.writeString(BASE64MailboxEncoder.encode(targetFolderFullName));
+        }
+        final Response[] responses = protocol.command("UID COPY", args);
+        protocol.notifyResponseHandlers(responses);
+        protocol.handleResult(responses[responses.length - 1]);
+        return null;
+      });
+    }
+    return uidSets.size();
+  }
+
+  /**
+   * Lists the UIDs of every message in the folder with a single <code>UID SEARCH ALL</code>
+   * command, no message is fetched.
+   *
+   * @param folder open folder
+   * @return sorted UIDs, which for the messages of a folder match the order of their sequence
+   * numbers
+   */
+  public static long[] uidSearchAll(IMAPFolder folder) throws MessagingException {
+    return uidSearch(folder, null);
+  }
+
+  /**
+   * Lists the UIDs of the messages in the folder matching the provided term with a single
+   * <code>UID SEARCH</code> command evaluated by the server, no message is fetched.
+   *
+   * @param folder open folder
+   * @param term to match (e.g. <code>SINCE 1-Jan-2020 SMALLER 10485760</code>), or null for ALL
+   * @return sorted UIDs of the matching messages
+   */
+  public static long[] uidSearch(IMAPFolder folder, SearchTerm term) throws MessagingException {
+    return executeUidSearch(folder, protocol -> {
+      final Argument criteria = new Argument();
+      if (term == null) {
+        criteria.writeAtom("ALL");
+      } else {
+        // Same as IMAPProtocol#search, non-ASCII terms need a CHARSET unless UTF8=ACCEPT is enabled
+        final boolean charset = !SearchSequence.isAscii(term) && !protocol.supportsUtf8();
+        if (charset) {
+          criteria.writeAtom("CHARSET");
+          criteria.writeAtom("UTF-8");
+        }
+        try {
+          criteria.append(new SearchSequence(protocol)
+              .generateSequence(term, charset ? StandardCharsets.UTF_8.name() : null));
+        } catch (IOException | MessagingException ex) {
+          throw new ProtocolException("Invalid search term", ex);
+        }
+      }
+      return criteria;
+    });
+  }
+
+  /**
+   * Checks which of the provided UIDs are still in the folder with a single
+   * <code>UID SEARCH UID</code> command. Unlike {@link IMAPFolder#getMessagesByUID(long[])},
+   * which answers from the folder cache for the UIDs it already knows, every UID is checked by the
+   * server.
+   *
+   * @param folder open folder
+   * @param uids to check
+   * @return sorted UIDs of the messages that haven't been expunged
+   */
+  public static long[] uidSearchExisting(IMAPFolder folder, long[] uids)
+      throws MessagingException {
+
+    final long[] sorted = uids.clone();
+    Arrays.sort(sorted);
+    return executeUidSearch(folder, protocol -> {
+      final Argument criteria = new Argument();
+      criteria.writeAtom("UID");
+      criteria.writeAtom(UIDSet.toString(UIDSet.createUIDSets(sorted)));
+      return criteria;
+    });
+  }
+
+  private static long[] executeUidSearch(IMAPFolder folder, SearchCriteria criteria)
+      throws MessagingException {
+
+    return (long[]) folder.doCommand(protocol -> {
+      final Response[] responses = protocol.command("UID SEARCH", criteria.build(protocol));
+      final Response result = responses[responses.length - 1];
+      long[] uids = new long[0];
+      int count = 0;
+      if (result.isOK()) {
+        for (int it = 0; it < responses.length - 1; it++) {
+          if (responses[it] instanceof IMAPResponse
+              && ((IMAPResponse) responses[it]).keyEquals("SEARCH")) {
+            long uid;
+            while ((uid = responses[it].readLong()) != -1L) {
+              if (count == uids.length) {
+                uids = Arrays.copyOf(uids, Math.max(16, count * 2));
+              }
+              uids[count++] = uid;
+            }
+            responses[it] = null;
+          }
+        }
+      }
+      protocol.notifyResponseHandlers(responses);
+      protocol.handleResult(result);
+      final long[] ret = Arrays.copyOf(uids, count);
+      Arrays.sort(ret);
+      return ret;
+    });
+  }
+
+  /**
+   * Splits the UIDs of a folder (as listed by {@link #uidSearch(IMAPFolder, SearchTerm)}) into
+   * batches of consecutive UIDs. Unlike sequence number ranges, batches don't shift if messages
+   * are expunged while they're processed.
+   *
+   * @param uids sorted UIDs
+   * @param batchSize maximum number of UIDs of each batch
+   * @return the batches, none if there are no UIDs
+   */
+  public static List<long[]> uidBatches(long[] uids, int batchSize) {
+    final List<long[]> ret = new ArrayList<>();
+    for (int from = 0; from < uids.length; from += batchSize) {
+      ret.add(Arrays.copyOfRange(uids, from, Math.min(uids.length, from + batchSize)));
+    }
+    return ret;
+  }
+
+  /**
+   * @return true if the keyword can be sent as is in a STORE command (an IMAP atom)
+   */
+  public static boolean isValidKeyword(String keyword) {
+    return !keyword.isEmpty() && keyword.equals(MessageHelper.sanitizeKeyword(keyword));
+  }
+
+  /**
+   * Compacts the provided UIDs into IMAP sequence sets (e.g. <code>1:5,7,9:12</code>) no longer
+   * than maxLength characters (unless a single range is longer).
+   */
+  static List<String> uidSets(long[] uids, int maxLength) {
+    final long[] sorted = uids.clone();
+    Arrays.sort(sorted);
+    final List<String> ret = new ArrayList<>();
+    final StringBuilder current = new StringBuilder();
+    for (UIDSet range : UIDSet.createUIDSets(sorted)) {
+      final String rangeText = UIDSet.toString(new UIDSet[]{range});
+      if (current.length() > 0 && current.length() + rangeText.length() + 1 > maxLength) {
+        ret.add(current.toString());
+        current.setLength(0);
+      }
+      if (current.length() > 0) {
+        current.append(',');
+      }
+      current.append(rangeText);
+    }
+    if (current.length() > 0) {
+      ret.add(current.toString());
+    }
+    return ret;
+  }
+
   private static Optional<String> translateInbox(String folderName, String inboxName) {
     if (INBOX_MAILBOX.equalsIgnoreCase(folderName)) {
       return Optional.ofNullable(inboxName);
@@ -121,4 +460,10 @@ public class IMAPUtils {
     return translateInbox(targetFolderFullName, sourceIndex.getInbox())
         .orElse(translateFolder(targetFolderFullName, targetIndex, sourceIndex));
   }
+
+  @FunctionalInterface
+  private interface SearchCriteria {
+
+    Argument build(IMAPProtocol protocol) throws ProtocolException;
+  }
 }
@@ -0,0 +1,171 @@
+/*
+ * ImapSocket.java
+ *
+ * Created on 2026-10-18, 11:16
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * Plain TCP socket whose streams apply a {@link ShapingProfile} and report the transferred bytes
+ * to the {@link CommandTraffic} in scope.
+ *
+ * <p>Traffic in both directions is also limited by the {@link SharedBandwidth} of the account, if
+ * any.
+ *
+ * <p>TLS (either implicit or STARTTLS) is layered on top of this socket by jakarta.mail, so the
+ * shaping and counting apply to the bytes actually sent over the wire.
+ */
+final class ImapSocket extends Socket {
+
+  private static final int MAX_SLICE = 8192;
+
+  private final ShapingProfile shaping;
+  private final TrafficLimiter sharedLimiter;
+  private InputStream inputStream;
+  private OutputStream outputStream;
+
+  ImapSocket(ShapingProfile shaping, TrafficLimiter sharedLimiter) {
+    this.shaping = shaping;
+    this.sharedLimiter = sharedLimiter;
+  }
+
+  @Override
+  public synchronized InputStream getInputStream() throws IOException {
+    if (inputStream == null) {
+      inputStream = new ShapedInputStream(super.getInputStream(),
+          limiter(shaping.getDownloadBytesPerSecond(), sharedLimiter));
+    }
+    return inputStream;
+  }
+
+  @Override
+  public synchronized OutputStream getOutputStream() throws IOException {
+    if (outputStream == null) {
+      outputStream = new ShapedOutputStream(super.getOutputStream(), shaping,
+          limiter(shaping.getUploadBytesPerSecond(), sharedLimiter));
+    }
+    return outputStream;
+  }
+
+  /**
+   * @param bytesPerSecond of the connection in one direction, 0 for unlimited
+   * @param sharedLimiter limiter shared with other connections, or null
+   * @return limiter for a stream of the connection, or null if unlimited
+   */
+  static TrafficLimiter limiter(long bytesPerSecond, TrafficLimiter sharedLimiter) {
+    return TrafficLimiter.chain(
+        bytesPerSecond > 0 ? new BandwidthLimiter(bytesPerSecond) : null, sharedLimiter);
+  }
+
+  static final class ShapedInputStream extends FilterInputStream {
+
+    private final TrafficLimiter limiter;
+
+    ShapedInputStream(InputStream in, TrafficLimiter limiter) {
+      super(in);
+      this.limiter = limiter;
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int ret = super.read();
+      if (ret >= 0) {
+        CommandTraffic.read(1);
+        if (limiter != null) {
+          limiter.acquire(1);
+        }
+      }
+      return ret;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      final int ret = super.read(b, off, limiter == null ? len : Math.min(len, MAX_SLICE));
+      if (ret > 0) {
+        CommandTraffic.read(ret);
+        if (limiter != null) {
+          limiter.acquire(ret);
+        }
+      }
+      return ret;
+    }
+  }
+
+  static final class ShapedOutputStream extends FilterOutputStream {
+
+    private final ShapingProfile shaping;
+    private final TrafficLimiter limiter;
+    private boolean requestStarted;
+
+    ShapedOutputStream(OutputStream out, ShapingProfile shaping,
+        TrafficLimiter limiter) {
+      super(out);
+      this.shaping = shaping;
+      this.limiter = limiter;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (!requestStarted) {
+        requestStarted = true;
+        delay(shaping.nextDelayMillis());
+      }
+      int pos = off;
+      final int end = off + len;
+      while (pos < end) {
+        final int slice = limiter == null ? end - pos : Math.min(end - pos, MAX_SLICE);
+        if (limiter != null) {
+          limiter.acquire(slice);
+        }
+        out.write(b, pos, slice);
+        pos += slice;
+      }
+      CommandTraffic.written(len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      super.flush();
+      requestStarted = false;
+    }
+
+    private static void delay(long millis) throws InterruptedIOException {
+      if (millis > 0) {
+        try {
+          Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while emulating latency");
+        }
+      }
+    }
+  }
+}
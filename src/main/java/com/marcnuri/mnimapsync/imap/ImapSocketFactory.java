@@ -0,0 +1,101 @@
+/*
+ * ImapSocketFactory.java
+ *
+ * Created on 2026-10-18, 11:12
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import javax.net.SocketFactory;
+
+/**
+ * {@link SocketFactory} for IMAP connections, plugged into jakarta.mail by
+ * {@link IMAPUtils#openStore(com.marcnuri.mnimapsync.HostDefinition, int,
+ * com.marcnuri.mnimapsync.metrics.ImapMetrics, String)}.
+ *
+ * <p>Sockets created by this factory count the bytes exchanged by every IMAP command and emulate
+ * the network conditions described by a {@link ShapingProfile}, so that benchmarks and tests can
+ * reproduce WAN round trip times and capped links on a single machine.
+ *
+ * <p>They can also share a bandwidth limit with the connections of other stores (see
+ * {@link SharedBandwidth}).
+ */
+public class ImapSocketFactory extends SocketFactory {
+
+  private final ShapingProfile shaping;
+  private final TrafficLimiter sharedLimiter;
+
+  public ImapSocketFactory(ShapingProfile shaping) {
+    this(shaping, null);
+  }
+
+  ImapSocketFactory(ShapingProfile shaping, TrafficLimiter sharedLimiter) {
+    this.shaping = shaping == null ? new ShapingProfile() : shaping;
+    this.sharedLimiter = sharedLimiter;
+  }
+
+  @Override
+  public Socket createSocket() {
+    return new ImapSocket(shaping, sharedLimiter);
+  }
+
+  /**
+   * @param socket plain socket connected by jakarta.mail
+   * @return socket with the same behavior as the ones created by this factory
+   */
+  Socket wrap(Socket socket) {
+    return new LayeredImapSocket(socket, shaping, sharedLimiter);
+  }
+
+  @Override
+  public Socket createSocket(String host, int port) throws IOException {
+    final Socket socket = createSocket();
+    socket.connect(new InetSocketAddress(host, port));
+    return socket;
+  }
+
+  @Override
+  public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+      throws IOException {
+
+    final Socket socket = createSocket();
+    socket.bind(new InetSocketAddress(localHost, localPort));
+    socket.connect(new InetSocketAddress(host, port));
+    return socket;
+  }
+
+  @Override
+  public Socket createSocket(InetAddress host, int port) throws IOException {
+    final Socket socket = createSocket();
+    socket.connect(new InetSocketAddress(host, port));
+    return socket;
+  }
+
+  @Override
+  public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+      int localPort) throws IOException {
+
+    final Socket socket = createSocket();
+    socket.bind(new InetSocketAddress(localAddress, localPort));
+    socket.connect(new InetSocketAddress(address, port));
+    return socket;
+  }
+}
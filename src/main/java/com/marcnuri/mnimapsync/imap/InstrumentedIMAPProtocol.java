@@ -0,0 +1,416 @@
+/*
+ * InstrumentedIMAPProtocol.java
+ *
+ * Created on 2026-10-18, 12:52
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import com.marcnuri.mnimapsync.jfr.ImapCommandEvent;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics;
+import com.sun.mail.iap.Argument;
+import com.sun.mail.iap.ByteArray;
+import com.sun.mail.iap.Literal;
+import com.sun.mail.iap.ProtocolException;
+import com.sun.mail.iap.Response;
+import com.sun.mail.iap.ResponseInputStream;
+import com.sun.mail.imap.AppendUID;
+import com.sun.mail.imap.ResyncData;
+import com.sun.mail.imap.protocol.FetchItem;
+import com.sun.mail.imap.protocol.IMAPProtocol;
+import com.sun.mail.imap.protocol.MailboxInfo;
+import com.sun.mail.imap.protocol.Status;
+import com.sun.mail.util.MailLogger;
+import jakarta.mail.Flags;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link IMAPProtocol} that records the latency, traffic and outcome of every command in an
+ * {@link ImapMetrics} registry.
+ *
+ * <p>Commands are attributed to the folder they operate on (SELECT, EXAMINE, STATUS, APPEND) or
+ * to the currently selected folder for the rest (FETCH, STORE, EXPUNGE...).
+ *
+ * <p>Connections that negotiate COMPRESS=DEFLATE count the bytes read and written once
+ * decompressed, so that the compression ratio can be reported along with the wire traffic.
+ *
+ * <p>Connections to Gmail also parse the {@link GmailItems} fetch items.
+ *
+ * <p>If the properties contain a {@link ThrottleController} every command waits for it before
+ * being issued, and reports its outcome to it once complete.
+ */
+class InstrumentedIMAPProtocol extends IMAPProtocol {
+
+  static final String METRICS_PROPERTY = "mnimapsync.metrics";
+  static final String SIDE_PROPERTY = "mnimapsync.metrics.side";
+  static final String THROTTLE_PROPERTY = "mnimapsync.throttle";
+  static final String CONNECT_COMMAND = "CONNECT";
+
+  private final ImapMetrics metrics;
+  private final String side;
+  private final ThrottleController throttle;
+  private volatile String selectedFolder;
+  private volatile String commandFolder;
+  private boolean disconnected;
+  private volatile boolean compressed;
+  // Bytes of the compressed connection (command lines are estimated)
+  private long wireBytes;
+  private long plainBytes;
+  private ResponseInputStream rawInput;
+  private ResponseInputStream countingInput;
+  private OutputStream rawOutput;
+  private DataOutputStream countingOutput;
+
+  private InstrumentedIMAPProtocol(String name, String host, int port, Properties props,
+      boolean isSSL, MailLogger logger, ImapMetrics metrics, String side)
+      throws IOException, ProtocolException {
+
+    super(name, host, port, props, isSSL, logger);
+    this.metrics = metrics;
+    this.side = side;
+    final Object throttleProperty = props.get(THROTTLE_PROPERTY);
+    throttle = throttleProperty instanceof ThrottleController
+        ? (ThrottleController) throttleProperty : null;
+  }
+
+  /**
+   * Opens a new connection recording the time spent to connect, negotiate TLS and read the
+   * server greeting as a {@value #CONNECT_COMMAND} command.
+   *
+   * <p>If the provided properties contain no {@link ImapMetrics} registry a regular
+   * {@link IMAPProtocol} is returned.
+   */
+  static IMAPProtocol connect(String name, String host, int port, Properties props,
+      boolean isSSL, MailLogger logger) throws IOException, ProtocolException {
+
+    final Object metrics = props.get(METRICS_PROPERTY);
+    if (!(metrics instanceof ImapMetrics)) {
+      return new IMAPProtocol(name, host, port, props, isSSL, logger);
+    }
+    final String side = props.getProperty(SIDE_PROPERTY);
+    final CommandTraffic traffic = CommandTraffic.start();
+    final long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      final IMAPProtocol ret = new InstrumentedIMAPProtocol(name, host, port, props, isSSL,
+          logger, (ImapMetrics) metrics, side);
+      ((ImapMetrics) metrics).connectionOpened(side);
+      failed = false;
+      return ret;
+    } finally {
+      traffic.stop();
+      ((ImapMetrics) metrics).record(side, host, ImapMetrics.NO_FOLDER, CONNECT_COMMAND,
+          elapsedMicros(start), traffic.getBytesIn(), traffic.getBytesOut(), failed);
+    }
+  }
+
+  @Override
+  public synchronized Response[] command(String command, Argument args) {
+    // Commands issued by the super constructor (CAPABILITY) are accounted for in connect
+    if (metrics == null) {
+      return super.command(command, args);
+    }
+    // Time waiting for the throttle isn't part of the command latency
+    if (throttle != null) {
+      throttle.acquire();
+    }
+    final String folder = commandFolder != null ? commandFolder : selectedFolder;
+    final ImapCommandEvent event = new ImapCommandEvent();
+    event.begin();
+    final CommandTraffic traffic = CommandTraffic.start();
+    final long start = System.nanoTime();
+    final long plainStart = plainBytes;
+    Response[] responses = null;
+    try {
+      responses = super.command(command, args);
+      return responses;
+    } finally {
+      traffic.stop();
+      final String name = commandName(command);
+      final boolean failed = failed(responses);
+      if (compressed) {
+        // Command line (tag, command and CRLF) is written to the raw stream
+        plainBytes += command.length() + 8;
+        wireBytes += traffic.getBytesIn() + traffic.getBytesOut();
+        metrics.recordCompression(side, traffic.getBytesIn() + traffic.getBytesOut(),
+            plainBytes - plainStart);
+      }
+      final long latency = elapsedMicros(start);
+      metrics.record(side, host, folder, name, latency, traffic.getBytesIn(),
+          traffic.getBytesOut(), failed);
+      event.end();
+      if (event.shouldCommit()) {
+        event.side = side;
+        event.host = host;
+        event.folder = folder;
+        event.command = name;
+        event.bytesIn = traffic.getBytesIn();
+        event.bytesOut = traffic.getBytesOut();
+        event.failed = failed;
+        event.commit();
+      }
+      // Last, it might wait for the bandwidth limit
+      if (throttle != null) {
+        release(name, latency, traffic.getBytesIn() + traffic.getBytesOut(), responses);
+      }
+    }
+  }
+
+  private void release(String name, long latency, long bytes, Response[] responses) {
+    final boolean throttled = ThrottleController.isThrottled(name, responses);
+    try {
+      final boolean decreased = throttle.release(name, latency, bytes, throttled);
+      if (decreased) {
+        Logger.getLogger(InstrumentedIMAPProtocol.class.getName()).log(Level.FINE,
+            "Throttling {0} ({1}) to {2} commands in flight and {3} bytes/s",
+            new Object[]{host, side, throttle.getInFlightLimit(),
+                throttle.getBytesPerSecondLimit()});
+      }
+      metrics.throttle(side, throttled, decreased, throttle.getInFlightLimit(),
+          throttle.getBytesPerSecondLimit());
+    } catch (InterruptedIOException ex) {
+      // Interrupted status is kept, the sync is being cancelled
+    }
+  }
+
+  /**
+   * jakarta.mail checks the connections idle in the pool for longer than
+   * <code>mail.imap.servertimeout</code> with a NOOP, broken ones are replaced by a new connection.
+   */
+  @Override
+  public void noop() throws ProtocolException {
+    try {
+      super.noop();
+    } catch (ProtocolException ex) {
+      if (metrics != null) {
+        metrics.poolConnectionBroken(side);
+      }
+      throw ex;
+    }
+  }
+
+  @Override
+  public void compress() throws ProtocolException {
+    super.compress();
+    if (metrics != null) {
+      compressed = true;
+      metrics.compressionStarted(side);
+    }
+  }
+
+  @Override
+  protected ResponseInputStream getInputStream() {
+    final ResponseInputStream ret = super.getInputStream();
+    if (!compressed) {
+      return ret;
+    }
+    if (ret != rawInput) {
+      rawInput = ret;
+      countingInput = new CountingResponseInputStream(ret);
+    }
+    return countingInput;
+  }
+
+  @Override
+  protected OutputStream getOutputStream() {
+    final OutputStream ret = super.getOutputStream();
+    if (!compressed) {
+      return ret;
+    }
+    if (ret != rawOutput) {
+      rawOutput = ret;
+      // Arguments expect a DataOutputStream
+      countingOutput = new DataOutputStream(new CountingOutputStream(ret));
+    }
+    return countingOutput;
+  }
+
+  @Override
+  public FetchItem[] getFetchItems() {
+    return hasCapability(GmailItems.CAPABILITY) ? GmailItems.FETCH_ITEMS : super.getFetchItems();
+  }
+
+  @Override
+  public synchronized void disconnect() {
+    super.disconnect();
+    // Invoked by both logout and finalize, so only the first call is accounted for
+    if (metrics != null && !disconnected) {
+      disconnected = true;
+      metrics.connectionClosed(side);
+      if (compressed && wireBytes > 0L) {
+        final double ratio = (double) plainBytes / wireBytes;
+        metrics.compressionClosed(side, ratio);
+        Logger.getLogger(InstrumentedIMAPProtocol.class.getName()).log(Level.FINE,
+            "Closed compressed connection to {0} ({1}), ratio {2}",
+            new Object[]{host, side, ratio});
+      }
+    }
+  }
+
+  @Override
+  public MailboxInfo select(String mbox, ResyncData rd) throws ProtocolException {
+    commandFolder = mbox;
+    try {
+      final MailboxInfo ret = super.select(mbox, rd);
+      selectedFolder = mbox;
+      return ret;
+    } finally {
+      commandFolder = null;
+    }
+  }
+
+  @Override
+  public MailboxInfo examine(String mbox, ResyncData rd) throws ProtocolException {
+    commandFolder = mbox;
+    try {
+      final MailboxInfo ret = super.examine(mbox, rd);
+      selectedFolder = mbox;
+      return ret;
+    } finally {
+      commandFolder = null;
+    }
+  }
+
+  @Override
+  public void close() throws ProtocolException {
+    try {
+      super.close();
+    } finally {
+      selectedFolder = null;
+    }
+  }
+
+  @Override
+  public void unselect() throws ProtocolException {
+    try {
+      super.unselect();
+    } finally {
+      selectedFolder = null;
+    }
+  }
+
+  @Override
+  public Status status(String mbox, String[] items) throws ProtocolException {
+    commandFolder = mbox;
+    try {
+      return super.status(mbox, items);
+    } finally {
+      commandFolder = null;
+    }
+  }
+
+  @Override
+  public AppendUID appenduid(String mbox, Flags f, Date d, Literal data, boolean uid)
+      throws ProtocolException {
+
+    commandFolder = mbox;
+    try {
+      return super.appenduid(mbox, f, d, data, uid);
+    } finally {
+      commandFolder = null;
+    }
+  }
+
+  /**
+   * Extracts the command type (e.g. {@code FETCH}, {@code UID FETCH}) from the full command line.
+   */
+  static String commandName(String command) {
+    final String trimmed = command.trim();
+    final int firstSpace = trimmed.indexOf(' ');
+    String ret = firstSpace < 0 ? trimmed : trimmed.substring(0, firstSpace);
+    if (firstSpace >= 0 && ret.equalsIgnoreCase("UID")) {
+      final int secondSpace = trimmed.indexOf(' ', firstSpace + 1);
+      ret = secondSpace < 0 ? trimmed : trimmed.substring(0, secondSpace);
+    }
+    return ret.toUpperCase(Locale.ENGLISH);
+  }
+
+  /**
+   * Counts the decompressed bytes of the responses read by the protocol.
+   */
+  private final class CountingResponseInputStream extends ResponseInputStream {
+
+    private final ResponseInputStream delegate;
+
+    private CountingResponseInputStream(ResponseInputStream delegate) {
+      super(new ByteArrayInputStream(new byte[0]));
+      this.delegate = delegate;
+    }
+
+    @Override
+    public ByteArray readResponse() throws IOException {
+      return readResponse(null);
+    }
+
+    @Override
+    public ByteArray readResponse(ByteArray ba) throws IOException {
+      final ByteArray ret = delegate.readResponse(ba);
+      plainBytes += ret.getCount();
+      return ret;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return delegate.available();
+    }
+  }
+
+  /**
+   * Counts the decompressed bytes of the command arguments (e.g. APPEND literals).
+   */
+  private final class CountingOutputStream extends FilterOutputStream {
+
+    private CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      plainBytes++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      plainBytes += len;
+    }
+  }
+
+  private static boolean failed(Response[] responses) {
+    if (responses == null || responses.length == 0) {
+      return true;
+    }
+    final Response result = responses[responses.length - 1];
+    return result.isNO() || result.isBAD() || result.isBYE();
+  }
+
+  private static long elapsedMicros(long startNanos) {
+    return (System.nanoTime() - startNanos) / 1000L;
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * InstrumentedIMAPStore.java
+ *
+ * Created on 2026-10-18, 13:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import com.sun.mail.iap.ProtocolException;
+import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.protocol.IMAPProtocol;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.URLName;
+
+import java.io.IOException;
+
+/**
+ * {@link IMAPStore} whose connections are {@link InstrumentedIMAPProtocol} instances.
+ *
+ * <p>Registered as the "imap" provider by
+ * {@link IMAPUtils#openStore(com.marcnuri.mnimapsync.HostDefinition, int,
+ * com.marcnuri.mnimapsync.metrics.ImapMetrics, String)}.
+ *
+ * <p>While connected, the store connections are registered with the {@link ThrottleController}
+ * of the host, if adaptive throttling is enabled.
+ */
+public class InstrumentedIMAPStore extends IMAPStore {
+
+  // Connections added to the ThrottleController of the host while connected
+  private int throttleConnections;
+
+  public InstrumentedIMAPStore(Session session, URLName url) {
+    super(session, url);
+  }
+
+  @Override
+  protected IMAPProtocol newIMAPProtocol(String host, int port)
+      throws IOException, ProtocolException {
+
+    return InstrumentedIMAPProtocol.connect(name, host, port, session.getProperties(), isSSL,
+        logger);
+  }
+
+  @Override
+  protected synchronized boolean protocolConnect(String host, int pport, String user,
+      String password) throws MessagingException {
+
+    final boolean ret = super.protocolConnect(host, pport, user, password);
+    if (ret && throttleConnections == 0) {
+      throttleConnections = ThrottleController.register(session.getProperties(), name);
+    }
+    return ret;
+  }
+
+  @Override
+  public synchronized void close() throws MessagingException {
+    try {
+      super.close();
+    } finally {
+      ThrottleController.unregister(session.getProperties(), throttleConnections);
+      throttleConnections = 0;
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * LayeredImapSocket.java
+ *
+ * Created on 2026-10-18, 03:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import com.marcnuri.mnimapsync.imap.ImapSocket.ShapedInputStream;
+import com.marcnuri.mnimapsync.imap.ImapSocket.ShapedOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+
+/**
+ * Connected TCP socket whose streams apply a {@link ShapingProfile} and report the transferred
+ * bytes to the {@link CommandTraffic} in scope, same as {@link ImapSocket}.
+ *
+ * <p>jakarta.mail connects a plain {@link Socket} itself when TLS is provided by a
+ * {@link TlsSocketFactory}, the factory wraps it with this socket before layering TLS on top.
+ */
+final class LayeredImapSocket extends Socket {
+
+  private final Socket socket;
+  private final ShapingProfile shaping;
+  private final TrafficLimiter sharedLimiter;
+  private InputStream inputStream;
+  private OutputStream outputStream;
+
+  LayeredImapSocket(Socket socket, ShapingProfile shaping, TrafficLimiter sharedLimiter) {
+    this.socket = socket;
+    this.shaping = shaping;
+    this.sharedLimiter = sharedLimiter;
+  }
+
+  @Override
+  public synchronized InputStream getInputStream() throws IOException {
+    if (inputStream == null) {
+      inputStream = new ShapedInputStream(socket.getInputStream(),
+          ImapSocket.limiter(shaping.getDownloadBytesPerSecond(), sharedLimiter));
+    }
+    return inputStream;
+  }
+
+  @Override
+  public synchronized OutputStream getOutputStream() throws IOException {
+    if (outputStream == null) {
+      outputStream = new ShapedOutputStream(socket.getOutputStream(), shaping,
+          ImapSocket.limiter(shaping.getUploadBytesPerSecond(), sharedLimiter));
+    }
+    return outputStream;
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+
+  @Override
+  public boolean isClosed() {
+    return socket.isClosed();
+  }
+
+  @Override
+  public boolean isConnected() {
+    return socket.isConnected();
+  }
+
+  @Override
+  public boolean isBound() {
+    return socket.isBound();
+  }
+
+  @Override
+  public void shutdownInput() throws IOException {
+    socket.shutdownInput();
+  }
+
+  @Override
+  public void shutdownOutput() throws IOException {
+    socket.shutdownOutput();
+  }
+
+  @Override
+  public boolean isInputShutdown() {
+    return socket.isInputShutdown();
+  }
+
+  @Override
+  public boolean isOutputShutdown() {
+    return socket.isOutputShutdown();
+  }
+
+  @Override
+  public InetAddress getInetAddress() {
+    return socket.getInetAddress();
+  }
+
+  @Override
+  public int getPort() {
+    return socket.getPort();
+  }
+
+  @Override
+  public InetAddress getLocalAddress() {
+    return socket.getLocalAddress();
+  }
+
+  @Override
+  public int getLocalPort() {
+    return socket.getLocalPort();
+  }
+
+  @Override
+  public SocketAddress getRemoteSocketAddress() {
+    return socket.getRemoteSocketAddress();
+  }
+
+  @Override
+  public SocketAddress getLocalSocketAddress() {
+    return socket.getLocalSocketAddress();
+  }
+
+  @Override
+  public void setSoTimeout(int timeout) throws SocketException {
+    socket.setSoTimeout(timeout);
+  }
+
+  @Override
+  public int getSoTimeout() throws SocketException {
+    return socket.getSoTimeout();
+  }
+
+  @Override
+  public void setTcpNoDelay(boolean on) throws SocketException {
+    socket.setTcpNoDelay(on);
+  }
+
+  @Override
+  public boolean getTcpNoDelay() throws SocketException {
+    return socket.getTcpNoDelay();
+  }
+
+  @Override
+  public void setKeepAlive(boolean on) throws SocketException {
+    socket.setKeepAlive(on);
+  }
+
+  @Override
+  public boolean getKeepAlive() throws SocketException {
+    return socket.getKeepAlive();
+  }
+
+  @Override
+  public String toString() {
+    return socket.toString();
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * ShapingProfile.java
+ *
+ * Created on 2026-10-18, 11:02
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Network conditions to emulate on every IMAP connection opened with an
+ * {@link ImapSocketFactory}.
+ *
+ * <p>Latency is added once per request (the first write after a flush), so it behaves as extra
+ * round trip time. Bandwidth limits apply per connection and direction, 0 means unlimited.
+ */
+public class ShapingProfile implements Serializable {
+
+  private static final long serialVersionUID = 2915083276487130731L;
+
+  private long latencyMillis;
+  private long jitterMillis;
+  private long uploadBytesPerSecond;
+  private long downloadBytesPerSecond;
+
+  public long getLatencyMillis() {
+    return latencyMillis;
+  }
+
+  public void setLatencyMillis(long latencyMillis) {
+    this.latencyMillis = latencyMillis;
+  }
+
+  public long getJitterMillis() {
+    return jitterMillis;
+  }
+
+  public void setJitterMillis(long jitterMillis) {
+    this.jitterMillis = jitterMillis;
+  }
+
+  public long getUploadBytesPerSecond() {
+    return uploadBytesPerSecond;
+  }
+
+  public void setUploadBytesPerSecond(long uploadBytesPerSecond) {
+    this.uploadBytesPerSecond = uploadBytesPerSecond;
+  }
+
+  public long getDownloadBytesPerSecond() {
+    return downloadBytesPerSecond;
+  }
+
+  public void setDownloadBytesPerSecond(long downloadBytesPerSecond) {
+    this.downloadBytesPerSecond = downloadBytesPerSecond;
+  }
+
+  /**
+   * Delay to apply to the next request: latency plus a uniformly distributed jitter.
+   */
+  long nextDelayMillis() {
+    if (jitterMillis <= 0) {
+      return Math.max(0L, latencyMillis);
+    }
+    return Math.max(0L,
+        latencyMillis + ThreadLocalRandom.current().nextLong(-jitterMillis, jitterMillis + 1));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    ShapingProfile that = (ShapingProfile) o;
+    return latencyMillis == that.latencyMillis &&
+        jitterMillis == that.jitterMillis &&
+        uploadBytesPerSecond == that.uploadBytesPerSecond &&
+        downloadBytesPerSecond == that.downloadBytesPerSecond;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(latencyMillis, jitterMillis, uploadBytesPerSecond, downloadBytesPerSecond);
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * SharedBandwidth.java
+ *
+ * Created on 2026-10-18, 06:05
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import com.marcnuri.mnimapsync.HostDefinition;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the bytes per second transferred by every connection of several accounts
+ * (a single host, or all of them), shared fairly across the accounts.
+ *
+ * <p>Each account (user, host and port) draws from the bucket through its own {@link Share}. When
+ * several accounts are waiting for tokens they're granted to the one that transferred the fewest
+ * bytes recently (halving every second), so that an account with a few connections and small
+ * messages isn't queued behind the many connections of a large one. Bandwidth left unused by an
+ * account is available to the rest.
+ *
+ * <p>Same as {@link BandwidthLimiter}, the bucket holds up to 100ms worth of tokens and a request
+ * larger than the available tokens is granted leaving the bucket in debt.
+ */
+final class SharedBandwidth {
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  // Waiting shares poll the bucket in case the granted share doesn't notify them
+  private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final SharedBandwidth GLOBAL = new SharedBandwidth(0L);
+  private static final ConcurrentMap<String, SharedBandwidth> HOSTS = new ConcurrentHashMap<>();
+
+  private final Map<String, Share> shares;
+  private final Set<Share> waiting;
+  private long bytesPerSecond;
+  private double capacity;
+  private double tokens;
+  private long lastRefillNanos;
+
+  SharedBandwidth(long bytesPerSecond) {
+    shares = new HashMap<>();
+    waiting = new LinkedHashSet<>();
+    lastRefillNanos = System.nanoTime();
+    setBytesPerSecond(bytesPerSecond);
+  }
+
+  /**
+   * Sets the bytes per second shared by every connection of every account, 0 for unlimited.
+   */
+  static void setGlobalBytesPerSecond(long bytesPerSecond) {
+    GLOBAL.setBytesPerSecond(bytesPerSecond);
+  }
+
+  /**
+   * @return limiter for the connections of the provided account, drawing from the bucket of its
+   * host ({@link HostDefinition#getBandwidthLimit()}) and the global one, or null if neither
+   * is limited
+   */
+  static TrafficLimiter limiterFor(HostDefinition hostDefinition) {
+    final String host = hostDefinition.getHost() + ":" + hostDefinition.getPort();
+    final String account = hostDefinition.getUser() + "@" + host;
+    Share hostShare = null;
+    if (hostDefinition.getBandwidthLimit() > 0L) {
+      final SharedBandwidth hostBandwidth = HOSTS.computeIfAbsent(host,
+          k -> new SharedBandwidth(hostDefinition.getBandwidthLimit()));
+      hostBandwidth.setBytesPerSecond(hostDefinition.getBandwidthLimit());
+      hostShare = hostBandwidth.share(account);
+    }
+    final Share globalShare = GLOBAL.getBytesPerSecond() > 0L ? GLOBAL.share(account) : null;
+    return TrafficLimiter.chain(hostShare, globalShare);
+  }
+
+  synchronized void setBytesPerSecond(long value) {
+    refill(System.nanoTime());
+    bytesPerSecond = value;
+    capacity = Math.max(1D, value / 10D);
+    tokens = Math.min(tokens, capacity);
+    notifyAll();
+  }
+
+  synchronized long getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  /**
+   * @param account identifies the account, connections of the same account share its share
+   */
+  synchronized Share share(String account) {
+    return shares.computeIfAbsent(account, k -> new Share());
+  }
+
+  private synchronized void acquire(Share share, long bytes) throws InterruptedIOException {
+    if (bytesPerSecond <= 0L) {
+      return;
+    }
+    share.waiters++;
+    waiting.add(share);
+    try {
+      while (bytesPerSecond > 0L) {
+        final long now = System.nanoTime();
+        refill(now);
+        if (tokens > 0D && leastServed(now) == share) {
+          tokens -= bytes;
+          share.served(now, bytes);
+          return;
+        }
+        final long waitNanos = tokens > 0D ? MAX_WAIT_NANOS
+            : Math.max(1L, (long) (-tokens * NANOS_PER_SECOND / bytesPerSecond));
+        TimeUnit.NANOSECONDS.timedWait(this, Math.min(waitNanos, MAX_WAIT_NANOS * 10));
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+    } finally {
+      if (--share.waiters == 0) {
+        waiting.remove(share);
+      }
+      notifyAll();
+    }
+  }
+
+  private Share leastServed(long now) {
+    Share ret = null;
+    double min = Double.MAX_VALUE;
+    for (Share share : waiting) {
+      final double served = share.getServed(now);
+      if (served < min) {
+        min = served;
+        ret = share;
+      }
+    }
+    return ret;
+  }
+
+  private void refill(long now) {
+    if (bytesPerSecond > 0L) {
+      tokens = Math.min(capacity,
+          tokens + (now - lastRefillNanos) * (double) bytesPerSecond / NANOS_PER_SECOND);
+    }
+    lastRefillNanos = now;
+  }
+
+  /**
+   * Bytes transferred by the connections of an account, guarded by the {@link SharedBandwidth}.
+   */
+  final class Share implements TrafficLimiter {
+
+    private int waiters;
+    private double served;
+    private long servedNanos;
+
+    @Override
+    public void acquire(long bytes) throws InterruptedIOException {
+      SharedBandwidth.this.acquire(this, bytes);
+    }
+
+    SharedBandwidth getBandwidth() {
+      return SharedBandwidth.this;
+    }
+
+    /**
+     * @return bytes granted recently, halving every second
+     */
+    private double getServed(long now) {
+      return served * Math.pow(0.5D, (now - servedNanos) / (double) NANOS_PER_SECOND);
+    }
+
+    private void served(long now, long bytes) {
+      served = getServed(now) + bytes;
+      servedNanos = now;
+    }
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * ThrottleController.java
+ *
+ * Created on 2026-10-18, 05:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.sun.mail.iap.Response;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AIMD (additive increase, multiplicative decrease) controller of the commands in flight and the
+ * bytes per second allowed against a host, shared by every connection (copier, deleter, crawler
+ * and flagger pools) to that host.
+ *
+ * <p>Every command that completes in time grows the in-flight limit by 1/limit (roughly one more
+ * command per round of commands). Throttling responses (<code>[THROTTLED]</code>,
+ * <code>[LIMIT]</code>, <code>[UNAVAILABLE]</code>, BYE) and commands much slower than usual halve
+ * it, at most once per {@link #DECREASE_COOLDOWN_NANOS} so that the responses of the commands
+ * already in flight don't collapse it to 1. The first decrease also caps the bytes per second to
+ * half the observed throughput, the cap then grows by {@link #BYTES_PER_SECOND_INCREASE} every
+ * second without throttling.
+ *
+ * <p>The maximum in-flight commands is the sum of the connections of every open store registered
+ * with the controller ({@link #register(Properties, String)}), so that it grows with the stores
+ * opened against the host and shrinks again once they're closed.
+ */
+final class ThrottleController {
+
+  static final double DECREASE_FACTOR = 0.5D;
+  static final long DECREASE_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+  // A command is slow if it takes longer than SLOW_FACTOR times the average of its type (per KiB)
+  static final double SLOW_FACTOR = 4D;
+  static final long SLOW_MIN_MICROS = TimeUnit.SECONDS.toMicros(1);
+  static final long MIN_BYTES_PER_SECOND = 16L * 1024L;
+  static final long BYTES_PER_SECOND_INCREASE = 64L * 1024L;
+  private static final int SLOW_MIN_SAMPLES = 8;
+  private static final double LATENCY_EWMA_WEIGHT = 0.125D;
+  private static final double BYTES_PER_KIB = 1024D;
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  // Also matches the response text of Office 365 ("NO Request is throttled")
+  private static final String[] THROTTLE_CODES = {"THROTTLED", "[LIMIT]", "[UNAVAILABLE]"};
+  private static final ConcurrentMap<String, ThrottleController> CONTROLLERS =
+      new ConcurrentHashMap<>();
+
+  private final Map<String, double[]> averageLatencies;
+  private int maxInFlight;
+  private double inFlightLimit;
+  private int inFlight;
+  private long bytesPerSecondLimit;
+  private BandwidthLimiter limiter;
+  private long lastDecreaseNanos;
+  private long intervalStartNanos;
+  private long intervalBytes;
+  private long observedBytesPerSecond;
+  private boolean intervalDecreased;
+
+  ThrottleController(int maxInFlight) {
+    averageLatencies = new HashMap<>();
+    this.maxInFlight = maxInFlight;
+    inFlightLimit = Math.max(1, maxInFlight);
+    lastDecreaseNanos = System.nanoTime() - DECREASE_COOLDOWN_NANOS;
+    intervalStartNanos = System.nanoTime();
+  }
+
+  /**
+   * Returns the controller shared by every store connected to the provided host, stores add their
+   * connections to it once connected with {@link #register(Properties, String)}.
+   */
+  static ThrottleController forHost(HostDefinition hostDefinition) {
+    return CONTROLLERS.computeIfAbsent(hostDefinition.getHost() + ":" + hostDefinition.getPort(),
+        k -> new ThrottleController(0));
+  }
+
+  /**
+   * Adds the connections of a connected store (its pool size) to the maximum in-flight commands
+   * of the controller in its session properties, if any.
+   *
+   * @param properties of the store session
+   * @param protocol of the store (imap or imaps)
+   * @return connections registered, to be unregistered with
+   * {@link #unregister(Properties, int)} once the store is closed
+   */
+  static int register(Properties properties, String protocol) {
+    final Object throttle = properties.get(InstrumentedIMAPProtocol.THROTTLE_PROPERTY);
+    if (!(throttle instanceof ThrottleController)) {
+      return 0;
+    }
+    final int connections = Integer.parseInt(
+        properties.getProperty("mail." + protocol + ".connectionpoolsize", "1"));
+    ((ThrottleController) throttle).addMaxInFlight(connections);
+    return connections;
+  }
+
+  /**
+   * Removes the connections registered by a store that was closed.
+   */
+  static void unregister(Properties properties, int connections) {
+    final Object throttle = properties.get(InstrumentedIMAPProtocol.THROTTLE_PROPERTY);
+    if (connections > 0 && throttle instanceof ThrottleController) {
+      ((ThrottleController) throttle).addMaxInFlight(-connections);
+    }
+  }
+
+  /**
+   * Connections of a new store are allowed right away (up to the new maximum), the limit is
+   * decreased again if the server can't keep up.
+   */
+  synchronized void addMaxInFlight(int connections) {
+    maxInFlight += connections;
+    inFlightLimit = Math.max(1D,
+        Math.min(Math.max(1, maxInFlight), inFlightLimit + Math.max(0, connections)));
+    notifyAll();
+  }
+
+  synchronized int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  /**
+   * Blocks the calling thread until a command can be issued, if interrupted the command is issued
+   * right away (and the interrupted status kept).
+   */
+  synchronized void acquire() {
+    while (inFlight >= (int) inFlightLimit) {
+      try {
+        wait();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    inFlight++;
+  }
+
+  /**
+   * Releases the command acquired with {@link #acquire()} adjusting the limits to its outcome, the
+   * calling thread then waits until the traffic of the command fits in the bytes per second limit.
+   *
+   * @param command type of the command (e.g. <code>UID FETCH</code>)
+   * @param latencyMicros time until the command completed
+   * @param bytes sent and received by the command
+   * @param throttled true if the server responded with a throttling response
+   * @return true if the limits were decreased
+   */
+  boolean release(String command, long latencyMicros, long bytes, boolean throttled)
+      throws InterruptedIOException {
+
+    final boolean decreased;
+    final BandwidthLimiter currentLimiter;
+    synchronized (this) {
+      inFlight--;
+      final long now = System.nanoTime();
+      observe(now, bytes);
+      final boolean slow = isSlow(command, latencyMicros, bytes);
+      if (throttled || slow) {
+        decreased = decrease(now);
+      } else {
+        decreased = false;
+        inFlightLimit = Math.min(Math.max(1, maxInFlight), inFlightLimit + 1D / inFlightLimit);
+      }
+      notifyAll();
+      currentLimiter = limiter;
+    }
+    if (currentLimiter != null) {
+      currentLimiter.acquire(bytes);
+    }
+    return decreased;
+  }
+
+  synchronized int getInFlightLimit() {
+    return (int) inFlightLimit;
+  }
+
+  /**
+   * @return bytes per second allowed, or 0 if unlimited
+   */
+  synchronized long getBytesPerSecondLimit() {
+    return bytesPerSecondLimit;
+  }
+
+  private boolean decrease(long now) {
+    if (now - lastDecreaseNanos < DECREASE_COOLDOWN_NANOS) {
+      return false;
+    }
+    lastDecreaseNanos = now;
+    intervalDecreased = true;
+    inFlightLimit = Math.max(1D, inFlightLimit * DECREASE_FACTOR);
+    final long current = bytesPerSecondLimit > 0L ? bytesPerSecondLimit : observedBytesPerSecond;
+    if (current > 0L) {
+      setBytesPerSecondLimit(Math.max(MIN_BYTES_PER_SECOND, (long) (current * DECREASE_FACTOR)));
+    }
+    return true;
+  }
+
+  /**
+   * Accounts the traffic in one second intervals, the bytes per second limit grows after every
+   * interval without decreases.
+   */
+  private void observe(long now, long bytes) {
+    intervalBytes += bytes;
+    final long elapsed = now - intervalStartNanos;
+    if (elapsed < NANOS_PER_SECOND) {
+      return;
+    }
+    observedBytesPerSecond = (long) (intervalBytes * (double) NANOS_PER_SECOND / elapsed);
+    if (bytesPerSecondLimit > 0L && !intervalDecreased) {
+      setBytesPerSecondLimit(bytesPerSecondLimit + BYTES_PER_SECOND_INCREASE);
+    }
+    intervalStartNanos = now;
+    intervalBytes = 0L;
+    intervalDecreased = false;
+  }
+
+  private void setBytesPerSecondLimit(long value) {
+    bytesPerSecondLimit = value;
+    if (limiter == null) {
+      limiter = new BandwidthLimiter(value);
+    } else {
+      limiter.setBytesPerSecond(value);
+    }
+  }
+
+  /**
+   * Updates the average latency per KiB of the command type (exponentially weighted), commands
+   * under 1 KiB count as 1 KiB so that the latency of small commands is compared as is while
+   * large APPEND or FETCH commands aren't slow just because of their literals.
+   *
+   * @return true if the command took longer than {@link #SLOW_FACTOR} times the average
+   */
+  private boolean isSlow(String command, long latencyMicros, long bytes) {
+    final double latencyPerKib = latencyMicros / Math.max(1D, bytes / BYTES_PER_KIB);
+    // {average, samples}
+    final double[] average = averageLatencies.computeIfAbsent(command, k -> new double[2]);
+    final boolean ret = average[1] >= SLOW_MIN_SAMPLES && latencyMicros >= SLOW_MIN_MICROS
+        && latencyPerKib > average[0] * SLOW_FACTOR;
+    average[0] = average[1] == 0D ? latencyPerKib
+        : average[0] + (latencyPerKib - average[0]) * LATENCY_EWMA_WEIGHT;
+    average[1]++;
+    return ret;
+  }
+
+  /**
+   * @param command type of the command the responses belong to
+   * @return true if any of the responses shows the server is throttling the client (a BYE, other
+   * than the one of LOGOUT, or a NO/BAD with a throttling response code)
+   */
+  static boolean isThrottled(String command, Response[] responses) {
+    if (responses == null) {
+      return false;
+    }
+    for (Response response : responses) {
+      if (response.isBYE() && !command.equals("LOGOUT")) {
+        return true;
+      }
+      if (response.isNO() || response.isBAD()) {
+        final String text = response.toString().toUpperCase(Locale.ENGLISH);
+        for (String code : THROTTLE_CODES) {
+          if (text.contains(code)) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+}
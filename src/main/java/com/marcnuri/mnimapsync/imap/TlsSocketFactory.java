@@ -0,0 +1,148 @@
+/*
+ * TlsSocketFactory.java
+ *
+ * Created on 2026-10-18, 03:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics;
+import com.sun.mail.util.MailSSLSocketFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * {@link SSLSocketFactory} for implicit TLS IMAP connections, plugged into jakarta.mail by
+ * {@link IMAPUtils#openStore(HostDefinition, int, ImapMetrics, String)}.
+ *
+ * <p>Every connection to the same host and port shares a single {@link SSLContext} (and its client
+ * session cache), so that only the first connection pays a full handshake and the rest resume the
+ * session (TLS 1.3 PSK or TLS 1.2 session ID). jakarta.mail would otherwise create a new context
+ * for each connection when trusting all hosts.
+ *
+ * <p>jakarta.mail connects a plain socket and calls {@link #createSocket(Socket, String, int,
+ * boolean)} to layer TLS on top, the socket is wrapped by the {@link ImapSocketFactory} first when
+ * shaping or metrics are enabled.
+ */
+final class TlsSocketFactory extends SSLSocketFactory {
+
+  private static final ConcurrentMap<String, SSLContext> CONTEXTS = new ConcurrentHashMap<>();
+
+  private final SSLSocketFactory delegate;
+  private final ImapSocketFactory socketFactory;
+  private final ImapMetrics metrics;
+  private final String side;
+
+  /**
+   * @param context shared by the connections to the host
+   * @param socketFactory that wraps the plain sockets, or null to layer TLS directly on them
+   * @param metrics registry where handshakes are recorded, or null
+   * @param side label of the store in the metrics
+   */
+  TlsSocketFactory(SSLContext context, ImapSocketFactory socketFactory, ImapMetrics metrics,
+      String side) {
+
+    this.delegate = context.getSocketFactory();
+    this.socketFactory = socketFactory;
+    this.metrics = metrics;
+    this.side = side;
+  }
+
+  /**
+   * Returns the context shared by every store connected to the provided host, all servers are
+   * trusted (same as jakarta.mail's <code>mail.imaps.ssl.trust=*</code>).
+   */
+  static SSLContext getSharedContext(HostDefinition hostDefinition)
+      throws GeneralSecurityException {
+
+    final String key = hostDefinition.getHost() + ':' + hostDefinition.getPort() + ':'
+        + hostDefinition.getTlsSessionTimeout();
+    final SSLContext existing = CONTEXTS.get(key);
+    if (existing != null) {
+      return existing;
+    }
+    final MailSSLSocketFactory trustAll = new MailSSLSocketFactory();
+    trustAll.setTrustAllHosts(true);
+    final SSLContext context = SSLContext.getInstance("TLS");
+    context.init(null, trustAll.getTrustManagers(), null);
+    if (hostDefinition.getTlsSessionTimeout() > 0) {
+      context.getClientSessionContext().setSessionTimeout(hostDefinition.getTlsSessionTimeout());
+    }
+    final SSLContext previous = CONTEXTS.putIfAbsent(key, context);
+    return previous == null ? context : previous;
+  }
+
+  @Override
+  public Socket createSocket(Socket socket, String host, int port, boolean autoClose)
+      throws IOException {
+
+    final long startMillis = System.currentTimeMillis();
+    final long start = System.nanoTime();
+    final SSLSocket ret = (SSLSocket) delegate.createSocket(
+        socketFactory == null ? socket : socketFactory.wrap(socket), host, port, autoClose);
+    if (metrics != null) {
+      // Resumed sessions were created by a previous handshake
+      ret.addHandshakeCompletedListener(event -> metrics.tlsHandshake(side,
+          (System.nanoTime() - start) / 1000L,
+          event.getSession().getCreationTime() < startMillis));
+    }
+    return ret;
+  }
+
+  @Override
+  public String[] getDefaultCipherSuites() {
+    return delegate.getDefaultCipherSuites();
+  }
+
+  @Override
+  public String[] getSupportedCipherSuites() {
+    return delegate.getSupportedCipherSuites();
+  }
+
+  @Override
+  public Socket createSocket(String host, int port) throws IOException {
+    return delegate.createSocket(host, port);
+  }
+
+  @Override
+  public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+      throws IOException {
+
+    return delegate.createSocket(host, port, localHost, localPort);
+  }
+
+  @Override
+  public Socket createSocket(InetAddress host, int port) throws IOException {
+    return delegate.createSocket(host, port);
+  }
+
+  @Override
+  public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+      int localPort) throws IOException {
+
+    return delegate.createSocket(address, port, localAddress, localPort);
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * TrafficLimiter.java
+ *
+ * Created on 2026-10-18, 06:00
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Limits the bytes transferred through the streams of an {@link ImapSocket}.
+ */
+interface TrafficLimiter {
+
+  /**
+   * Blocks the calling thread until the provided number of bytes can be transferred.
+   */
+  void acquire(long bytes) throws InterruptedIOException;
+
+  /**
+   * @return a limiter that waits for every provided non-null limiter in order, or null if none
+   */
+  static TrafficLimiter chain(TrafficLimiter... limiters) {
+    TrafficLimiter ret = null;
+    for (TrafficLimiter limiter : limiters) {
+      if (limiter != null) {
+        final TrafficLimiter previous = ret;
+        ret = previous == null ? limiter : bytes -> {
+          previous.acquire(bytes);
+          limiter.acquire(bytes);
+        };
+      }
+    }
+    return ret;
+  }
+}
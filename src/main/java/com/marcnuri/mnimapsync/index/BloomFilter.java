@@ -0,0 +1,83 @@
+/*
+ * BloomFilter.java
+ *
+ * Created on 2026-10-18, 22:45
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of {@link MessageId#getFingerprint()}s sized for a fixed number of entries.
+ *
+ * <p>Fingerprints are already uniformly distributed, so the probe positions are derived from the
+ * fingerprint itself (double hashing) instead of hashing it again. With 10 bits per entry and 7
+ * probes the false positive rate is around 1%.
+ *
+ * <p>Fingerprints can be added while others are looked up from other threads, a fingerprint is
+ * visible to every thread once {@link #add(long)} returns.
+ */
+final class BloomFilter {
+
+  static final int BITS_PER_ENTRY = 10;
+  private static final int PROBES = 7;
+
+  private final AtomicLongArray bits;
+  private final long bitCount;
+
+  BloomFilter(long expectedEntries) {
+    bits = new AtomicLongArray(
+        (int) Math.max(1L, (expectedEntries * BITS_PER_ENTRY + 63L) / 64L));
+    bitCount = bits.length() * 64L;
+  }
+
+  void add(long fingerprint) {
+    final long h2 = h2(fingerprint);
+    for (int it = 0; it < PROBES; it++) {
+      final long bit = Math.floorMod(fingerprint + it * h2, bitCount);
+      final int word = (int) (bit >>> 6);
+      final long mask = 1L << bit;
+      if ((bits.get(word) & mask) == 0) {
+        bits.getAndAccumulate(word, mask, (current, set) -> current | set);
+      }
+    }
+  }
+
+  /**
+   * @return false if the fingerprint was never added, true if it probably was
+   */
+  boolean mightContain(long fingerprint) {
+    final long h2 = h2(fingerprint);
+    for (int it = 0; it < PROBES; it++) {
+      final long bit = Math.floorMod(fingerprint + it * h2, bitCount);
+      if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  long getSizeInBytes() {
+    return bits.length() * 8L;
+  }
+
+  private static long h2(long fingerprint) {
+    // Independent of the low bits used by the first probe, never 0
+    return Long.rotateLeft(fingerprint, 32) | 1L;
+  }
+}
@@ -16,25 +16,47 @@
  */
 package com.marcnuri.mnimapsync.index;
 
+import com.marcnuri.mnimapsync.jfr.IndexBatchEvent;
 import jakarta.mail.*;
 
 import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Objects;
 
 public final class FolderCrawler implements Runnable {
 
     private final Store store;
     private final String folderName;
-    private final int start;
-    private final int end;
+    //Sequence numbers, or UIDs, of the first and last messages of the batch
+    private final long start;
+    private final long end;
+    //UIDs of the messages of the batch, or null if the batch is a sequence number range
+    private final long[] uids;
     private final Index index;
     private final Connection connection;
 
     protected FolderCrawler(Store store, String folderName, int start, int end,
                             Index index, Connection connection) {
+        this(store, folderName, start, end, null, index, connection);
+    }
+
+    /**
+     * Batch of the messages with the provided UIDs (sorted), unlike sequence numbers they don't
+     * shift if messages are expunged from the folder while it's crawled.
+     */
+    protected FolderCrawler(Store store, String folderName, long[] uids,
+                            Index index, Connection connection) {
+        this(store, folderName, uids.length == 0 ? 0L : uids[0],
+                uids.length == 0 ? 0L : uids[uids.length - 1], uids, index, connection);
+    }
+
+    private FolderCrawler(Store store, String folderName, long start, long end, long[] uids,
+                          Index index, Connection connection) {
         this.store = store;
         this.folderName = folderName;
         this.start = start;
         this.end = end;
+        this.uids = uids;
         this.index = index;
         this.connection = connection;
     }
@@ -42,17 +64,35 @@ public final class FolderCrawler implements Runnable {
     public void run() {
         long indexedMessages = 0L;
         long skippedMessages = 0L;
+        boolean failed = false;
+        final IndexBatchEvent event = new IndexBatchEvent();
+        event.start();
         try {
             final Folder folder = store.getFolder(folderName);
             folder.open(Folder.READ_ONLY);
-            final Message[] messages = folder.getMessages(start, end);
-            folder.fetch(messages, MessageId.addHeaders(new FetchProfile()));
+            final Message[] messages;
+            if (uids == null) {
+                messages = folder.getMessages((int) start, (int) end);
+            } else {
+                //Messages expunged after the UIDs were listed are null
+                messages = Arrays.stream(((UIDFolder) folder).getMessagesByUID(uids))
+                        .filter(Objects::nonNull).toArray(Message[]::new);
+            }
+            final boolean recordUids = index.isTrackingFolderUids(folderName);
+            final FetchProfile fetchProfile = MessageId.addHeaders(new FetchProfile());
+            if (recordUids) {
+                fetchProfile.add(UIDFolder.FetchProfileItem.UID);
+            }
+            folder.fetch(messages, fetchProfile);
             for (Message message : messages) {
                 if (index.hasCrawlException()) {
                     return;
                 }
                 try {
                     final MessageId messageId = new MessageId(message);
+                    if (recordUids) {
+                        index.recordUid(folderName, messageId, ((UIDFolder) folder).getUID(message));
+                    }
                     if (index.getFolderMessages(folderName).add(messageId)) {
                         indexedMessages++;
                       /*  // Insert message into database
@@ -78,7 +118,10 @@ public final class FolderCrawler implements Runnable {
             }
             folder.close(false);
         } catch (MessagingException  messagingException) {
+            failed = true;
             index.addCrawlException(messagingException);
+        } finally {
+            event.finish(folderName, start, end, indexedMessages, skippedMessages, failed);
         }
         index.updatedIndexedMessageCount(indexedMessages);
         index.updatedSkippedMessageCount(skippedMessages);
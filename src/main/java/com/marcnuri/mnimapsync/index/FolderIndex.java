@@ -0,0 +1,203 @@
+/*
+ * FolderIndex.java
+ *
+ * Created on 2026-10-18, 23:05
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Messages of a folder in an {@link Index} with an {@link IndexBudget}.
+ *
+ * <p>Only the {@link MessageId#getFingerprint()} of each message is kept: in heap while the folder
+ * is hot and, once spilled, in a sorted memory-mapped file guarded by a {@link BloomFilter}.
+ * Messages added after the folder is spilled are kept in heap until the next spill, which merges
+ * them with the file.
+ */
+final class FolderIndex implements MessageIdIndex {
+
+  private static final int WRITE_BUFFER_ENTRIES = 8192;
+
+  private final IndexBudget budget;
+  private final ReadWriteLock lock;
+  private final Set<Long> memory;
+  private volatile long lastModified;
+  private LongBuffer spilled;
+  private BloomFilter bloomFilter;
+
+  FolderIndex(IndexBudget budget) {
+    this.budget = budget;
+    lock = new ReentrantReadWriteLock();
+    memory = ConcurrentHashMap.newKeySet();
+    lastModified = System.nanoTime();
+  }
+
+  @Override
+  public boolean contains(MessageId messageId) {
+    return containsFingerprint(messageId.getFingerprint());
+  }
+
+  @Override
+  public boolean add(MessageId messageId) {
+    return addFingerprint(messageId.getFingerprint());
+  }
+
+  boolean containsFingerprint(long fingerprint) {
+    lock.readLock().lock();
+    try {
+      return memory.contains(fingerprint) || spilledContains(fingerprint);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  boolean addFingerprint(long fingerprint) {
+    final boolean added;
+    lock.readLock().lock();
+    try {
+      added = !spilledContains(fingerprint) && memory.add(fingerprint);
+    } finally {
+      lock.readLock().unlock();
+    }
+    if (added) {
+      lastModified = System.nanoTime();
+      budget.allocate(IndexBudget.BYTES_PER_ENTRY);
+    }
+    return added;
+  }
+
+  private boolean spilledContains(long fingerprint) {
+    if (spilled == null || !bloomFilter.mightContain(fingerprint)) {
+      return false;
+    }
+    int low = 0;
+    int high = spilled.limit() - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final long value = spilled.get(mid);
+      if (value < fingerprint) {
+        low = mid + 1;
+      } else if (value > fingerprint) {
+        high = mid - 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Merges the fingerprints in heap with the ones previously spilled into a new sorted file.
+   */
+  void spill() throws IOException {
+    lock.writeLock().lock();
+    try {
+      final long[] fresh = new long[memory.size()];
+      int pos = 0;
+      for (Long fingerprint : memory) {
+        fresh[pos++] = fingerprint;
+      }
+      Arrays.sort(fresh);
+      final Path file = Files.createTempFile(budget.getDirectory(), "mnimapsync-index-", ".idx");
+      final LongBuffer merged;
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+          StandardOpenOption.WRITE)) {
+        write(channel, fresh);
+        merged = channel.map(MapMode.READ_ONLY, 0, channel.size()).asLongBuffer();
+      }
+      // The mapping stays valid once the file is deleted (except on Windows)
+      try {
+        Files.delete(file);
+      } catch (IOException ex) {
+        file.toFile().deleteOnExit();
+      }
+      final BloomFilter mergedBloomFilter = new BloomFilter(merged.limit());
+      for (int it = 0; it < merged.limit(); it++) {
+        mergedBloomFilter.add(merged.get(it));
+      }
+      final long previousBloomBytes = bloomFilter == null ? 0L : bloomFilter.getSizeInBytes();
+      spilled = merged;
+      bloomFilter = mergedBloomFilter;
+      memory.clear();
+      budget.release(fresh.length * IndexBudget.BYTES_PER_ENTRY + previousBloomBytes
+          - bloomFilter.getSizeInBytes());
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void write(FileChannel channel, long[] fresh) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_ENTRIES * Long.BYTES);
+    final int previousCount = spilled == null ? 0 : spilled.limit();
+    int previous = 0;
+    int current = 0;
+    while (previous < previousCount || current < fresh.length) {
+      final long next;
+      if (current == fresh.length
+          || (previous < previousCount && spilled.get(previous) < fresh[current])) {
+        next = spilled.get(previous++);
+      } else {
+        next = fresh[current++];
+      }
+      buffer.putLong(next);
+      if (!buffer.hasRemaining()) {
+        flush(channel, buffer);
+      }
+    }
+    flush(channel, buffer);
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  int getMemoryEntries() {
+    return memory.size();
+  }
+
+  long getLastModified() {
+    return lastModified;
+  }
+
+  @Override
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return memory.size() + (spilled == null ? 0 : spilled.limit());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
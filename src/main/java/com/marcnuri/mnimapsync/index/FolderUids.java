@@ -0,0 +1,208 @@
+/*
+ * FolderUids.java
+ *
+ * Created on 2026-10-18, 23:55
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import com.marcnuri.mnimapsync.index.IndexSnapshot.FolderSnapshot;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Fingerprint and UID of every message crawled in a folder of an {@link Index}, together with the
+ * folder state at crawl time, to be written in an {@link IndexSnapshot}.
+ *
+ * <p>Folders restored from a previous snapshot reference its mapped data (minus the expunged
+ * messages) and only keep in heap the messages crawled since.
+ */
+final class FolderUids {
+
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+
+  private final long uidValidity;
+  private final long uidNext;
+  private final int messageCount;
+  private final FolderSnapshot base;
+  private final BitSet removed;
+  private long[] fingerprints;
+  private long[] uids;
+  private int count;
+
+  FolderUids(long uidValidity, long uidNext, int messageCount) {
+    this(uidValidity, uidNext, messageCount, null, null);
+  }
+
+  /**
+   * @param base snapshot of the folder still valid for the current UIDVALIDITY
+   * @param removed positions in the base snapshot of the messages expunged since, or null
+   */
+  FolderUids(long uidValidity, long uidNext, int messageCount, FolderSnapshot base,
+      BitSet removed) {
+    this.uidValidity = uidValidity;
+    this.uidNext = uidNext;
+    this.messageCount = messageCount;
+    this.base = base;
+    this.removed = removed;
+    fingerprints = new long[0];
+    uids = new long[0];
+  }
+
+  synchronized void add(long fingerprint, long uid) {
+    // Appended after the folder state was read, the next crawl will see it as new anyway
+    if (uidNext > 0 && uid >= uidNext) {
+      return;
+    }
+    if (count == fingerprints.length) {
+      fingerprints = Arrays.copyOf(fingerprints, Math.max(16, count * 2));
+      uids = Arrays.copyOf(uids, fingerprints.length);
+    }
+    fingerprints[count] = fingerprint;
+    uids[count++] = uid;
+  }
+
+  synchronized int size() {
+    return count + baseSize();
+  }
+
+  private int baseSize() {
+    if (base == null) {
+      return 0;
+    }
+    return base.size() - (removed == null ? 0 : removed.cardinality());
+  }
+
+  /**
+   * Writes the sorted fingerprints followed by the matching UIDs, merging the base snapshot with
+   * the crawled messages.
+   *
+   * @return number of entries written
+   */
+  synchronized int write(DataOutputStream out) throws IOException {
+    sort(fingerprints, uids, 0, count);
+    writeMerged(out, true);
+    return writeMerged(out, false);
+  }
+
+  private int writeMerged(DataOutputStream out, boolean writeFingerprints) throws IOException {
+    final int baseCount = base == null ? 0 : base.size();
+    int written = 0;
+    int previous = nextBase(0);
+    int current = 0;
+    while (previous < baseCount || current < count) {
+      final boolean fromBase = current == count || (previous < baseCount && compare(
+          base.getFingerprint(previous), base.getUid(previous),
+          fingerprints[current], uids[current]) < 0);
+      if (fromBase) {
+        out.writeLong(writeFingerprints ? base.getFingerprint(previous) : base.getUid(previous));
+        previous = nextBase(previous + 1);
+      } else {
+        out.writeLong(writeFingerprints ? fingerprints[current] : uids[current]);
+        current++;
+      }
+      written++;
+    }
+    return written;
+  }
+
+  private int nextBase(int position) {
+    if (base == null) {
+      return 0;
+    }
+    if (removed == null) {
+      return position;
+    }
+    final int ret = removed.nextClearBit(position);
+    return Math.min(ret, base.size());
+  }
+
+  private static int compare(long fingerprint, long uid, long otherFingerprint, long otherUid) {
+    final int ret = Long.compare(fingerprint, otherFingerprint);
+    return ret != 0 ? ret : Long.compare(uid, otherUid);
+  }
+
+  /**
+   * Sorts both arrays in place by fingerprint and UID, without boxing.
+   */
+  static void sort(long[] fingerprints, long[] uids, int from, int to) {
+    while (to - from > INSERTION_SORT_THRESHOLD) {
+      final int mid = (from + to) >>> 1;
+      final long pivotFingerprint = fingerprints[mid];
+      final long pivotUid = uids[mid];
+      int low = from;
+      int high = to - 1;
+      while (low <= high) {
+        while (compare(fingerprints[low], uids[low], pivotFingerprint, pivotUid) < 0) {
+          low++;
+        }
+        while (compare(fingerprints[high], uids[high], pivotFingerprint, pivotUid) > 0) {
+          high--;
+        }
+        if (low <= high) {
+          swap(fingerprints, uids, low++, high--);
+        }
+      }
+      // Recurse into the smaller partition to bound the stack depth
+      if (high - from < to - low) {
+        sort(fingerprints, uids, from, high + 1);
+        from = low;
+      } else {
+        sort(fingerprints, uids, low, to);
+        to = high + 1;
+      }
+    }
+    for (int it = from + 1; it < to; it++) {
+      for (int pos = it; pos > from && compare(fingerprints[pos - 1], uids[pos - 1],
+          fingerprints[pos], uids[pos]) > 0; pos--) {
+        swap(fingerprints, uids, pos - 1, pos);
+      }
+    }
+  }
+
+  private static void swap(long[] fingerprints, long[] uids, int first, int second) {
+    final long fingerprint = fingerprints[first];
+    fingerprints[first] = fingerprints[second];
+    fingerprints[second] = fingerprint;
+    final long uid = uids[first];
+    uids[first] = uids[second];
+    uids[second] = uid;
+  }
+
+  long getUidValidity() {
+    return uidValidity;
+  }
+
+  long getUidNext() {
+    return uidNext;
+  }
+
+  int getMessageCount() {
+    return messageCount;
+  }
+
+  FolderSnapshot getBase() {
+    return base;
+  }
+
+  BitSet getRemoved() {
+    return removed;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * HeapFolderIndex.java
+ *
+ * Created on 2026-10-18, 00:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Messages of a folder in an {@link Index} with no heap budget.
+ *
+ * <p>Every {@link MessageId} is kept in a concurrent set guarded by a {@link BloomFilter} of their
+ * fingerprints, so lookups of messages not in the folder (most of them when copying to an empty or
+ * outdated target) don't hash nor compare any MessageId. The filter is rebuilt with twice the
+ * capacity whenever the folder outgrows it.
+ */
+final class HeapFolderIndex implements MessageIdIndex, Iterable<MessageId> {
+
+  static final int INITIAL_CAPACITY = 1024;
+
+  private final ReadWriteLock lock;
+  private final Set<MessageId> messages;
+  private volatile BloomFilter bloomFilter;
+  private volatile long capacity;
+
+  HeapFolderIndex() {
+    lock = new ReentrantReadWriteLock();
+    messages = ConcurrentHashMap.newKeySet();
+    capacity = INITIAL_CAPACITY;
+    bloomFilter = new BloomFilter(capacity);
+  }
+
+  @Override
+  public boolean contains(MessageId messageId) {
+    return bloomFilter.mightContain(messageId.getFingerprint()) && messages.contains(messageId);
+  }
+
+  @Override
+  public boolean add(MessageId messageId) {
+    final boolean added;
+    lock.readLock().lock();
+    try {
+      // Visible to lookups before the message is
+      bloomFilter.add(messageId.getFingerprint());
+      added = messages.add(messageId);
+    } finally {
+      lock.readLock().unlock();
+    }
+    if (added && messages.size() > capacity) {
+      grow();
+    }
+    return added;
+  }
+
+  private void grow() {
+    lock.writeLock().lock();
+    try {
+      if (messages.size() > capacity) {
+        final long grownCapacity = Math.max(capacity * 2L, messages.size());
+        final BloomFilter grown = new BloomFilter(grownCapacity);
+        for (MessageId messageId : messages) {
+          grown.add(messageId.getFingerprint());
+        }
+        bloomFilter = grown;
+        capacity = grownCapacity;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  long getBloomFilterSizeInBytes() {
+    return bloomFilter.getSizeInBytes();
+  }
+
+  @Override
+  public int size() {
+    return messages.size();
+  }
+
+  @Override
+  public Iterator<MessageId> iterator() {
+    return messages.iterator();
+  }
+}
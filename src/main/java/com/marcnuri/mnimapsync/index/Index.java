@@ -36,20 +36,34 @@ public class Index {
     private final AtomicReference<String> folderSeparator;
     private final AtomicReference<String> inbox;
     private final Set<String> folders;
-    private final Map<String, Set<MessageId>> folderMessages;
+    private final Map<String, MessageIdIndex> folderMessages;
+    //Null if folder messages are kept in heap with no limit
+    private final IndexBudget budget;
+    //Folders crawled to take an IndexSnapshot
+    private final Map<String, FolderUids> folderUids;
     private final AtomicLong indexedMessageCount;
     private final AtomicLong skippedMessageCount;
     //If no empty, the other processes shouldn't continue
     private final Set<MessagingException> crawlExceptions;
 
     public Index() {
+        this(null);
+    }
+
+    /**
+     * @param budget heap budget for the folder messages, shared with other indexes, or null to
+     * keep every {@link MessageId} in heap
+     */
+    public Index(IndexBudget budget) {
         this.folderSeparator = new AtomicReference<>();
         this.inbox = new AtomicReference<>();
         this.folders = ConcurrentHashMap.newKeySet();
         this.folderMessages = new ConcurrentHashMap<>();
+        this.folderUids = new ConcurrentHashMap<>();
         this.indexedMessageCount = new AtomicLong();
         this.skippedMessageCount = new AtomicLong();
         this.crawlExceptions = ConcurrentHashMap.newKeySet();
+        this.budget = budget;
     }
 
     public final boolean hasCrawlException() {
@@ -91,6 +105,10 @@ public class Index {
         return folders.contains(folder);
     }
 
+    public Set<String> getFolders() {
+        return Collections.unmodifiableSet(folders);
+    }
+
     public final long getIndexedMessageCount() {
         return indexedMessageCount.longValue();
     }
@@ -99,8 +117,57 @@ public class Index {
         return skippedMessageCount.longValue();
     }
 
-    public Set<MessageId> getFolderMessages(String folder) {
-        return folderMessages.computeIfAbsent(folder, k -> ConcurrentHashMap.newKeySet());
+    /**
+     * @return messages in the folder, lookups of absent messages are usually answered by a Bloom
+     * filter
+     */
+    public MessageIdIndex getFolderMessages(String folder) {
+        return folderMessages.computeIfAbsent(folder, k -> newFolderMessages());
+    }
+
+    /**
+     * @return messages in the folder, only available if they're kept in heap (no
+     * {@link IndexBudget} and not restored from an {@link IndexSnapshot})
+     * @throws IllegalStateException if the messages of the folder can't be iterated
+     */
+    final Iterable<MessageId> iterateFolderMessages(String folder) {
+        final MessageIdIndex messages = getFolderMessages(folder);
+        if (!(messages instanceof HeapFolderIndex)) {
+            throw new IllegalStateException(
+                "Messages of folder " + folder + " aren't kept in heap");
+        }
+        return (HeapFolderIndex) messages;
+    }
+
+    private MessageIdIndex newFolderMessages() {
+        return budget == null ? new HeapFolderIndex() : budget.newFolderIndex();
+    }
+
+    /**
+     * Starts recording the UIDs of the messages crawled in the folder, restoring the messages of
+     * its previous snapshot if any.
+     */
+    final void trackFolderUids(String folder, FolderUids uids) {
+        folderUids.put(folder, uids);
+        if (uids.getBase() != null) {
+            folderMessages.put(folder,
+                new SnapshotFolderIndex(uids.getBase(), uids.getRemoved(), newFolderMessages()));
+        }
+    }
+
+    final boolean isTrackingFolderUids(String folder) {
+        return folderUids.containsKey(folder);
+    }
+
+    final void recordUid(String folder, MessageId messageId, long uid) {
+        final FolderUids uids = folderUids.get(folder);
+        if (uids != null) {
+            uids.add(messageId.getFingerprint(), uid);
+        }
+    }
+
+    final Map<String, FolderUids> getFolderUids() {
+        return Collections.unmodifiableMap(folderUids);
     }
 
     final void addCrawlException(MessagingException exception) {
@@ -0,0 +1,135 @@
+/*
+ * IndexBudget.java
+ *
+ * Created on 2026-10-18, 22:55
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap budget shared by the folder message sets of one or more {@link Index}es.
+ *
+ * <p>Folder messages are kept in memory as fingerprints until the estimated heap they use exceeds
+ * the budget. Then the folders that haven't changed for longer (usually the ones completely
+ * crawled or copied) are spilled to memory-mapped sorted files, until the memory usage is below
+ * half of the budget. Spilled folders keep a {@link BloomFilter} in heap, so most lookups of
+ * messages that aren't in the folder don't read the file.
+ */
+public final class IndexBudget {
+
+  // Boxed Long (16) + ConcurrentHashMap node (32) + table slot (8)
+  static final long BYTES_PER_ENTRY = 56L;
+
+  private final long maxBytes;
+  private final Path directory;
+  private final AtomicLong usedBytes;
+  private final AtomicInteger spillCount;
+  private final List<FolderIndex> folders;
+
+  /**
+   * @param maxBytes estimated heap available for the indexed messages
+   */
+  public IndexBudget(long maxBytes) {
+    this(maxBytes, Paths.get(System.getProperty("java.io.tmpdir")));
+  }
+
+  /**
+   * @param maxBytes estimated heap available for the indexed messages
+   * @param directory where spilled folders are written
+   */
+  public IndexBudget(long maxBytes, Path directory) {
+    this.maxBytes = maxBytes;
+    this.directory = directory;
+    usedBytes = new AtomicLong();
+    spillCount = new AtomicInteger();
+    folders = new CopyOnWriteArrayList<>();
+  }
+
+  FolderIndex newFolderIndex() {
+    final FolderIndex ret = new FolderIndex(this);
+    folders.add(ret);
+    return ret;
+  }
+
+  /**
+   * Accounts heap used by a folder, spilling folders if the budget is exceeded.
+   *
+   * <p>Must not be invoked while holding a {@link FolderIndex} lock.
+   */
+  void allocate(long bytes) {
+    if (usedBytes.addAndGet(bytes) > maxBytes) {
+      spill();
+    }
+  }
+
+  void release(long bytes) {
+    usedBytes.addAndGet(-bytes);
+  }
+
+  private synchronized void spill() {
+    while (usedBytes.get() > maxBytes / 2) {
+      FolderIndex coldest = null;
+      for (FolderIndex folder : folders) {
+        if (folder.getMemoryEntries() > 0
+            && (coldest == null || folder.getLastModified() < coldest.getLastModified())) {
+          coldest = folder;
+        }
+      }
+      if (coldest == null) {
+        // Only Bloom filters left in memory
+        return;
+      }
+      try {
+        coldest.spill();
+        spillCount.incrementAndGet();
+      } catch (IOException ex) {
+        throw new UncheckedIOException("Couldn't spill folder index to disk", ex);
+      }
+    }
+  }
+
+  Path getDirectory() {
+    return directory;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * @return estimated heap used by in memory fingerprints and Bloom filters
+   */
+  public long getUsedBytes() {
+    return usedBytes.get();
+  }
+
+  /**
+   * @return number of times a folder was written to disk
+   */
+  public int getSpillCount() {
+    return spillCount.get();
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * IndexDiff.java
+ *
+ * Created on 2026-10-18, 12:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import com.marcnuri.mnimapsync.imap.FolderFilter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.sourceFolderNameToTarget;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.targetToSourceFolderName;
+
+/**
+ * Folders and messages a sync would copy and delete, computed from the indexes of both stores
+ * once crawled (dry run) without changing either of them.
+ *
+ * <p>The source folder messages are iterated, so the source index must keep them in heap (no
+ * {@link IndexBudget}), see {@link Index#iterateFolderMessages(String)}. Target messages are only
+ * looked up and counted, the messages to delete may be overestimated if the target index holds
+ * duplicates restored from an {@link IndexSnapshot}.
+ */
+public final class IndexDiff {
+
+  private final int foldersToCopy;
+  private final long messagesToCopy;
+  private final int foldersToDelete;
+  private final long messagesToDelete;
+
+  private IndexDiff(int foldersToCopy, long messagesToCopy, int foldersToDelete,
+      long messagesToDelete) {
+    this.foldersToCopy = foldersToCopy;
+    this.messagesToCopy = messagesToCopy;
+    this.foldersToDelete = foldersToDelete;
+    this.messagesToDelete = messagesToDelete;
+  }
+
+  /**
+   * @param folderFilter rules the indexes were crawled with, target folders that aren't included
+   * are never deleted
+   */
+  public static IndexDiff compute(Index sourceIndex, Index targetIndex,
+      FolderFilter folderFilter) {
+
+    int foldersToCopy = 0;
+    long messagesToCopy = 0L;
+    // Source messages already in each target folder
+    final Map<String, Long> matched = new HashMap<>();
+    for (String sourceFolderName : sourceIndex.getFolders()) {
+      final String targetFolderName = sourceFolderNameToTarget(sourceFolderName, sourceIndex,
+          targetIndex);
+      if (!targetIndex.containsFolder(targetFolderName)) {
+        foldersToCopy++;
+      }
+      final MessageIdIndex targetMessages = targetIndex.getFolderMessages(targetFolderName);
+      long found = 0L;
+      for (MessageId messageId : sourceIndex.iterateFolderMessages(sourceFolderName)) {
+        if (targetMessages.contains(messageId)) {
+          found++;
+        } else {
+          messagesToCopy++;
+        }
+      }
+      matched.merge(targetFolderName, found, Long::sum);
+    }
+    int foldersToDelete = 0;
+    long messagesToDelete = 0L;
+    for (String targetFolderName : targetIndex.getFolders()) {
+      final String sourceFolderName = targetToSourceFolderName(targetFolderName, sourceIndex,
+          targetIndex);
+      if (!sourceIndex.containsFolder(sourceFolderName)
+          && folderFilter.isIncluded(targetFolderName, targetIndex.getFolderSeparator())) {
+        foldersToDelete++;
+      }
+      messagesToDelete += Math.max(0L, targetIndex.getFolderMessages(targetFolderName).size()
+          - matched.getOrDefault(targetFolderName, 0L));
+    }
+    return new IndexDiff(foldersToCopy, messagesToCopy, foldersToDelete, messagesToDelete);
+  }
+
+  /**
+   * @return source folders missing in the target
+   */
+  public int getFoldersToCopy() {
+    return foldersToCopy;
+  }
+
+  /**
+   * @return source messages missing in their target folder
+   */
+  public long getMessagesToCopy() {
+    return messagesToCopy;
+  }
+
+  /**
+   * @return target folders missing in the source
+   */
+  public int getFoldersToDelete() {
+    return foldersToDelete;
+  }
+
+  /**
+   * @return target messages missing in their source folder
+   */
+  public long getMessagesToDelete() {
+    return messagesToDelete;
+  }
+}
@@ -0,0 +1,288 @@
+/*
+ * IndexSnapshot.java
+ *
+ * Created on 2026-10-18, 23:50
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Compact binary snapshot of the folders of a crawled {@link Index}.
+ *
+ * <p>For each folder the snapshot keeps its UIDVALIDITY, UIDNEXT and message count at crawl time,
+ * the sorted {@link MessageId#getFingerprint()}s of its messages and the UID of the message with
+ * each fingerprint. A later crawl can reuse the folders whose UIDVALIDITY didn't change, only
+ * fetching the headers of the messages appended since. Folder data is loaded as memory-mapped
+ * buffers, so loading doesn't allocate any object per message and the file can be copied as is
+ * to other hosts.
+ *
+ * <p>File layout (big-endian), version 1:
+ * <pre>
+ * int   magic ("MNIX")
+ * int   version
+ * int   header length in bytes
+ * header:
+ *   UTF  folder separator
+ *   int  folder count
+ *   per folder:
+ *     UTF  full name
+ *     long UIDVALIDITY
+ *     long UIDNEXT
+ *     int  message count
+ *     int  entries
+ *     long offset of the folder data from the end of the header
+ * data, per folder:
+ *   long[entries] fingerprints, sorted (ties sorted by UID)
+ *   long[entries] UIDs of the message with the fingerprint at the same position
+ * </pre>
+ */
+public final class IndexSnapshot {
+
+  static final int MAGIC = 0x4D4E4958;
+  static final int VERSION = 1;
+  private static final int PREAMBLE_BYTES = 3 * Integer.BYTES;
+
+  private final String folderSeparator;
+  private final Map<String, FolderSnapshot> folders;
+
+  private IndexSnapshot(String folderSeparator, Map<String, FolderSnapshot> folders) {
+    this.folderSeparator = folderSeparator;
+    this.folders = folders;
+  }
+
+  /**
+   * Maps the provided snapshot file.
+   *
+   * @throws IOException if the file can't be read or isn't a snapshot of a supported version
+   */
+  public static IndexSnapshot load(Path file) throws IOException {
+    final byte[] header;
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not an index snapshot: " + file);
+      }
+      final int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported index snapshot version " + version + ": " + file);
+      }
+      header = new byte[in.readInt()];
+      in.readFully(header);
+    }
+    final long dataStart = PREAMBLE_BYTES + (long) header.length;
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+    final String folderSeparator = in.readUTF();
+    final int folderCount = in.readInt();
+    final Map<String, FolderSnapshot> folders = new HashMap<>();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      for (int it = 0; it < folderCount; it++) {
+        final String name = in.readUTF();
+        final long uidValidity = in.readLong();
+        final long uidNext = in.readLong();
+        final int messageCount = in.readInt();
+        final int entries = in.readInt();
+        final long start = dataStart + in.readLong();
+        final long length = entries * 2L * Long.BYTES;
+        if (start + length > channel.size()) {
+          throw new IOException("Truncated index snapshot: " + file);
+        }
+        // Mapped per folder, the whole file may be larger than a single mapping (2 GB)
+        final ByteBuffer data = channel.map(MapMode.READ_ONLY, start, length);
+        final ByteBuffer uids = data.duplicate();
+        uids.position(entries * Long.BYTES);
+        data.limit(entries * Long.BYTES);
+        folders.put(name, new FolderSnapshot(uidValidity, uidNext, messageCount,
+            data.asLongBuffer(), uids.slice().asLongBuffer()));
+      }
+    }
+    return new IndexSnapshot(folderSeparator.isEmpty() ? null : folderSeparator, folders);
+  }
+
+  /**
+   * Writes the folders of the index crawled with UID tracking (see
+   * {@link StoreCrawler#populateFromStore(Index, jakarta.mail.Store,
+   * java.util.concurrent.ExecutorService, Path)}).
+   *
+   * <p>The file is replaced atomically, so a previous snapshot of the same file mapped by this
+   * or other processes remains valid. The index must not be crawled while it's written.
+   */
+  public static void write(Index index, Path file) throws IOException {
+    final Map<String, FolderUids> folders = new TreeMap<>(index.getFolderUids());
+    final int[] entries = new int[folders.size()];
+    final ByteArrayOutputStream header = new ByteArrayOutputStream();
+    final DataOutputStream headerOut = new DataOutputStream(header);
+    headerOut.writeUTF(index.getFolderSeparator() == null ? "" : index.getFolderSeparator());
+    headerOut.writeInt(folders.size());
+    long offset = 0L;
+    int pos = 0;
+    for (Map.Entry<String, FolderUids> folder : folders.entrySet()) {
+      entries[pos] = folder.getValue().size();
+      headerOut.writeUTF(folder.getKey());
+      headerOut.writeLong(folder.getValue().getUidValidity());
+      headerOut.writeLong(folder.getValue().getUidNext());
+      headerOut.writeInt(folder.getValue().getMessageCount());
+      headerOut.writeInt(entries[pos]);
+      headerOut.writeLong(offset);
+      offset += entries[pos++] * 2L * Long.BYTES;
+    }
+    final Path absoluteFile = file.toAbsolutePath();
+    final Path temp = Files.createTempFile(absoluteFile.getParent(),
+        absoluteFile.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(header.size());
+        header.writeTo(out);
+        pos = 0;
+        for (FolderUids folder : folders.values()) {
+          if (folder.write(out) != entries[pos++]) {
+            throw new IllegalStateException("Index modified while writing its snapshot");
+          }
+        }
+      }
+      Files.move(temp, absoluteFile, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * @return separator of the folders in the snapshot, or null if unknown
+   */
+  public String getFolderSeparator() {
+    return folderSeparator;
+  }
+
+  public Set<String> getFolderNames() {
+    return Collections.unmodifiableSet(folders.keySet());
+  }
+
+  FolderSnapshot getFolder(String folderName) {
+    return folders.get(folderName);
+  }
+
+  /**
+   * Memory-mapped messages of a folder in the snapshot.
+   */
+  static final class FolderSnapshot {
+
+    private final long uidValidity;
+    private final long uidNext;
+    private final int messageCount;
+    private final LongBuffer fingerprints;
+    private final LongBuffer uids;
+
+    FolderSnapshot(long uidValidity, long uidNext, int messageCount, LongBuffer fingerprints,
+        LongBuffer uids) {
+      this.uidValidity = uidValidity;
+      this.uidNext = uidNext;
+      this.messageCount = messageCount;
+      this.fingerprints = fingerprints;
+      this.uids = uids;
+    }
+
+    long getUidValidity() {
+      return uidValidity;
+    }
+
+    long getUidNext() {
+      return uidNext;
+    }
+
+    int getMessageCount() {
+      return messageCount;
+    }
+
+    int size() {
+      return fingerprints.limit();
+    }
+
+    long getFingerprint(int position) {
+      return fingerprints.get(position);
+    }
+
+    long getUid(int position) {
+      return uids.get(position);
+    }
+
+    /**
+     * @param removed positions of the messages expunged from the folder, or null if none
+     * @return true if a message with the fingerprint that wasn't removed is in the snapshot
+     */
+    boolean contains(long fingerprint, BitSet removed) {
+      int low = 0;
+      int high = fingerprints.limit();
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (fingerprints.get(mid) < fingerprint) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      for (int it = low; it < fingerprints.limit() && fingerprints.get(it) == fingerprint; it++) {
+        if (removed == null || !removed.get(it)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * @param currentUids sorted UIDs of the messages currently in the folder
+     * @return positions of the messages no longer in the folder, or null if none was expunged
+     */
+    BitSet removedPositions(long[] currentUids) {
+      BitSet ret = null;
+      for (int it = 0; it < uids.limit(); it++) {
+        if (Arrays.binarySearch(currentUids, uids.get(it)) < 0) {
+          if (ret == null) {
+            ret = new BitSet(uids.limit());
+          }
+          ret.set(it);
+        }
+      }
+      return ret;
+    }
+  }
+}
@@ -24,6 +24,9 @@ import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
 
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -46,12 +49,14 @@ public class MessageId implements Serializable {
             "[A-Z0-9._%+-]+@[A-Z0-9.-]+\\.[A-Z]{2,4}");
     private final String messageIdHeader;
 
-    private final MessageHelper messageHelper;
     private final String[] from;
     private final String[] to;
     private final String subject;
 
     private final Date date;
+    private final long fingerprint;
+    //Lazily computed as String does, 0 if not computed yet (or a zero hash)
+    private transient int hash;
 
     //Method using headers Safer but slower
 
@@ -64,7 +69,7 @@ public class MessageId implements Serializable {
      * It's a pity because fetching all of the HEADERS is a performance HOG
      */
     public MessageId(Message message) throws MessageIdException {
-        messageHelper = new MessageHelper(message);
+        final MessageHelper messageHelper = new MessageHelper(message);
         try {
             final String[] idHeader = message.getHeader(HEADER_MESSAGE_ID);
             String[] subjectHeader= new String[]{messageHelper.getSubject()};
@@ -88,6 +93,7 @@ public class MessageId implements Serializable {
             if (this.messageIdHeader.equals("") && subject.equals("")) {
                 throw new MessageIdException("No good fields for Id", null);
             }
+            this.fingerprint = fingerprint(messageIdHeader, from, to, subject);
 
 
         } catch (MessagingException messagingException) {
@@ -114,6 +120,10 @@ public class MessageId implements Serializable {
             return false;
         }
         MessageId messageId1 = (MessageId) o;
+        //Different fingerprints can't be equal, avoids comparing the address arrays
+        if (fingerprint != messageId1.fingerprint) {
+            return false;
+        }
         return Objects.equals(messageIdHeader, messageId1.messageIdHeader) &&
                 Arrays.equals(from, messageId1.from) &&
                 Arrays.equals(to, messageId1.to) &&
@@ -122,12 +132,53 @@ public class MessageId implements Serializable {
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(messageIdHeader, subject);
-        result = 31 * result + Arrays.hashCode(from);
-        result = 31 * result + Arrays.hashCode(to);
+        int result = hash;
+        if (result == 0) {
+            result = Objects.hash(messageIdHeader, subject);
+            result = 31 * result + Arrays.hashCode(from);
+            result = 31 * result + Arrays.hashCode(to);
+            hash = result;
+        }
         return result;
     }
 
+    /**
+     * 64 bit digest of the fields compared by {@link #equals(Object)}, used to keep large indexes
+     * without retaining the MessageId instances. Collisions are negligible for folders with up to
+     * hundreds of millions of messages.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    private static long fingerprint(String messageIdHeader, String[] from, String[] to,
+        String subject) {
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform is required to support MD5
+            throw new IllegalStateException(ex);
+        }
+        digest.update(messageIdHeader.getBytes(StandardCharsets.UTF_8));
+        for (String[] addresses : new String[][]{from, to}) {
+            digest.update((byte) 0);
+            for (String address : addresses) {
+                digest.update((byte) 1);
+                digest.update(address.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        digest.update((byte) 0);
+        digest.update(subject.getBytes(StandardCharsets.UTF_8));
+        long ret = 0L;
+        final byte[] hash = digest.digest();
+        for (int it = 0; it < Long.BYTES; it++) {
+            ret = (ret << 8) | (hash[it] & 0xFFL);
+        }
+        return ret;
+    }
+
     /**
      * Really important. Different servers return different address values when they are invalid.
      */
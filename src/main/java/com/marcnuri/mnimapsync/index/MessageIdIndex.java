@@ -0,0 +1,42 @@
+/*
+ * MessageIdIndex.java
+ *
+ * Created on 2026-10-18, 23:50
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+/**
+ * Thread-safe membership of the messages of a folder in an {@link Index}.
+ *
+ * <p>Unlike a {@link java.util.Set} it can't be iterated: with an {@link IndexBudget} (or for
+ * folders restored from an {@link IndexSnapshot}) only the fingerprints of the messages are kept.
+ */
+public interface MessageIdIndex {
+
+  /**
+   * @return true if the message wasn't in the folder
+   */
+  boolean add(MessageId messageId);
+
+  boolean contains(MessageId messageId);
+
+  /**
+   * @return number of messages in the folder
+   */
+  int size();
+}
@@ -0,0 +1,114 @@
+/*
+ * MessageLocations.java
+ *
+ * Created on 2026-10-18, 01:00
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Target folder and UID where each message was first appended during a sync, across every folder
+ * of the store.
+ *
+ * <p>Messages that exist in several source folders (e.g. Gmail labels or "All Mail" exports) can
+ * then be copied server side from the first target folder instead of uploading them again.
+ * Locations are kept as a single long per message (folder ordinal and 32 bit UID).
+ */
+public final class MessageLocations {
+
+  private final Map<String, Integer> folderOrdinals;
+  private final List<String> folders;
+  private final Map<Long, Long> locations;
+
+  public MessageLocations() {
+    folderOrdinals = new ConcurrentHashMap<>();
+    folders = new CopyOnWriteArrayList<>();
+    locations = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Records the location of the message unless it was already recorded in another one.
+   *
+   * @param uid of the message in the target folder (IMAP UIDs are 32 bit unsigned integers)
+   */
+  public void add(MessageId messageId, String targetFolder, long uid) {
+    add(messageId.getFingerprint(), targetFolder, uid);
+  }
+
+  /**
+   * Records the location of the message identified by a key other than its
+   * {@link MessageId#getFingerprint()} (e.g. the Gmail X-GM-MSGID).
+   *
+   * @see #add(MessageId, String, long)
+   */
+  public void add(long key, String targetFolder, long uid) {
+    final long ordinal = folderOrdinals.computeIfAbsent(targetFolder, name -> {
+      synchronized (folders) {
+        folders.add(name);
+        return folders.size() - 1;
+      }
+    });
+    locations.putIfAbsent(key, ordinal << 32 | (uid & 0xFFFFFFFFL));
+  }
+
+  /**
+   * @return location of the message in the target store, or null if it wasn't appended yet
+   */
+  public Location get(MessageId messageId) {
+    return get(messageId.getFingerprint());
+  }
+
+  /**
+   * @return location of the message recorded with {@link #add(long, String, long)}, or null if it
+   * wasn't appended yet
+   */
+  public Location get(long key) {
+    final Long location = locations.get(key);
+    if (location == null) {
+      return null;
+    }
+    return new Location(folders.get((int) (location >>> 32)), location & 0xFFFFFFFFL);
+  }
+
+  public int size() {
+    return locations.size();
+  }
+
+  public static final class Location {
+
+    private final String folder;
+    private final long uid;
+
+    Location(String folder, long uid) {
+      this.folder = folder;
+      this.uid = uid;
+    }
+
+    public String getFolder() {
+      return folder;
+    }
+
+    public long getUid() {
+      return uid;
+    }
+  }
+}
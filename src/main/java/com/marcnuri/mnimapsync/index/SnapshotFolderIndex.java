@@ -0,0 +1,62 @@
+/*
+ * SnapshotFolderIndex.java
+ *
+ * Created on 2026-10-18, 23:58
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import com.marcnuri.mnimapsync.index.IndexSnapshot.FolderSnapshot;
+
+import java.util.BitSet;
+
+/**
+ * Messages of a folder in an {@link Index} restored from an {@link IndexSnapshot}.
+ *
+ * <p>Lookups binary search the memory-mapped fingerprints of the snapshot, messages added later
+ * are kept in a regular folder index.
+ */
+final class SnapshotFolderIndex implements MessageIdIndex {
+
+  private final FolderSnapshot snapshot;
+  private final BitSet removed;
+  private final MessageIdIndex added;
+
+  SnapshotFolderIndex(FolderSnapshot snapshot, BitSet removed, MessageIdIndex added) {
+    this.snapshot = snapshot;
+    this.removed = removed;
+    this.added = added;
+  }
+
+  @Override
+  public boolean contains(MessageId messageId) {
+    return snapshot.contains(messageId.getFingerprint(), removed) || added.contains(messageId);
+  }
+
+  @Override
+  public boolean add(MessageId messageId) {
+    return !snapshot.contains(messageId.getFingerprint(), removed) && added.add(messageId);
+  }
+
+  /**
+   * @return number of snapshot entries (including duplicates) plus the messages added later
+   */
+  @Override
+  public int size() {
+    return snapshot.size() - (removed == null ? 0 : removed.cardinality()) + added.size();
+  }
+}
@@ -1,17 +1,31 @@
 package com.marcnuri.mnimapsync.index;
 
 import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.imap.FolderFilter;
+import com.marcnuri.mnimapsync.imap.IMAPUtils;
+import com.marcnuri.mnimapsync.index.IndexSnapshot.FolderSnapshot;
+import com.marcnuri.mnimapsync.jfr.FolderEvent;
+import com.sun.mail.imap.IMAPFolder;
 import jakarta.mail.Folder;
 import jakarta.mail.MessagingException;
 import jakarta.mail.Store;
+import jakarta.mail.search.SearchTerm;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class StoreCrawler {
 
@@ -22,29 +36,129 @@ public class StoreCrawler {
 
   public static Index populateFromStore(Index index, Store store, int threads)
           throws MessagingException, InterruptedException, SQLException {
+    return populateFromStore(index, store, Executors.newFixedThreadPool(threads));
+  }
+
+  /**
+   * @param service executor for the folder batches, shut down once the store is crawled
+   */
+  public static Index populateFromStore(Index index, Store store, ExecutorService service)
+          throws MessagingException, InterruptedException, SQLException {
+    return populateFromStore(index, store, service, null);
+  }
+
+  /**
+   * Crawls the store reusing the folders of a previous {@link IndexSnapshot} whose UIDVALIDITY
+   * didn't change, only the messages appended since are fetched. Once crawled, the snapshot is
+   * replaced with the current state of the index.
+   *
+   * <p>A snapshot that can't be read is ignored (the store is completely crawled), and a failure
+   * to write it doesn't fail the crawl.
+   *
+   * @param service executor for the folder batches, shut down once the store is crawled
+   * @param snapshot file of the index snapshot of this store, or null to crawl every message
+   */
+  public static Index populateFromStore(Index index, Store store, ExecutorService service,
+      Path snapshot) throws MessagingException, InterruptedException, SQLException {
+    return populateFromStore(index, store, service, snapshot, null);
+  }
+
+  /**
+   * @param service executor for the folder batches, shut down once the store is crawled
+   * @param snapshot file of the index snapshot of this store, or null to crawl every message
+   * @param folderFilter folders to crawl, excluded folders aren't opened nor listed, null to
+   * crawl every folder
+   */
+  public static Index populateFromStore(Index index, Store store, ExecutorService service,
+      Path snapshot, FolderFilter folderFilter)
+      throws MessagingException, InterruptedException, SQLException {
+    return populateFromStore(index, store, service, snapshot, folderFilter, null);
+  }
+
+  /**
+   * @param service executor for the folder batches, shut down once the store is crawled
+   * @param snapshot file of the index snapshot of this store, or null to crawl every message
+   * @param folderFilter folders to crawl, excluded folders aren't opened nor listed, null to
+   * crawl every folder
+   * @param messageFilter messages to index (searched server side), or null to index every
+   * message. The snapshot is neither read nor written if messages are filtered
+   */
+  public static Index populateFromStore(Index index, Store store, ExecutorService service,
+      Path snapshot, FolderFilter folderFilter, SearchTerm messageFilter)
+      throws MessagingException, InterruptedException, SQLException {
+    final Path snapshotFile = messageFilter == null ? snapshot : null;
+    final IndexSnapshot previousSnapshot =
+        snapshotFile == null ? null : loadSnapshot(snapshotFile);
     try (Connection connection = DriverManager.getConnection(JDBC_URL)) {
       connection.setAutoCommit(false);
       createTablesIfNotExists(connection);
-      // Populate index from store
-      index.setFolderSeparator(String.valueOf(store.getDefaultFolder().getSeparator()));
-      ExecutorService service = Executors.newFixedThreadPool(threads);
       try {
-        crawlFolders(store, index, store.getDefaultFolder(), service, connection);
+        crawl(index, store, service, connection, snapshotFile != null, previousSnapshot,
+            folderFilter, messageFilter);
       } catch (MessagingException ex) {
         connection.rollback();
         throw ex;
       }
-      service.shutdown();
-      service.awaitTermination(1, TimeUnit.HOURS);
-      if (index.hasCrawlException()) {
-        connection.rollback();
-        throw index.getCrawlExceptions().iterator().next();
-      }
       connection.commit();
     }
+    if (snapshotFile != null) {
+      try {
+        IndexSnapshot.write(index, snapshotFile);
+      } catch (IOException ex) {
+        Logger.getLogger(StoreCrawler.class.getName()).log(Level.WARNING,
+            "Couldn't write index snapshot " + snapshotFile, ex);
+      }
+    }
     return index;
   }
 
+  /**
+   * Crawls the source store in a phase of its own, instead of indexing its messages as they're
+   * copied, so that it can run concurrently with the crawl of the target store (each one with its
+   * own executor). Folders aren't recorded in the database, which is left to the target crawl.
+   *
+   * @param service executor for the folder batches, shut down once the store is crawled
+   * @param folderFilter folders to crawl, null to crawl every folder
+   * @param messageFilter messages to index (searched server side), or null to index every message
+   */
+  public static Index populateFromSourceStore(Index index, Store store, ExecutorService service,
+      FolderFilter folderFilter, SearchTerm messageFilter)
+      throws MessagingException, InterruptedException, SQLException {
+    crawl(index, store, service, null, false, null, folderFilter, messageFilter);
+    return index;
+  }
+
+  /**
+   * @param connection database where the folders are recorded, or null
+   */
+  private static void crawl(Index index, Store store, ExecutorService service,
+      Connection connection, boolean trackUids, IndexSnapshot snapshot,
+      FolderFilter folderFilter, SearchTerm messageFilter)
+      throws MessagingException, InterruptedException, SQLException {
+    // Populate index from store
+    index.setFolderSeparator(String.valueOf(store.getDefaultFolder().getSeparator()));
+    crawlFolders(store, index, store.getDefaultFolder(), service, connection, trackUids, snapshot,
+        folderFilter == null ? new FolderFilter() : folderFilter, messageFilter);
+    service.shutdown();
+    service.awaitTermination(1, TimeUnit.HOURS);
+    if (index.hasCrawlException()) {
+      throw index.getCrawlExceptions().iterator().next();
+    }
+  }
+
+  private static IndexSnapshot loadSnapshot(Path snapshot) {
+    if (!Files.exists(snapshot)) {
+      return null;
+    }
+    try {
+      return IndexSnapshot.load(snapshot);
+    } catch (IOException ex) {
+      Logger.getLogger(StoreCrawler.class.getName()).log(Level.WARNING,
+          "Ignoring index snapshot " + snapshot, ex);
+      return null;
+    }
+  }
+
   private static void createTablesIfNotExists(Connection connection) throws SQLException {
     try (PreparedStatement statement = connection.prepareStatement(
             "CREATE TABLE IF NOT EXISTS folders (name VARCHAR(255) PRIMARY KEY, separator CHAR(1))")) {
@@ -57,41 +171,91 @@ public class StoreCrawler {
   }
 
   private static void crawlFolders(Store store, Index index, Folder folder, ExecutorService service,
-                                   Connection connection) throws MessagingException, SQLException {
-    if (folder != null ) {
+                                   Connection connection, boolean trackUids,
+                                   IndexSnapshot snapshot, FolderFilter folderFilter,
+                                   SearchTerm messageFilter)
+          throws MessagingException, SQLException {
+    if (folder != null
+        && !folderFilter.isExcluded(folder.getFullName(), index.getFolderSeparator())) {
       final String folderName = folder.getFullName();
       if (!index.containsFolder(folderName)){
         index.addFolder(folderName);
-        // Insert folder info into database
-        try (PreparedStatement statement = connection.prepareStatement(
-                "MERGE INTO folders (name, separator) KEY(name) VALUES (?, ?)")) {
-          statement.setString(1, folderName);
-          statement.setString(2, String.valueOf(folder.getSeparator()));
-          statement.executeUpdate();
+        // Insert folder info into database (source crawls have none)
+        if (connection != null) {
+          try (PreparedStatement statement = connection.prepareStatement(
+                  "MERGE INTO folders (name, separator) KEY(name) VALUES (?, ?)")) {
+            statement.setString(1, folderName);
+            statement.setString(2, String.valueOf(folder.getSeparator()));
+            statement.executeUpdate();
+          }
         }
       }
 
-      if ((folder.getType() & Folder.HOLDS_MESSAGES) == Folder.HOLDS_MESSAGES) {
+      if ((folder.getType() & Folder.HOLDS_MESSAGES) == Folder.HOLDS_MESSAGES
+          && folderFilter.isIncluded(folderName, index.getFolderSeparator())) {
+        final FolderEvent event = new FolderEvent();
+        event.begin();
         folder.open(Folder.READ_ONLY);
         if (folder.getMode() != Folder.READ_ONLY) {
           folder.expunge();
         }
-         int messageCount = folder.getMessageCount();
-         folder.close(false);
-        int pos = 1;
-        while (pos + MNIMAPSync.BATCH_SIZE <= messageCount) {
-          service.execute(new FolderCrawler(store, folderName, pos,pos + MNIMAPSync.BATCH_SIZE, index, connection));
-          pos = pos + MNIMAPSync.BATCH_SIZE;
+        final int messageCount = folder.getMessageCount();
+        // Batches of UIDs listed once, they don't shift if the folder is expunged meanwhile
+        final long[] uids;
+        if (trackUids) {
+          uids = trackFolderUids(index, (IMAPFolder) folder, messageCount, snapshot);
+        } else {
+          uids = messageCount == 0 ? new long[0]
+              : IMAPUtils.uidSearch((IMAPFolder) folder, messageFilter);
         }
-        service.execute(new FolderCrawler(store, folderName, pos, messageCount, index, connection));
+        folder.close(false);
+        // Completely restored folders have no batch
+        final List<long[]> uidBatches = IMAPUtils.uidBatches(uids, MNIMAPSync.BATCH_SIZE);
+        for (long[] batch : uidBatches) {
+          service.execute(new FolderCrawler(store, folderName, batch, index, connection));
+        }
+        event.finish(FolderEvent.INDEX, folderName, messageCount, uidBatches.size());
       }
       // Folder recursion. Get all children
       if ((folder.getType() & Folder.HOLDS_FOLDERS) == Folder.HOLDS_FOLDERS) {
         for (Folder child : folder.list()) {
-          crawlFolders(store, index, child, service, connection);
+          crawlFolders(store, index, child, service, connection, trackUids, snapshot,
+              folderFilter, messageFilter);
         }
       }
     }
   }
-}
 
+  /**
+   * Restores the folder messages from the snapshot if its UIDVALIDITY didn't change, masking the
+   * messages expunged since it was taken.
+   *
+   * @param folder open folder
+   * @return sorted UIDs of the messages that must be crawled
+   */
+  private static long[] trackFolderUids(Index index, IMAPFolder folder, int messageCount,
+      IndexSnapshot snapshot) throws MessagingException {
+
+    final String folderName = folder.getFullName();
+    final long uidValidity = folder.getUIDValidity();
+    final long uidNext = folder.getUIDNext();
+    final FolderSnapshot previous = snapshot == null ? null : snapshot.getFolder(folderName);
+    if (previous == null || uidNext <= 0 || previous.getUidNext() <= 0
+        || previous.getUidValidity() != uidValidity) {
+      index.trackFolderUids(folderName, new FolderUids(uidValidity, uidNext, messageCount));
+      return messageCount == 0 ? new long[0] : IMAPUtils.uidSearchAll(folder);
+    }
+    if (previous.getUidNext() == uidNext && previous.getMessageCount() == messageCount) {
+      index.trackFolderUids(folderName,
+          new FolderUids(uidValidity, uidNext, messageCount, previous, null));
+      return new long[0];
+    }
+    final long[] uids = IMAPUtils.uidSearchAll(folder);
+    final BitSet removed = previous.removedPositions(uids);
+    index.trackFolderUids(folderName,
+        new FolderUids(uidValidity, uidNext, messageCount, previous, removed));
+    // New messages are the ones with a UID not lower than the previous UIDNEXT
+    final int firstNew = Arrays.binarySearch(uids, previous.getUidNext());
+    return Arrays.copyOfRange(uids, firstNew < 0 ? -firstNew - 1 : firstNew, uids.length);
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * BatchEvent.java
+ *
+ * Created on 2026-10-18, 15:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.jfr;
+
+import com.marcnuri.mnimapsync.imap.CommandTraffic;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base JFR event for a batch of messages processed by a single worker thread.
+ *
+ * <p>Events are created for every batch, but wire traffic is only measured when the event is
+ * enabled and fields are only populated and committed when {@link #shouldCommit()} is true, so the
+ * cost is negligible when no recording is active.
+ */
+@Category({"mnIMAPSync", "Batch"})
+@StackTrace(false)
+public abstract class BatchEvent extends Event {
+
+  @Label("Folder")
+  public String folder;
+
+  @Label("First Message")
+  public long start;
+
+  @Label("Last Message")
+  public long end;
+
+  @Label("Processed Messages")
+  public long processed;
+
+  @Label("Skipped Messages")
+  public long skipped;
+
+  @Label("Bytes Received")
+  @DataAmount
+  public long bytesIn;
+
+  @Label("Bytes Sent")
+  @DataAmount
+  public long bytesOut;
+
+  @Label("Failed")
+  public boolean failed;
+
+  private transient CommandTraffic traffic;
+
+  /**
+   * Begins timing the batch and, if a recording is interested in the event, counts the bytes
+   * transferred by the IMAP commands the current thread issues until {@link #finish}.
+   */
+  public final void start() {
+    begin();
+    if (isEnabled()) {
+      traffic = CommandTraffic.start();
+    }
+  }
+
+  /**
+   * Ends the batch and commits the event if it passes the recording thresholds.
+   *
+   * <p>Must be invoked from the same thread as {@link #start()}.
+   *
+   * @param start sequence number or UID of the first message of the batch
+   * @param end sequence number or UID of the last message of the batch
+   */
+  public final void finish(String folder, long start, long end, long processed, long skipped,
+      boolean failed) {
+
+    if (traffic != null) {
+      traffic.stop();
+    }
+    end();
+    if (shouldCommit()) {
+      this.folder = folder;
+      this.start = start;
+      this.end = end;
+      this.processed = processed;
+      this.skipped = skipped;
+      this.failed = failed;
+      if (traffic != null) {
+        bytesIn = traffic.getBytesIn();
+        bytesOut = traffic.getBytesOut();
+      }
+      commit();
+    }
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * CopyBatchEvent.java
+ *
+ * Created on 2026-10-18, 15:46
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted for every batch of messages handled by a
+ * {@link com.marcnuri.mnimapsync.store.MessageCopier}.
+ */
+@Name("com.marcnuri.mnimapsync.CopyBatch")
+@Label("Copy Batch")
+@Description("Batch of source messages, processed counts messages appended to the target")
+public class CopyBatchEvent extends BatchEvent {
+
+  @Label("Target Folder")
+  public String targetFolder;
+
+  @Label("Copied Message Size")
+  @Description("Sum of the RFC822 sizes of the copied messages")
+  @DataAmount
+  public long messageBytes;
+}
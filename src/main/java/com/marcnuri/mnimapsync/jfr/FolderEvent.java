@@ -0,0 +1,76 @@
+/*
+ * FolderEvent.java
+ *
+ * Created on 2026-10-18, 15:51
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emitted when a folder is processed in one of the sync phases: time spent creating the folder or
+ * opening it, counting its messages and scheduling its batches. The batches themselves are
+ * reported as {@link BatchEvent}s with the same folder.
+ *
+ * <p>Folders are flagged in a single task, so {@link #FLAG} events span the whole folder: the
+ * source messages compared and the <code>UID STORE</code> commands issued (as batches).
+ */
+@Name("com.marcnuri.mnimapsync.Folder")
+@Label("Folder")
+@Description("Folder processed in a sync phase (index, create, copy, delete or flag)")
+@Category({"mnIMAPSync", "Folder"})
+@StackTrace(false)
+public class FolderEvent extends Event {
+
+  public static final String INDEX = "index";
+  public static final String CREATE = "create";
+  public static final String COPY = "copy";
+  public static final String DELETE = "delete";
+  public static final String FLAG = "flag";
+
+  @Label("Phase")
+  public String phase;
+
+  @Label("Folder")
+  public String folder;
+
+  @Label("Message Count")
+  public int messageCount;
+
+  @Label("Batches")
+  public int batches;
+
+  /**
+   * Ends the folder phase and commits the event if it passes the recording thresholds.
+   */
+  public final void finish(String phase, String folder, int messageCount, int batches) {
+    end();
+    if (shouldCommit()) {
+      this.phase = phase;
+      this.folder = folder;
+      this.messageCount = messageCount;
+      this.batches = batches;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * ImapCommandEvent.java
+ *
+ * Created on 2026-10-18, 15:55
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emitted for every IMAP command round trip issued through an instrumented store.
+ */
+@Name("com.marcnuri.mnimapsync.ImapCommand")
+@Label("IMAP Command")
+@Description("IMAP command sent to a server including the time to read its complete response")
+@Category({"mnIMAPSync", "IMAP"})
+@StackTrace(false)
+public class ImapCommandEvent extends Event {
+
+  @Label("Side")
+  public String side;
+
+  @Label("Host")
+  public String host;
+
+  @Label("Folder")
+  public String folder;
+
+  @Label("Command")
+  public String command;
+
+  @Label("Bytes Received")
+  @DataAmount
+  public long bytesIn;
+
+  @Label("Bytes Sent")
+  @DataAmount
+  public long bytesOut;
+
+  @Label("Failed")
+  public boolean failed;
+}
@@ -0,0 +1,35 @@
+/*
+ * IndexBatchEvent.java
+ *
+ * Created on 2026-10-18, 15:44
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted for every batch of messages indexed by a
+ * {@link com.marcnuri.mnimapsync.index.FolderCrawler}.
+ */
+@Name("com.marcnuri.mnimapsync.IndexBatch")
+@Label("Index Batch")
+@Description("Batch of target messages indexed, processed counts new entries in the index")
+public class IndexBatchEvent extends BatchEvent {
+}
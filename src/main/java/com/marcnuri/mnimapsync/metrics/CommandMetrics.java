@@ -0,0 +1,86 @@
+/*
+ * CommandMetrics.java
+ *
+ * Created on 2026-10-18, 12:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency distribution, traffic and failures for a single type of IMAP command.
+ */
+public class CommandMetrics {
+
+  private final LatencyHistogram latency;
+  private final AtomicLong bytesIn;
+  private final AtomicLong bytesOut;
+  private final AtomicLong failures;
+
+  public CommandMetrics() {
+    latency = new LatencyHistogram();
+    bytesIn = new AtomicLong();
+    bytesOut = new AtomicLong();
+    failures = new AtomicLong();
+  }
+
+  void record(long latencyMicros, long commandBytesIn, long commandBytesOut, boolean failed) {
+    latency.record(latencyMicros);
+    bytesIn.addAndGet(commandBytesIn);
+    bytesOut.addAndGet(commandBytesOut);
+    if (failed) {
+      failures.incrementAndGet();
+    }
+  }
+
+  void add(CommandMetrics other) {
+    latency.add(other.latency);
+    bytesIn.addAndGet(other.getBytesIn());
+    bytesOut.addAndGet(other.getBytesOut());
+    failures.addAndGet(other.getFailures());
+  }
+
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  public long getCount() {
+    return latency.getCount();
+  }
+
+  /**
+   * @return bytes received from the server (on the wire, including TLS overhead)
+   */
+  public long getBytesIn() {
+    return bytesIn.get();
+  }
+
+  /**
+   * @return bytes sent to the server (on the wire, including TLS overhead)
+   */
+  public long getBytesOut() {
+    return bytesOut.get();
+  }
+
+  /**
+   * @return number of commands completed with a NO, BAD or BYE response
+   */
+  public long getFailures() {
+    return failures.get();
+  }
+}
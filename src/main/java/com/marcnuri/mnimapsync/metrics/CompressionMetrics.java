@@ -0,0 +1,102 @@
+/*
+ * CompressionMetrics.java
+ *
+ * Created on 2026-10-18, 02:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traffic of the IMAP connections of a side that negotiated COMPRESS=DEFLATE, both on the wire
+ * and once decompressed.
+ */
+public class CompressionMetrics {
+
+  private final AtomicLong connections;
+  private final AtomicLong wireBytes;
+  private final AtomicLong plainBytes;
+  private volatile double minConnectionRatio;
+  private volatile double maxConnectionRatio;
+
+  public CompressionMetrics() {
+    connections = new AtomicLong();
+    wireBytes = new AtomicLong();
+    plainBytes = new AtomicLong();
+  }
+
+  void connectionStarted() {
+    connections.incrementAndGet();
+  }
+
+  void record(long commandWireBytes, long commandPlainBytes) {
+    wireBytes.addAndGet(commandWireBytes);
+    plainBytes.addAndGet(commandPlainBytes);
+  }
+
+  synchronized void connectionClosed(double ratio) {
+    if (ratio <= 0D) {
+      return;
+    }
+    minConnectionRatio = minConnectionRatio == 0D ? ratio : Math.min(minConnectionRatio, ratio);
+    maxConnectionRatio = Math.max(maxConnectionRatio, ratio);
+  }
+
+  /**
+   * @return number of connections that negotiated compression
+   */
+  public long getConnections() {
+    return connections.get();
+  }
+
+  /**
+   * @return bytes transferred in both directions on the wire (compressed, including TLS overhead)
+   */
+  public long getWireBytes() {
+    return wireBytes.get();
+  }
+
+  /**
+   * @return bytes transferred in both directions once decompressed
+   */
+  public long getPlainBytes() {
+    return plainBytes.get();
+  }
+
+  /**
+   * @return decompressed to wire bytes ratio of every compressed connection, or 0 if unknown
+   */
+  public double getRatio() {
+    final long wire = wireBytes.get();
+    return wire == 0L ? 0D : (double) plainBytes.get() / wire;
+  }
+
+  /**
+   * @return lowest ratio of a closed compressed connection, or 0 if none was closed yet
+   */
+  public double getMinConnectionRatio() {
+    return minConnectionRatio;
+  }
+
+  /**
+   * @return highest ratio of a closed compressed connection, or 0 if none was closed yet
+   */
+  public double getMaxConnectionRatio() {
+    return maxConnectionRatio;
+  }
+}
@@ -0,0 +1,344 @@
+/*
+ * ImapMetrics.java
+ *
+ * Created on 2026-10-18, 12:31
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry of {@link CommandMetrics} for every IMAP command issued during a sync, keyed by side
+ * (source/target), host, folder and command type.
+ */
+public class ImapMetrics {
+
+  public static final String SOURCE = "source";
+  public static final String TARGET = "target";
+  /**
+   * Folder reported for commands that don't operate on a folder (LOGIN, LIST, ...).
+   */
+  public static final String NO_FOLDER = "";
+
+  private static final double[] JSON_PERCENTILES = {50D, 90D, 95D, 99D, 99.9D};
+
+  private final ConcurrentMap<Key, CommandMetrics> commands;
+  private final ConcurrentMap<String, AtomicInteger> openConnections;
+  private final ConcurrentMap<String, CompressionMetrics> compression;
+  private final ConcurrentMap<String, PoolMetrics> pools;
+  private final ConcurrentMap<String, TlsMetrics> tls;
+  private final ConcurrentMap<String, ThrottleMetrics> throttles;
+
+  public ImapMetrics() {
+    commands = new ConcurrentHashMap<>();
+    openConnections = new ConcurrentHashMap<>();
+    compression = new ConcurrentHashMap<>();
+    pools = new ConcurrentHashMap<>();
+    tls = new ConcurrentHashMap<>();
+    throttles = new ConcurrentHashMap<>();
+  }
+
+  public void connectionOpened(String side) {
+    openConnections.computeIfAbsent(side, k -> new AtomicInteger()).incrementAndGet();
+  }
+
+  public void connectionClosed(String side) {
+    openConnections.computeIfAbsent(side, k -> new AtomicInteger()).decrementAndGet();
+  }
+
+  /**
+   * @return number of IMAP connections currently open for each side
+   */
+  public SortedMap<String, Integer> getOpenConnections() {
+    final SortedMap<String, Integer> ret = new TreeMap<>();
+    openConnections.forEach((side, count) -> ret.put(side, count.get()));
+    return ret;
+  }
+
+  /**
+   * @param connections number of connections opened by the warm-up
+   * @param micros time spent opening them
+   */
+  public void poolWarmedUp(String side, int connections, long micros) {
+    pools.computeIfAbsent(side, k -> new PoolMetrics()).warmedUp(connections, micros);
+  }
+
+  /**
+   * Records a connection found broken by a NOOP health check.
+   */
+  public void poolConnectionBroken(String side) {
+    pools.computeIfAbsent(side, k -> new PoolMetrics()).connectionBroken();
+  }
+
+  /**
+   * @return warm-ups and health checks of the connection pools of each side
+   */
+  public SortedMap<String, PoolMetrics> getPools() {
+    return new TreeMap<>(pools);
+  }
+
+  /**
+   * @param micros time from the creation of the TLS socket until the handshake completed
+   * @param resumed true if the handshake resumed a cached session
+   */
+  public void tlsHandshake(String side, long micros, boolean resumed) {
+    tls.computeIfAbsent(side, k -> new TlsMetrics()).handshake(micros, resumed);
+  }
+
+  /**
+   * @return TLS handshakes of the connections of each side
+   */
+  public SortedMap<String, TlsMetrics> getTls() {
+    return new TreeMap<>(tls);
+  }
+
+  /**
+   * Records the outcome of a command issued through an adaptive throttle.
+   *
+   * @param throttled true if the server responded with a throttling response
+   * @param decreased true if the throttle decreased its limits
+   * @param inFlightLimit commands allowed in flight after the command
+   * @param bytesPerSecondLimit bytes per second allowed after the command, or 0 if unlimited
+   */
+  public void throttle(String side, boolean throttled, boolean decreased, int inFlightLimit,
+      long bytesPerSecondLimit) {
+
+    throttles.computeIfAbsent(side, k -> new ThrottleMetrics())
+        .record(throttled, decreased, inFlightLimit, bytesPerSecondLimit);
+  }
+
+  /**
+   * @return throttling responses and limits of each side
+   */
+  public SortedMap<String, ThrottleMetrics> getThrottles() {
+    return new TreeMap<>(throttles);
+  }
+
+  public void compressionStarted(String side) {
+    compression.computeIfAbsent(side, k -> new CompressionMetrics()).connectionStarted();
+  }
+
+  /**
+   * Records the traffic of a command issued through a compressed connection.
+   *
+   * @param wireBytes bytes sent and received on the wire
+   * @param plainBytes bytes sent and received once decompressed
+   */
+  public void recordCompression(String side, long wireBytes, long plainBytes) {
+    compression.computeIfAbsent(side, k -> new CompressionMetrics())
+        .record(wireBytes, plainBytes);
+  }
+
+  /**
+   * @param ratio decompressed to wire bytes ratio of the whole connection
+   */
+  public void compressionClosed(String side, double ratio) {
+    compression.computeIfAbsent(side, k -> new CompressionMetrics()).connectionClosed(ratio);
+  }
+
+  /**
+   * @return traffic of the compressed connections of each side
+   */
+  public SortedMap<String, CompressionMetrics> getCompression() {
+    return new TreeMap<>(compression);
+  }
+
+  public void record(String side, String host, String folder, String command,
+      long latencyMicros, long bytesIn, long bytesOut, boolean failed) {
+
+    commands.computeIfAbsent(new Key(side, host, folder, command), k -> new CommandMetrics())
+        .record(latencyMicros, bytesIn, bytesOut, failed);
+  }
+
+  /**
+   * @return a sorted view of the metrics for every side, host, folder and command
+   */
+  public SortedMap<Key, CommandMetrics> getCommands() {
+    return new TreeMap<>(commands);
+  }
+
+  /**
+   * @return the metrics aggregated by side and command (hosts and folders are merged)
+   */
+  public SortedMap<Key, CommandMetrics> getCommandsBySide() {
+    final SortedMap<Key, CommandMetrics> ret = new TreeMap<>();
+    for (Entry<Key, CommandMetrics> entry : commands.entrySet()) {
+      final Key key = entry.getKey();
+      ret.computeIfAbsent(new Key(key.getSide(), null, NO_FOLDER, key.getCommand()),
+          k -> new CommandMetrics()).add(entry.getValue());
+    }
+    return ret;
+  }
+
+  public void writeJson(Path file) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      writer.write(toJson());
+    }
+  }
+
+  /**
+   * Serializes every recorded entry including the non-empty histogram buckets, so that the
+   * distributions can be reconstructed or merged offline.
+   *
+   * <p>Latencies are expressed in microseconds.
+   */
+  public String toJson() {
+    final StringBuilder json = new StringBuilder();
+    json.append("{\"commands\":[");
+    boolean first = true;
+    for (Entry<Key, CommandMetrics> entry : getCommands().entrySet()) {
+      if (!first) {
+        json.append(',');
+      }
+      first = false;
+      appendJson(json, entry.getKey(), entry.getValue());
+    }
+    json.append("]}\n");
+    return json.toString();
+  }
+
+  private static void appendJson(StringBuilder json, Key key, CommandMetrics metrics) {
+    final LatencyHistogram latency = metrics.getLatency();
+    json.append("{\"side\":").append(quote(key.getSide()))
+        .append(",\"host\":").append(quote(key.getHost()))
+        .append(",\"folder\":").append(quote(key.getFolder()))
+        .append(",\"command\":").append(quote(key.getCommand()))
+        .append(",\"count\":").append(metrics.getCount())
+        .append(",\"failures\":").append(metrics.getFailures())
+        .append(",\"bytesIn\":").append(metrics.getBytesIn())
+        .append(",\"bytesOut\":").append(metrics.getBytesOut())
+        .append(",\"latencyMicros\":{\"min\":").append(latency.getMin())
+        .append(",\"mean\":").append(String.format(Locale.ENGLISH, "%.1f", latency.getMean()))
+        .append(",\"max\":").append(latency.getMax());
+    for (double percentile : JSON_PERCENTILES) {
+      json.append(",\"p").append(percentileLabel(percentile)).append("\":")
+          .append(latency.getValueAtPercentile(percentile));
+    }
+    json.append(",\"buckets\":[");
+    boolean first = true;
+    for (int it = 0; it < LatencyHistogram.BUCKET_COUNT; it++) {
+      final long bucketCount = latency.getBucketCount(it);
+      if (bucketCount > 0) {
+        if (!first) {
+          json.append(',');
+        }
+        first = false;
+        json.append('[').append(LatencyHistogram.bucketUpperBound(it)).append(',')
+            .append(bucketCount).append(']');
+      }
+    }
+    json.append("]}}");
+  }
+
+  private static String percentileLabel(double percentile) {
+    return percentile == Math.rint(percentile) ? String.valueOf((long) percentile)
+        : String.valueOf(percentile).replace(".", "");
+  }
+
+  private static String quote(String value) {
+    final StringBuilder ret = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        ret.append('\\').append(c);
+      } else if (c < 0x20) {
+        ret.append(String.format("\\u%04x", (int) c));
+      } else {
+        ret.append(c);
+      }
+    }
+    return ret.append('"').toString();
+  }
+
+  /**
+   * Identifies a single entry in the registry.
+   */
+  public static final class Key implements Comparable<Key> {
+
+    private static final Comparator<Key> ORDER = Comparator.comparing(Key::getSide)
+        .thenComparing(Key::getHost).thenComparing(Key::getFolder).thenComparing(Key::getCommand);
+
+    private final String side;
+    private final String host;
+    private final String folder;
+    private final String command;
+
+    public Key(String side, String host, String folder, String command) {
+      this.side = side == null ? "" : side;
+      this.host = host == null ? "" : host;
+      this.folder = folder == null ? NO_FOLDER : folder;
+      this.command = command;
+    }
+
+    public String getSide() {
+      return side;
+    }
+
+    public String getHost() {
+      return host;
+    }
+
+    public String getFolder() {
+      return folder;
+    }
+
+    public String getCommand() {
+      return command;
+    }
+
+    @Override
+    public int compareTo(Key o) {
+      return ORDER.compare(this, o);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      final Key key = (Key) o;
+      return side.equals(key.side) && host.equals(key.host) && folder.equals(key.folder)
+          && command.equals(key.command);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(side, host, folder, command);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s/%s/%s/%s", side, host, folder, command);
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * LatencyHistogram.java
+ *
+ * Created on 2026-10-18, 12:05
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Lock-free latency histogram with log-linear buckets (HdrHistogram style).
+ *
+ * <p>Values (microseconds) below 32 are recorded exactly. Larger values are grouped in 16 linear
+ * sub-buckets per power of two, so every recorded value is accurate to within ~6% regardless of
+ * its magnitude. Values are tracked up to ~19 hours, larger values are clamped.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+  private static final int MAX_MAGNITUDE = 36;
+  static final long MAX_VALUE = (1L << MAX_MAGNITUDE) - 1;
+  static final int BUCKET_COUNT =
+      SUB_BUCKET_COUNT + (MAX_MAGNITUDE - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
+
+  private final AtomicLongArray counts;
+  private final AtomicLong count;
+  private final AtomicLong total;
+  private final LongAccumulator min;
+  private final LongAccumulator max;
+
+  public LatencyHistogram() {
+    counts = new AtomicLongArray(BUCKET_COUNT);
+    count = new AtomicLong();
+    total = new AtomicLong();
+    min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    max = new LongAccumulator(Math::max, 0L);
+  }
+
+  /**
+   * Records a single latency value.
+   *
+   * @param valueMicros latency in microseconds, negative values are recorded as 0
+   */
+  public void record(long valueMicros) {
+    final long value = Math.min(Math.max(valueMicros, 0L), MAX_VALUE);
+    counts.incrementAndGet(bucketIndex(value));
+    count.incrementAndGet();
+    total.addAndGet(value);
+    min.accumulate(value);
+    max.accumulate(value);
+  }
+
+  /**
+   * Adds all of the values recorded in the provided histogram to this one.
+   */
+  public void add(LatencyHistogram other) {
+    for (int it = 0; it < BUCKET_COUNT; it++) {
+      final long bucketCount = other.counts.get(it);
+      if (bucketCount > 0) {
+        counts.addAndGet(it, bucketCount);
+      }
+    }
+    if (other.getCount() > 0) {
+      count.addAndGet(other.getCount());
+      total.addAndGet(other.getTotal());
+      min.accumulate(other.getMin());
+      max.accumulate(other.getMax());
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * @return sum of all the recorded values in microseconds
+   */
+  public long getTotal() {
+    return total.get();
+  }
+
+  public long getMin() {
+    return getCount() == 0 ? 0L : min.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    final long currentCount = getCount();
+    return currentCount == 0 ? 0D : getTotal() / (double) currentCount;
+  }
+
+  /**
+   * Returns the highest value (upper bound of its bucket) below which the provided percentage of
+   * recorded values fall.
+   *
+   * @param percentile in the range [0, 100]
+   * @return latency in microseconds
+   */
+  public long getValueAtPercentile(double percentile) {
+    final long currentCount = getCount();
+    if (currentCount == 0) {
+      return 0L;
+    }
+    final double clamped = Math.min(Math.max(percentile, 0D), 100D);
+    final long rank = Math.max(1L, (long) Math.ceil(clamped / 100D * currentCount));
+    long accumulated = 0;
+    for (int it = 0; it < BUCKET_COUNT; it++) {
+      accumulated += counts.get(it);
+      if (accumulated >= rank) {
+        return Math.min(bucketUpperBound(it), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  long getBucketCount(int index) {
+    return counts.get(index);
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    final int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+    final int subBucket = (int) (value >>> shift);
+    return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT
+        + (subBucket - SUB_BUCKET_HALF_COUNT);
+  }
+
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+    final long subBucket =
+        (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + (long) SUB_BUCKET_HALF_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
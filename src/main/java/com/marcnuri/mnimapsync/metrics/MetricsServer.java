@@ -0,0 +1,95 @@
+/*
+ * MetricsServer.java
+ *
+ * Created on 2026-10-18, 15:02
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.metrics;
+
+import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.marcnuri.mnimapsync.metrics.OpenMetricsReport.getMetricsAsText;
+
+/**
+ * Embedded HTTP server exposing {@link OpenMetricsReport} at {@value #PATH} so that long running
+ * syncs can be scraped by Prometheus.
+ */
+public class MetricsServer implements Closeable {
+
+  public static final String PATH = "/metrics";
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+
+  private MetricsServer(HttpServer server, ExecutorService executor) {
+    this.server = server;
+    this.executor = executor;
+  }
+
+  /**
+   * Starts listening on all of the interfaces in the provided port.
+   */
+  public static MetricsServer start(MNIMAPSync syncInstance, int port) throws IOException {
+    final HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+    final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+      final Thread thread = new Thread(r, "mnimapsync-metrics");
+      thread.setDaemon(true);
+      return thread;
+    });
+    server.setExecutor(executor);
+    server.createContext(PATH, exchange -> handle(exchange, syncInstance));
+    server.start();
+    return new MetricsServer(server, executor);
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private static void handle(HttpExchange exchange, MNIMAPSync syncInstance) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      final byte[] body = getMetricsAsText(syncInstance).getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", OpenMetricsReport.CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(body);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
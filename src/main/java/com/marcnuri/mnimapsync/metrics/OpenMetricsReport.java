@@ -0,0 +1,353 @@
+/*
+ * OpenMetricsReport.java
+ *
+ * Created on 2026-10-18, 14:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.metrics;
+
+import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.MNIMAPSync.Phase;
+import com.marcnuri.mnimapsync.index.Index;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics.Key;
+import com.marcnuri.mnimapsync.store.StoreCopier;
+import com.marcnuri.mnimapsync.store.StoreDeleter;
+import com.marcnuri.mnimapsync.store.StoreFlagger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+
+/**
+ * Renders the progress of a {@link MNIMAPSync} instance in the
+ * <a href="https://openmetrics.io">OpenMetrics</a> text format.
+ *
+ * <p>IMAP command metrics are aggregated by side and command (not by folder) to keep the number of
+ * series bounded, the full breakdown is available through {@link ImapMetrics#toJson()}.
+ */
+public class OpenMetricsReport {
+
+  public static final String CONTENT_TYPE =
+      "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+  private static final String PREFIX = "mnimapsync_";
+  private static final double[] QUANTILES = {0.5D, 0.9D, 0.99D};
+  private static final double MICROS_PER_SECOND = 1_000_000D;
+
+  private OpenMetricsReport() {
+  }
+
+  public static String getMetricsAsText(MNIMAPSync syncInstance) {
+    final StringBuilder out = new StringBuilder();
+    appendPhases(out, syncInstance);
+    appendIndex(out, syncInstance.getTargetIndex());
+    appendCopier(out, syncInstance.getSourceCopier());
+    appendDeleter(out, syncInstance.getTargetDeleter());
+    appendFlagger(out, syncInstance.getTargetFlagger());
+    appendImap(out, syncInstance.getImapMetrics());
+    appendHeap(out);
+    out.append("# EOF\n");
+    return out.toString();
+  }
+
+  private static void appendPhases(StringBuilder out, MNIMAPSync syncInstance) {
+    header(out, "phase", "stateset", "Current stage of the sync");
+    for (Phase phase : Phase.values()) {
+      sample(out, "phase", "mnimapsync_phase=\"" + phase + "\"",
+          phase == syncInstance.getPhase() ? 1 : 0);
+    }
+    header(out, "phase_duration_seconds", "gauge", "Time spent in each stage of the sync");
+    for (Phase phase : Phase.values()) {
+      if (phase != Phase.IDLE && phase != Phase.FINISHED) {
+        sample(out, "phase_duration_seconds", label("phase", phase.name()),
+            syncInstance.getPhaseElapsedTimeInMillis(phase) / 1000D);
+      }
+    }
+    header(out, "phase_messages_per_second", "gauge",
+        "Average messages processed per second in each stage of the sync");
+    phaseRate(out, syncInstance, Phase.INDEXING, indexedMessages(syncInstance.getTargetIndex()));
+    final StoreCopier copier = syncInstance.getSourceCopier();
+    phaseRate(out, syncInstance, Phase.COPYING, copier == null ? 0L
+        : copier.getMessagesCopiedCount() + copier.getMessagesSkippedCount());
+    final StoreDeleter deleter = syncInstance.getTargetDeleter();
+    phaseRate(out, syncInstance, Phase.DELETING, deleter == null ? 0L
+        : deleter.getMessagesDeletedCount() + deleter.getMessagesSkippedCount());
+    final StoreFlagger flagger = syncInstance.getTargetFlagger();
+    phaseRate(out, syncInstance, Phase.FLAGGING, flagger == null ? 0L
+        : flagger.getMessagesFlaggedCount() + flagger.getMessagesSkippedCount());
+  }
+
+  private static void phaseRate(StringBuilder out, MNIMAPSync syncInstance, Phase phase,
+      long messages) {
+
+    final long elapsedMillis = syncInstance.getPhaseElapsedTimeInMillis(phase);
+    sample(out, "phase_messages_per_second", label("phase", phase.name()),
+        elapsedMillis == 0 ? 0D : messages * 1000D / elapsedMillis);
+  }
+
+  private static void appendIndex(StringBuilder out, Index targetIndex) {
+    header(out, "index_messages", "counter", "Messages indexed in the target store");
+    sample(out, "index_messages_total", label("result", "indexed"),
+        targetIndex == null ? 0 : targetIndex.getIndexedMessageCount());
+    sample(out, "index_messages_total", label("result", "skipped"),
+        targetIndex == null ? 0 : targetIndex.getSkippedMessageCount());
+    header(out, "index_errors", "counter", "Errors while crawling the target store");
+    sample(out, "index_errors_total", "",
+        targetIndex == null ? 0 : targetIndex.getCrawlExceptions().size());
+  }
+
+  private static void appendCopier(StringBuilder out, StoreCopier copier) {
+    header(out, "copy_folders", "counter", "Folders processed while copying");
+    sample(out, "copy_folders_total", label("result", "copied"),
+        copier == null ? 0 : copier.getFoldersCopiedCount());
+    sample(out, "copy_folders_total", label("result", "skipped"),
+        copier == null ? 0 : copier.getFoldersSkippedCount());
+    header(out, "copy_messages", "counter", "Messages processed while copying");
+    sample(out, "copy_messages_total", label("result", "copied"),
+        copier == null ? 0 : copier.getMessagesCopiedCount());
+    sample(out, "copy_messages_total", label("result", "skipped"),
+        copier == null ? 0 : copier.getMessagesSkippedCount());
+    sample(out, "copy_messages_total", label("result", "quarantined"),
+        copier == null ? 0 : copier.getQuarantinedMessages().size());
+    header(out, "copy_errors", "counter", "Errors while copying messages");
+    sample(out, "copy_errors_total", "", copier == null ? 0 : copier.getCopyExceptions().size());
+    header(out, "copy_batches_retried", "counter",
+        "Message batch attempts retried after a transient failure");
+    sample(out, "copy_batches_retried_total", "",
+        copier == null ? 0 : copier.getBatchesRetriedCount());
+    header(out, "copy_server_side_messages", "counter",
+        "Copied messages copied server side from another target folder instead of appended");
+    sample(out, "copy_server_side_messages_total", "",
+        copier == null ? 0 : copier.getMessagesCopiedServerSideCount());
+    header(out, "copy_batches", "gauge", "Message batches pending to be copied");
+    sample(out, "copy_batches", label("state", "queued"),
+        copier == null ? 0 : copier.getQueuedBatchCount());
+    sample(out, "copy_batches", label("state", "active"),
+        copier == null ? 0 : copier.getActiveBatchCount());
+  }
+
+  private static void appendDeleter(StringBuilder out, StoreDeleter deleter) {
+    header(out, "delete_folders", "counter", "Folders deleted from the target store");
+    sample(out, "delete_folders_total", label("result", "deleted"),
+        deleter == null ? 0 : deleter.getFoldersDeletedCount());
+    sample(out, "delete_folders_total", label("result", "skipped"),
+        deleter == null ? 0 : deleter.getFoldersSkippedCount());
+    header(out, "delete_messages", "counter", "Messages processed while deleting");
+    sample(out, "delete_messages_total", label("result", "deleted"),
+        deleter == null ? 0 : deleter.getMessagesDeletedCount());
+    sample(out, "delete_messages_total", label("result", "skipped"),
+        deleter == null ? 0 : deleter.getMessagesSkippedCount());
+    header(out, "delete_batches", "gauge", "Message batches pending to be deleted");
+    sample(out, "delete_batches", label("state", "queued"),
+        deleter == null ? 0 : deleter.getQueuedBatchCount());
+    sample(out, "delete_batches", label("state", "active"),
+        deleter == null ? 0 : deleter.getActiveBatchCount());
+  }
+
+  private static void appendFlagger(StringBuilder out, StoreFlagger flagger) {
+    header(out, "flag_messages", "counter", "Messages processed while syncing flags");
+    sample(out, "flag_messages_total", label("result", "flagged"),
+        flagger == null ? 0 : flagger.getMessagesFlaggedCount());
+    sample(out, "flag_messages_total", label("result", "skipped"),
+        flagger == null ? 0 : flagger.getMessagesSkippedCount());
+    header(out, "flag_store_commands", "counter", "UID STORE commands issued while syncing flags");
+    sample(out, "flag_store_commands_total", "",
+        flagger == null ? 0 : flagger.getStoreCommandCount());
+  }
+
+  private static void appendImap(StringBuilder out, ImapMetrics imapMetrics) {
+    if (imapMetrics == null) {
+      return;
+    }
+    header(out, "imap_open_connections", "gauge", "IMAP connections currently open");
+    for (Entry<String, Integer> entry : imapMetrics.getOpenConnections().entrySet()) {
+      sample(out, "imap_open_connections", label("side", entry.getKey()), entry.getValue());
+    }
+    final SortedMap<Key, CommandMetrics> commands = imapMetrics.getCommandsBySide();
+    header(out, "imap_command_latency_seconds", "summary", "IMAP command latency");
+    for (Entry<Key, CommandMetrics> entry : commands.entrySet()) {
+      final LatencyHistogram latency = entry.getValue().getLatency();
+      for (double quantile : QUANTILES) {
+        sample(out, "imap_command_latency_seconds",
+            commandLabels(entry.getKey()) + "," + label("quantile", String.valueOf(quantile)),
+            latency.getValueAtPercentile(quantile * 100D) / MICROS_PER_SECOND);
+      }
+      sample(out, "imap_command_latency_seconds_sum", commandLabels(entry.getKey()),
+          latency.getTotal() / MICROS_PER_SECOND);
+      sample(out, "imap_command_latency_seconds_count", commandLabels(entry.getKey()),
+          latency.getCount());
+    }
+    header(out, "imap_command_failures", "counter",
+        "IMAP commands completed with a NO, BAD or BYE response");
+    for (Entry<Key, CommandMetrics> entry : commands.entrySet()) {
+      sample(out, "imap_command_failures_total", commandLabels(entry.getKey()),
+          entry.getValue().getFailures());
+    }
+    header(out, "imap_received_bytes", "counter", "Bytes received from IMAP servers");
+    for (Entry<Key, CommandMetrics> entry : commands.entrySet()) {
+      sample(out, "imap_received_bytes_total", commandLabels(entry.getKey()),
+          entry.getValue().getBytesIn());
+    }
+    header(out, "imap_sent_bytes", "counter", "Bytes sent to IMAP servers");
+    for (Entry<Key, CommandMetrics> entry : commands.entrySet()) {
+      sample(out, "imap_sent_bytes_total", commandLabels(entry.getKey()),
+          entry.getValue().getBytesOut());
+    }
+    appendPools(out, imapMetrics.getPools());
+    appendTls(out, imapMetrics.getTls());
+    appendThrottles(out, imapMetrics.getThrottles());
+    final SortedMap<String, CompressionMetrics> compression = imapMetrics.getCompression();
+    if (compression.isEmpty()) {
+      return;
+    }
+    header(out, "imap_compressed_connections", "counter",
+        "IMAP connections that negotiated COMPRESS=DEFLATE");
+    for (Entry<String, CompressionMetrics> entry : compression.entrySet()) {
+      sample(out, "imap_compressed_connections_total", label("side", entry.getKey()),
+          entry.getValue().getConnections());
+    }
+    header(out, "imap_compression_ratio", "gauge",
+        "Decompressed to wire bytes ratio of compressed IMAP connections");
+    for (Entry<String, CompressionMetrics> entry : compression.entrySet()) {
+      final String side = label("side", entry.getKey());
+      sample(out, "imap_compression_ratio", side + "," + label("connection", "all"),
+          entry.getValue().getRatio());
+      sample(out, "imap_compression_ratio", side + "," + label("connection", "min"),
+          entry.getValue().getMinConnectionRatio());
+      sample(out, "imap_compression_ratio", side + "," + label("connection", "max"),
+          entry.getValue().getMaxConnectionRatio());
+    }
+  }
+
+  private static void appendPools(StringBuilder out, SortedMap<String, PoolMetrics> pools) {
+    if (pools.isEmpty()) {
+      return;
+    }
+    header(out, "imap_pool_warmed_up_connections", "counter",
+        "IMAP connections opened in parallel before the first batch");
+    for (Entry<String, PoolMetrics> entry : pools.entrySet()) {
+      sample(out, "imap_pool_warmed_up_connections_total", label("side", entry.getKey()),
+          entry.getValue().getWarmedUpConnections());
+    }
+    header(out, "imap_pool_warm_up_seconds", "summary", "Time spent warming up IMAP pools");
+    for (Entry<String, PoolMetrics> entry : pools.entrySet()) {
+      sample(out, "imap_pool_warm_up_seconds_sum", label("side", entry.getKey()),
+          entry.getValue().getWarmUpMicros() / MICROS_PER_SECOND);
+      sample(out, "imap_pool_warm_up_seconds_count", label("side", entry.getKey()),
+          entry.getValue().getWarmUps());
+    }
+    header(out, "imap_pool_broken_connections", "counter",
+        "IMAP connections found broken by a NOOP health check and replaced");
+    for (Entry<String, PoolMetrics> entry : pools.entrySet()) {
+      sample(out, "imap_pool_broken_connections_total", label("side", entry.getKey()),
+          entry.getValue().getBrokenConnections());
+    }
+  }
+
+  private static void appendTls(StringBuilder out, SortedMap<String, TlsMetrics> tls) {
+    if (tls.isEmpty()) {
+      return;
+    }
+    header(out, "imap_tls_handshake_seconds", "summary", "IMAP TLS handshake time");
+    for (Entry<String, TlsMetrics> entry : tls.entrySet()) {
+      final String full = label("side", entry.getKey()) + "," + label("resumed", "false");
+      final String resumed = label("side", entry.getKey()) + "," + label("resumed", "true");
+      sample(out, "imap_tls_handshake_seconds_sum", full,
+          entry.getValue().getFullHandshakeMicros() / MICROS_PER_SECOND);
+      sample(out, "imap_tls_handshake_seconds_count", full,
+          entry.getValue().getFullHandshakes());
+      sample(out, "imap_tls_handshake_seconds_sum", resumed,
+          entry.getValue().getResumedHandshakeMicros() / MICROS_PER_SECOND);
+      sample(out, "imap_tls_handshake_seconds_count", resumed,
+          entry.getValue().getResumedHandshakes());
+    }
+  }
+
+  private static void appendThrottles(StringBuilder out,
+      SortedMap<String, ThrottleMetrics> throttles) {
+
+    if (throttles.isEmpty()) {
+      return;
+    }
+    header(out, "imap_throttled_responses", "counter",
+        "IMAP commands the server responded with a throttling response or BYE");
+    for (Entry<String, ThrottleMetrics> entry : throttles.entrySet()) {
+      sample(out, "imap_throttled_responses_total", label("side", entry.getKey()),
+          entry.getValue().getThrottledResponses());
+    }
+    header(out, "imap_throttle_decreases", "counter",
+        "Times the adaptive throttle halved the IMAP commands in flight");
+    for (Entry<String, ThrottleMetrics> entry : throttles.entrySet()) {
+      sample(out, "imap_throttle_decreases_total", label("side", entry.getKey()),
+          entry.getValue().getDecreases());
+    }
+    header(out, "imap_throttle_in_flight_limit", "gauge",
+        "IMAP commands allowed in flight by the adaptive throttle");
+    for (Entry<String, ThrottleMetrics> entry : throttles.entrySet()) {
+      sample(out, "imap_throttle_in_flight_limit", label("side", entry.getKey()),
+          entry.getValue().getInFlightLimit());
+    }
+    header(out, "imap_throttle_bytes_per_second_limit", "gauge",
+        "Bytes per second allowed by the adaptive throttle (0 if unlimited)");
+    for (Entry<String, ThrottleMetrics> entry : throttles.entrySet()) {
+      sample(out, "imap_throttle_bytes_per_second_limit", label("side", entry.getKey()),
+          entry.getValue().getBytesPerSecondLimit());
+    }
+  }
+
+  private static String commandLabels(Key key) {
+    return label("side", key.getSide()) + "," + label("command", key.getCommand());
+  }
+
+  private static void appendHeap(StringBuilder out) {
+    final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    header(out, "jvm_heap_bytes", "gauge", "JVM heap memory");
+    sample(out, "jvm_heap_bytes", label("area", "used"), heap.getUsed());
+    sample(out, "jvm_heap_bytes", label("area", "committed"), heap.getCommitted());
+    sample(out, "jvm_heap_bytes", label("area", "max"), heap.getMax());
+  }
+
+  private static long indexedMessages(Index index) {
+    return index == null ? 0L : index.getIndexedMessageCount() + index.getSkippedMessageCount();
+  }
+
+  private static void header(StringBuilder out, String family, String type, String help) {
+    out.append("# TYPE ").append(PREFIX).append(family).append(' ').append(type).append('\n');
+    out.append("# HELP ").append(PREFIX).append(family).append(' ').append(help).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, String labels, double value) {
+    out.append(PREFIX).append(name);
+    if (!labels.isEmpty()) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ');
+    if (value == Math.rint(value) && !Double.isInfinite(value)) {
+      out.append((long) value);
+    } else {
+      out.append(String.format(Locale.ENGLISH, "%.6f", value));
+    }
+    out.append('\n');
+  }
+
+  private static String label(String name, String value) {
+    return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"")
+        .replace("\n", "\\n") + '"';
+  }
+}
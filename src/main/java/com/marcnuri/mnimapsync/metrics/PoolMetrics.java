@@ -0,0 +1,73 @@
+/*
+ * PoolMetrics.java
+ *
+ * Created on 2026-10-18, 02:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Warm-ups and health checks of the IMAP connection pools of a side.
+ */
+public class PoolMetrics {
+
+  private final AtomicLong warmUps;
+  private final AtomicLong warmUpMicros;
+  private final AtomicLong warmedUpConnections;
+  private final AtomicLong brokenConnections;
+
+  public PoolMetrics() {
+    warmUps = new AtomicLong();
+    warmUpMicros = new AtomicLong();
+    warmedUpConnections = new AtomicLong();
+    brokenConnections = new AtomicLong();
+  }
+
+  void warmedUp(int connections, long micros) {
+    warmUps.incrementAndGet();
+    warmUpMicros.addAndGet(micros);
+    warmedUpConnections.addAndGet(connections);
+  }
+
+  void connectionBroken() {
+    brokenConnections.incrementAndGet();
+  }
+
+  public long getWarmUps() {
+    return warmUps.get();
+  }
+
+  /**
+   * @return time spent opening the connections of every warm-up
+   */
+  public long getWarmUpMicros() {
+    return warmUpMicros.get();
+  }
+
+  public long getWarmedUpConnections() {
+    return warmedUpConnections.get();
+  }
+
+  /**
+   * @return number of connections found broken by a NOOP health check (and replaced)
+   */
+  public long getBrokenConnections() {
+    return brokenConnections.get();
+  }
+}
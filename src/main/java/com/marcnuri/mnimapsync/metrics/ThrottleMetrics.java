@@ -0,0 +1,82 @@
+/*
+ * ThrottleMetrics.java
+ *
+ * Created on 2026-10-18, 05:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.metrics;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throttling responses and limits of the adaptive throttle of the hosts of a side.
+ */
+public class ThrottleMetrics {
+
+  private final AtomicLong throttledResponses;
+  private final AtomicLong decreases;
+  private volatile int inFlightLimit;
+  private volatile long bytesPerSecondLimit;
+
+  public ThrottleMetrics() {
+    throttledResponses = new AtomicLong();
+    decreases = new AtomicLong();
+  }
+
+  void record(boolean throttled, boolean decreased, int currentInFlightLimit,
+      long currentBytesPerSecondLimit) {
+
+    if (throttled) {
+      throttledResponses.incrementAndGet();
+    }
+    if (decreased) {
+      decreases.incrementAndGet();
+    }
+    inFlightLimit = currentInFlightLimit;
+    bytesPerSecondLimit = currentBytesPerSecondLimit;
+  }
+
+  /**
+   * @return number of commands the server responded with a throttling response (or BYE)
+   */
+  public long getThrottledResponses() {
+    return throttledResponses.get();
+  }
+
+  /**
+   * @return number of times the limits were decreased, because of throttling responses or slow
+   * commands
+   */
+  public long getDecreases() {
+    return decreases.get();
+  }
+
+  /**
+   * @return commands allowed in flight after the last command
+   */
+  public int getInFlightLimit() {
+    return inFlightLimit;
+  }
+
+  /**
+   * @return bytes per second allowed after the last command, or 0 if unlimited
+   */
+  public long getBytesPerSecondLimit() {
+    return bytesPerSecondLimit;
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * TlsMetrics.java
+ *
+ * Created on 2026-10-18, 03:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TLS handshakes of the IMAP connections of a side, full and resumed.
+ */
+public class TlsMetrics {
+
+  private final AtomicLong fullHandshakes;
+  private final AtomicLong fullHandshakeMicros;
+  private final AtomicLong resumedHandshakes;
+  private final AtomicLong resumedHandshakeMicros;
+
+  public TlsMetrics() {
+    fullHandshakes = new AtomicLong();
+    fullHandshakeMicros = new AtomicLong();
+    resumedHandshakes = new AtomicLong();
+    resumedHandshakeMicros = new AtomicLong();
+  }
+
+  void handshake(long micros, boolean resumed) {
+    if (resumed) {
+      resumedHandshakes.incrementAndGet();
+      resumedHandshakeMicros.addAndGet(micros);
+    } else {
+      fullHandshakes.incrementAndGet();
+      fullHandshakeMicros.addAndGet(micros);
+    }
+  }
+
+  public long getFullHandshakes() {
+    return fullHandshakes.get();
+  }
+
+  public long getFullHandshakeMicros() {
+    return fullHandshakeMicros.get();
+  }
+
+  /**
+   * @return number of handshakes that resumed a cached session
+   */
+  public long getResumedHandshakes() {
+    return resumedHandshakes.get();
+  }
+
+  public long getResumedHandshakeMicros() {
+    return resumedHandshakeMicros.get();
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * GmailLabels.java
+ *
+ * Created on 2026-10-18, 01:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import com.marcnuri.mnimapsync.imap.IMAPUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps the labels of Gmail messages (X-GM-LABELS) to the source folders that expose them.
+ *
+ * <p>Every message of a Gmail account but the ones in the trash and spam is in the "All Mail"
+ * folder, the rest of the folders (inbox, sent, drafts, starred, important and user labels) are
+ * views of the messages with a label. Messages are identified by their labels when copying "All
+ * Mail", so that the label folders don't need to be crawled.
+ */
+final class GmailLabels {
+
+  static final String ALL_MAIL_ATTRIBUTE = "\\All";
+  static final String DEFAULT_ALL_MAIL_FOLDER = "[Gmail]/All Mail";
+  // RFC 6154 special-use attributes
+  private static final Set<String> SPECIAL_USE_ATTRIBUTES = new HashSet<>(Arrays.asList(
+      "\\All", "\\Archive", "\\Drafts", "\\Flagged", "\\Important", "\\Junk", "\\Sent",
+      "\\Trash"));
+  private static final Map<String, String> SYSTEM_LABEL_ATTRIBUTES = new HashMap<>();
+
+  static {
+    SYSTEM_LABEL_ATTRIBUTES.put("\\Draft", "\\Drafts");
+    SYSTEM_LABEL_ATTRIBUTES.put("\\Important", "\\Important");
+    SYSTEM_LABEL_ATTRIBUTES.put("\\Sent", "\\Sent");
+    SYSTEM_LABEL_ATTRIBUTES.put("\\Starred", "\\Flagged");
+  }
+
+  private final String allMailFolder;
+  private final Map<String, String> systemLabelFolders;
+  private final Set<String> labelFolders;
+
+  private GmailLabels(String allMailFolder, Map<String, String> systemLabelFolders,
+      Set<String> labelFolders) {
+    this.allMailFolder = allMailFolder;
+    this.systemLabelFolders = systemLabelFolders;
+    this.labelFolders = labelFolders;
+  }
+
+  /**
+   * @param folderAttributes LIST attributes of every folder of the source store by full name
+   */
+  static GmailLabels fromFolders(Map<String, String[]> folderAttributes) {
+    String allMailFolder = DEFAULT_ALL_MAIL_FOLDER;
+    final Map<String, String> systemLabelFolders = new HashMap<>();
+    final Set<String> labelFolders = new HashSet<>();
+    for (Map.Entry<String, String[]> folder : folderAttributes.entrySet()) {
+      final List<String> attributes = Arrays.asList(folder.getValue());
+      if (attributes.contains(ALL_MAIL_ATTRIBUTE)) {
+        allMailFolder = folder.getKey();
+      } else if (folder.getKey().equalsIgnoreCase(IMAPUtils.INBOX_MAILBOX)) {
+        systemLabelFolders.put("\\Inbox", folder.getKey());
+        labelFolders.add(folder.getKey());
+      } else if (!attributes.contains("\\Noselect")) {
+        boolean specialUse = false;
+        for (String attribute : attributes) {
+          if (SPECIAL_USE_ATTRIBUTES.contains(attribute)) {
+            specialUse = true;
+            for (Map.Entry<String, String> systemLabel : SYSTEM_LABEL_ATTRIBUTES.entrySet()) {
+              if (systemLabel.getValue().equals(attribute)) {
+                systemLabelFolders.put(systemLabel.getKey(), folder.getKey());
+                labelFolders.add(folder.getKey());
+              }
+            }
+          }
+        }
+        if (!specialUse) {
+          labelFolders.add(folder.getKey());
+        }
+      }
+    }
+    labelFolders.remove(allMailFolder);
+    return new GmailLabels(allMailFolder, systemLabelFolders, labelFolders);
+  }
+
+  String getAllMailFolder() {
+    return allMailFolder;
+  }
+
+  /**
+   * @return true if the messages of the folder are copied along with the "All Mail" ones (the
+   * trash, spam and "All Mail" folders aren't label folders)
+   */
+  boolean isLabelFolder(String folderName) {
+    return labelFolders.contains(folderName);
+  }
+
+  /**
+   * @param labels decoded X-GM-LABELS of a message
+   * @return full names of the source folders where the message is
+   */
+  List<String> toFolders(String[] labels) {
+    final List<String> ret = new ArrayList<>(labels.length);
+    for (String label : labels) {
+      final String folder = label.startsWith("\\") ? systemLabelFolders.get(label) : label;
+      if (folder != null && labelFolders.contains(folder) && !ret.contains(folder)) {
+        ret.add(folder);
+      }
+    }
+    return ret;
+  }
+}
@@ -16,39 +16,91 @@
  */
 package com.marcnuri.mnimapsync.store;
 
+import com.marcnuri.mnimapsync.imap.GmailItems;
+import com.marcnuri.mnimapsync.imap.IMAPUtils;
 import com.marcnuri.mnimapsync.index.Index;
 import com.marcnuri.mnimapsync.index.MessageId;
+import com.marcnuri.mnimapsync.index.MessageIdIndex;
+import com.marcnuri.mnimapsync.index.MessageLocations;
+import com.marcnuri.mnimapsync.jfr.CopyBatchEvent;
+import com.sun.mail.imap.AppendUID;
 import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPMessage;
 import jakarta.mail.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.sourceFolderNameToTarget;
+
 /**
  *
  * @author Marc Nuri <marc@marcnuri.com>
  */
 public final class MessageCopier implements Runnable {
 
+    private static final int UPDATE_COUNT = 20;
+
     private final StoreCopier storeCopier;
     private final String sourceFolderName;
     private final String targetFolderName;
-    private final int start;
-    private final int end;
-    private final Set<MessageId> targetFolderMessages;
+    //Sequence numbers, or UIDs, of the first and last messages of the batch
+    private final long start;
+    private final long end;
+    //UIDs of the messages of the batch, or null if the batch is a sequence number range
+    private final long[] uids;
+    private final MessageIdIndex targetFolderMessages;
+    //Messages copied by this batch, already in the target if the batch is retried
+    private final Set<MessageId> copiedIds;
+    private long copied;
+    private long copiedTotal;
+    private long copiedBytes;
+    private long skipped;
 
     public MessageCopier(StoreCopier storeCopier, String sourceFolderName, String targetFolderName,
-            int start, int end, Set<MessageId> targetFolderMessages) {
+            int start, int end, MessageIdIndex targetFolderMessages) {
+        this(storeCopier, sourceFolderName, targetFolderName, start, end, null,
+            targetFolderMessages);
+    }
+
+    /**
+     * Batch of the source messages with the provided UIDs (sorted), unlike sequence numbers they
+     * don't shift if messages are expunged from the source folder while it's copied, so the batch
+     * can be retried or run in parallel with any other batch of the folder.
+     */
+    public MessageCopier(StoreCopier storeCopier, String sourceFolderName, String targetFolderName,
+            long[] uids, MessageIdIndex targetFolderMessages) {
+        this(storeCopier, sourceFolderName, targetFolderName,
+            uids.length == 0 ? 0L : uids[0], uids.length == 0 ? 0L : uids[uids.length - 1], uids,
+            targetFolderMessages);
+    }
+
+    private MessageCopier(StoreCopier storeCopier, String sourceFolderName,
+            String targetFolderName, long start, long end, long[] uids,
+            MessageIdIndex targetFolderMessages) {
         this.storeCopier = storeCopier;
         this.sourceFolderName = sourceFolderName;
         this.targetFolderName = targetFolderName;
         this.start = start;
         this.end = end;
+        this.uids = uids;
         this.targetFolderMessages = targetFolderMessages;
+        copiedIds = new HashSet<>();
+    }
+
+    String getSourceFolderName() {
+        return sourceFolderName;
+    }
+
+    long getStart() {
+        return start;
     }
 
     private static String getMessageId(Message message) throws MessagingException {
@@ -59,78 +111,365 @@ public final class MessageCopier implements Runnable {
             return null; // Message-ID header not found
         }
     }
+
+    private static String getMessageIdQuietly(Message message) {
+        try {
+            return getMessageId(message);
+        } catch (MessagingException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Fetches the items of the source messages, failures are attributed to the messages.
+     */
+    private static void fetch(Folder sourceFolder, Message[] messages, FetchProfile profile)
+        throws MessageFailure {
+
+        try {
+            sourceFolder.fetch(messages, profile);
+        } catch (MessagingException ex) {
+            throw new MessageFailure(
+                messages.length == 1 ? getMessageIdQuietly(messages[0]) : null, ex);
+        }
+    }
     public void run() {
-        final int updateCount = 20;
-        long copied = 0L, skipped = 0L;
+        boolean failed = false;
+        final CopyBatchEvent event = new CopyBatchEvent();
+        event.start();
         try {
-            final Folder sourceFolder = storeCopier.getSourceStore().getFolder(sourceFolderName);
-            //Opens a new connection per Thread
-            //Manage Servers with public/read only folders.
+            if (uids == null) {
+                copyRange((int) start, (int) end);
+            } else {
+                //Positions of the UIDs, so that the batch can be split in halves
+                copyRange(1, uids.length);
+            }
+        } catch (MessagingException messagingException) {
+            failed = true;
+            storeCopier.getCopyExceptions().add(messagingException);
+            Logger.getLogger(Index.class.getName()).log(Level.SEVERE, null,
+                    messagingException);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failed = true;
+            storeCopier.getCopyExceptions().add(new MessagingException(String.format(
+                "Copy of %s interrupted", sourceFolderName), ex));
+        } finally {
+            event.targetFolder = targetFolderName;
+            event.messageBytes = copiedBytes;
+            event.finish(sourceFolderName, start, end, copiedTotal, skipped, failed);
+        }
+        storeCopier.updatedMessagesCopiedCount(copied);
+        storeCopier.updateMessagesSkippedCount(skipped);
+        if (storeCopier.getSourceIndex() != null) {
+            //Quick way to update count (not precise)
+            storeCopier.getSourceIndex().updatedIndexedMessageCount(copied + skipped);
+        }
+    }
+
+    /**
+     * Copies the messages in the range retrying transient failures, the range is split in halves
+     * when a message fails until the failing message is found and quarantined.
+     *
+     * @throws MessagingException if the folders can't be opened or the retries are exhausted
+     */
+    private void copyRange(int from, int to) throws MessagingException, InterruptedException {
+        final RetryPolicy retryPolicy = storeCopier.getRetryPolicy();
+        for (int attempt = 0; ; attempt++) {
             try {
-                sourceFolder.open(Folder.READ_WRITE);
-            } catch (ReadOnlyFolderException ex) {
-                sourceFolder.open(Folder.READ_ONLY);
+                copyMessages(from, to);
+                return;
+            } catch (MessagingException ex) {
+                final boolean transientFailure = RetryPolicy.isTransient(ex);
+                if (transientFailure && attempt < retryPolicy.getMaxRetries()) {
+                    Logger.getLogger(MessageCopier.class.getName()).log(Level.FINE, String.format(
+                        "Retrying %s %d-%d after transient failure", sourceFolderName, from, to),
+                        ex);
+                    storeCopier.incrementBatchesRetriedCount();
+                    Thread.sleep(retryPolicy.backoffMillis(attempt));
+                } else if (transientFailure || !(ex instanceof MessageFailure)) {
+                    throw ex;
+                } else if (from < to) {
+                    final int middle = (from + to) >>> 1;
+                    copyRange(from, middle);
+                    copyRange(middle + 1, to);
+                    return;
+                } else {
+                    final QuarantinedMessage quarantined = new QuarantinedMessage(
+                        sourceFolderName, uids == null ? from : 0,
+                        uids == null ? 0L : uids[from - 1], ((MessageFailure) ex).messageId,
+                        String.valueOf(ex.getNextException().getMessage()));
+                    storeCopier.quarantine(quarantined);
+                    Logger.getLogger(MessageCopier.class.getName()).log(Level.WARNING,
+                        "Message quarantined: " + quarantined, ex.getNextException());
+                    return;
+                }
             }
-            final Message[] sourceMessages = sourceFolder.getMessages(start, end);
-            sourceFolder.fetch(sourceMessages, MessageId.addHeaders(new FetchProfile()));
+        }
+    }
 
-            final List<Message> toCopy = new ArrayList<>();
-                    for (Message message : sourceMessages) {
+    private void copyMessages(int from, int to) throws MessagingException {
+        if (uids != null && from > to) {
+            //Empty batch
+            return;
+        }
+        final Folder sourceFolder = storeCopier.getSourceStore().getFolder(sourceFolderName);
+        //Opens a new connection per Thread
+        //Manage Servers with public/read only folders.
+        try {
+            sourceFolder.open(Folder.READ_WRITE);
+        } catch (ReadOnlyFolderException ex) {
+            sourceFolder.open(Folder.READ_ONLY);
+        }
+        try {
+            final Message[] sourceMessages = uids == null ? sourceFolder.getMessages(from, to)
+                : getMessagesByUid((UIDFolder) sourceFolder, from, to);
+            final GmailLabels gmailLabels = storeCopier.getGmailLabels();
+            final boolean allMail = gmailLabels != null
+                && sourceFolderName.equals(gmailLabels.getAllMailFolder());
+            final FetchProfile idProfile = MessageId.addHeaders(new FetchProfile());
+            if (allMail) {
+                idProfile.add(GmailItems.MESSAGE_ID);
+                idProfile.add(GmailItems.LABELS);
+            }
+            fetch(sourceFolder, sourceMessages, idProfile);
+
+            final TargetBatch batch = new TargetBatch(targetFolderName, targetFolderMessages);
+            //Only counted once the messages are copied, retries would count them again
+            long batchSkipped = 0L;
+            //Messages of the "All Mail" batch to be copied to their label folders
+            final Map<String, TargetBatch> labelBatches = new LinkedHashMap<>();
+            for (Message message : sourceMessages) {
                 try {
                     final MessageId id = new MessageId(message);
-                    //Index message for deletion (if necessary)
-                    if (storeCopier.getSourceIndex() != null) {
-                        storeCopier.getSourceIndex().getFolderMessages(sourceFolderName).add(id);
-                    }
+                    final long key = allMail ? GmailItems.getMessageId((IMAPMessage) message)
+                        : id.getFingerprint();
+                    indexSourceMessage(sourceFolderName, id);
                     if (!targetFolderMessages.contains(id)) {
                         ((IMAPMessage) message).setPeek(true);
-                        toCopy.add(message);
-                    } else {
-                        skipped++;
+                        batch.add(message, id, key);
+                    } else if (!copiedIds.contains(id)) {
+                        //Counted once per source message, labels already in the target aren't
+                        batchSkipped++;
+                    }
+                    if (allMail) {
+                        for (String labelFolder : gmailLabels.toFolders(
+                            GmailItems.getLabels((IMAPMessage) message))) {
+                            if (!storeCopier.isFolderSelected(labelFolder)) {
+                                continue;
+                            }
+                            indexSourceMessage(labelFolder, id);
+                            final String labelTargetFolder = sourceFolderNameToTarget(labelFolder,
+                                storeCopier.getSourceIndex(), storeCopier.getTargetIndex());
+                            final MessageIdIndex labelTargetMessages = storeCopier
+                                .getTargetIndex().getFolderMessages(labelTargetFolder);
+                            if (!labelTargetMessages.contains(id)) {
+                                ((IMAPMessage) message).setPeek(true);
+                                labelBatches.computeIfAbsent(labelTargetFolder,
+                                    k -> new TargetBatch(k, labelTargetMessages))
+                                    .add(message, id, key);
+                            }
+                        }
                     }
                 } catch (MessageId.MessageIdException ex) {
                     //Usually messages that ran into this exception are spammy, so we skip them.
-                    skipped++;
+                    batchSkipped++;
                 }
             }
-            if (!toCopy.isEmpty()) {
-                final FetchProfile fullProfile = MessageId.addHeaders(new FetchProfile());
-                fullProfile.add(FetchProfile.Item.CONTENT_INFO);
-                fullProfile.add(FetchProfile.Item.FLAGS);
-                fullProfile.add(IMAPFolder.FetchProfileItem.HEADERS);
-                fullProfile.add(FetchProfile.Item.SIZE);
-                sourceFolder.fetch(toCopy.toArray(new Message[0]), fullProfile);
-                final Folder targetFolder = storeCopier.getTargetStore().getFolder(targetFolderName);
-                targetFolder.open(Folder.READ_WRITE);
-                System.out.println(String.format("Copy to this folder: %s start=%d, end=%d, total=%d", targetFolderName,start, end,toCopy.size()));
-                for (Message message : toCopy) {
+            copy(sourceFolder, batch);
+            for (TargetBatch labelBatch : labelBatches.values()) {
+                copy(sourceFolder, labelBatch);
+            }
+            skipped += batchSkipped;
+        } finally {
+            closeQuietly(sourceFolder);
+        }
+    }
+
+    /**
+     * Fetches the messages with the UIDs at the provided positions of {@link #uids} with a
+     * single <code>UID FETCH</code> (contiguous UIDs are sent as ranges).
+     *
+     * @return the messages, except the ones expunged after they were searched
+     */
+    private Message[] getMessagesByUid(UIDFolder sourceFolder, int from, int to)
+        throws MessagingException {
+
+        final List<Message> ret = new ArrayList<>();
+        for (Message message : sourceFolder.getMessagesByUID(
+            Arrays.copyOfRange(uids, from - 1, to))) {
+            if (message != null) {
+                ret.add(message);
+            }
+        }
+        return ret.toArray(new Message[0]);
+    }
+
+    private static void closeQuietly(Folder folder) {
+        if (folder.isOpen()) {
+            try {
+                folder.close(false);
+            } catch (MessagingException ex) {
+                //The connection is broken, it's discarded from the pool
+                Logger.getLogger(MessageCopier.class.getName()).log(Level.FINE, null, ex);
+            }
+        }
+    }
+
+    private void indexSourceMessage(String folderName, MessageId id) {
+        //Index message for deletion (if necessary)
+        if (storeCopier.getSourceIndex() != null && storeCopier.isIndexSourceMessages()) {
+            storeCopier.getSourceIndex().getFolderMessages(folderName).add(id);
+        }
+    }
+
+    /**
+     * Copies the messages of the batch to its target folder, server side if they were already
+     * appended to another target folder.
+     */
+    private void copy(Folder sourceFolder, TargetBatch batch) throws MessagingException {
+        final MessageLocations locations = storeCopier.getMessageLocations();
+        if (locations != null && !batch.messages.isEmpty()) {
+            final long copiedServerSide = copyServerSide(locations, batch);
+            copied += copiedServerSide;
+            copiedTotal += copiedServerSide;
+            storeCopier.updateMessagesCopiedServerSideCount(copiedServerSide);
+        }
+        if (batch.messages.isEmpty()) {
+            return;
+        }
+        final FetchProfile fullProfile = MessageId.addHeaders(new FetchProfile());
+        fullProfile.add(FetchProfile.Item.CONTENT_INFO);
+        fullProfile.add(FetchProfile.Item.FLAGS);
+        fullProfile.add(IMAPFolder.FetchProfileItem.HEADERS);
+        fullProfile.add(FetchProfile.Item.SIZE);
+        fetch(sourceFolder, batch.messages.toArray(new Message[0]), fullProfile);
+        final Folder targetFolder = storeCopier.getTargetStore().getFolder(batch.targetFolderName);
+        targetFolder.open(Folder.READ_WRITE);
+        System.out.println(String.format("Copy to this folder: %s start=%d, end=%d, total=%d",
+            batch.targetFolderName, start, end, batch.messages.size()));
+        for (int it = 0; it < batch.messages.size(); it++) {
+            final Message message = batch.messages.get(it);
+            AppendUID[] appendUids = null;
+            try {
+                if (locations == null) {
                     targetFolder.appendMessages(new Message[]{message});
-                    try {
-                        targetFolderMessages.add(new MessageId(message));
-                        copied++;
-                        if (copied % updateCount == 0) {
-                            storeCopier.updatedMessagesCopiedCount(copied);
-                            copied = 0L;
-                        }
-                    } catch (MessageId.MessageIdException ex) {
-                        //No exception should be thrown because id was generated previously and worked
-                        Logger.getLogger(StoreCopier.class.getName()).
-                                log(Level.SEVERE, null, ex);
-                    }
+                } else {
+                    appendUids = ((IMAPFolder) targetFolder)
+                        .appendUIDMessages(new Message[]{message});
                 }
-                targetFolder.close(false);
+                copiedBytes += Math.max(message.getSize(), 0);
+            } catch (MessagingException ex) {
+                closeQuietly(targetFolder);
+                throw new MessageFailure(getMessageIdQuietly(message), ex);
+            }
+            copiedTotal++;
+            copiedIds.add(batch.ids.get(it));
+            batch.targetMessages.add(batch.ids.get(it));
+            //Null if the server doesn't support UIDPLUS
+            if (appendUids != null && appendUids[0] != null) {
+                locations.add(batch.keys.get(it), batch.targetFolderName, appendUids[0].uid);
+            }
+            copied++;
+            if (copied % UPDATE_COUNT == 0) {
+                storeCopier.updatedMessagesCopiedCount(copied);
+                copied = 0L;
             }
-            sourceFolder.close(false);
-        } catch (MessagingException messagingException) {
-            storeCopier.getCopyExceptions().add(messagingException);
-            Logger.getLogger(Index.class.getName()).log(Level.SEVERE, null,
-                    messagingException);
         }
-        storeCopier.updatedMessagesCopiedCount(copied);
-        storeCopier.updateMessagesSkippedCount(skipped);
-        if (storeCopier.getSourceIndex() != null) {
-            //Quick way to update count (not precise)
-            storeCopier.getSourceIndex().updatedIndexedMessageCount(copied + skipped);
+        targetFolder.close(false);
+    }
+
+    /**
+     * Copies the messages already appended to other target folders with server side UID COPY
+     * commands (one per folder), removing them from the provided batch. Messages of a folder
+     * that can't be copied are kept in the batch to be appended.
+     *
+     * @return number of messages copied
+     */
+    private long copyServerSide(MessageLocations locations, TargetBatch batch) {
+        final Map<String, List<Integer>> positionsByFolder = new LinkedHashMap<>();
+        final Map<String, List<Long>> uidsByFolder = new LinkedHashMap<>();
+        for (int it = 0; it < batch.keys.size(); it++) {
+            final MessageLocations.Location location = locations.get(batch.keys.get(it));
+            if (location != null && !location.getFolder().equals(batch.targetFolderName)) {
+                positionsByFolder.computeIfAbsent(location.getFolder(), k -> new ArrayList<>())
+                    .add(it);
+                uidsByFolder.computeIfAbsent(location.getFolder(), k -> new ArrayList<>())
+                    .add(location.getUid());
+            }
+        }
+        final Set<Integer> copiedPositions = new HashSet<>();
+        for (Map.Entry<String, List<Long>> folderUids : uidsByFolder.entrySet()) {
+            final long[] uids = folderUids.getValue().stream().mapToLong(Long::longValue).toArray();
+            try {
+                final IMAPFolder locationFolder = (IMAPFolder) storeCopier.getTargetStore()
+                    .getFolder(folderUids.getKey());
+                locationFolder.open(Folder.READ_ONLY);
+                try {
+                    IMAPUtils.uidCopy(locationFolder, uids, batch.targetFolderName);
+                } finally {
+                    locationFolder.close(false);
+                }
+                copiedPositions.addAll(positionsByFolder.get(folderUids.getKey()));
+            } catch (MessagingException ex) {
+                Logger.getLogger(StoreCopier.class.getName()).log(Level.FINE,
+                    "Server side copy failed, messages will be appended", ex);
+            }
+        }
+        for (int it = batch.messages.size() - 1; it >= 0; it--) {
+            if (copiedPositions.contains(it)) {
+                final MessageId id = batch.ids.remove(it);
+                //Not counted as skipped if the batch is retried
+                copiedIds.add(id);
+                batch.targetMessages.add(id);
+                batch.messages.remove(it);
+                batch.keys.remove(it);
+            }
+        }
+        return copiedPositions.size();
+    }
+
+    /**
+     * Failure caused by the messages of the batch rather than by the folders, the batch can be
+     * split to find the failing message.
+     */
+    private static final class MessageFailure extends MessagingException {
+
+        private static final long serialVersionUID = 1L;
+
+        //Message-ID of the failing message if known
+        private final transient String messageId;
+
+        private MessageFailure(String messageId, MessagingException cause) {
+            super(cause.getMessage(), cause);
+            this.messageId = messageId;
+        }
+    }
+
+    /**
+     * Messages of the source batch missing in a target folder.
+     */
+    private static final class TargetBatch {
+
+        private final String targetFolderName;
+        private final MessageIdIndex targetMessages;
+        private final List<Message> messages;
+        private final List<MessageId> ids;
+        //Keys of the messages in the MessageLocations
+        private final List<Long> keys;
+
+        private TargetBatch(String targetFolderName, MessageIdIndex targetMessages) {
+            this.targetFolderName = targetFolderName;
+            this.targetMessages = targetMessages;
+            messages = new ArrayList<>();
+            ids = new ArrayList<>();
+            keys = new ArrayList<>();
+        }
+
+        private void add(Message message, MessageId id, long key) {
+            messages.add(message);
+            ids.add(id);
+            keys.add(key);
         }
     }
 }
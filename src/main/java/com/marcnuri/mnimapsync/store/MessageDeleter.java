@@ -18,9 +18,15 @@ package com.marcnuri.mnimapsync.store;
 
 import com.marcnuri.mnimapsync.index.Index;
 import com.marcnuri.mnimapsync.index.MessageId;
+import com.marcnuri.mnimapsync.index.MessageIdIndex;
+import com.marcnuri.mnimapsync.jfr.DeleteBatchEvent;
+import com.sun.mail.imap.IMAPFolder;
 import jakarta.mail.*;
 
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,18 +38,43 @@ public final class MessageDeleter implements Runnable {
 
     private final StoreDeleter storeDeleter;
     private final String targetFolderName;
-    private final int start;
-    private final int end;
+    //Sequence numbers, or UIDs, of the first and last messages of the batch
+    private final long start;
+    private final long end;
+    //UIDs of the messages of the batch, or null if the batch is a sequence number range
+    private final long[] uids;
     private final boolean expunge;
-    private final Set<MessageId> sourceFolderMessages;
+    private final MessageIdIndex sourceFolderMessages;
 
     public MessageDeleter(StoreDeleter storeDeleter,
             String targetFolderName, int start, int end, boolean expunge,
-            Set<MessageId> sourceFolderMessages) {
+            MessageIdIndex sourceFolderMessages) {
+        this(storeDeleter, targetFolderName, start, end, null, expunge, sourceFolderMessages);
+    }
+
+    /**
+     * Batch of the target messages with the provided UIDs (sorted), unlike sequence numbers they
+     * don't shift if messages are expunged from the target folder while it's processed.
+     *
+     * <p>Batches run in parallel, so each batch that expunges removes the messages it deleted
+     * itself (UID EXPUNGE of its own messages if the server supports UIDPLUS, else expunging the
+     * folder once they're flagged).
+     */
+    public MessageDeleter(StoreDeleter storeDeleter,
+            String targetFolderName, long[] uids, boolean expunge,
+            MessageIdIndex sourceFolderMessages) {
+        this(storeDeleter, targetFolderName, uids.length == 0 ? 0L : uids[0],
+            uids.length == 0 ? 0L : uids[uids.length - 1], uids, expunge, sourceFolderMessages);
+    }
+
+    private MessageDeleter(StoreDeleter storeDeleter,
+            String targetFolderName, long start, long end, long[] uids, boolean expunge,
+            MessageIdIndex sourceFolderMessages) {
         this.storeDeleter = storeDeleter;
         this.targetFolderName = targetFolderName;
         this.start = start;
         this.end = end;
+        this.uids = uids;
         this.expunge = expunge;
         this.sourceFolderMessages = sourceFolderMessages;
     }
@@ -51,17 +82,32 @@ public final class MessageDeleter implements Runnable {
     public void run() {
         long deleted = 0L;
         long skipped = 0L;
+        boolean failed = true;
+        final DeleteBatchEvent event = new DeleteBatchEvent();
+        event.start();
         try {
             final Folder targetFolder = storeDeleter.getTargetStore().getFolder(targetFolderName);
             //Opens a new connection per Thread
             targetFolder.open(Folder.READ_WRITE);
-            final Message[] targetMessages = targetFolder.getMessages(start, end);
-            targetFolder.fetch(targetMessages, MessageId.addHeaders(new FetchProfile()));
+            final List<Message> deletedMessages = new ArrayList<>();
+            final Message[] targetMessages;
+            if (uids == null) {
+                targetMessages = targetFolder.getMessages((int) start, (int) end);
+            } else {
+                targetMessages = ((UIDFolder) targetFolder).getMessagesByUID(uids);
+            }
+            targetFolder.fetch(Arrays.stream(targetMessages).filter(Objects::nonNull)
+                .toArray(Message[]::new), MessageId.addHeaders(new FetchProfile()));
             for (Message message : targetMessages) {
+                if (message == null) {
+                    //Expunged after it was searched
+                    continue;
+                }
                 try {
                     final MessageId id = new MessageId(message);
                     if (!sourceFolderMessages.contains(id)) {
                         message.setFlag(Flags.Flag.DELETED, true);
+                        deletedMessages.add(message);
                         deleted++;
                     } else {
                         skipped++;
@@ -77,11 +123,18 @@ public final class MessageDeleter implements Runnable {
             //Expunge only if folder is read write
             if (targetFolder.getMode() == Folder.READ_ONLY) {
                 targetFolder.close(false);
+            } else if (expunge && uids != null && !deletedMessages.isEmpty()
+                && storeDeleter.getTargetStore().hasCapability("UIDPLUS")) {
+                ((IMAPFolder) targetFolder).expunge(deletedMessages.toArray(new Message[0]));
+                targetFolder.close(false);
             } else {
                 targetFolder.close(expunge);
             }
+            failed = false;
         } catch (MessagingException messagingException) {
             Logger.getLogger(Index.class.getName()).log(Level.SEVERE, null, messagingException);
+        } finally {
+            event.finish(targetFolderName, start, end, deleted, skipped, failed);
         }
         storeDeleter.updatedMessagesDeletedCount(deleted);
         storeDeleter.updateMessagesSkippedCount(skipped);
@@ -0,0 +1,139 @@
+/*
+ * MessageFilter.java
+ *
+ * Created on 2026-10-18, 09:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import jakarta.mail.search.AndTerm;
+import jakarta.mail.search.ComparisonTerm;
+import jakarta.mail.search.ReceivedDateTerm;
+import jakarta.mail.search.SearchTerm;
+import jakarta.mail.search.SizeTerm;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Date range (INTERNALDATE) and size of the source messages to copy, evaluated server side with
+ * <code>UID SEARCH SINCE/BEFORE/LARGER/SMALLER</code> so that the rest are never fetched.
+ */
+public final class MessageFilter implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private Date since;
+  private Date before;
+  private long minSize;
+  private long maxSize;
+
+  /**
+   * @return messages received on or after this day are copied, or null if unbounded
+   */
+  public Date getSince() {
+    return since;
+  }
+
+  public void setSince(Date since) {
+    this.since = since;
+  }
+
+  /**
+   * @return messages received before this day are copied, or null if unbounded
+   */
+  public Date getBefore() {
+    return before;
+  }
+
+  public void setBefore(Date before) {
+    this.before = before;
+  }
+
+  /**
+   * @return minimum size in bytes of the copied messages, or 0 if unbounded
+   */
+  public long getMinSize() {
+    return minSize;
+  }
+
+  public void setMinSize(long minSize) {
+    this.minSize = minSize;
+  }
+
+  /**
+   * @return maximum size in bytes of the copied messages, or 0 if unbounded
+   */
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  public void setMaxSize(long maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  public boolean isEmpty() {
+    return since == null && before == null && minSize <= 0L && maxSize <= 0L;
+  }
+
+  /**
+   * @return term matching the messages to copy, or null if every message is copied
+   */
+  public SearchTerm toSearchTerm() {
+    final List<SearchTerm> terms = new ArrayList<>();
+    if (since != null) {
+      terms.add(new ReceivedDateTerm(ComparisonTerm.GE, since));
+    }
+    if (before != null) {
+      terms.add(new ReceivedDateTerm(ComparisonTerm.LT, before));
+    }
+    // IMAP only supports strict size comparisons (LARGER/SMALLER)
+    if (minSize > 0L) {
+      terms.add(new SizeTerm(ComparisonTerm.GT, (int) Math.min(Integer.MAX_VALUE, minSize - 1)));
+    }
+    if (maxSize > 0L) {
+      terms.add(new SizeTerm(ComparisonTerm.LT, (int) Math.min(Integer.MAX_VALUE, maxSize + 1)));
+    }
+    if (terms.isEmpty()) {
+      return null;
+    }
+    return terms.size() == 1 ? terms.get(0) : new AndTerm(terms.toArray(new SearchTerm[0]));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    MessageFilter that = (MessageFilter) o;
+    return minSize == that.minSize &&
+        maxSize == that.maxSize &&
+        Objects.equals(since, that.since) &&
+        Objects.equals(before, that.before);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(since, before, minSize, maxSize);
+  }
+}
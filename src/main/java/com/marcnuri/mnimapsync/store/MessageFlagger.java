@@ -0,0 +1,221 @@
+/*
+ * MessageFlagger.java
+ *
+ * Created on 2026-10-18, 21:55
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.index.MessageId;
+import com.marcnuri.mnimapsync.jfr.FolderEvent;
+import com.sun.mail.imap.IMAPFolder;
+import jakarta.mail.FetchProfile;
+import jakarta.mail.Flags;
+import jakarta.mail.Folder;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.UIDFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.isValidKeyword;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.uidBatches;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.uidSearchAll;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.uidStore;
+
+/**
+ * Makes the flags of the messages in a target folder match the ones of the same messages in the
+ * source folder.
+ *
+ * <p>Differences are grouped by flag, so a folder where thousands of messages were read since the
+ * last sync is updated with a single <code>UID STORE 1:5000 +FLAGS.SILENT (\Seen)</code> instead
+ * of one command per message. \Deleted and \Recent are never synced.
+ *
+ * <p>Both folders are read in batches of the UIDs listed once, so messages expunged meanwhile are
+ * skipped instead of shifting the batches.
+ */
+public final class MessageFlagger implements Runnable {
+
+  private static final Map<Flags.Flag, String> SYSTEM_FLAGS = new LinkedHashMap<>();
+
+  static {
+    SYSTEM_FLAGS.put(Flags.Flag.SEEN, "\\Seen");
+    SYSTEM_FLAGS.put(Flags.Flag.ANSWERED, "\\Answered");
+    SYSTEM_FLAGS.put(Flags.Flag.FLAGGED, "\\Flagged");
+    SYSTEM_FLAGS.put(Flags.Flag.DRAFT, "\\Draft");
+  }
+
+  private final StoreFlagger storeFlagger;
+  private final String sourceFolderName;
+  private final String targetFolderName;
+
+  public MessageFlagger(StoreFlagger storeFlagger, String sourceFolderName,
+      String targetFolderName) {
+
+    this.storeFlagger = storeFlagger;
+    this.sourceFolderName = sourceFolderName;
+    this.targetFolderName = targetFolderName;
+  }
+
+  @Override
+  public void run() {
+    long flagged = 0L;
+    long skipped = 0L;
+    int commands = 0;
+    final FolderEvent event = new FolderEvent();
+    event.begin();
+    try {
+      final IMAPFolder targetFolder =
+          (IMAPFolder) storeFlagger.getTargetStore().getFolder(targetFolderName);
+      targetFolder.open(Folder.READ_WRITE);
+      if (targetFolder.getMode() == Folder.READ_ONLY) {
+        targetFolder.close(false);
+        return;
+      }
+      final Map<MessageId, Message> targetMessages = index(targetFolder);
+      final Flags permanentFlags = targetFolder.getPermanentFlags();
+      final IMAPFolder sourceFolder =
+          (IMAPFolder) storeFlagger.getSourceStore().getFolder(sourceFolderName);
+      sourceFolder.open(Folder.READ_ONLY);
+      // Flag -> target UIDs
+      final Map<String, List<Long>> added = new TreeMap<>();
+      final Map<String, List<Long>> removed = new TreeMap<>();
+      final FetchProfile profile = MessageId.addHeaders(new FetchProfile());
+      profile.add(FetchProfile.Item.FLAGS);
+      for (long[] uids : uidBatches(uidSearchAll(sourceFolder), MNIMAPSync.BATCH_SIZE)) {
+        for (Message message : fetch(sourceFolder, uids, profile)) {
+          Message target = null;
+          try {
+            // Removed so duplicates in the source are only matched once
+            target = targetMessages.remove(new MessageId(message));
+          } catch (MessageId.MessageIdException ex) {
+            //Usually messages that ran into this exception are spammy, so we skip them.
+          }
+          if (target != null && diff(message.getFlags(), target.getFlags(), permanentFlags,
+              targetFolder.getUID(target), added, removed)) {
+            flagged++;
+          } else {
+            skipped++;
+          }
+        }
+      }
+      sourceFolder.close(false);
+      for (Entry<String, List<Long>> entry : added.entrySet()) {
+        commands += uidStore(targetFolder, toArray(entry.getValue()), entry.getKey(), true);
+      }
+      for (Entry<String, List<Long>> entry : removed.entrySet()) {
+        commands += uidStore(targetFolder, toArray(entry.getValue()), entry.getKey(), false);
+      }
+      targetFolder.close(false);
+    } catch (MessagingException ex) {
+      Logger.getLogger(MessageFlagger.class.getName()).log(Level.SEVERE, null, ex);
+    } finally {
+      event.finish(FolderEvent.FLAG, sourceFolderName,
+          (int) Math.min(Integer.MAX_VALUE, flagged + skipped), commands);
+    }
+    storeFlagger.updateMessagesFlaggedCount(flagged);
+    storeFlagger.updateMessagesSkippedCount(skipped);
+    storeFlagger.updateStoreCommandCount(commands);
+  }
+
+  private static Map<MessageId, Message> index(IMAPFolder targetFolder)
+      throws MessagingException {
+
+    final Map<MessageId, Message> ret = new HashMap<>();
+    final FetchProfile profile = MessageId.addHeaders(new FetchProfile());
+    profile.add(FetchProfile.Item.FLAGS);
+    profile.add(UIDFolder.FetchProfileItem.UID);
+    for (long[] uids : uidBatches(uidSearchAll(targetFolder), MNIMAPSync.BATCH_SIZE)) {
+      for (Message message : fetch(targetFolder, uids, profile)) {
+        try {
+          ret.putIfAbsent(new MessageId(message), message);
+        } catch (MessageId.MessageIdException ex) {
+          // Never matched by source messages
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @return the messages of the batch that weren't expunged since their UIDs were listed, fetched
+   * with the provided profile
+   */
+  private static Message[] fetch(IMAPFolder folder, long[] uids, FetchProfile profile)
+      throws MessagingException {
+
+    final Message[] ret = Arrays.stream(folder.getMessagesByUID(uids))
+        .filter(Objects::nonNull).toArray(Message[]::new);
+    folder.fetch(ret, profile);
+    return ret;
+  }
+
+  /**
+   * Adds the target UID to the flags that have to be added or removed so the target flags match
+   * the source ones.
+   *
+   * @return true if any flag differs
+   */
+  static boolean diff(Flags source, Flags target, Flags permanentFlags, long targetUid,
+      Map<String, List<Long>> added, Map<String, List<Long>> removed) {
+
+    boolean ret = false;
+    for (Entry<Flags.Flag, String> flag : SYSTEM_FLAGS.entrySet()) {
+      if (permanentFlags.contains(flag.getKey())
+          && source.contains(flag.getKey()) != target.contains(flag.getKey())) {
+        (source.contains(flag.getKey()) ? added : removed)
+            .computeIfAbsent(flag.getValue(), k -> new ArrayList<>()).add(targetUid);
+        ret = true;
+      }
+    }
+    // Keywords can be stored if the server allows any (\*) or already knows them
+    final boolean anyKeyword = permanentFlags.contains(Flags.Flag.USER);
+    for (String keyword : source.getUserFlags()) {
+      if ((anyKeyword || permanentFlags.contains(keyword)) && !target.contains(keyword)
+          && isValidKeyword(keyword)) {
+        added.computeIfAbsent(keyword, k -> new ArrayList<>()).add(targetUid);
+        ret = true;
+      }
+    }
+    for (String keyword : target.getUserFlags()) {
+      if (!source.contains(keyword) && isValidKeyword(keyword)) {
+        removed.computeIfAbsent(keyword, k -> new ArrayList<>()).add(targetUid);
+        ret = true;
+      }
+    }
+    return ret;
+  }
+
+  private static long[] toArray(List<Long> uids) {
+    final long[] ret = new long[uids.size()];
+    for (int it = 0; it < ret.length; it++) {
+      ret[it] = uids.get(it);
+    }
+    return ret;
+  }
+}
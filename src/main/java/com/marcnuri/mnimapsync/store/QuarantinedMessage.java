@@ -0,0 +1,81 @@
+/*
+ * QuarantinedMessage.java
+ *
+ * Created on 2026-10-18, 04:05
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+/**
+ * Source message that failed to be copied on its own (once its batch was split down to it) and
+ * was skipped so that the rest of the folder could be copied.
+ */
+public final class QuarantinedMessage {
+
+  private final String sourceFolderName;
+  private final int messageNumber;
+  private final long uid;
+  private final String messageId;
+  private final String reason;
+
+  QuarantinedMessage(String sourceFolderName, int messageNumber, long uid, String messageId,
+      String reason) {
+
+    this.sourceFolderName = sourceFolderName;
+    this.messageNumber = messageNumber;
+    this.uid = uid;
+    this.messageId = messageId;
+    this.reason = reason;
+  }
+
+  public String getSourceFolderName() {
+    return sourceFolderName;
+  }
+
+  /**
+   * @return sequence number of the message in the source folder when it was copied, or 0 if it
+   * was copied by UID
+   */
+  public int getMessageNumber() {
+    return messageNumber;
+  }
+
+  /**
+   * @return UID of the message in the source folder, or 0 if it was copied by sequence number
+   */
+  public long getUid() {
+    return uid;
+  }
+
+  /**
+   * @return Message-ID header of the message, or null if it couldn't be read
+   */
+  public String getMessageId() {
+    return messageId;
+  }
+
+  public String getReason() {
+    return reason;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s %s %s: %s", sourceFolderName,
+        uid > 0L ? "UID " + uid : "#" + messageNumber,
+        messageId == null ? "<unknown>" : messageId, reason);
+  }
+}
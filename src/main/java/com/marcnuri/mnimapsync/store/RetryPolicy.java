@@ -0,0 +1,103 @@
+/*
+ * RetryPolicy.java
+ *
+ * Created on 2026-10-18, 04:00
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import com.sun.mail.iap.ConnectionException;
+import jakarta.mail.FolderClosedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.StoreClosedException;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which failures of a message batch are transient and how long to wait before retrying
+ * them.
+ *
+ * <p>Transient failures are the ones caused by a broken connection (or a server temporarily
+ * refusing the command with an RFC 5530 <code>[UNAVAILABLE]</code> or <code>[INUSE]</code> code).
+ * The batch is retried after an exponential backoff with full jitter, so that the batches failed
+ * by a network glitch don't reconnect at the same time. Folders are opened again on retry, which
+ * takes a new connection from the store's pool.
+ */
+public final class RetryPolicy {
+
+  public static final int DEFAULT_MAX_RETRIES = 3;
+  public static final RetryPolicy DEFAULT = new RetryPolicy(DEFAULT_MAX_RETRIES, 1_000L, 30_000L);
+
+  private final int maxRetries;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+
+  /**
+   * @param maxRetries times a batch is retried after a transient failure
+   * @param initialBackoffMillis upper bound of the wait before the first retry
+   * @param maxBackoffMillis upper bound of the wait before any retry
+   */
+  public RetryPolicy(int maxRetries, long initialBackoffMillis, long maxBackoffMillis) {
+    this.maxRetries = maxRetries;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+  }
+
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  /**
+   * @return policy with the same backoff and the provided number of retries
+   */
+  public RetryPolicy withMaxRetries(int maxRetries) {
+    return new RetryPolicy(maxRetries, initialBackoffMillis, maxBackoffMillis);
+  }
+
+  /**
+   * @param attempt number of retries already performed
+   * @return random wait between 0 and the exponential backoff for the attempt
+   */
+  long backoffMillis(int attempt) {
+    final long ceiling = Math.min(maxBackoffMillis,
+        initialBackoffMillis << Math.min(attempt, 20));
+    return ceiling <= 0L ? 0L : ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+
+  static boolean isTransient(Throwable failure) {
+    for (Throwable cause = failure; cause != null; cause = next(cause)) {
+      if (cause instanceof FolderClosedException || cause instanceof StoreClosedException
+          || cause instanceof ConnectionException || cause instanceof IOException) {
+        return true;
+      }
+      final String message = cause.getMessage();
+      if (message != null && (message.contains("[UNAVAILABLE]") || message.contains("[INUSE]"))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Throwable next(Throwable failure) {
+    if (failure instanceof MessagingException
+        && ((MessagingException) failure).getNextException() != null) {
+      return ((MessagingException) failure).getNextException();
+    }
+    return failure.getCause() == failure ? null : failure.getCause();
+  }
+}
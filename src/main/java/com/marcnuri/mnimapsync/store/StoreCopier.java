@@ -17,25 +17,44 @@
 package com.marcnuri.mnimapsync.store;
 
 import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.imap.FolderFilter;
+import com.marcnuri.mnimapsync.imap.GmailItems;
 import com.marcnuri.mnimapsync.index.Index;
+import com.marcnuri.mnimapsync.index.MessageLocations;
+import com.marcnuri.mnimapsync.jfr.FolderEvent;
 import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.FetchProfile;
 import jakarta.mail.Folder;
+import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
 import jakarta.mail.ReadOnlyFolderException;
+import jakarta.mail.search.SearchTerm;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.INBOX_MAILBOX;
 import static com.marcnuri.mnimapsync.imap.IMAPUtils.sourceFolderNameToTarget;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.uidBatches;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.uidSearch;
 
 /**
  *
@@ -43,7 +62,7 @@ import static com.marcnuri.mnimapsync.imap.IMAPUtils.sourceFolderNameToTarget;
  */
 public final class StoreCopier {
 
-    private final ExecutorService service;
+    private final ThreadPoolExecutor service;
     private final IMAPStore sourceStore;
     private final IMAPStore targetStore;
     private final Index sourceIndex;
@@ -52,21 +71,114 @@ public final class StoreCopier {
     private final AtomicInteger foldersSkippedCount;
     private final AtomicLong messagesCopiedCount;
     private final AtomicLong messagesSkippedCount;
+    private final AtomicLong messagesCopiedServerSideCount;
+    private final AtomicLong batchesRetriedCount;
     //If no empty, we shouldn't allow deletion
     private final List<MessagingException> copyExceptions;
+    //Messages skipped after failing on their own, they don't prevent deletion
+    private final List<QuarantinedMessage> quarantinedMessages;
+    private volatile RetryPolicy retryPolicy;
+    private volatile boolean indexSourceMessages;
+    private volatile MessageLocations messageLocations;
+    private volatile boolean gmail;
+    private volatile GmailLabels gmailLabels;
+    private final Map<String, String[]> sourceFolderAttributes;
+    private volatile boolean recentFirst;
+    //Null to copy every message (UID SEARCH ALL)
+    private volatile SearchTerm messageFilter;
+    private volatile FolderFilter folderFilter;
+    //Batches of every folder, scheduled at once by priority if recentFirst
+    private final List<PlannedBatch> plannedBatches;
+    private volatile boolean cancelled;
 
     public StoreCopier(IMAPStore sourceStore, Index sourceIndex, IMAPStore targetStore,
             Index targetIndex, int threads) {
+        this(sourceStore, sourceIndex, targetStore, targetIndex,
+            (ThreadPoolExecutor) Executors.newFixedThreadPool(threads));
+    }
+
+    /**
+     * @param service executor for the message batches, shut down once the copy completes
+     */
+    public StoreCopier(IMAPStore sourceStore, Index sourceIndex, IMAPStore targetStore,
+            Index targetIndex, ThreadPoolExecutor service) {
         this.sourceStore = sourceStore;
         this.sourceIndex = sourceIndex;
         this.targetStore = targetStore;
         this.targetIndex = targetIndex;
-        service = Executors.newFixedThreadPool(threads);
+        this.service = service;
         foldersCopiedCount = new AtomicInteger();
         foldersSkippedCount = new AtomicInteger();
         messagesCopiedCount = new AtomicLong();
         messagesSkippedCount = new AtomicLong();
+        messagesCopiedServerSideCount = new AtomicLong();
+        batchesRetriedCount = new AtomicLong();
         this.copyExceptions = Collections.synchronizedList(new ArrayList<>());
+        quarantinedMessages = Collections.synchronizedList(new ArrayList<>());
+        retryPolicy = RetryPolicy.DEFAULT;
+        sourceFolderAttributes = new HashMap<>();
+        plannedBatches = new ArrayList<>();
+        folderFilter = new FolderFilter();
+        indexSourceMessages = true;
+    }
+
+    /**
+     * @param indexSourceMessages false to only index the source folders, messages are still
+     * counted
+     */
+    public final void setIndexSourceMessages(boolean indexSourceMessages) {
+        this.indexSourceMessages = indexSourceMessages;
+    }
+
+    /**
+     * @param messageLocations where appended messages are recorded so that the ones in several
+     * source folders are copied server side (UID COPY) from the first target folder, or null to
+     * always append them
+     */
+    public final void setMessageLocations(MessageLocations messageLocations) {
+        this.messageLocations = messageLocations;
+    }
+
+    /**
+     * @param gmail true to copy Gmail sources (X-GM-EXT-1) from "All Mail" once, the messages are
+     * then copied server side to the target folders of their labels (X-GM-LABELS) instead of
+     * crawling the label folders. Ignored if the source server isn't Gmail.
+     */
+    public final void setGmail(boolean gmail) {
+        this.gmail = gmail;
+    }
+
+    /**
+     * @param recentFirst true to schedule the message batches of every folder once they've all
+     * been planned: INBOX batches first, then the rest by the INTERNALDATE of their newest message
+     * (descending), so that recent mail lands in the target first. False to copy folders in tree
+     * order and messages in sequence order as folders are traversed.
+     */
+    public final void setRecentFirst(boolean recentFirst) {
+        this.recentFirst = recentFirst;
+    }
+
+    /**
+     * @param messageFilter source messages to copy, the rest aren't fetched nor indexed. Null or
+     * empty to copy every message.
+     */
+    public final void setMessageFilter(MessageFilter messageFilter) {
+        this.messageFilter = messageFilter == null ? null : messageFilter.toSearchTerm();
+    }
+
+    /**
+     * @param folderFilter source folders to copy, excluded folders (and their subfolders) aren't
+     * created in the target nor opened, listed or indexed in the source
+     */
+    public final void setFolderFilter(FolderFilter folderFilter) {
+        this.folderFilter = folderFilter;
+    }
+
+    /**
+     * @param retryPolicy for the message batches that fail because of a broken connection
+     */
+    public final void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
     }
 
     public final void copy() throws InterruptedException {
@@ -75,8 +187,12 @@ public final class StoreCopier {
                 .setFolderSeparator(String.valueOf(sourceStore.getDefaultFolder().getSeparator()));
             //Copy Folder Structure
             copySourceFolder(sourceStore.getDefaultFolder());
+            if (gmail) {
+                copyGmailAllMail();
+            }
             //Copy messages
             copySourceMessages((IMAPFolder) sourceStore.getDefaultFolder());
+            schedulePlannedBatches(null);
         } catch (MessagingException ex) {
             Logger.getLogger(StoreCopier.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -92,12 +208,20 @@ public final class StoreCopier {
      */
     private void copySourceFolder(Folder folder) throws MessagingException {
         final String sourceFolderName = folder.getFullName();
+        if (folderFilter.isExcluded(sourceFolderName, sourceIndex.getFolderSeparator())) {
+            return;
+        }
          String targetFolderName = sourceFolderNameToTarget(sourceFolderName, sourceIndex,
             targetIndex);
+        final FolderEvent event = new FolderEvent();
+        event.begin();
         //Index for delete after copy (if necessary)
         if (sourceIndex != null) {
             sourceIndex.addFolder(sourceFolderName);
         }
+        if (gmail && !sourceFolderName.isEmpty()) {
+            sourceFolderAttributes.put(sourceFolderName, ((IMAPFolder) folder).getAttributes());
+        }
         //Copy folder
         Folder targetStoreFolder=targetStore.getFolder(targetFolderName);
         if (!targetIndex.containsFolder(targetFolderName)) {
@@ -112,6 +236,7 @@ public final class StoreCopier {
         } else {
             incrementFoldersSkippedCount();
         }
+        event.finish(FolderEvent.CREATE, sourceFolderName, 0, 0);
         //Folder recursion. Get all children
         if ((folder.getType() & Folder.HOLDS_FOLDERS) == Folder.HOLDS_FOLDERS) {
             for (Folder child : folder.list()) {
@@ -120,41 +245,65 @@ public final class StoreCopier {
         }
     }
 
+    /**
+     * Copies the messages of the Gmail "All Mail" folder and their labels before the rest of the
+     * folders, which are then skipped if they are label folders.
+     */
+    private void copyGmailAllMail() throws MessagingException, InterruptedException {
+        if (!sourceStore.hasCapability(GmailItems.CAPABILITY)) {
+            Logger.getLogger(StoreCopier.class.getName()).warning(
+                "Source server doesn't support the Gmail extensions, Gmail mode is disabled");
+            return;
+        }
+        final GmailLabels labels = GmailLabels.fromFolders(sourceFolderAttributes);
+        if (!isFolderSelected(labels.getAllMailFolder())) {
+            Logger.getLogger(StoreCopier.class.getName()).warning(
+                "Source \"All Mail\" folder is filtered out, Gmail mode is disabled");
+            return;
+        }
+        final IMAPFolder allMail = (IMAPFolder) sourceStore.getFolder(labels.getAllMailFolder());
+        if (!allMail.exists()) {
+            Logger.getLogger(StoreCopier.class.getName()).warning(
+                "Source server has no \"All Mail\" folder, Gmail mode is disabled");
+            return;
+        }
+        if (messageLocations == null) {
+            messageLocations = new MessageLocations();
+        }
+        gmailLabels = labels;
+        final List<Future<?>> batches = new ArrayList<>();
+        copyFolderMessages(allMail, batches);
+        schedulePlannedBatches(batches);
+        for (Future<?> batch : batches) {
+            while (!cancelled) {
+                try {
+                    batch.get(1, TimeUnit.SECONDS);
+                    break;
+                } catch (TimeoutException ex) {
+                    // Check again if the copy was cancelled (queued batches never complete)
+                } catch (ExecutionException ex) {
+                    Logger.getLogger(StoreCopier.class.getName()).log(Level.SEVERE, null,
+                        ex.getCause());
+                    break;
+                }
+            }
+        }
+    }
+
     /**
      * Once the folder structure has been created it copies messages recursively from the root
      * folder.
      */
     private void copySourceMessages(IMAPFolder sourceFolder) throws MessagingException {
-        if (sourceFolder != null) {
+        if (sourceFolder != null && !cancelled && !folderFilter.isExcluded(
+            sourceFolder.getFullName(), sourceIndex.getFolderSeparator())) {
             final String sourceFolderName = sourceFolder.getFullName();
-            final String targetFolderName = sourceFolderNameToTarget(sourceFolderName, sourceIndex,
-                targetIndex);
-            if ((sourceFolder.getType() & Folder.HOLDS_MESSAGES) == Folder.HOLDS_MESSAGES) {
-                //Manage Servers with public/read only folders.
-                try {
-                    if (!sourceFolder.isOpen()) {
-                        sourceFolder.open(Folder.READ_WRITE);
-                    }
-                } catch (ReadOnlyFolderException ex) {
-                    if (sourceFolder.getMode() != Folder.READ_ONLY) {
-                        sourceFolder.expunge();
-                    }
-                }
-                ///////////////////////
-                final int messageCount = sourceFolder.getMessageCount();
-                sourceFolder.close(false);
-
-                int pos = 1;
-                while (pos + MNIMAPSync.BATCH_SIZE <= messageCount) {
-                    //Copy messages
-                    service.execute(new MessageCopier(this, sourceFolderName, targetFolderName, pos,
-                            pos + MNIMAPSync.BATCH_SIZE, targetIndex.getFolderMessages(
-                                    targetFolderName)));
-                    pos = pos + MNIMAPSync.BATCH_SIZE;
-                }
-                service.execute(new MessageCopier(this, sourceFolderName, targetFolderName, pos,
-                        messageCount,
-                        targetIndex.getFolderMessages(targetFolderName)));
+            final GmailLabels labels = gmailLabels;
+            //Folders that aren't included are only listed to reach included subfolders
+            if (folderFilter.isIncluded(sourceFolderName, sourceIndex.getFolderSeparator())
+                && (labels == null || (!labels.isLabelFolder(sourceFolderName)
+                && !sourceFolderName.equals(labels.getAllMailFolder())))) {
+                copyFolderMessages(sourceFolder, null);
             }
             //Folder recursion. Get all children
             if ((sourceFolder.getType() & Folder.HOLDS_FOLDERS) == Folder.HOLDS_FOLDERS) {
@@ -166,6 +315,126 @@ public final class StoreCopier {
         }
     }
 
+    /**
+     * Schedules the message batches of the folder.
+     *
+     * @param batches where the scheduled batches are added, or null if they aren't awaited
+     */
+    private void copyFolderMessages(IMAPFolder sourceFolder, List<Future<?>> batches)
+        throws MessagingException {
+
+        final String sourceFolderName = sourceFolder.getFullName();
+        final String targetFolderName = sourceFolderNameToTarget(sourceFolderName, sourceIndex,
+            targetIndex);
+        if ((sourceFolder.getType() & Folder.HOLDS_MESSAGES) == Folder.HOLDS_MESSAGES) {
+            final FolderEvent event = new FolderEvent();
+            event.begin();
+            //Manage Servers with public/read only folders.
+            try {
+                if (!sourceFolder.isOpen()) {
+                    sourceFolder.open(Folder.READ_WRITE);
+                }
+            } catch (ReadOnlyFolderException ex) {
+                if (sourceFolder.getMode() != Folder.READ_ONLY) {
+                    sourceFolder.expunge();
+                }
+            }
+            ///////////////////////
+            //Batches of UIDs listed once, they don't shift if the folder is expunged meanwhile
+            final int messageCount = sourceFolder.getMessageCount();
+            final long[] uids = messageCount == 0 ? new long[0]
+                : uidSearch(sourceFolder, messageFilter);
+            final List<long[]> uidBatches = uidBatches(uids, MNIMAPSync.BATCH_SIZE);
+            final Date[] newestDates = recentFirst ? fetchNewestDates(sourceFolder, uidBatches)
+                : new Date[uidBatches.size()];
+            sourceFolder.close(false);
+
+            for (int it = 0; it < uidBatches.size(); it++) {
+                //Copy messages
+                final long[] batchUids = uidBatches.get(it);
+                final MessageCopier messageCopier = new MessageCopier(this, sourceFolderName,
+                    targetFolderName, batchUids, targetIndex.getFolderMessages(targetFolderName));
+                if (recentFirst) {
+                    synchronized (plannedBatches) {
+                        plannedBatches.add(new PlannedBatch(messageCopier, sourceFolderName,
+                            batchUids[batchUids.length - 1], newestDates[it]));
+                    }
+                } else {
+                    schedule(messageCopier, batches);
+                }
+            }
+            event.finish(FolderEvent.COPY, sourceFolderName, uids.length, uidBatches.size());
+        }
+    }
+
+    /**
+     * Fetches the INTERNALDATE of the newest (last) message of each batch in a single command.
+     *
+     * @param sourceFolder open folder
+     * @return date of the newest message of each batch, null if it was expunged
+     */
+    private static Date[] fetchNewestDates(IMAPFolder sourceFolder, List<long[]> uidBatches)
+        throws MessagingException {
+
+        final Date[] ret = new Date[uidBatches.size()];
+        if (uidBatches.isEmpty()) {
+            return ret;
+        }
+        final long[] newestUids = new long[uidBatches.size()];
+        for (int it = 0; it < newestUids.length; it++) {
+            newestUids[it] = uidBatches.get(it)[uidBatches.get(it).length - 1];
+        }
+        final Message[] messages = sourceFolder.getMessagesByUID(newestUids);
+        final FetchProfile profile = new FetchProfile();
+        profile.add(IMAPFolder.FetchProfileItem.INTERNALDATE);
+        final Message[] existing = Arrays.stream(messages).filter(Objects::nonNull)
+            .toArray(Message[]::new);
+        sourceFolder.fetch(existing, profile);
+        for (int it = 0; it < messages.length; it++) {
+            //Null if expunged after it was searched
+            ret[it] = messages[it] == null ? null : messages[it].getReceivedDate();
+        }
+        return ret;
+    }
+
+    /**
+     * Schedules the batches planned by {@link #copyFolderMessages(IMAPFolder, List)} in
+     * {@link PlannedBatch#PRIORITY} order.
+     *
+     * @param batches where the scheduled batches are added, or null if they aren't awaited
+     */
+    private void schedulePlannedBatches(List<Future<?>> batches) {
+        final List<PlannedBatch> planned;
+        synchronized (plannedBatches) {
+            planned = new ArrayList<>(plannedBatches);
+            plannedBatches.clear();
+        }
+        planned.sort(PlannedBatch.PRIORITY);
+        for (PlannedBatch plannedBatch : planned) {
+            if (cancelled) {
+                return;
+            }
+            schedule(plannedBatch.messageCopier, batches);
+        }
+    }
+
+    private void schedule(MessageCopier messageCopier, List<Future<?>> batches) {
+        if (batches == null) {
+            service.execute(messageCopier);
+        } else {
+            batches.add(service.submit(messageCopier));
+        }
+    }
+
+    /**
+     * Stops scheduling message batches and discards the queued ones, batches being processed are
+     * completed.
+     */
+    public final void cancel() {
+        cancelled = true;
+        service.getQueue().clear();
+    }
+
     public final boolean hasCopyException() {
         synchronized (copyExceptions) {
             return !copyExceptions.isEmpty();
@@ -188,6 +457,14 @@ public final class StoreCopier {
         messagesSkippedCount.getAndAdd(delta);
     }
 
+    final void updateMessagesCopiedServerSideCount(long delta) {
+        messagesCopiedServerSideCount.getAndAdd(delta);
+    }
+
+    final void incrementBatchesRetriedCount() {
+        batchesRetriedCount.incrementAndGet();
+    }
+
     public final int getFoldersCopiedCount() {
         return foldersCopiedCount.get();
     }
@@ -196,6 +473,20 @@ public final class StoreCopier {
         return foldersSkippedCount.get();
     }
 
+    /**
+     * @return number of message batches waiting for an available thread
+     */
+    public final int getQueuedBatchCount() {
+        return service.getQueue().size();
+    }
+
+    /**
+     * @return number of message batches being processed
+     */
+    public final int getActiveBatchCount() {
+        return service.getActiveCount();
+    }
+
     public final long getMessagesCopiedCount() {
         return messagesCopiedCount.get();
     }
@@ -204,6 +495,48 @@ public final class StoreCopier {
         return messagesSkippedCount.get();
     }
 
+    /**
+     * @return number of the copied messages that were copied server side from another target
+     * folder instead of appended
+     */
+    public final long getMessagesCopiedServerSideCount() {
+        return messagesCopiedServerSideCount.get();
+    }
+
+    /**
+     * @return number of message batch attempts retried after a transient failure
+     */
+    public final long getBatchesRetriedCount() {
+        return batchesRetriedCount.get();
+    }
+
+    /**
+     * @return true if the messages of the source folder must be copied according to the
+     * {@link FolderFilter}
+     */
+    final boolean isFolderSelected(String sourceFolderName) {
+        final String separator = sourceIndex.getFolderSeparator();
+        return !folderFilter.isExcluded(sourceFolderName, separator)
+            && folderFilter.isIncluded(sourceFolderName, separator);
+    }
+
+    final RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    final void quarantine(QuarantinedMessage message) {
+        quarantinedMessages.add(message);
+    }
+
+    /**
+     * @return source messages that couldn't be copied and were skipped
+     */
+    public final List<QuarantinedMessage> getQuarantinedMessages() {
+        synchronized (quarantinedMessages) {
+            return new ArrayList<>(quarantinedMessages);
+        }
+    }
+
     final IMAPStore getSourceStore() {
         return sourceStore;
     }
@@ -212,6 +545,22 @@ public final class StoreCopier {
         return sourceIndex;
     }
 
+    final boolean isIndexSourceMessages() {
+        return indexSourceMessages;
+    }
+
+    final MessageLocations getMessageLocations() {
+        return messageLocations;
+    }
+
+    final GmailLabels getGmailLabels() {
+        return gmailLabels;
+    }
+
+    final Index getTargetIndex() {
+        return targetIndex;
+    }
+
     final IMAPStore getTargetStore() {
         return targetStore;
     }
@@ -220,4 +569,29 @@ public final class StoreCopier {
         return copyExceptions;
     }
 
+    /**
+     * Message batch of a folder waiting to be scheduled by priority.
+     */
+    private static final class PlannedBatch {
+
+        //INBOX first, then newest messages first (batches of empty folders last)
+        static final Comparator<PlannedBatch> PRIORITY = Comparator
+            .comparing((PlannedBatch b) -> !b.sourceFolderName.equalsIgnoreCase(INBOX_MAILBOX))
+            .thenComparing(b -> b.newestDate, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(b -> b.end, Comparator.reverseOrder());
+
+        private final MessageCopier messageCopier;
+        private final String sourceFolderName;
+        //UID of the last message
+        private final long end;
+        private final Date newestDate;
+
+        private PlannedBatch(MessageCopier messageCopier, String sourceFolderName, long end,
+            Date newestDate) {
+            this.messageCopier = messageCopier;
+            this.sourceFolderName = sourceFolderName;
+            this.end = end;
+            this.newestDate = newestDate;
+        }
+    }
 }
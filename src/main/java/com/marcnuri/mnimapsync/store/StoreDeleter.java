@@ -17,13 +17,18 @@
 package com.marcnuri.mnimapsync.store;
 
 import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.imap.FolderFilter;
 import com.marcnuri.mnimapsync.index.Index;
+import com.marcnuri.mnimapsync.jfr.FolderEvent;
+import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPStore;
 import jakarta.mail.Folder;
 import jakarta.mail.MessagingException;
+import jakarta.mail.search.SearchTerm;
 
-import java.util.concurrent.ExecutorService;
+import java.util.List;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -31,6 +36,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static com.marcnuri.mnimapsync.imap.IMAPUtils.targetToSourceFolderName;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.uidBatches;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.uidSearch;
 
 /**
  *
@@ -38,7 +45,7 @@ import static com.marcnuri.mnimapsync.imap.IMAPUtils.targetToSourceFolderName;
  */
 public class StoreDeleter {
 
-    private final ExecutorService service;
+    private final ThreadPoolExecutor service;
     private final IMAPStore targetStore;
     private final Index targetIndex;
     private final Index sourceIndex;
@@ -46,11 +53,25 @@ public class StoreDeleter {
     private final AtomicInteger foldersSkippedCount;
     private final AtomicLong messagesDeletedCount;
     private final AtomicLong messagesSkippedCount;
+    //Null to delete any message (UID SEARCH ALL)
+    private volatile SearchTerm messageFilter;
+    private volatile FolderFilter folderFilter;
+    private volatile boolean cancelled;
 
     public StoreDeleter(Index sourceIndex, Index targetIndex, IMAPStore targetStore,
         int threads) {
 
-        service = Executors.newFixedThreadPool(threads);
+        this(sourceIndex, targetIndex, targetStore,
+            (ThreadPoolExecutor) Executors.newFixedThreadPool(threads));
+    }
+
+    /**
+     * @param service executor for the message batches, shut down once the deletion completes
+     */
+    public StoreDeleter(Index sourceIndex, Index targetIndex, IMAPStore targetStore,
+        ThreadPoolExecutor service) {
+
+        this.service = service;
         this.targetStore = targetStore;
         this.sourceIndex = sourceIndex;
         this.targetIndex = targetIndex;
@@ -58,6 +79,24 @@ public class StoreDeleter {
         this.foldersSkippedCount = new AtomicInteger();
         this.messagesDeletedCount = new AtomicLong();
         this.messagesSkippedCount = new AtomicLong();
+        folderFilter = new FolderFilter();
+    }
+
+    /**
+     * @param messageFilter target messages that can be deleted, the same filter the source
+     * messages were copied with so that the ones outside of it are kept. Null or empty to delete
+     * any message missing in the source.
+     */
+    public final void setMessageFilter(MessageFilter messageFilter) {
+        this.messageFilter = messageFilter == null ? null : messageFilter.toSearchTerm();
+    }
+
+    /**
+     * @param folderFilter folders the source was copied with, target folders outside of it are
+     * kept (and excluded ones aren't opened nor listed)
+     */
+    public final void setFolderFilter(FolderFilter folderFilter) {
+        this.folderFilter = folderFilter;
     }
 
     public final void delete() throws InterruptedException {
@@ -74,26 +113,30 @@ public class StoreDeleter {
     }
 
     private void deleteTargetMessages(Folder targetFolder) throws MessagingException {
-        if (targetFolder != null) {
+        if (targetFolder != null && !cancelled && !folderFilter.isExcluded(
+            targetFolder.getFullName(), targetIndex.getFolderSeparator())) {
             final String targetFolderName = targetFolder.getFullName();
             final String sourceFolderName = targetToSourceFolderName(targetFolderName, sourceIndex, targetIndex);
-            if ((targetFolder.getType() & Folder.HOLDS_MESSAGES) == Folder.HOLDS_MESSAGES) {
+            if ((targetFolder.getType() & Folder.HOLDS_MESSAGES) == Folder.HOLDS_MESSAGES
+                && folderFilter.isIncluded(targetFolderName, targetIndex.getFolderSeparator())) {
+                final FolderEvent event = new FolderEvent();
+                event.begin();
                 targetFolder.open(Folder.READ_WRITE);
                 if (targetFolder.getMode() != Folder.READ_ONLY) {
                     targetFolder.expunge();
                 }
-                final int messageCount = targetFolder.getMessageCount();
+                //Batches of UIDs listed once, they don't shift if the folder is expunged meanwhile
+                final long[] uids = targetFolder.getMessageCount() == 0 ? new long[0]
+                    : uidSearch((IMAPFolder) targetFolder, messageFilter);
                 targetFolder.close(false);
-                int pos = 1;
-                while (pos + MNIMAPSync.BATCH_SIZE <= messageCount) {
-                    service.execute(
-                            new MessageDeleter(this, targetFolderName, pos,
-                                    pos + MNIMAPSync.BATCH_SIZE, false, sourceIndex.
-                                    getFolderMessages(sourceFolderName)));
-                    pos = pos + MNIMAPSync.BATCH_SIZE;
+                final List<long[]> uidBatches = uidBatches(uids, MNIMAPSync.BATCH_SIZE);
+                for (long[] uidBatch : uidBatches) {
+                    //Batches run in parallel, each one expunges the messages it deleted
+                    service.execute(new MessageDeleter(this, targetFolderName, uidBatch, true,
+                        sourceIndex.getFolderMessages(sourceFolderName)));
                 }
-                service.execute(new MessageDeleter(this, targetFolderName,
-                        pos, messageCount, true, sourceIndex.getFolderMessages(sourceFolderName)));
+                event.finish(FolderEvent.DELETE, targetFolderName, uids.length,
+                    uidBatches.size());
             }
             //Folder recursion. Get all children
             if ((targetFolder.getType() & Folder.HOLDS_FOLDERS) == Folder.HOLDS_FOLDERS) {
@@ -106,9 +149,13 @@ public class StoreDeleter {
 
     private void deleteTargetFolder(Folder folder) throws MessagingException {
         final String targetFolderName = folder.getFullName();
+        if (folderFilter.isExcluded(targetFolderName, targetIndex.getFolderSeparator())) {
+            return;
+        }
         final String sourceFolderName = targetToSourceFolderName(targetFolderName, sourceIndex, targetIndex);
         //Delete folder
-        if (!sourceIndex.containsFolder(sourceFolderName)) {
+        if (!sourceIndex.containsFolder(sourceFolderName)
+            && folderFilter.isIncluded(targetFolderName, targetIndex.getFolderSeparator())) {
             //Delete recursively
             targetStore.getFolder(targetFolderName).delete(true);
             incrementFoldersDeletedCount();
@@ -121,6 +168,15 @@ public class StoreDeleter {
         }
     }
 
+    /**
+     * Stops scheduling message batches and discards the queued ones, batches being processed are
+     * completed.
+     */
+    public final void cancel() {
+        cancelled = true;
+        service.getQueue().clear();
+    }
+
     private void incrementFoldersDeletedCount() {
         foldersDeletedCount.getAndAdd(1);
     }
@@ -141,6 +197,20 @@ public class StoreDeleter {
         return foldersSkippedCount.get();
     }
 
+    /**
+     * @return number of message batches waiting for an available thread
+     */
+    public final int getQueuedBatchCount() {
+        return service.getQueue().size();
+    }
+
+    /**
+     * @return number of message batches being processed
+     */
+    public final int getActiveBatchCount() {
+        return service.getActiveCount();
+    }
+
     public final long getMessagesDeletedCount() {
         return messagesDeletedCount.get();
     }
@@ -0,0 +1,180 @@
+/*
+ * StoreFlagger.java
+ *
+ * Created on 2026-10-18, 21:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import com.marcnuri.mnimapsync.imap.FolderFilter;
+import com.marcnuri.mnimapsync.index.Index;
+import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.Folder;
+import jakarta.mail.MessagingException;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.sourceFolderNameToTarget;
+
+/**
+ * Propagates the flags and keywords of source messages to their copies in the target store.
+ *
+ * <p>Every folder is processed by a {@link MessageFlagger} that matches source and target
+ * messages by {@link com.marcnuri.mnimapsync.index.MessageId} and updates the target with one
+ * <code>UID STORE</code> command per flag covering all the messages that differ.
+ */
+public final class StoreFlagger {
+
+  private final ThreadPoolExecutor service;
+  private final IMAPStore sourceStore;
+  private final Index sourceIndex;
+  private final IMAPStore targetStore;
+  private final Index targetIndex;
+  private final AtomicLong messagesFlaggedCount;
+  private final AtomicLong messagesSkippedCount;
+  private final AtomicInteger storeCommandCount;
+  private volatile FolderFilter folderFilter;
+  private volatile boolean cancelled;
+
+  public StoreFlagger(IMAPStore sourceStore, Index sourceIndex, IMAPStore targetStore,
+      Index targetIndex, int threads) {
+
+    this(sourceStore, sourceIndex, targetStore, targetIndex,
+        (ThreadPoolExecutor) Executors.newFixedThreadPool(threads));
+  }
+
+  /**
+   * @param service executor for the folders, shut down once the flag sync completes
+   */
+  public StoreFlagger(IMAPStore sourceStore, Index sourceIndex, IMAPStore targetStore,
+      Index targetIndex, ThreadPoolExecutor service) {
+
+    this.service = service;
+    this.sourceStore = sourceStore;
+    this.sourceIndex = sourceIndex;
+    this.targetStore = targetStore;
+    this.targetIndex = targetIndex;
+    messagesFlaggedCount = new AtomicLong();
+    messagesSkippedCount = new AtomicLong();
+    storeCommandCount = new AtomicInteger();
+    folderFilter = new FolderFilter();
+  }
+
+  /**
+   * @param folderFilter source folders to update, excluded folders aren't opened nor listed
+   */
+  public void setFolderFilter(FolderFilter folderFilter) {
+    this.folderFilter = folderFilter;
+  }
+
+  public void flag() throws InterruptedException {
+    try {
+      flagSourceMessages(sourceStore.getDefaultFolder());
+    } catch (MessagingException ex) {
+      Logger.getLogger(StoreFlagger.class.getName()).log(Level.SEVERE, null, ex);
+    }
+    service.shutdown();
+    service.awaitTermination(1, TimeUnit.DAYS);
+  }
+
+  private void flagSourceMessages(Folder sourceFolder) throws MessagingException {
+    if (sourceFolder != null && !cancelled && !folderFilter.isExcluded(
+        sourceFolder.getFullName(), sourceIndex.getFolderSeparator())) {
+      final String sourceFolderName = sourceFolder.getFullName();
+      if ((sourceFolder.getType() & Folder.HOLDS_MESSAGES) == Folder.HOLDS_MESSAGES
+          && folderFilter.isIncluded(sourceFolderName, sourceIndex.getFolderSeparator())) {
+        service.execute(new MessageFlagger(this, sourceFolderName,
+            sourceFolderNameToTarget(sourceFolderName, sourceIndex, targetIndex)));
+      }
+      //Folder recursion. Get all children
+      if ((sourceFolder.getType() & Folder.HOLDS_FOLDERS) == Folder.HOLDS_FOLDERS) {
+        for (Folder child : sourceFolder.list()) {
+          flagSourceMessages(child);
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops scheduling folders and discards the queued ones, folders being processed are completed.
+   */
+  public void cancel() {
+    cancelled = true;
+    service.getQueue().clear();
+  }
+
+  void updateMessagesFlaggedCount(long delta) {
+    messagesFlaggedCount.getAndAdd(delta);
+  }
+
+  void updateMessagesSkippedCount(long delta) {
+    messagesSkippedCount.getAndAdd(delta);
+  }
+
+  void updateStoreCommandCount(int delta) {
+    storeCommandCount.getAndAdd(delta);
+  }
+
+  /**
+   * @return target messages whose flags were updated
+   */
+  public long getMessagesFlaggedCount() {
+    return messagesFlaggedCount.get();
+  }
+
+  /**
+   * @return source messages with the same flags as their target copy, or without a copy
+   */
+  public long getMessagesSkippedCount() {
+    return messagesSkippedCount.get();
+  }
+
+  /**
+   * @return UID STORE commands issued to the target store
+   */
+  public int getStoreCommandCount() {
+    return storeCommandCount.get();
+  }
+
+  /**
+   * @return number of folders waiting for an available thread
+   */
+  public int getQueuedBatchCount() {
+    return service.getQueue().size();
+  }
+
+  /**
+   * @return number of folders being processed
+   */
+  public int getActiveBatchCount() {
+    return service.getActiveCount();
+  }
+
+  IMAPStore getSourceStore() {
+    return sourceStore;
+  }
+
+  IMAPStore getTargetStore() {
+    return targetStore;
+  }
+}
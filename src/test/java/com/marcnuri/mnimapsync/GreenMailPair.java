@@ -0,0 +1,142 @@
+/*
+ * GreenMailPair.java
+ *
+ * Created on 2026-10-18, 17:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync;
+
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.Folder;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+/**
+ * Source and target GreenMail IMAP servers started before each test (and stopped after it), both
+ * with the {@link #USER} account.
+ *
+ * <p>Registered in the test classes with:
+ * <pre>
+ * &#64;RegisterExtension
+ * final GreenMailPair servers = new GreenMailPair();
+ * </pre>
+ */
+public final class GreenMailPair implements BeforeEachCallback, AfterEachCallback {
+
+  public static final String USER = "user";
+  public static final String PASSWORD = "pw";
+
+  private GreenMail source;
+  private GreenMail target;
+  private GreenMailUser sourceUser;
+  private GreenMailUser targetUser;
+
+  @Override
+  public void beforeEach(ExtensionContext context) {
+    source = new GreenMail(ServerSetup.IMAP.dynamicPort());
+    source.start();
+    target = new GreenMail(ServerSetup.IMAP.dynamicPort());
+    target.start();
+    sourceUser = source.setUser(USER + "@localhost", USER, PASSWORD);
+    targetUser = target.setUser(USER + "@localhost", USER, PASSWORD);
+  }
+
+  @Override
+  public void afterEach(ExtensionContext context) {
+    source.stop();
+    target.stop();
+  }
+
+  public GreenMail getSource() {
+    return source;
+  }
+
+  public GreenMail getTarget() {
+    return target;
+  }
+
+  public GreenMailUser getSourceUser() {
+    return sourceUser;
+  }
+
+  public GreenMailUser getTargetUser() {
+    return targetUser;
+  }
+
+  /**
+   * @return new definition of the {@link #USER} account in the source server
+   */
+  public HostDefinition getSourceHost() {
+    return host(source);
+  }
+
+  /**
+   * @return new definition of the {@link #USER} account in the target server
+   */
+  public HostDefinition getTargetHost() {
+    return host(target);
+  }
+
+  /**
+   * Points the source and target hosts of the options to the {@link #USER} account of each server.
+   */
+  public void configure(SyncOptions syncOptions) {
+    configure(syncOptions.getSourceHost(), source);
+    configure(syncOptions.getTargetHost(), target);
+  }
+
+  /**
+   * @return new definition of the {@link #USER} account in the provided server (IMAP, or IMAPS
+   * if it only listens for IMAPS)
+   */
+  public static HostDefinition host(GreenMail server) {
+    final HostDefinition ret = new HostDefinition();
+    configure(ret, server);
+    return ret;
+  }
+
+  private static void configure(HostDefinition host, GreenMail server) {
+    host.setHost("127.0.0.1");
+    if (server.getImap() == null) {
+      host.setPort(server.getImaps().getPort());
+      host.setSsl(true);
+    } else {
+      host.setPort(server.getImap().getPort());
+    }
+    host.setUser(USER);
+    host.setPassword(PASSWORD);
+  }
+
+  /**
+   * Appends the messages to the folder of the store, creating it if it doesn't exist.
+   */
+  public static void append(IMAPStore store, String folderName, Message... messages)
+      throws MessagingException {
+
+    final Folder folder = store.getFolder(folderName);
+    if (!folder.exists()) {
+      folder.create(Folder.HOLDS_MESSAGES | Folder.HOLDS_FOLDERS);
+    }
+    folder.appendMessages(messages);
+  }
+}
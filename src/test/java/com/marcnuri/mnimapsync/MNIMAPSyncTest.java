@@ -0,0 +1,110 @@
+/*
+ * MNIMAPSyncTest.java
+ *
+ * Created on 2026-10-18, 13:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync;
+
+import com.marcnuri.mnimapsync.index.IndexDiff;
+import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.Folder;
+import jakarta.mail.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.marcnuri.mnimapsync.GreenMailPair.append;
+import static com.marcnuri.mnimapsync.MessageBuilder.message;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.openStore;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class MNIMAPSyncTest {
+
+  @RegisterExtension
+  final GreenMailPair servers = new GreenMailPair();
+  private SyncOptions syncOptions;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    syncOptions = new SyncOptions();
+    syncOptions.setThreads(2);
+    servers.configure(syncOptions);
+    try (IMAPStore store = openStore(syncOptions.getSourceHost(), 1)) {
+      append(store, "INBOX", message("both").build(), message("source-only").build());
+    }
+    try (IMAPStore store = openStore(syncOptions.getTargetHost(), 1)) {
+      append(store, "INBOX", message("both").build(), message("target-only").build());
+      append(store, "Old", message("old").build());
+    }
+  }
+
+  @Test
+  void sync_dryRun_shouldIndexBothStoresAndReportDiffWithoutChanges() throws Exception {
+    // Given
+    syncOptions.setDelete(true);
+    syncOptions.setDryRun(true);
+    final MNIMAPSync sync = new MNIMAPSync(syncOptions);
+    // When
+    sync.sync();
+    // Then
+    final IndexDiff result = sync.getIndexDiff();
+    assertThat(result.getFoldersToCopy(), equalTo(0));
+    assertThat(result.getMessagesToCopy(), equalTo(1L));
+    assertThat(result.getFoldersToDelete(), equalTo(1));
+    assertThat(result.getMessagesToDelete(), equalTo(2L));
+    assertThat(sync.getSourceCopier(), nullValue());
+    assertThat(sync.getTargetDeleter(), nullValue());
+    assertThat(targetMessageIds("INBOX").size(), equalTo(2));
+  }
+
+  @Test
+  void sync_deleteOnly_shouldDeleteFromCrawledSourceWithoutCopying() throws Exception {
+    // Given
+    syncOptions.setDelete(true);
+    syncOptions.setDeleteOnly(true);
+    final MNIMAPSync sync = new MNIMAPSync(syncOptions);
+    // When
+    sync.sync();
+    // Then
+    assertThat(sync.getSourceCopier(), nullValue());
+    assertThat(sync.getTargetDeleter().getFoldersDeletedCount(), equalTo(1));
+    assertThat(sync.getTargetDeleter().getMessagesDeletedCount(), equalTo(1L));
+    assertThat(targetMessageIds("INBOX"),
+        equalTo(Collections.singletonList("<both@localhost>")));
+  }
+
+  private List<String> targetMessageIds(String folderName) throws Exception {
+    final List<String> ret = new ArrayList<>();
+    try (IMAPStore store = openStore(syncOptions.getTargetHost(), 1)) {
+      final Folder folder = store.getFolder(folderName);
+      folder.open(Folder.READ_ONLY);
+      for (Message message : folder.getMessages()) {
+        ret.add(message.getHeader("Message-ID")[0]);
+      }
+      folder.close(false);
+    }
+    Collections.sort(ret);
+    return ret;
+  }
+}
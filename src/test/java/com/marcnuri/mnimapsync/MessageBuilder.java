@@ -0,0 +1,96 @@
+/*
+ * MessageBuilder.java
+ *
+ * Created on 2026-10-18, 17:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync;
+
+import jakarta.mail.Message.RecipientType;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.Properties;
+
+/**
+ * Builds the test messages, by default <code>Message-ID: &lt;id@localhost&gt;</code> with subject
+ * "Message id" and body "Body id", sent to <code>user@localhost</code>.
+ */
+public final class MessageBuilder {
+
+  private static final Session SESSION = Session.getInstance(new Properties());
+
+  private final Object id;
+  private String recipient;
+  private String text;
+  private Date sentDate;
+
+  private MessageBuilder(Object id) {
+    this.id = id;
+    recipient = GreenMailPair.USER + "@localhost";
+    text = "Body " + id;
+  }
+
+  public static MessageBuilder message(Object id) {
+    return new MessageBuilder(id);
+  }
+
+  /**
+   * @return midnight (UTC) of the first day of the year
+   */
+  public static Date date(int year) {
+    return Date.from(LocalDate.of(year, 1, 1).atStartOfDay().toInstant(ZoneOffset.UTC));
+  }
+
+  public MessageBuilder to(String recipient) {
+    this.recipient = recipient;
+    return this;
+  }
+
+  public MessageBuilder text(String text) {
+    this.text = text;
+    return this;
+  }
+
+  /**
+   * @param sentDate date of the message, also its INTERNALDATE once appended
+   */
+  public MessageBuilder sentDate(Date sentDate) {
+    this.sentDate = sentDate;
+    return this;
+  }
+
+  public MimeMessage build() throws MessagingException {
+    final MimeMessage ret = new MimeMessage(SESSION);
+    ret.setFrom(new InternetAddress("sender@localhost"));
+    ret.setRecipient(RecipientType.TO, new InternetAddress(recipient));
+    ret.setSubject("Message " + id);
+    ret.setText(text);
+    if (sentDate != null) {
+      ret.setSentDate(sentDate);
+    }
+    ret.saveChanges();
+    // saveChanges replaces the Message-ID
+    ret.setHeader("Message-ID", "<" + id + "@localhost>");
+    return ret;
+  }
+}
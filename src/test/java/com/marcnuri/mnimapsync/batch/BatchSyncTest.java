@@ -0,0 +1,106 @@
+/*
+ * BatchSyncTest.java
+ *
+ * Created on 2026-10-18, 17:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.marcnuri.mnimapsync.GreenMailPair;
+import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.SyncOptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.marcnuri.mnimapsync.cli.CliBatchReport.getBatchReportAsText;
+import static org.hamcrest.CoreMatchers.containsString;
+import static com.marcnuri.mnimapsync.MessageBuilder.message;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class BatchSyncTest {
+
+  private static final int ACCOUNTS = 3;
+  private static final int MESSAGES = 5;
+
+  @RegisterExtension
+  final GreenMailPair servers = new GreenMailPair();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    for (int account = 0; account < ACCOUNTS; account++) {
+      final GreenMailUser user = servers.getSource().setUser(user(account) + "@localhost",
+          user(account), GreenMailPair.PASSWORD);
+      servers.getTarget().setUser(user(account) + "@localhost", user(account),
+          GreenMailPair.PASSWORD);
+      for (int it = 0; it < MESSAGES; it++) {
+        user.deliver(message(account + "." + it).to(user(account) + "@localhost").build());
+      }
+    }
+  }
+
+  @Test
+  void sync_severalAccountsWithConnectionCap_shouldCopyAllAccounts() throws Exception {
+    // Given
+    final BatchOptions batchOptions = new BatchOptions();
+    batchOptions.setParallelAccounts(ACCOUNTS);
+    batchOptions.setMaxConnectionsPerHost(1);
+    final List<SyncOptions> accounts = new ArrayList<>();
+    for (int account = 0; account < ACCOUNTS; account++) {
+      final SyncOptions syncOptions = new SyncOptions();
+      syncOptions.setThreads(2);
+      servers.configure(syncOptions);
+      syncOptions.getSourceHost().setUser(user(account));
+      syncOptions.getTargetHost().setUser(user(account));
+      accounts.add(syncOptions);
+    }
+    final BatchSync batchSync = new BatchSync(batchOptions, accounts);
+    // When
+    batchSync.sync();
+    // Then
+    for (MNIMAPSync sync : batchSync.getSyncs()) {
+      assertThat(sync.getPhase(), equalTo(MNIMAPSync.Phase.FINISHED));
+      assertThat(sync.getSourceCopier().getMessagesCopiedCount(), equalTo((long) MESSAGES));
+    }
+    assertThat(servers.getTarget().getReceivedMessages().length, equalTo(ACCOUNTS * MESSAGES));
+    assertThat(batchSync.getConnectionScheduler()
+        .getConnections(accounts.get(0).getSourceHost()), equalTo(0));
+    assertThat(getBatchReportAsText(batchSync),
+        containsString("  Messages copied:  15/15\n"));
+  }
+
+  @Test
+  void limitBandwidthPerHost_hostWithOwnLimit_shouldOnlyLimitTheOtherHost() {
+    // Given
+    final SyncOptions account = new SyncOptions();
+    account.getSourceHost().setBandwidthLimit(1024L);
+    // When
+    BatchSync.limitBandwidthPerHost(account, 4096L);
+    // Then
+    assertThat(account.getSourceHost().getBandwidthLimit(), equalTo(1024L));
+    assertThat(account.getTargetHost().getBandwidthLimit(), equalTo(4096L));
+  }
+
+  private static String user(int account) {
+    return "user" + account;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * ConnectionSchedulerTest.java
+ *
+ * Created on 2026-10-18, 17:52
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import com.marcnuri.mnimapsync.HostDefinition;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConnectionSchedulerTest {
+
+  @Test
+  void constructor_noConnections_shouldThrowException() {
+    assertThrows(IllegalArgumentException.class, () -> new ConnectionScheduler(0));
+  }
+
+  @Test
+  void acquire_sameHostTwiceWithCapOfOne_shouldNotBlock() throws Exception {
+    // Given
+    final ConnectionScheduler scheduler = new ConnectionScheduler(1);
+    final HostDefinition host = host("imap.example.com");
+    // When
+    scheduler.acquire(host, host);
+    // Then
+    assertThat(scheduler.getConnections(host), equalTo(1));
+    scheduler.release(host, host);
+    assertThat(scheduler.getConnections(host), equalTo(0));
+  }
+
+  @Test
+  void newExecutor_severalAccountsSharingHost_shouldNeverExceedCap() throws Exception {
+    // Given
+    final ConnectionScheduler scheduler = new ConnectionScheduler(2);
+    final HostDefinition shared = host("IMAP.example.com");
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final ThreadPoolExecutor first = scheduler.newExecutor(4, host("one.example.com"), shared);
+    final ThreadPoolExecutor second = scheduler.newExecutor(4, host("two.example.com"),
+        host("imap.example.com"));
+    final Runnable batch = () -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(20L);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      running.decrementAndGet();
+    };
+    // When
+    for (int it = 0; it < 10; it++) {
+      first.execute(batch);
+      second.execute(batch);
+    }
+    first.shutdown();
+    second.shutdown();
+    first.awaitTermination(10, TimeUnit.SECONDS);
+    second.awaitTermination(10, TimeUnit.SECONDS);
+    // Then
+    assertThat(maxRunning.get(), equalTo(2));
+    assertThat(first.getCompletedTaskCount() + second.getCompletedTaskCount(), equalTo(20L));
+    assertThat(scheduler.getConnections(shared), equalTo(0));
+  }
+
+  private static HostDefinition host(String name) {
+    final HostDefinition ret = new HostDefinition();
+    ret.setHost(name);
+    ret.setPort(993);
+    return ret;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * ManifestReaderTest.java
+ *
+ * Created on 2026-10-18, 18:01
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import com.marcnuri.mnimapsync.SyncOptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ManifestReaderTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void read_csvManifest_shouldReturnSyncOptions() throws Exception {
+    // Given
+    final Path manifest = write("accounts.csv",
+        "host1,port1,user1,password1,ssl1,host2,port2,user2,password2,delete,threads\n"
+            + "# Migrated accounts\n"
+            + "\n"
+            + "source.com,993,john,\"p,a\"\"ss\",true,target.com,143,john@target.com,pw,yes,2\n"
+            + "source.com,993,jane,pw,,target.com,143,jane@target.com,pw\n");
+    // When
+    final List<SyncOptions> result = ManifestReader.read(manifest);
+    // Then
+    assertThat(result, hasSize(2));
+    assertThat(result.get(0).getSourceHost().getPassword(), equalTo("p,a\"ss"));
+    assertThat(result.get(0).getSourceHost().isSsl(), equalTo(true));
+    assertThat(result.get(0).getTargetHost().getPort(), equalTo(143));
+    assertThat(result.get(0).getDelete(), equalTo(true));
+    assertThat(result.get(0).getThreads(), equalTo(2));
+    assertThat(result.get(1).getSourceHost().getUser(), equalTo("jane"));
+    assertThat(result.get(1).getSourceHost().isSsl(), equalTo(false));
+    assertThat(result.get(1).getDelete(), equalTo(false));
+    assertThat(result.get(1).getThreads(), equalTo(5));
+  }
+
+  @Test
+  void read_jsonManifest_shouldReturnSyncOptions() throws Exception {
+    // Given
+    final Path manifest = write("accounts.JSON", "[\n"
+        + "  {\"host1\": \"source.com\", \"port1\": 993, \"user1\": \"john\",\n"
+        + "   \"password1\": \"p\\\"w\\u00e9\", \"ssl1\": true, \"host2\": \"target.com\",\n"
+        + "   \"port2\": 143, \"user2\": \"john\", \"password2\": \"pw\", \"threads\": null},\n"
+        + "  {\"host1\": \"source.com\", \"port1\": \"993\", \"user1\": \"jane\", \"password1\": \"pw\",\n"
+        + "   \"host2\": \"target.com\", \"port2\": 143, \"user2\": \"jane\", \"password2\": \"pw\",\n"
+        + "   \"delete\": true}\n"
+        + "]\n");
+    // When
+    final List<SyncOptions> result = ManifestReader.read(manifest);
+    // Then
+    assertThat(result, hasSize(2));
+    assertThat(result.get(0).getSourceHost().getPassword(), equalTo("p\"wé"));
+    assertThat(result.get(0).getSourceHost().isSsl(), equalTo(true));
+    assertThat(result.get(0).getThreads(), equalTo(5));
+    assertThat(result.get(1).getSourceHost().getPort(), equalTo(993));
+    assertThat(result.get(1).getDelete(), equalTo(true));
+  }
+
+  @Test
+  void read_missingRequiredField_shouldThrowException() throws Exception {
+    // Given
+    final Path manifest = write("accounts.csv",
+        "host1,port1,user1,password1,host2,port2,user2\n"
+            + "source.com,993,john,pw,target.com,143,john\n");
+    // When
+    final IllegalArgumentException result = assertThrows(IllegalArgumentException.class,
+        () -> ManifestReader.read(manifest));
+    // Then
+    assertThat(result.getMessage(), equalTo("Account 1: password2 is required"));
+  }
+
+  @Test
+  void read_unknownField_shouldThrowException() throws Exception {
+    // Given
+    final Path manifest = write("accounts.json", "[{\"hots1\": \"source.com\"}]");
+    // When
+    final IllegalArgumentException result = assertThrows(IllegalArgumentException.class,
+        () -> ManifestReader.read(manifest));
+    // Then
+    assertThat(result.getMessage(), equalTo("Account 1: unknown field hots1"));
+  }
+
+  @Test
+  void read_invalidJson_shouldThrowException() throws Exception {
+    // Given
+    final Path manifest = write("accounts.json", "[{\"host1\": source.com}]");
+    // When
+    final IllegalArgumentException result = assertThrows(IllegalArgumentException.class,
+        () -> ManifestReader.read(manifest));
+    // Then
+    assertThat(result.getMessage(),
+        equalTo("Invalid JSON manifest at position 21: Unsupported value source.com"));
+  }
+
+  private Path write(String fileName, String content) throws Exception {
+    final Path ret = tempDir.resolve(fileName);
+    Files.write(ret, content.getBytes(StandardCharsets.UTF_8));
+    return ret;
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * QueueWorkerTest.java
+ *
+ * Created on 2026-10-18, 19:41
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.marcnuri.mnimapsync.GreenMailPair;
+import com.marcnuri.mnimapsync.SyncOptions;
+import com.marcnuri.mnimapsync.batch.WorkQueue.Status;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.marcnuri.mnimapsync.MessageBuilder.message;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class QueueWorkerTest {
+
+  private static final int ACCOUNTS = 3;
+  private static final int MESSAGES = 5;
+
+  @TempDir
+  Path tempDir;
+  @RegisterExtension
+  final GreenMailPair servers = new GreenMailPair();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    for (int account = 0; account < ACCOUNTS; account++) {
+      final GreenMailUser user = servers.getSource().setUser(user(account) + "@localhost",
+          user(account), GreenMailPair.PASSWORD);
+      servers.getTarget().setUser(user(account) + "@localhost", user(account),
+          GreenMailPair.PASSWORD);
+      for (int it = 0; it < MESSAGES; it++) {
+        user.deliver(message(account + "." + it).to(user(account) + "@localhost").build());
+      }
+    }
+  }
+
+  @Test
+  void run_twoWorkersSharingQueue_shouldSyncEveryAccountOnce() throws Exception {
+    // Given
+    final String queuePath = tempDir.resolve("queue").toString();
+    final List<SyncOptions> accounts = new ArrayList<>();
+    for (int account = 0; account < ACCOUNTS; account++) {
+      final SyncOptions syncOptions = new SyncOptions();
+      syncOptions.setThreads(2);
+      servers.configure(syncOptions);
+      syncOptions.getSourceHost().setUser(user(account));
+      syncOptions.getTargetHost().setUser(user(account));
+      accounts.add(syncOptions);
+    }
+    try (WorkQueue coordinator = WorkQueue.open(queuePath);
+        WorkQueue firstQueue = WorkQueue.open(queuePath);
+        WorkQueue secondQueue = WorkQueue.open(queuePath)) {
+      coordinator.enqueue(accounts);
+      final QueueWorker first = new QueueWorker(firstQueue, workerOptions("worker-1"));
+      final QueueWorker second = new QueueWorker(secondQueue, workerOptions("worker-2"));
+      // When
+      final Thread secondThread = new Thread(() -> {
+        try {
+          second.run();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      secondThread.start();
+      first.run();
+      secondThread.join();
+      // Then
+      assertThat(first.getSyncs().size() + second.getSyncs().size(), equalTo(ACCOUNTS));
+      assertThat(coordinator.isFinished(), equalTo(true));
+      assertThat(coordinator.getStatusCounts().get(Status.DONE), equalTo(ACCOUNTS));
+      assertThat(servers.getTarget().getReceivedMessages().length, equalTo(ACCOUNTS * MESSAGES));
+      assertThat(coordinator.getItems().get(0)[4],
+          equalTo("copied=5 skipped=0 deleted=0 errors=0"));
+    }
+  }
+
+  private static BatchOptions workerOptions(String workerId) {
+    final BatchOptions ret = new BatchOptions();
+    ret.setWorker(true);
+    ret.setWorkerId(workerId);
+    ret.setParallelAccounts(1);
+    return ret;
+  }
+
+  private static String user(int account) {
+    return "user" + account;
+  }
+}
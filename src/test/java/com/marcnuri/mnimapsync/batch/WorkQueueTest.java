@@ -0,0 +1,140 @@
+/*
+ * WorkQueueTest.java
+ *
+ * Created on 2026-10-18, 19:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.batch;
+
+import com.marcnuri.mnimapsync.SyncOptions;
+import com.marcnuri.mnimapsync.batch.WorkQueue.Lease;
+import com.marcnuri.mnimapsync.batch.WorkQueue.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class WorkQueueTest {
+
+  @TempDir
+  Path tempDir;
+  private WorkQueue coordinator;
+  private WorkQueue worker;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    final String queue = tempDir.resolve("queue").toString();
+    coordinator = WorkQueue.open(queue);
+    worker = WorkQueue.open(queue);
+    coordinator.enqueue(Arrays.asList(account("john"), account("jane")));
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    worker.close();
+    coordinator.close();
+  }
+
+  @Test
+  void enqueue_alreadyQueuedAccounts_shouldIgnoreThem() throws Exception {
+    // When
+    final int result = coordinator.enqueue(Arrays.asList(account("jane"), account("joe")));
+    // Then
+    assertThat(result, equalTo(1));
+    assertThat(coordinator.getStatusCounts().get(Status.PENDING), equalTo(3));
+  }
+
+  @Test
+  void lease_severalWorkers_shouldLeaseDifferentAccounts() throws Exception {
+    // When
+    final Lease first = coordinator.lease("worker-1", 60000L);
+    final Lease second = worker.lease("worker-2", 60000L);
+    final Lease third = worker.lease("worker-2", 60000L);
+    // Then
+    assertThat(first.getSyncOptions().getSourceHost().getUser(), equalTo("john"));
+    assertThat(second.getSyncOptions().getSourceHost().getUser(), equalTo("jane"));
+    assertThat(second.getSyncOptions(), equalTo(account("jane")));
+    assertThat(third, nullValue());
+    assertThat(worker.getStatusCounts().get(Status.LEASED), equalTo(2));
+  }
+
+  @Test
+  void lease_expiredLease_shouldReassignAndFenceFormerWorker() throws Exception {
+    // Given
+    final Lease expired = coordinator.lease("worker-1", 1L);
+    Thread.sleep(50L);
+    // When
+    final Lease result = worker.lease("worker-2", 60000L);
+    // Then
+    assertThat(result.getId(), equalTo(expired.getId()));
+    assertThat(result.getAttempt(), equalTo(2));
+    assertThat(coordinator.heartbeat(expired, 60000L), equalTo(false));
+    assertThat(coordinator.complete(expired, false, "copied=1"), equalTo(false));
+    assertThat(worker.heartbeat(result, 60000L), equalTo(true));
+    assertThat(worker.complete(result, false, "copied=2"), equalTo(true));
+    assertThat(worker.getItems().get(0)[4], equalTo("copied=2"));
+  }
+
+  @Test
+  void lease_heartbeatBeforeExpiration_shouldKeepLease() throws Exception {
+    // Given
+    final Lease lease = coordinator.lease("worker-1", 200L);
+    // When
+    coordinator.heartbeat(lease, 60000L);
+    Thread.sleep(300L);
+    final Lease result = worker.lease("worker-2", 60000L);
+    // Then
+    assertThat(result.getId(), not(equalTo(lease.getId())));
+  }
+
+  @Test
+  void lease_expiredTooManyTimes_shouldFailAccount() throws Exception {
+    // Given
+    coordinator.complete(coordinator.lease("worker-1", 60000L), false, "");
+    for (int it = 0; it < WorkQueue.MAX_ATTEMPTS; it++) {
+      assertThat(worker.lease("worker-2", 1L), notNullValue());
+      Thread.sleep(50L);
+    }
+    // When
+    final Lease result = worker.lease("worker-2", 60000L);
+    // Then
+    assertThat(result, nullValue());
+    assertThat(worker.isFinished(), equalTo(true));
+    assertThat(worker.getStatusCounts().get(Status.DONE), equalTo(1));
+    assertThat(worker.getStatusCounts().get(Status.FAILED), equalTo(1));
+  }
+
+  private static SyncOptions account(String user) {
+    final SyncOptions ret = new SyncOptions();
+    ret.getSourceHost().setHost("source.example.com");
+    ret.getSourceHost().setPort(993);
+    ret.getSourceHost().setUser(user);
+    ret.getTargetHost().setHost("target.example.com");
+    ret.getTargetHost().setPort(993);
+    ret.getTargetHost().setUser(user);
+    return ret;
+  }
+}
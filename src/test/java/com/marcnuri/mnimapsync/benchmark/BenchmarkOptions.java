@@ -0,0 +1,141 @@
+/*
+ * BenchmarkOptions.java
+ *
+ * Created on 2026-10-18, 10:14
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.benchmark;
+
+import com.marcnuri.mnimapsync.imap.ShapingProfile;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.util.Locale;
+
+/**
+ * Settings for a {@link SyncBenchmark} run.
+ */
+final class BenchmarkOptions {
+
+  enum Distribution {
+    UNIFORM, SKEWED
+  }
+
+  private int folders = 10;
+  private int messages = 5000;
+  private int messageSize = 4096;
+  private Distribution distribution = Distribution.UNIFORM;
+  private double preloadedRatio = 0D;
+  private int threads = 5;
+  private long commandLatencyMillis = 0L;
+  private boolean delete = false;
+  private final ShapingProfile shaping = new ShapingProfile();
+
+  int getFolders() {
+    return folders;
+  }
+
+  int getMessages() {
+    return messages;
+  }
+
+  int getMessageSize() {
+    return messageSize;
+  }
+
+  Distribution getDistribution() {
+    return distribution;
+  }
+
+  double getPreloadedRatio() {
+    return preloadedRatio;
+  }
+
+  int getThreads() {
+    return threads;
+  }
+
+  long getCommandLatencyMillis() {
+    return commandLatencyMillis;
+  }
+
+  boolean isDelete() {
+    return delete;
+  }
+
+  /**
+   * Network conditions emulated on every connection to both servers.
+   */
+  ShapingProfile getShaping() {
+    return shaping;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ENGLISH,
+        "folders=%d, messages=%d, messageSize=%d, distribution=%s, preloaded=%.2f, threads=%d, "
+            + "latency=%dms, delete=%s, rtt=%dms, jitter=%dms, upload=%dB/s, download=%dB/s",
+        folders, messages, messageSize, distribution, preloadedRatio, threads,
+        commandLatencyMillis, delete, shaping.getLatencyMillis(), shaping.getJitterMillis(),
+        shaping.getUploadBytesPerSecond(), shaping.getDownloadBytesPerSecond());
+  }
+
+  static BenchmarkOptions parse(String[] arguments) {
+    final Options options = new Options();
+    options.addOption(Option.builder().longOpt("folders").hasArg().desc("Number of folders (default 10)").build());
+    options.addOption(Option.builder().longOpt("messages").hasArg().desc("Total number of messages (default 5000)").build());
+    options.addOption(Option.builder().longOpt("message-size").hasArg().desc("Body size in bytes (default 4096)").build());
+    options.addOption(Option.builder().longOpt("distribution").hasArg().desc("Messages per folder: uniform or skewed").build());
+    options.addOption(Option.builder().longOpt("preloaded").hasArg().desc("Fraction [0-1] of every folder already in the target").build());
+    options.addOption(Option.builder().longOpt("threads").hasArg().desc("Sync threads (default 5)").build());
+    options.addOption(Option.builder().longOpt("latency").hasArg().desc("Milliseconds added to every IMAP command").build());
+    options.addOption(Option.builder().longOpt("delete").desc("Run the delete phase").build());
+    options.addOption(Option.builder().longOpt("rtt").hasArg().desc("Network round trip time in milliseconds").build());
+    options.addOption(Option.builder().longOpt("jitter").hasArg().desc("Round trip time jitter in milliseconds").build());
+    options.addOption(Option.builder().longOpt("upload").hasArg().desc("Upload bytes/s per connection (0 unlimited)").build());
+    options.addOption(Option.builder().longOpt("download").hasArg().desc("Download bytes/s per connection (0 unlimited)").build());
+    final BenchmarkOptions result = new BenchmarkOptions();
+    try {
+      final CommandLine cmd = new DefaultParser().parse(options, arguments);
+      result.folders = Integer.parseInt(cmd.getOptionValue("folders", String.valueOf(result.folders)));
+      result.messages = Integer.parseInt(cmd.getOptionValue("messages", String.valueOf(result.messages)));
+      result.messageSize = Integer.parseInt(cmd.getOptionValue("message-size", String.valueOf(result.messageSize)));
+      result.distribution = Distribution.valueOf(
+          cmd.getOptionValue("distribution", result.distribution.name()).toUpperCase(Locale.ENGLISH));
+      result.preloadedRatio = Double.parseDouble(cmd.getOptionValue("preloaded", String.valueOf(result.preloadedRatio)));
+      result.threads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(result.threads)));
+      result.commandLatencyMillis = Long.parseLong(cmd.getOptionValue("latency", String.valueOf(result.commandLatencyMillis)));
+      result.delete = cmd.hasOption("delete");
+      result.shaping.setLatencyMillis(Long.parseLong(cmd.getOptionValue("rtt", "0")));
+      result.shaping.setJitterMillis(Long.parseLong(cmd.getOptionValue("jitter", "0")));
+      result.shaping.setUploadBytesPerSecond(Long.parseLong(cmd.getOptionValue("upload", "0")));
+      result.shaping.setDownloadBytesPerSecond(Long.parseLong(cmd.getOptionValue("download", "0")));
+    } catch (ParseException | IllegalArgumentException ex) {
+      new HelpFormatter().printHelp("gradle benchmark -PbenchmarkArgs=\"...\"", options);
+      throw new IllegalArgumentException(ex.getMessage(), ex);
+    }
+    if (result.folders < 1 || result.messages < 0 || result.messageSize < 1
+        || result.preloadedRatio < 0D || result.preloadedRatio > 1D) {
+      throw new IllegalArgumentException("Invalid benchmark options: " + result);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * ImapRelay.java
+ *
+ * Created on 2026-10-18, 10:05
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.benchmark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loopback TCP relay placed in front of an embedded IMAP server.
+ *
+ * <p>Counts the IMAP commands (round trips) and bytes flowing through it and can optionally delay
+ * every client command to emulate a slow server. Literals ({@code {n}} / {@code {n+}}) are skipped
+ * so that APPENDed message bodies are not mistaken for commands.
+ */
+final class ImapRelay implements Closeable {
+
+  private static final int BUFFER_SIZE = 16384;
+  private static final int MAX_LINE_TAIL = 32;
+
+  private final ServerSocket serverSocket;
+  private final int upstreamPort;
+  private final long commandLatencyMillis;
+  private final ExecutorService executor;
+  private final AtomicLong connections;
+  private final AtomicLong commands;
+  private final AtomicLong bytesToServer;
+  private final AtomicLong bytesToClient;
+
+  ImapRelay(int upstreamPort, long commandLatencyMillis) throws IOException {
+    this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    this.upstreamPort = upstreamPort;
+    this.commandLatencyMillis = commandLatencyMillis;
+    this.executor = Executors.newCachedThreadPool(r -> {
+      final Thread thread = new Thread(r, "imap-relay-" + upstreamPort);
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.connections = new AtomicLong();
+    this.commands = new AtomicLong();
+    this.bytesToServer = new AtomicLong();
+    this.bytesToClient = new AtomicLong();
+    executor.execute(this::accept);
+  }
+
+  int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  long getConnections() {
+    return connections.get();
+  }
+
+  long getCommands() {
+    return commands.get();
+  }
+
+  long getBytes() {
+    return bytesToServer.get() + bytesToClient.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    executor.shutdownNow();
+  }
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try {
+        final Socket client = serverSocket.accept();
+        final Socket server = new Socket(InetAddress.getLoopbackAddress(), upstreamPort);
+        client.setTcpNoDelay(true);
+        server.setTcpNoDelay(true);
+        connections.incrementAndGet();
+        executor.execute(() -> pump(client, server, true));
+        executor.execute(() -> pump(server, client, false));
+      } catch (IOException ex) {
+        // Relay closed
+      }
+    }
+  }
+
+  private void pump(Socket from, Socket to, boolean clientToServer) {
+    try (
+        final InputStream in = from.getInputStream();
+        final OutputStream out = to.getOutputStream()
+    ) {
+      if (clientToServer) {
+        pumpCommands(in, out);
+      } else {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+          out.flush();
+          bytesToClient.addAndGet(read);
+        }
+      }
+    } catch (SocketException ex) {
+      // Peer closed the connection
+    } catch (IOException | InterruptedException ex) {
+      if (ex instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+    } finally {
+      closeQuietly(from);
+      closeQuietly(to);
+    }
+  }
+
+  private void pumpCommands(InputStream in, OutputStream out)
+      throws IOException, InterruptedException {
+
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    final StringBuilder lineTail = new StringBuilder();
+    boolean commandStart = true;
+    long literalRemaining = 0L;
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      int segmentStart = 0;
+      for (int pos = 0; pos < read; pos++) {
+        if (literalRemaining > 0) {
+          final int skip = (int) Math.min(literalRemaining, read - pos);
+          literalRemaining -= skip;
+          pos += skip - 1;
+          continue;
+        }
+        if (commandStart) {
+          commandStart = false;
+          if (commandLatencyMillis > 0) {
+            out.write(buffer, segmentStart, pos - segmentStart);
+            out.flush();
+            segmentStart = pos;
+            Thread.sleep(commandLatencyMillis);
+          }
+        }
+        final char current = (char) buffer[pos];
+        if (current == '\n') {
+          final long literal = literalLength(lineTail);
+          lineTail.setLength(0);
+          if (literal < 0) {
+            commands.incrementAndGet();
+            commandStart = true;
+          } else {
+            literalRemaining = literal;
+          }
+        } else {
+          lineTail.append(current);
+          if (lineTail.length() > MAX_LINE_TAIL) {
+            lineTail.delete(0, lineTail.length() - MAX_LINE_TAIL);
+          }
+        }
+      }
+      out.write(buffer, segmentStart, read - segmentStart);
+      out.flush();
+      bytesToServer.addAndGet(read);
+    }
+  }
+
+  /**
+   * Returns the length of the literal announced at the end of the provided line or -1 if the line
+   * doesn't end with a literal.
+   */
+  static long literalLength(CharSequence line) {
+    int end = line.length();
+    if (end > 0 && line.charAt(end - 1) == '\r') {
+      end--;
+    }
+    if (end < 3 || line.charAt(end - 1) != '}') {
+      return -1L;
+    }
+    int digitsEnd = end - 1;
+    if (line.charAt(digitsEnd - 1) == '+') {
+      digitsEnd--;
+    }
+    int digitsStart = digitsEnd;
+    while (digitsStart > 0 && Character.isDigit(line.charAt(digitsStart - 1))) {
+      digitsStart--;
+    }
+    if (digitsStart == digitsEnd || digitsStart == 0 || line.charAt(digitsStart - 1) != '{') {
+      return -1L;
+    }
+    return Long.parseLong(line.subSequence(digitsStart, digitsEnd).toString());
+  }
+
+  private static void closeQuietly(Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException ex) {
+      // Ignore
+    }
+  }
+}
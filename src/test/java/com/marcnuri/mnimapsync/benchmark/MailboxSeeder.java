@@ -0,0 +1,153 @@
+/*
+ * MailboxSeeder.java
+ *
+ * Created on 2026-10-18, 10:21
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.benchmark;
+
+import com.icegreen.greenmail.imap.ImapHostManager;
+import com.icegreen.greenmail.store.MailFolder;
+import com.icegreen.greenmail.user.GreenMailUser;
+import jakarta.mail.Flags;
+import jakarta.mail.Message.RecipientType;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+
+import java.util.Date;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seeds the embedded source and target servers with a synthetic folder and message
+ * distribution.
+ *
+ * <p>The target receives the first {@link BenchmarkOptions#getPreloadedRatio()} fraction of every
+ * source folder so that incremental runs (mostly skips) can be measured as well as full copies.
+ */
+final class MailboxSeeder {
+
+  static final String INBOX = "INBOX";
+  private static final long SEED = 1337L;
+  private static final String WORDS =
+      "lorem ipsum dolor sit amet consectetur adipiscing elit sed do eiusmod tempor incididunt ut "
+          + "labore et dolore magna aliqua ut enim ad minim veniam quis nostrud exercitation ";
+
+  private final BenchmarkOptions options;
+  private final Session session;
+
+  MailboxSeeder(BenchmarkOptions options) {
+    this.options = options;
+    this.session = Session.getInstance(new Properties());
+  }
+
+  /**
+   * Number of messages the folder in the provided position will hold.
+   */
+  int messagesInFolder(int folderIndex) {
+    final int folders = options.getFolders();
+    if (options.getDistribution() == BenchmarkOptions.Distribution.SKEWED) {
+      // Zipf-like: a few huge folders and a long tail of small ones
+      double harmonic = 0D;
+      for (int i = 1; i <= folders; i++) {
+        harmonic += 1D / i;
+      }
+      return (int) Math.round(options.getMessages() / (harmonic * (folderIndex + 1)));
+    }
+    return options.getMessages() / folders
+        + (folderIndex < options.getMessages() % folders ? 1 : 0);
+  }
+
+  static String folderName(int folderIndex) {
+    return folderIndex == 0 ? INBOX : String.format(Locale.ENGLISH, "Folder-%03d", folderIndex);
+  }
+
+  /**
+   * Seeds both servers and returns the approximate number of body bytes stored in the source.
+   */
+  long seed(ImapHostManager sourceManager, GreenMailUser sourceUser,
+      ImapHostManager targetManager, GreenMailUser targetUser) throws Exception {
+
+    final Random random = new Random(SEED);
+    long bytes = 0L;
+    for (int folderIndex = 0; folderIndex < options.getFolders(); folderIndex++) {
+      final String folderName = folderName(folderIndex);
+      final MailFolder sourceFolder = getOrCreate(sourceManager, sourceUser, folderName);
+      final MailFolder targetFolder = getOrCreate(targetManager, targetUser, folderName);
+      final int messageCount = messagesInFolder(folderIndex);
+      final int preloaded = (int) Math.floor(messageCount * options.getPreloadedRatio());
+      for (int messageIndex = 0; messageIndex < messageCount; messageIndex++) {
+        final Date date = new Date(
+            System.currentTimeMillis() - TimeUnit.HOURS.toMillis(messageCount - messageIndex));
+        final MimeMessage message = newMessage(folderName, messageIndex, date, random);
+        bytes += options.getMessageSize();
+        sourceFolder.appendMessage(message, new Flags(), date);
+        if (messageIndex < preloaded) {
+          targetFolder.appendMessage(message, new Flags(), date);
+        }
+      }
+    }
+    return bytes;
+  }
+
+  private static MailFolder getOrCreate(ImapHostManager manager, GreenMailUser user,
+      String folderName) throws Exception {
+
+    if (INBOX.equals(folderName)) {
+      return manager.getInbox(user);
+    }
+    final MailFolder existing = manager.getFolder(user, folderName);
+    return existing != null ? existing : manager.createMailbox(user, folderName);
+  }
+
+  private MimeMessage newMessage(String folderName, int messageIndex, Date date, Random random)
+      throws MessagingException {
+
+    final String messageId = String.format(Locale.ENGLISH, "<%s.%d@benchmark.mnimapsync>",
+        folderName, messageIndex);
+    final MimeMessage message = new MimeMessage(session) {
+      @Override
+      protected void updateMessageID() throws MessagingException {
+        setHeader("Message-ID", messageId);
+      }
+    };
+    message.setFrom(new InternetAddress("sender@benchmark.mnimapsync"));
+    message.setRecipient(RecipientType.TO, new InternetAddress("bench@localhost"));
+    message.setSubject(String.format(Locale.ENGLISH, "%s message %d", folderName, messageIndex));
+    message.setSentDate(date);
+    message.setText(body(random));
+    message.saveChanges();
+    return message;
+  }
+
+  private String body(Random random) {
+    final StringBuilder body = new StringBuilder(options.getMessageSize());
+    while (body.length() < options.getMessageSize()) {
+      final int start = random.nextInt(WORDS.length() - 10);
+      body.append(WORDS, start, WORDS.indexOf(' ', start) + 1);
+      if (random.nextInt(12) == 0) {
+        body.append("\r\n");
+      }
+    }
+    body.setLength(options.getMessageSize());
+    return body.toString();
+  }
+}
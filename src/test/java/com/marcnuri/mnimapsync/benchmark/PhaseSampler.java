@@ -0,0 +1,152 @@
+/*
+ * PhaseSampler.java
+ *
+ * Created on 2026-10-18, 10:36
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.benchmark;
+
+import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.MNIMAPSync.Phase;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Polls a running {@link MNIMAPSync} and splits wall time, relay traffic and heap usage by
+ * {@link Phase}.
+ */
+final class PhaseSampler implements Runnable {
+
+  private static final long SAMPLE_PERIOD_MILLIS = 10L;
+
+  static final class PhaseStats {
+
+    private final Phase phase;
+    private final long startNanos;
+    private final long startBytes;
+    private final long startCommands;
+    private long endNanos;
+    private long endBytes;
+    private long endCommands;
+    private long peakHeapBytes;
+
+    private PhaseStats(Phase phase, long startNanos, long startBytes, long startCommands) {
+      this.phase = phase;
+      this.startNanos = startNanos;
+      this.startBytes = startBytes;
+      this.startCommands = startCommands;
+    }
+
+    Phase getPhase() {
+      return phase;
+    }
+
+    double getSeconds() {
+      return (endNanos - startNanos) / 1_000_000_000D;
+    }
+
+    long getBytes() {
+      return endBytes - startBytes;
+    }
+
+    long getRoundTrips() {
+      return endCommands - startCommands;
+    }
+
+    long getPeakHeapBytes() {
+      return peakHeapBytes;
+    }
+  }
+
+  private final MNIMAPSync sync;
+  private final List<ImapRelay> relays;
+  private final MemoryMXBean memory;
+  private final List<PhaseStats> phases;
+  private final Thread thread;
+  private volatile boolean running;
+  private PhaseStats current;
+
+  PhaseSampler(MNIMAPSync sync, List<ImapRelay> relays) {
+    this.sync = sync;
+    this.relays = relays;
+    this.memory = ManagementFactory.getMemoryMXBean();
+    this.phases = new ArrayList<>();
+    this.thread = new Thread(this, "phase-sampler");
+    this.thread.setDaemon(true);
+  }
+
+  void start() {
+    running = true;
+    thread.start();
+  }
+
+  /**
+   * Stops sampling and returns the stats of every phase the sync went through.
+   */
+  List<PhaseStats> stop() throws InterruptedException {
+    running = false;
+    thread.join();
+    sample();
+    close(current);
+    return Collections.unmodifiableList(phases);
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      sample();
+      try {
+        Thread.sleep(SAMPLE_PERIOD_MILLIS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private void sample() {
+    final Phase phase = sync.getPhase();
+    if (current == null || current.phase != phase) {
+      close(current);
+      current = new PhaseStats(phase, System.nanoTime(), bytes(), commands());
+      if (phase != Phase.IDLE && phase != Phase.FINISHED) {
+        phases.add(current);
+      }
+    }
+    current.peakHeapBytes = Math.max(current.peakHeapBytes, memory.getHeapMemoryUsage().getUsed());
+  }
+
+  private void close(PhaseStats stats) {
+    if (stats != null) {
+      stats.endNanos = System.nanoTime();
+      stats.endBytes = bytes();
+      stats.endCommands = commands();
+    }
+  }
+
+  private long bytes() {
+    return relays.stream().mapToLong(ImapRelay::getBytes).sum();
+  }
+
+  private long commands() {
+    return relays.stream().mapToLong(ImapRelay::getCommands).sum();
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * SyncBenchmark.java
+ *
+ * Created on 2026-10-18, 10:02
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.benchmark;
+
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.SyncOptions;
+import com.marcnuri.mnimapsync.benchmark.PhaseSampler.PhaseStats;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * End-to-end throughput benchmark.
+ *
+ * <p>Starts two embedded IMAP servers (source and target) on loopback ports, each behind an
+ * {@link ImapRelay} that counts round trips and can inject per-command latency, seeds them with a
+ * synthetic mailbox and runs {@link MNIMAPSync#sync()} reporting per phase throughput. Client
+ * connections can additionally be shaped (RTT, jitter, bandwidth) through
+ * {@link com.marcnuri.mnimapsync.imap.ShapingProfile}.
+ *
+ * <p>Run with: {@code gradle benchmark -PbenchmarkArgs="--messages 20000 --rtt 100 --upload 262144"}
+ */
+@SuppressWarnings({"squid:S106", "UseOfSystemOutOrSystemErr"})
+public final class SyncBenchmark {
+
+  private static final String USER = "bench";
+  private static final String PASSWORD = "bench";
+  private static final double MEGABYTE = 1024D * 1024D;
+
+  private SyncBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    final BenchmarkOptions options = BenchmarkOptions.parse(args);
+    final GreenMail sourceServer = startServer();
+    final GreenMail targetServer = startServer();
+    try (
+        final ImapRelay sourceRelay = new ImapRelay(
+            sourceServer.getImap().getPort(), options.getCommandLatencyMillis());
+        final ImapRelay targetRelay = new ImapRelay(
+            targetServer.getImap().getPort(), options.getCommandLatencyMillis())
+    ) {
+      final GreenMailUser sourceUser = sourceServer.setUser(USER + "@localhost", USER, PASSWORD);
+      final GreenMailUser targetUser = targetServer.setUser(USER + "@localhost", USER, PASSWORD);
+      final long seededBytes = new MailboxSeeder(options).seed(
+          sourceServer.getManagers().getImapHostManager(), sourceUser,
+          targetServer.getManagers().getImapHostManager(), targetUser);
+      System.gc();
+      final long baselineHeap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+      final MNIMAPSync sync = new MNIMAPSync(syncOptions(options, sourceRelay, targetRelay));
+      final PhaseSampler sampler = new PhaseSampler(sync, Arrays.asList(sourceRelay, targetRelay));
+      sampler.start();
+      sync.sync();
+      final List<PhaseStats> phases = sampler.stop();
+
+      System.out.printf(Locale.ENGLISH, "%nBenchmark: %s%n", options);
+      System.out.printf(Locale.ENGLISH, "Seeded: %.2f MB in source, baseline heap %.2f MB, "
+              + "%d connections%n", seededBytes / MEGABYTE, baselineHeap / MEGABYTE,
+          sourceRelay.getConnections() + targetRelay.getConnections());
+      System.out.println(report(sync, phases, baselineHeap));
+    } finally {
+      sourceServer.stop();
+      targetServer.stop();
+    }
+  }
+
+  private static GreenMail startServer() {
+    final GreenMail server = new GreenMail(ServerSetup.IMAP.dynamicPort());
+    server.start();
+    return server;
+  }
+
+  private static SyncOptions syncOptions(BenchmarkOptions options, ImapRelay sourceRelay,
+      ImapRelay targetRelay) {
+
+    final SyncOptions syncOptions = new SyncOptions();
+    configureHost(syncOptions.getSourceHost(), sourceRelay, options);
+    configureHost(syncOptions.getTargetHost(), targetRelay, options);
+    syncOptions.setThreads(options.getThreads());
+    syncOptions.setDelete(options.isDelete());
+    return syncOptions;
+  }
+
+  private static void configureHost(HostDefinition host, ImapRelay relay,
+      BenchmarkOptions options) {
+    host.setHost("127.0.0.1");
+    host.setPort(relay.getPort());
+    host.setUser(USER);
+    host.setPassword(PASSWORD);
+    host.setSsl(false);
+    host.setShaping(options.getShaping());
+  }
+
+  private static String report(MNIMAPSync sync, List<PhaseStats> phases, long baselineHeap) {
+    final StringBuilder report = new StringBuilder();
+    report.append(String.format(Locale.ENGLISH, "%-10s %10s %10s %10s %12s %12s %12s %14s%n",
+        "Phase", "Seconds", "Messages", "Msg/s", "MB", "MB/s", "Round trips", "Peak heap MB"));
+    for (PhaseStats stats : phases) {
+      final long messages = messages(sync, stats.getPhase());
+      final double seconds = Math.max(stats.getSeconds(), 1e-9D);
+      report.append(String.format(Locale.ENGLISH,
+          "%-10s %10.2f %10d %10.1f %12.2f %12.2f %12d %14.2f%n",
+          stats.getPhase(), stats.getSeconds(), messages, messages / seconds,
+          stats.getBytes() / MEGABYTE, stats.getBytes() / MEGABYTE / seconds,
+          stats.getRoundTrips(), (stats.getPeakHeapBytes() - baselineHeap) / MEGABYTE));
+    }
+    return report.toString();
+  }
+
+  private static long messages(MNIMAPSync sync, MNIMAPSync.Phase phase) {
+    switch (phase) {
+      case INDEXING:
+        return sync.getTargetIndex().getIndexedMessageCount()
+            + sync.getTargetIndex().getSkippedMessageCount();
+      case COPYING:
+        return sync.getSourceCopier() == null ? 0L : sync.getSourceCopier().getMessagesCopiedCount()
+            + sync.getSourceCopier().getMessagesSkippedCount();
+      case DELETING:
+        return sync.getTargetDeleter() == null ? 0L
+            : sync.getTargetDeleter().getMessagesDeletedCount()
+                + sync.getTargetDeleter().getMessagesSkippedCount();
+      case FLAGGING:
+        return sync.getTargetFlagger() == null ? 0L
+            : sync.getTargetFlagger().getMessagesFlaggedCount()
+                + sync.getTargetFlagger().getMessagesSkippedCount();
+      default:
+        return 0L;
+    }
+  }
+}
@@ -21,11 +21,14 @@
 package com.marcnuri.mnimapsync.cli;
 
 import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.index.IndexDiff;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics;
 import com.marcnuri.mnimapsync.store.StoreCopier;
 import com.marcnuri.mnimapsync.store.StoreDeleter;
 import org.junit.jupiter.api.Test;
 
 import static com.marcnuri.mnimapsync.cli.CliSummaryReport.getSummaryReportAsText;
+import static org.hamcrest.CoreMatchers.endsWith;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Mockito.doReturn;
@@ -130,4 +133,49 @@ class CliSummaryReportTest {
             + "\n"
             + "================================================================================\n"));
   }
+
+  @Test
+  void getSummaryReportAsText_dryRun_shouldPrintDiffReport() throws Exception {
+    // Given
+    final MNIMAPSync syncInstance = mock(MNIMAPSync.class);
+    final IndexDiff indexDiff = mock(IndexDiff.class);
+    doReturn(2).when(indexDiff).getFoldersToCopy();
+    doReturn(1337L).when(indexDiff).getMessagesToCopy();
+    doReturn(1).when(indexDiff).getFoldersToDelete();
+    doReturn(42L).when(indexDiff).getMessagesToDelete();
+    doReturn(indexDiff).when(syncInstance).getIndexDiff();
+    // When
+    final String result = getSummaryReportAsText(syncInstance);
+    // Then
+    assertThat(result, endsWith("  Messages deleted: 0/0\n"
+        + "\n"
+        + "  Dry run:          nothing was copied nor deleted\n"
+        + "  To copy:          2 folders, 1337 messages\n"
+        + "  To delete:        1 folders, 42 messages (with --delete)\n"
+        + "\n"
+        + "  Elapsed time:     0 seconds\n"
+        + "\n"
+        + "================================================================================\n"));
+  }
+
+  @Test
+  void getSummaryReportAsText_withImapMetrics_shouldPrintCommandTable() throws Exception {
+    // Given
+    final MNIMAPSync syncInstance = mock(MNIMAPSync.class);
+    final ImapMetrics imapMetrics = new ImapMetrics();
+    imapMetrics.record("source", "host1", "INBOX", "UID FETCH", 1500L, 1048576L, 512L, false);
+    imapMetrics.record("source", "host1", "Sent", "UID FETCH", 2500L, 1048576L, 512L, false);
+    imapMetrics.record("target", "host2", "INBOX", "APPEND", 20L, 0L, 2097152L, true);
+    doReturn(imapMetrics).when(syncInstance).getImapMetrics();
+    // When
+    final String result = getSummaryReportAsText(syncInstance);
+    // Then
+    assertThat(result, endsWith("  Elapsed time:     0 seconds\n"
+        + "\n"
+        + "  Side   Command          Count  Failed    p50 ms    p95 ms    p99 ms    Max ms     MB in    MB out\n"
+        + "  source UID FETCH            2       0      1.54      2.50      2.50      2.50      2.00      0.00\n"
+        + "  target APPEND               1       1      0.02      0.02      0.02      0.02      0.00      2.00\n"
+        + "\n"
+        + "================================================================================\n"));
+  }
 }
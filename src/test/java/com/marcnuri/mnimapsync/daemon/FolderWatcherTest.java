@@ -0,0 +1,197 @@
+/*
+ * FolderWatcherTest.java
+ *
+ * Created on 2026-10-18, 20:52
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.daemon;
+
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.marcnuri.mnimapsync.GreenMailPair;
+import com.marcnuri.mnimapsync.SyncOptions;
+import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.Flags;
+import jakarta.mail.Folder;
+import jakarta.mail.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static com.marcnuri.mnimapsync.MessageBuilder.message;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.openStore;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+
+class FolderWatcherTest {
+
+  private static final long TIMEOUT_MILLIS = 20000L;
+
+  @RegisterExtension
+  final GreenMailPair servers = new GreenMailPair();
+  private SyncOptions syncOptions;
+  private IMAPStore sourceStore;
+  private IMAPStore targetStore;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    final GreenMailUser sourceUser = servers.getSourceUser();
+    final GreenMailUser targetUser = servers.getTargetUser();
+    sourceUser.deliver(message(0).build());
+    sourceUser.deliver(message(2).build());
+    sourceUser.deliver(message(3).build());
+    targetUser.deliver(message(0).build());
+    targetUser.deliver(message(1).build());
+    targetUser.deliver(message(2).build());
+    syncOptions = new SyncOptions();
+    servers.configure(syncOptions);
+    sourceStore = openStore(syncOptions.getSourceHost(), 1);
+    targetStore = openStore(syncOptions.getTargetHost(), 1);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    sourceStore.close();
+    targetStore.close();
+  }
+
+  @Test
+  void run_changesSinceReconciliation_shouldCopyNewMessages() throws Exception {
+    // Given
+    final SyncDaemon daemon = new SyncDaemon(syncOptions);
+    // When
+    watch(daemon, () -> daemon.getMessagesCopiedCount() == 1L);
+    // Then
+    assertThat(targetSubjects(), containsInAnyOrder("Message 0", "Message 1", "Message 2",
+        "Message 3"));
+    assertThat(daemon.getMessagesDeletedCount(), equalTo(0L));
+  }
+
+  @Test
+  void run_changesSinceReconciliationAndDelete_shouldCopyNewAndDeleteRemovedMessages()
+      throws Exception {
+
+    // Given
+    syncOptions.setDelete(true);
+    final SyncDaemon daemon = new SyncDaemon(syncOptions);
+    // When
+    watch(daemon, () -> daemon.getMessagesDeletedCount() == 1L);
+    // Then
+    assertThat(targetSubjects(), containsInAnyOrder("Message 0", "Message 2", "Message 3"));
+    assertThat(daemon.getMessagesCopiedCount(), equalTo(1L));
+  }
+
+  @Test
+  void run_messageExpungedWhileWatching_shouldDeleteMessageFromTarget() throws Exception {
+    // Given
+    syncOptions.setDelete(true);
+    final SyncDaemon daemon = new SyncDaemon(syncOptions);
+    final FolderWatcher watcher = new FolderWatcher(daemon, sourceStore, targetStore,
+        new WatchedFolder("INBOX", "INBOX"));
+    final Thread thread = start(watcher);
+    waitFor(() -> daemon.getMessagesDeletedCount() == 1L);
+    // When
+    expungeFromSource("<0@localhost>");
+    // Then
+    waitFor(() -> daemon.getMessagesDeletedCount() == 2L);
+    stop(watcher, thread);
+    assertThat(targetSubjects(), containsInAnyOrder("Message 2", "Message 3"));
+  }
+
+  @Test
+  void run_restartedAfterChanges_shouldCatchUpFromLastUid() throws Exception {
+    // Given
+    syncOptions.setDelete(true);
+    final SyncDaemon daemon = new SyncDaemon(syncOptions);
+    final WatchedFolder folder = new WatchedFolder("INBOX", "INBOX");
+    watch(daemon, folder, () -> daemon.getMessagesDeletedCount() == 1L);
+    servers.getSourceUser().deliver(message(4).build());
+    expungeFromSource("<2@localhost>");
+    // When
+    watch(daemon, folder, () -> daemon.getMessagesDeletedCount() == 2L);
+    // Then
+    assertThat(targetSubjects(), containsInAnyOrder("Message 0", "Message 3", "Message 4"));
+    assertThat(daemon.getMessagesCopiedCount(), equalTo(2L));
+    assertThat(folder.getLastSourceUid(), equalTo(4L));
+    assertThat(folder.getSourceMessages().size(), equalTo(3));
+  }
+
+  private void watch(SyncDaemon daemon, BooleanSupplier until) throws Exception {
+    watch(daemon, new WatchedFolder("INBOX", "INBOX"), until);
+  }
+
+  private void watch(SyncDaemon daemon, WatchedFolder folder, BooleanSupplier until)
+      throws Exception {
+
+    final FolderWatcher watcher = new FolderWatcher(daemon, sourceStore, targetStore, folder);
+    final Thread thread = start(watcher);
+    waitFor(until);
+    stop(watcher, thread);
+  }
+
+  private static Thread start(FolderWatcher watcher) {
+    final Thread ret = new Thread(watcher);
+    ret.start();
+    return ret;
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!condition.getAsBoolean()) {
+      assertThat("Timed out", System.currentTimeMillis() < deadline, equalTo(true));
+      Thread.sleep(100L);
+    }
+  }
+
+  private static void stop(FolderWatcher watcher, Thread thread) throws InterruptedException {
+    watcher.stop();
+    thread.join(TIMEOUT_MILLIS);
+    assertThat(thread.isAlive(), equalTo(false));
+  }
+
+  private void expungeFromSource(String messageId) throws Exception {
+    try (IMAPStore store = openStore(syncOptions.getSourceHost(), 1)) {
+      final Folder inbox = store.getFolder("INBOX");
+      inbox.open(Folder.READ_WRITE);
+      for (Message message : inbox.getMessages()) {
+        if (messageId.equals(message.getHeader("Message-ID")[0])) {
+          message.setFlags(new Flags(Flags.Flag.DELETED), true);
+        }
+      }
+      inbox.expunge();
+      inbox.close(false);
+    }
+  }
+
+  private List<String> targetSubjects() throws Exception {
+    final List<String> ret = new ArrayList<>();
+    try (IMAPStore store = openStore(syncOptions.getTargetHost(), 1)) {
+      final Folder inbox = store.getFolder("INBOX");
+      inbox.open(Folder.READ_ONLY);
+      for (Message message : inbox.getMessages()) {
+        ret.add(message.getSubject());
+      }
+      inbox.close(false);
+    }
+    return ret;
+  }
+}
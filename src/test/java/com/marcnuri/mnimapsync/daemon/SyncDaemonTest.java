@@ -0,0 +1,121 @@
+/*
+ * SyncDaemonTest.java
+ *
+ * Created on 2026-10-18, 20:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.daemon;
+
+import com.marcnuri.mnimapsync.GreenMailPair;
+import com.marcnuri.mnimapsync.SyncOptions;
+import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.Folder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.function.BooleanSupplier;
+
+import static com.marcnuri.mnimapsync.MessageBuilder.message;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.openStore;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class SyncDaemonTest {
+
+  private static final long TIMEOUT_MILLIS = 20000L;
+
+  @RegisterExtension
+  final GreenMailPair servers = new GreenMailPair();
+  private SyncOptions syncOptions;
+  private SyncDaemon daemon;
+  private Thread daemonThread;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    for (int it = 0; it < 3; it++) {
+      deliver(it);
+    }
+    syncOptions = new SyncOptions();
+    syncOptions.setThreads(1);
+    servers.configure(syncOptions);
+    daemon = new SyncDaemon(syncOptions);
+    daemonThread = new Thread(() -> {
+      try {
+        daemon.run();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    daemon.close();
+    daemonThread.join(TIMEOUT_MILLIS);
+  }
+
+  @Test
+  void run_newMessageDelivered_shouldCopyMessageWithoutReconciliation() throws Exception {
+    // Given
+    daemonThread.start();
+    waitFor(() -> targetInboxCount() == 3);
+    // When
+    deliver(3);
+    // Then
+    waitFor(() -> targetInboxCount() == 4);
+    assertThat(daemon.getReconciliationCount(), equalTo(1));
+    assertThat(daemon.getMessagesCopiedCount(), equalTo(4L));
+  }
+
+  @Test
+  void close_running_shouldStopDaemon() throws Exception {
+    // Given
+    daemonThread.start();
+    waitFor(() -> targetInboxCount() == 3);
+    // When
+    daemon.close();
+    daemonThread.join(TIMEOUT_MILLIS);
+    // Then
+    assertThat(daemonThread.isAlive(), equalTo(false));
+  }
+
+  private void deliver(int index) throws Exception {
+    servers.getSourceUser().deliver(message(index).build());
+  }
+
+  private int targetInboxCount() {
+    try (IMAPStore store = openStore(syncOptions.getTargetHost(), 1)) {
+      final Folder inbox = store.getFolder("INBOX");
+      inbox.open(Folder.READ_ONLY);
+      final int ret = inbox.getMessageCount();
+      inbox.close(false);
+      return ret;
+    } catch (Exception ex) {
+      return -1;
+    }
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (!condition.getAsBoolean()) {
+      assertThat("Timed out", System.currentTimeMillis() < deadline, equalTo(true));
+      Thread.sleep(100L);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * FolderFilterTest.java
+ *
+ * Created on 2026-10-18, 11:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class FolderFilterTest {
+
+  private FolderFilter folderFilter;
+
+  @BeforeEach
+  void setUp() {
+    folderFilter = new FolderFilter();
+  }
+
+  @Test
+  void isExcluded_emptyFilter_shouldExcludeNothing() {
+    // Then
+    assertThat(folderFilter.isExcluded("Trash", "/"), equalTo(false));
+    assertThat(folderFilter.isIncluded("Trash", "/"), equalTo(true));
+  }
+
+  @Test
+  void isExcluded_globExclude_shouldExcludeFolderAndSubfolders() {
+    // Given
+    folderFilter.addExclude("Trash");
+    folderFilter.addExclude("Shared/*");
+    // Then
+    assertThat(folderFilter.isExcluded("Trash", "."), equalTo(true));
+    assertThat(folderFilter.isExcluded("Trash.2019", "."), equalTo(true));
+    assertThat(folderFilter.isExcluded("Shared", "."), equalTo(false));
+    assertThat(folderFilter.isExcluded("Shared.Team", "."), equalTo(true));
+    assertThat(folderFilter.isExcluded("Shared.Team.Old", "."), equalTo(true));
+    assertThat(folderFilter.isExcluded("TrashCan", "."), equalTo(false));
+  }
+
+  @Test
+  void isExcluded_regexExclude_shouldMatchNormalizedNames() {
+    // Given
+    folderFilter.addExclude("regex:Archive/20(0\\d|1[0-4])");
+    // Then
+    assertThat(folderFilter.isExcluded("Archive.2009", "."), equalTo(true));
+    assertThat(folderFilter.isExcluded("Archive/2014", "/"), equalTo(true));
+    assertThat(folderFilter.isExcluded("Archive.2015", "."), equalTo(false));
+  }
+
+  @Test
+  void isExcluded_globInclude_shouldOnlyListAncestorsOfIncludedFolders() {
+    // Given
+    folderFilter.addInclude("inbox");
+    folderFilter.addInclude("Work/Projects/**");
+    // Then
+    assertThat(folderFilter.isExcluded("INBOX", "."), equalTo(false));
+    assertThat(folderFilter.isIncluded("INBOX", "."), equalTo(true));
+    assertThat(folderFilter.isExcluded("Work", "."), equalTo(false));
+    assertThat(folderFilter.isIncluded("Work", "."), equalTo(false));
+    assertThat(folderFilter.isExcluded("Work.Projects", "."), equalTo(false));
+    assertThat(folderFilter.isIncluded("Work.Projects.Alpha", "."), equalTo(true));
+    assertThat(folderFilter.isExcluded("Work.Personal", "."), equalTo(true));
+    assertThat(folderFilter.isExcluded("Spam", "."), equalTo(true));
+  }
+
+  @Test
+  void isExcluded_includeAndExclude_shouldPreferExclude() {
+    // Given
+    folderFilter.addInclude("**");
+    folderFilter.addExclude("INBOX/Junk");
+    // Then
+    assertThat(folderFilter.isExcluded("Inbox.Junk", "."), equalTo(true));
+    assertThat(folderFilter.isExcluded("Inbox.Receipts", "."), equalTo(false));
+    assertThat(folderFilter.isIncluded("Inbox.Receipts", "."), equalTo(true));
+  }
+}
@@ -22,16 +22,21 @@ package com.marcnuri.mnimapsync.imap;
 
 import com.marcnuri.mnimapsync.HostDefinition;
 import com.marcnuri.mnimapsync.index.Index;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics;
 import com.sun.mail.imap.IMAPSSLStore;
 import com.sun.mail.imap.IMAPStore;
 import jakarta.mail.Authenticator;
+import jakarta.mail.Provider;
 import jakarta.mail.Session;
 import mockit.Mock;
 import mockit.MockUp;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 
 import static com.marcnuri.mnimapsync.imap.IMAPUtils.*;
@@ -46,6 +51,7 @@ import static org.mockito.Mockito.*;
 class IMAPUtilsTest {
 
   private Session session;
+  private Properties sessionProperties;
   private Index sourceIndex;
   private Index targetIndex;
 
@@ -56,6 +62,7 @@ class IMAPUtilsTest {
     new MockUp<Session>() {
       @Mock
       Session getInstance(Properties props, Authenticator authenticator) {
+        sessionProperties = props;
         return session;
       }
     };
@@ -111,6 +118,45 @@ class IMAPUtilsTest {
         .connect(eq("mail.host"), eq(1337), eq("the-user"), eq("the-pw"));
   }
 
+  @Test
+  void openStore_severalThreads_shouldConfigureHealthCheckedPool() throws Exception {
+    // Given
+    doReturn(mock(IMAPStore.class)).when(session).getStore(eq("imap"));
+    final HostDefinition hostDefinition = new HostDefinition();
+    hostDefinition.setHost("mail.host");
+    hostDefinition.setPort(1337);
+    // When
+    openStore(hostDefinition, 4);
+    // Then
+    assertThat(sessionProperties.getProperty("mail.imap.connectionpoolsize"), equalTo("5"));
+    assertThat(sessionProperties.getProperty("mail.imap.servertimeout"),
+        equalTo(String.valueOf(POOL_VALIDATION_MILLIS)));
+    assertThat(sessionProperties.getProperty("mail.imap.connectionpooltimeout"),
+        equalTo(String.valueOf(POOL_IDLE_TIMEOUT_MILLIS)));
+  }
+
+  @Test
+  void openStore_withMetrics_shouldRegisterInstrumentedStores() throws Exception {
+    // Given
+    final IMAPStore mockedStore = mock(IMAPStore.class);
+    doReturn(mockedStore).when(session).getStore(eq("imap"));
+    final HostDefinition hostDefinition = new HostDefinition();
+    hostDefinition.setHost("mail.host");
+    hostDefinition.setPort(1337);
+    // When
+    final IMAPStore store = openStore(hostDefinition, 1, new ImapMetrics(), ImapMetrics.SOURCE);
+    // Then
+    assertThat(store, equalTo(mockedStore));
+    final ArgumentCaptor<Provider> providers = ArgumentCaptor.forClass(Provider.class);
+    verify(session, times(2)).setProvider(providers.capture());
+    final List<Provider> registered = providers.getAllValues();
+    assertThat(registered.get(0).getProtocol(), equalTo("imap"));
+    assertThat(registered.get(0).getClassName(), equalTo(InstrumentedIMAPStore.class.getName()));
+    assertThat(registered.get(1).getProtocol(), equalTo("imaps"));
+    assertThat(registered.get(1).getClassName(),
+        equalTo(InstrumentedIMAPSSLStore.class.getName()));
+  }
+
   @Test
   void sourceFolderNameToTarget_sourceIsInbox_shouldReturnTargetInboxName() {
     // Given
@@ -150,4 +196,47 @@ class IMAPUtilsTest {
     // Then
     assertThat(result, equalTo("Folder.With.Separator"));
   }
+
+  @Test
+  void uidSets_unsortedUids_shouldReturnCompactRanges() {
+    // When
+    final List<String> result = uidSets(new long[]{9L, 1L, 2L, 3L, 7L, 10L, 4L, 12L, 11L}, 8000);
+    // Then
+    assertThat(result, equalTo(Arrays.asList("1:4,7,9:12")));
+  }
+
+  @Test
+  void uidSets_longerThanMaxLength_shouldSplitAtRangeBoundaries() {
+    // When
+    final List<String> result = uidSets(new long[]{1L, 2L, 5L, 7L, 8L, 9L, 20L}, 8);
+    // Then
+    assertThat(result, equalTo(Arrays.asList("1:2,5", "7:9,20")));
+  }
+
+  @Test
+  void uidBatches_uidsWithGaps_shouldReturnNonOverlappingBatches() {
+    // When
+    final List<long[]> result = uidBatches(new long[]{1L, 2L, 5L, 7L, 8L, 20L, 21L}, 3);
+    // Then
+    assertThat(result.size(), equalTo(3));
+    assertThat(result.get(0), equalTo(new long[]{1L, 2L, 5L}));
+    assertThat(result.get(1), equalTo(new long[]{7L, 8L, 20L}));
+    assertThat(result.get(2), equalTo(new long[]{21L}));
+  }
+
+  @Test
+  void uidBatches_noUids_shouldReturnNoBatch() {
+    // When
+    final List<long[]> result = uidBatches(new long[0], 3);
+    // Then
+    assertThat(result.isEmpty(), equalTo(true));
+  }
+
+  @Test
+  void isValidKeyword_keywordWithAtomSpecials_shouldReturnFalse() {
+    // Then
+    assertThat(isValidKeyword("$Forwarded"), equalTo(true));
+    assertThat(isValidKeyword("\\Seen"), equalTo(false));
+    assertThat(isValidKeyword("Needs review"), equalTo(false));
+  }
 }
@@ -0,0 +1,140 @@
+/*
+ * ImapSocketFactoryTest.java
+ *
+ * Created on 2026-10-18, 11:41
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+class ImapSocketFactoryTest {
+
+  private ServerSocket echoServer;
+  private Thread echoThread;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    echoServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    echoThread = new Thread(() -> {
+      try (Socket socket = echoServer.accept()) {
+        final InputStream is = socket.getInputStream();
+        final OutputStream os = socket.getOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) >= 0) {
+          os.write(buffer, 0, read);
+          os.flush();
+        }
+      } catch (IOException ex) {
+        // Test finished
+      }
+    });
+    echoThread.setDaemon(true);
+    echoThread.start();
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    echoServer.close();
+    echoServer = null;
+    echoThread = null;
+  }
+
+  @Test
+  void createSocket_noShaping_shouldEchoData() throws Exception {
+    // Given
+    final ImapSocketFactory factory = new ImapSocketFactory(null);
+    // When
+    final byte[] result;
+    try (Socket socket = factory.createSocket(InetAddress.getLoopbackAddress(),
+        echoServer.getLocalPort())) {
+      result = roundTrip(socket, "A1 NOOP\r\n".getBytes());
+    }
+    // Then
+    assertThat(new String(result), equalTo("A1 NOOP\r\n"));
+  }
+
+  @Test
+  void createSocket_withLatency_shouldDelayEveryRequest() throws Exception {
+    // Given
+    final ShapingProfile shaping = new ShapingProfile();
+    shaping.setLatencyMillis(50L);
+    final ImapSocketFactory factory = new ImapSocketFactory(shaping);
+    // When
+    final long start = System.nanoTime();
+    try (Socket socket = factory.createSocket(InetAddress.getLoopbackAddress(),
+        echoServer.getLocalPort())) {
+      for (int it = 0; it < 4; it++) {
+        roundTrip(socket, ("A" + it + " NOOP\r\n").getBytes());
+      }
+    }
+    final long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+    // Then
+    assertThat(elapsedMillis, greaterThanOrEqualTo(200L));
+  }
+
+  @Test
+  void createSocket_withUploadBandwidth_shouldLimitThroughput() throws Exception {
+    // Given
+    final ShapingProfile shaping = new ShapingProfile();
+    shaping.setUploadBytesPerSecond(64L * 1024L);
+    final ImapSocketFactory factory = new ImapSocketFactory(shaping);
+    final byte[] payload = new byte[32 * 1024];
+    // When
+    final long start = System.nanoTime();
+    final byte[] result;
+    try (Socket socket = factory.createSocket(InetAddress.getLoopbackAddress(),
+        echoServer.getLocalPort())) {
+      result = roundTrip(socket, payload);
+    }
+    final long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+    // Then (first 100ms worth of bytes are granted by the initial burst)
+    assertThat(result.length, equalTo(payload.length));
+    assertThat(elapsedMillis, greaterThanOrEqualTo(350L));
+  }
+
+  private static byte[] roundTrip(Socket socket, byte[] request) throws IOException {
+    final OutputStream os = socket.getOutputStream();
+    os.write(request);
+    os.flush();
+    final byte[] response = new byte[request.length];
+    final InputStream is = socket.getInputStream();
+    int pos = 0;
+    while (pos < response.length) {
+      final int read = is.read(response, pos, response.length - pos);
+      if (read < 0) {
+        throw new IOException("Connection closed");
+      }
+      pos += read;
+    }
+    return response;
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * InstrumentedIMAPProtocolTest.java
+ *
+ * Created on 2026-10-18, 13:58
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.marcnuri.mnimapsync.GreenMailPair;
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.metrics.CommandMetrics;
+import com.marcnuri.mnimapsync.metrics.CompressionMetrics;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics.Key;
+import com.marcnuri.mnimapsync.metrics.ThrottleMetrics;
+import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.Folder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasKey;
+
+class InstrumentedIMAPProtocolTest {
+
+  private GreenMail server;
+
+  @BeforeEach
+  void setUp() {
+    server = new GreenMail(ServerSetup.IMAP.dynamicPort());
+    server.start();
+    server.setUser("user@localhost", GreenMailPair.USER, GreenMailPair.PASSWORD);
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop();
+    server = null;
+  }
+
+  @Test
+  void commandName_simpleCommand_shouldReturnCommand() {
+    assertThat(InstrumentedIMAPProtocol.commandName("FETCH 1:200 (ENVELOPE)"),
+        equalTo("FETCH"));
+  }
+
+  @Test
+  void commandName_uidCommand_shouldReturnUidAndCommand() {
+    assertThat(InstrumentedIMAPProtocol.commandName("uid fetch 1:* (FLAGS)"),
+        equalTo("UID FETCH"));
+  }
+
+  @Test
+  void commandName_noArguments_shouldReturnCommand() {
+    assertThat(InstrumentedIMAPProtocol.commandName("NOOP"), equalTo("NOOP"));
+  }
+
+  @Test
+  void openStore_withMetrics_shouldRecordCommandsPerFolder() throws Exception {
+    // Given
+    final ImapMetrics metrics = new ImapMetrics();
+    final HostDefinition hostDefinition = GreenMailPair.host(server);
+    // When
+    try (IMAPStore store = IMAPUtils.openStore(hostDefinition, 1, metrics, ImapMetrics.TARGET)) {
+      store.getDefaultFolder().list();
+      final Folder inbox = store.getFolder("INBOX");
+      inbox.open(Folder.READ_ONLY);
+      inbox.getMessageCount();
+      inbox.close(false);
+      assertThat(store, instanceOf(InstrumentedIMAPStore.class));
+    }
+    // Then
+    final Map<Key, CommandMetrics> commands = metrics.getCommands();
+    assertThat(commands, hasKey(new Key("target", "127.0.0.1", "", "CONNECT")));
+    assertThat(commands, hasKey(new Key("target", "127.0.0.1", "", "LOGIN")));
+    assertThat(commands, hasKey(new Key("target", "127.0.0.1", "", "LIST")));
+    final CommandMetrics examine = commands.get(new Key("target", "127.0.0.1", "INBOX", "EXAMINE"));
+    assertThat(examine.getCount(), equalTo(1L));
+    assertThat(examine.getFailures(), equalTo(0L));
+    assertThat(examine.getBytesIn(), greaterThan(0L));
+    assertThat(examine.getBytesOut(), greaterThan(0L));
+    assertThat(examine.getLatency().getMax(), greaterThan(0L));
+  }
+
+  @Test
+  void warmUp_severalConnections_shouldPoolConnectionsForFolders() throws Exception {
+    // Given
+    final ImapMetrics metrics = new ImapMetrics();
+    final HostDefinition hostDefinition = GreenMailPair.host(server);
+    try (IMAPStore store = IMAPUtils.openStore(hostDefinition, 3, metrics, ImapMetrics.TARGET)) {
+      // When
+      final int result = IMAPUtils.warmUp(store, 3, metrics, ImapMetrics.TARGET);
+      final Key connect = new Key("target", "127.0.0.1", "", "CONNECT");
+      final long warmConnections = metrics.getCommands().get(connect).getCount();
+      final Folder[] folders = new Folder[3];
+      for (int it = 0; it < folders.length; it++) {
+        folders[it] = store.getFolder("INBOX");
+        folders[it].open(Folder.READ_ONLY);
+      }
+      for (Folder folder : folders) {
+        folder.close(false);
+      }
+      // Then
+      assertThat(result, equalTo(3));
+      assertThat(metrics.getPools().get(ImapMetrics.TARGET).getWarmedUpConnections(),
+          equalTo(3L));
+      assertThat(metrics.getCommands().get(connect).getCount(), equalTo(warmConnections));
+    }
+  }
+
+  @Test
+  void openStore_withAdaptiveThrottling_shouldRecordThrottleLimits() throws Exception {
+    // Given
+    final ImapMetrics metrics = new ImapMetrics();
+    final HostDefinition hostDefinition = GreenMailPair.host(server);
+    hostDefinition.setAdaptiveThrottling(true);
+    // When
+    try (IMAPStore store = IMAPUtils.openStore(hostDefinition, 2, metrics, ImapMetrics.SOURCE)) {
+      final Folder inbox = store.getFolder("INBOX");
+      inbox.open(Folder.READ_ONLY);
+      inbox.getMessageCount();
+      inbox.close(false);
+    }
+    // Then
+    final ThrottleMetrics result = metrics.getThrottles().get(ImapMetrics.SOURCE);
+    assertThat(result.getThrottledResponses(), equalTo(0L));
+    assertThat(result.getDecreases(), equalTo(0L));
+    assertThat(result.getInFlightLimit(), equalTo(3));
+    assertThat(result.getBytesPerSecondLimit(), equalTo(0L));
+  }
+
+  @Test
+  void openStore_withAdaptiveThrottling_shouldAddConnectionsOfOpenStores() throws Exception {
+    // Given
+    final HostDefinition hostDefinition = GreenMailPair.host(server);
+    hostDefinition.setAdaptiveThrottling(true);
+    final ThrottleController throttle = ThrottleController.forHost(hostDefinition);
+    // When
+    final IMAPStore source = IMAPUtils.openStore(hostDefinition, 2, new ImapMetrics(),
+        ImapMetrics.SOURCE);
+    final IMAPStore target = IMAPUtils.openStore(hostDefinition, 4, new ImapMetrics(),
+        ImapMetrics.TARGET);
+    final int bothOpen = throttle.getMaxInFlight();
+    target.close();
+    final int oneOpen = throttle.getMaxInFlight();
+    source.close();
+    // Then
+    assertThat(bothOpen, equalTo(8));
+    assertThat(oneOpen, equalTo(3));
+    assertThat(throttle.getMaxInFlight(), equalTo(0));
+  }
+
+  @Test
+  void openStore_compressAdvertised_shouldRecordCompressionRatio() throws Exception {
+    // Given
+    final ImapMetrics metrics = new ImapMetrics();
+    final HostDefinition hostDefinition = new HostDefinition();
+    hostDefinition.setHost("127.0.0.1");
+    hostDefinition.setUser("user");
+    hostDefinition.setPassword("pw");
+    hostDefinition.setCompress(true);
+    try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      final Thread compressServer = new Thread(() -> serveCompressed(serverSocket));
+      compressServer.setDaemon(true);
+      compressServer.start();
+      hostDefinition.setPort(serverSocket.getLocalPort());
+      // When
+      try (IMAPStore store = IMAPUtils.openStore(hostDefinition, 1, metrics, ImapMetrics.SOURCE)) {
+        for (int it = 0; it < 10; it++) {
+          assertThat(store.isConnected(), equalTo(true));
+        }
+      }
+      compressServer.join(10000L);
+    }
+    // Then
+    final CompressionMetrics result = metrics.getCompression().get(ImapMetrics.SOURCE);
+    assertThat(result.getConnections(), equalTo(1L));
+    assertThat(result.getWireBytes(), greaterThan(0L));
+    assertThat(result.getPlainBytes(), greaterThan(0L));
+    assertThat(result.getMinConnectionRatio(), greaterThan(0D));
+  }
+
+  @Test
+  void openStore_compressNotAdvertised_shouldRecordNoCompression() throws Exception {
+    // Given
+    final ImapMetrics metrics = new ImapMetrics();
+    final HostDefinition hostDefinition = GreenMailPair.host(server);
+    hostDefinition.setCompress(true);
+    // When
+    try (IMAPStore store = IMAPUtils.openStore(hostDefinition, 1, metrics, ImapMetrics.TARGET)) {
+      assertThat(store.isConnected(), equalTo(true));
+    }
+    // Then
+    assertThat(metrics.getCompression().isEmpty(), equalTo(true));
+  }
+
+  /**
+   * Minimal IMAP server accepting a single connection that supports LOGIN, COMPRESS DEFLATE,
+   * NOOP and LOGOUT.
+   */
+  private static void serveCompressed(ServerSocket serverSocket) {
+    try (Socket socket = serverSocket.accept()) {
+      InputStream in = socket.getInputStream();
+      OutputStream out = socket.getOutputStream();
+      write(out, "* OK [CAPABILITY IMAP4rev1 COMPRESS=DEFLATE] ready");
+      String line;
+      while ((line = readLine(in)) != null) {
+        final String[] command = line.split(" ");
+        final String verb = command[1].toUpperCase();
+        if (verb.equals("CAPABILITY")) {
+          write(out, "* CAPABILITY IMAP4rev1 COMPRESS=DEFLATE");
+        } else if (verb.equals("LOGOUT")) {
+          write(out, "* BYE");
+          write(out, command[0] + " OK LOGOUT completed");
+          return;
+        }
+        write(out, command[0] + " OK " + verb + " completed");
+        if (verb.equals("COMPRESS")) {
+          in = new InflaterInputStream(in, new Inflater(true));
+          out = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true),
+              true);
+        }
+      }
+    } catch (IOException ex) {
+      // Client disconnected
+    }
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    final StringBuilder ret = new StringBuilder();
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c == -1) {
+        return null;
+      }
+      if (c != '\r') {
+        ret.append((char) c);
+      }
+    }
+    return ret.toString();
+  }
+
+  private static void write(OutputStream out, String line) throws IOException {
+    out.write((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    out.flush();
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * SharedBandwidthTest.java
+ *
+ * Created on 2026-10-18, 06:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import com.marcnuri.mnimapsync.HostDefinition;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+class SharedBandwidthTest {
+
+  @Test
+  void acquire_limited_shouldLimitThroughput() throws Exception {
+    // Given
+    final SharedBandwidth sharedBandwidth = new SharedBandwidth(64L * 1024L);
+    final TrafficLimiter share = sharedBandwidth.share("user@host:143");
+    // When
+    final long start = System.nanoTime();
+    for (int it = 0; it < 8; it++) {
+      share.acquire(4096L);
+    }
+    final long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+    // Then (first 100ms worth of bytes are granted by the initial burst)
+    assertThat(elapsedMillis, greaterThanOrEqualTo(350L));
+  }
+
+  @Test
+  void acquire_accountsWithDifferentConnections_shouldShareFairly() throws Exception {
+    // Given
+    final SharedBandwidth sharedBandwidth = new SharedBandwidth(256L * 1024L);
+    final AtomicLong largeAccountBytes = new AtomicLong();
+    final AtomicLong smallAccountBytes = new AtomicLong();
+    final List<Runnable> connections = new ArrayList<>();
+    for (int it = 0; it < 4; it++) {
+      connections.add(transfer(sharedBandwidth.share("large@host:143"), largeAccountBytes));
+    }
+    connections.add(transfer(sharedBandwidth.share("small@host:143"), smallAccountBytes));
+    final ExecutorService executor = Executors.newFixedThreadPool(connections.size());
+    // When
+    connections.forEach(executor::execute);
+    TimeUnit.MILLISECONDS.sleep(1000L);
+    executor.shutdownNow();
+    executor.awaitTermination(5L, TimeUnit.SECONDS);
+    // Then (a FIFO bucket would grant the small account 1/5 of the bytes)
+    final double total = largeAccountBytes.get() + smallAccountBytes.get();
+    assertThat(smallAccountBytes.get() / total, greaterThan(0.4D));
+  }
+
+  @Test
+  void limiterFor_noLimits_shouldReturnNull() {
+    // Given
+    final HostDefinition hostDefinition = new HostDefinition();
+    hostDefinition.setHost("unlimited.example.com");
+    hostDefinition.setPort(143);
+    hostDefinition.setUser("user");
+    // When
+    final TrafficLimiter result = SharedBandwidth.limiterFor(hostDefinition);
+    // Then
+    assertThat(result, nullValue());
+  }
+
+  @Test
+  void limiterFor_sameHostLimit_shouldShareBucketAcrossAccounts() {
+    // Given
+    final HostDefinition first = new HostDefinition();
+    first.setHost("limited.example.com");
+    first.setPort(143);
+    first.setUser("first");
+    first.setBandwidthLimit(1024L);
+    final HostDefinition second = new HostDefinition();
+    second.setHost("limited.example.com");
+    second.setPort(143);
+    second.setUser("second");
+    second.setBandwidthLimit(2048L);
+    // When
+    final TrafficLimiter firstResult = SharedBandwidth.limiterFor(first);
+    final TrafficLimiter secondResult = SharedBandwidth.limiterFor(second);
+    // Then
+    assertThat(((SharedBandwidth.Share) firstResult).getBandwidth(),
+        equalTo(((SharedBandwidth.Share) secondResult).getBandwidth()));
+    assertThat(((SharedBandwidth.Share) firstResult).getBandwidth().getBytesPerSecond(),
+        equalTo(2048L));
+  }
+
+  private static Runnable transfer(TrafficLimiter share, AtomicLong bytes) {
+    return () -> {
+      try {
+        while (!Thread.currentThread().isInterrupted()) {
+          share.acquire(1024L);
+          bytes.addAndGet(1024L);
+        }
+      } catch (InterruptedIOException ex) {
+        // Test finished
+      }
+    };
+  }
+}
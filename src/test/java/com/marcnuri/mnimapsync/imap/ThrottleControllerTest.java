@@ -0,0 +1,170 @@
+/*
+ * ThrottleControllerTest.java
+ *
+ * Created on 2026-10-18, 05:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+
+import com.sun.mail.iap.Response;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class ThrottleControllerTest {
+
+  @Test
+  void release_throttledResponse_shouldHalveInFlightLimit() throws Exception {
+    // Given
+    final ThrottleController throttleController = new ThrottleController(8);
+    throttleController.acquire();
+    // When
+    final boolean result = throttleController.release("UID FETCH", 1000L, 1024L, true);
+    // Then
+    assertThat(result, equalTo(true));
+    assertThat(throttleController.getInFlightLimit(), equalTo(4));
+  }
+
+  @Test
+  void release_severalThrottledResponsesInCooldown_shouldDecreaseOnce() throws Exception {
+    // Given
+    final ThrottleController throttleController = new ThrottleController(8);
+    for (int it = 0; it < 4; it++) {
+      throttleController.acquire();
+    }
+    // When
+    int result = 0;
+    for (int it = 0; it < 4; it++) {
+      result += throttleController.release("APPEND", 1000L, 1024L, true) ? 1 : 0;
+    }
+    // Then
+    assertThat(result, equalTo(1));
+    assertThat(throttleController.getInFlightLimit(), equalTo(4));
+  }
+
+  @Test
+  void release_commandsInTime_shouldIncreaseAdditivelyUpToMax() throws Exception {
+    // Given
+    final ThrottleController throttleController = new ThrottleController(4);
+    throttleController.acquire();
+    throttleController.release("APPEND", 1000L, 1024L, true);
+    // When
+    // 2 + 1/2 + 1/2.5 + 1/2.9
+    for (int it = 0; it < 3; it++) {
+      throttleController.acquire();
+      throttleController.release("APPEND", 1000L, 1024L, false);
+    }
+    final int afterThreeCommands = throttleController.getInFlightLimit();
+    for (int it = 0; it < 100; it++) {
+      throttleController.acquire();
+      throttleController.release("APPEND", 1000L, 1024L, false);
+    }
+    // Then
+    assertThat(afterThreeCommands, equalTo(3));
+    assertThat(throttleController.getInFlightLimit(), equalTo(4));
+  }
+
+  @Test
+  void release_commandMuchSlowerThanUsual_shouldDecrease() throws Exception {
+    // Given
+    final ThrottleController throttleController = new ThrottleController(8);
+    for (int it = 0; it < 10; it++) {
+      throttleController.acquire();
+      throttleController.release("UID FETCH", 100_000L, 1024L, false);
+    }
+    throttleController.acquire();
+    // When
+    final boolean result = throttleController.release("UID FETCH", 2_000_000L, 1024L, false);
+    // Then
+    assertThat(result, equalTo(true));
+    assertThat(throttleController.getInFlightLimit(), equalTo(4));
+  }
+
+  @Test
+  void release_largeCommandSlowerThanUsual_shouldNotDecrease() throws Exception {
+    // Given
+    final ThrottleController throttleController = new ThrottleController(8);
+    for (int it = 0; it < 10; it++) {
+      throttleController.acquire();
+      throttleController.release("APPEND", 100_000L, 1024L, false);
+    }
+    throttleController.acquire();
+    // When
+    final boolean result = throttleController.release("APPEND", 2_000_000L, 10L << 20, false);
+    // Then
+    assertThat(result, equalTo(false));
+    assertThat(throttleController.getInFlightLimit(), equalTo(8));
+  }
+
+  @Test
+  void addMaxInFlight_severalStores_shouldSumAndReleaseTheirConnections() {
+    // Given
+    final ThrottleController throttleController = new ThrottleController(0);
+    // When
+    throttleController.addMaxInFlight(3);
+    throttleController.addMaxInFlight(5);
+    final int bothRegistered = throttleController.getInFlightLimit();
+    throttleController.addMaxInFlight(-5);
+    // Then
+    assertThat(bothRegistered, equalTo(8));
+    assertThat(throttleController.getMaxInFlight(), equalTo(3));
+    assertThat(throttleController.getInFlightLimit(), equalTo(3));
+  }
+
+  @Test
+  void acquire_limitReached_shouldWaitForRelease() throws Exception {
+    // Given
+    final ThrottleController throttleController = new ThrottleController(1);
+    throttleController.acquire();
+    // When
+    final CompletableFuture<Void> result = CompletableFuture.runAsync(throttleController::acquire);
+    // Then
+    TimeUnit.MILLISECONDS.sleep(200L);
+    assertThat(result.isDone(), equalTo(false));
+    throttleController.release("NOOP", 1000L, 0L, false);
+    result.get(5L, TimeUnit.SECONDS);
+    assertThat(result.isDone(), equalTo(true));
+  }
+
+  @Test
+  void isThrottled_throttlingResponses_shouldReturnTrue() throws Exception {
+    assertThat(ThrottleController.isThrottled("APPEND", new Response[]{
+        new Response("A1 NO [THROTTLED] Too many commands")}), equalTo(true));
+    assertThat(ThrottleController.isThrottled("UID FETCH", new Response[]{
+        new Response("A2 NO Request is throttled. Suggested Backoff Time: 196 milliseconds")}),
+        equalTo(true));
+    assertThat(ThrottleController.isThrottled("SELECT", new Response[]{
+        new Response("A3 NO [LIMIT] Too many connections")}), equalTo(true));
+    assertThat(ThrottleController.isThrottled("NOOP", new Response[]{
+        new Response("* BYE Too many simultaneous connections"),
+        new Response("A4 OK NOOP completed")}), equalTo(true));
+  }
+
+  @Test
+  void isThrottled_regularResponses_shouldReturnFalse() throws Exception {
+    assertThat(ThrottleController.isThrottled("SELECT", new Response[]{
+        new Response("A1 NO [NONEXISTENT] No such mailbox")}), equalTo(false));
+    assertThat(ThrottleController.isThrottled("LOGOUT", new Response[]{
+        new Response("* BYE Logging out"), new Response("A2 OK LOGOUT completed")}),
+        equalTo(false));
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * TlsSocketFactoryTest.java
+ *
+ * Created on 2026-10-18, 03:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.imap;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.marcnuri.mnimapsync.GreenMailPair;
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics;
+import com.marcnuri.mnimapsync.metrics.TlsMetrics;
+import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.Folder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+class TlsSocketFactoryTest {
+
+  private GreenMail server;
+  private HostDefinition hostDefinition;
+
+  @BeforeEach
+  void setUp() {
+    server = new GreenMail(ServerSetup.IMAPS.dynamicPort());
+    server.start();
+    server.setUser("user@localhost", GreenMailPair.USER, GreenMailPair.PASSWORD);
+    hostDefinition = GreenMailPair.host(server);
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop();
+    server = null;
+  }
+
+  @Test
+  void getSharedContext_sameHost_shouldReturnSameContext() throws Exception {
+    // Given
+    final HostDefinition otherAccount = new HostDefinition();
+    otherAccount.setHost(hostDefinition.getHost());
+    otherAccount.setPort(hostDefinition.getPort());
+    otherAccount.setUser("other");
+    final HostDefinition otherPort = new HostDefinition();
+    otherPort.setHost(hostDefinition.getHost());
+    otherPort.setPort(hostDefinition.getPort() + 1);
+    // When
+    final SSLContext result = TlsSocketFactory.getSharedContext(hostDefinition);
+    // Then
+    assertThat(TlsSocketFactory.getSharedContext(otherAccount), sameInstance(result));
+    assertThat(TlsSocketFactory.getSharedContext(otherPort), not(sameInstance(result)));
+  }
+
+  @Test
+  void openStore_severalConnections_shouldResumeTlsSessions() throws Exception {
+    // Given
+    hostDefinition.setTlsSessionTimeout(600);
+    final ImapMetrics metrics = new ImapMetrics();
+    try (IMAPStore store = IMAPUtils.openStore(hostDefinition, 2, metrics, ImapMetrics.SOURCE);
+        IMAPStore otherStore = IMAPUtils.openStore(
+            hostDefinition, 1, metrics, ImapMetrics.SOURCE)) {
+      // When
+      IMAPUtils.warmUp(store, 2, metrics, ImapMetrics.SOURCE);
+      final Folder inbox = otherStore.getFolder("INBOX");
+      inbox.open(Folder.READ_ONLY);
+      inbox.close(false);
+    }
+    // Then
+    final TlsMetrics result = awaitHandshakes(metrics, 3);
+    assertThat(result.getFullHandshakes(), equalTo(1L));
+    assertThat(result.getResumedHandshakes(), greaterThan(1L));
+    assertThat(result.getFullHandshakeMicros(), greaterThan(0L));
+  }
+
+  // Handshake listeners are notified asynchronously
+  private static TlsMetrics awaitHandshakes(ImapMetrics metrics, long handshakes)
+      throws InterruptedException {
+
+    TlsMetrics ret = null;
+    for (int it = 0; it < 50; it++) {
+      ret = metrics.getTls().get(ImapMetrics.SOURCE);
+      if (ret != null && ret.getFullHandshakes() + ret.getResumedHandshakes() >= handshakes) {
+        break;
+      }
+      Thread.sleep(100L);
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * FolderIndexTest.java
+ *
+ * Created on 2026-10-18, 23:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class FolderIndexTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void spill_thenAddMoreAndSpillAgain_shouldKeepMembership() throws Exception {
+    // Given
+    final FolderIndex folderIndex = new IndexBudget(Long.MAX_VALUE, tempDir).newFolderIndex();
+    final long[] fingerprints = new Random(1337L).longs(5000L).toArray();
+    for (int it = 0; it < 3000; it++) {
+      folderIndex.addFingerprint(fingerprints[it]);
+    }
+    folderIndex.spill();
+    for (int it = 3000; it < 4000; it++) {
+      folderIndex.addFingerprint(fingerprints[it]);
+    }
+    // When
+    folderIndex.spill();
+    // Then
+    for (int it = 0; it < 4000; it++) {
+      assertThat(folderIndex.containsFingerprint(fingerprints[it]), equalTo(true));
+    }
+    for (int it = 4000; it < 5000; it++) {
+      assertThat(folderIndex.containsFingerprint(fingerprints[it]), equalTo(false));
+    }
+    assertThat(folderIndex.addFingerprint(fingerprints[0]), equalTo(false));
+    assertThat(folderIndex.getMemoryEntries(), equalTo(0));
+    assertThat(folderIndex.size(), equalTo(4000));
+  }
+
+  @Test
+  void addFingerprint_budgetExceeded_shouldSpillLeastRecentlyModifiedFolder() {
+    // Given
+    final IndexBudget budget = new IndexBudget(100 * IndexBudget.BYTES_PER_ENTRY, tempDir);
+    final FolderIndex cold = budget.newFolderIndex();
+    final FolderIndex hot = budget.newFolderIndex();
+    for (long it = 0; it < 60; it++) {
+      cold.addFingerprint(it);
+    }
+    for (long it = 0; it < 40; it++) {
+      hot.addFingerprint(it);
+    }
+    // When
+    hot.addFingerprint(40L);
+    // Then
+    assertThat(budget.getSpillCount(), equalTo(1));
+    assertThat(cold.getMemoryEntries(), equalTo(0));
+    assertThat(cold.containsFingerprint(59L), equalTo(true));
+    assertThat(hot.getMemoryEntries(), equalTo(41));
+    assertThat(budget.getUsedBytes() <= budget.getMaxBytes() / 2, equalTo(true));
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * HeapFolderIndexTest.java
+ *
+ * Created on 2026-10-18, 00:40
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import jakarta.mail.Message.RecipientType;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class HeapFolderIndexTest {
+
+  private static final Session SESSION = Session.getInstance(new Properties());
+
+  @Test
+  void add_moreMessagesThanCapacity_shouldGrowFilterAndKeepMembership() throws Exception {
+    // Given
+    final HeapFolderIndex folderIndex = new HeapFolderIndex();
+    final long initialFilterBytes = folderIndex.getBloomFilterSizeInBytes();
+    // When
+    for (int it = 0; it < HeapFolderIndex.INITIAL_CAPACITY * 2; it++) {
+      folderIndex.add(messageId(it));
+    }
+    // Then
+    for (int it = 0; it < HeapFolderIndex.INITIAL_CAPACITY * 2; it++) {
+      assertThat(folderIndex.contains(messageId(it)), equalTo(true));
+    }
+    int found = 0;
+    for (int it = HeapFolderIndex.INITIAL_CAPACITY * 2; it < HeapFolderIndex.INITIAL_CAPACITY * 3;
+        it++) {
+      found += folderIndex.contains(messageId(it)) ? 1 : 0;
+    }
+    assertThat(found, equalTo(0));
+    assertThat(folderIndex.size(), equalTo(HeapFolderIndex.INITIAL_CAPACITY * 2));
+    assertThat(folderIndex.getBloomFilterSizeInBytes() > initialFilterBytes, equalTo(true));
+  }
+
+  @Test
+  void add_existingMessage_shouldReturnFalse() throws Exception {
+    // Given
+    final HeapFolderIndex folderIndex = new HeapFolderIndex();
+    folderIndex.add(messageId(1));
+    // When
+    final boolean result = folderIndex.add(messageId(1));
+    // Then
+    assertThat(result, equalTo(false));
+    assertThat(folderIndex.size(), equalTo(1));
+  }
+
+  private static MessageId messageId(int index) throws Exception {
+    final MimeMessage message = new MimeMessage(SESSION);
+    message.setFrom(new InternetAddress("sender@localhost"));
+    message.setRecipient(RecipientType.TO, new InternetAddress("user@localhost"));
+    message.setSubject("Message " + index);
+    message.setHeader("Message-ID", "<" + index + "@localhost>");
+    return new MessageId(message);
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * IndexSnapshotTest.java
+ *
+ * Created on 2026-10-18, 00:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.index;
+
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.marcnuri.mnimapsync.GreenMailPair;
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.Flags;
+import jakarta.mail.Folder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+
+import static com.marcnuri.mnimapsync.MessageBuilder.message;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.openStore;
+import static com.marcnuri.mnimapsync.index.StoreCrawler.populateFromStore;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IndexSnapshotTest {
+
+  @TempDir
+  Path tempDir;
+
+  private GreenMail server;
+  private GreenMailUser user;
+  private HostDefinition host;
+  private Path snapshot;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    server = new GreenMail(ServerSetup.IMAP.dynamicPort());
+    server.start();
+    user = server.setUser("user@localhost", GreenMailPair.USER, GreenMailPair.PASSWORD);
+    for (int it = 0; it < 3; it++) {
+      user.deliver(message(it).build());
+    }
+    host = GreenMailPair.host(server);
+    snapshot = tempDir.resolve("target.idx");
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop();
+  }
+
+  @Test
+  void populateFromStore_noSnapshot_shouldWriteSnapshot() throws Exception {
+    // When
+    final Index result = crawl();
+    // Then
+    assertThat(result.getIndexedMessageCount(), equalTo(3L));
+    assertThat(Files.exists(snapshot), equalTo(true));
+    final IndexSnapshot written = IndexSnapshot.load(snapshot);
+    assertThat(written.getFolderNames().contains("INBOX"), equalTo(true));
+    final IndexSnapshot.FolderSnapshot inbox = written.getFolder("INBOX");
+    assertThat(inbox.size(), equalTo(3));
+    assertThat(inbox.getMessageCount(), equalTo(3));
+    for (int it = 1; it < inbox.size(); it++) {
+      assertThat(inbox.getFingerprint(it - 1) <= inbox.getFingerprint(it), equalTo(true));
+    }
+    for (int it = 0; it < 3; it++) {
+      assertThat(inbox.contains(new MessageId(message(it).build()).getFingerprint(), null),
+          equalTo(true));
+    }
+  }
+
+  @Test
+  void populateFromStore_snapshotAndFolderChanged_shouldOnlyCrawlNewMessages() throws Exception {
+    // Given
+    crawl();
+    user.deliver(message(3).build());
+    try (IMAPStore store = openStore(host, 1)) {
+      final Folder inbox = store.getFolder("INBOX");
+      inbox.open(Folder.READ_WRITE);
+      inbox.getMessage(1).setFlags(new Flags(Flags.Flag.DELETED), true);
+      inbox.close(true);
+    }
+    // When
+    final Index result = crawl();
+    // Then
+    assertThat(result.getIndexedMessageCount(), equalTo(1L));
+    assertThat(result.getFolderMessages("INBOX").contains(new MessageId(message(0).build())),
+        equalTo(false));
+    for (int it = 1; it < 4; it++) {
+      assertThat(result.getFolderMessages("INBOX").contains(new MessageId(message(it).build())),
+          equalTo(true));
+    }
+    assertThat(IndexSnapshot.load(snapshot).getFolder("INBOX").size(), equalTo(3));
+  }
+
+  @Test
+  void populateFromStore_snapshotAndFolderUnchanged_shouldCrawlNoMessages() throws Exception {
+    // Given
+    crawl();
+    // When
+    final Index result = crawl();
+    // Then
+    assertThat(result.getIndexedMessageCount(), equalTo(0L));
+    assertThat(result.getFolderMessages("INBOX").contains(new MessageId(message(2).build())),
+        equalTo(true));
+    assertThat(IndexSnapshot.load(snapshot).getFolder("INBOX").size(), equalTo(3));
+  }
+
+  @Test
+  void iterateFolderMessages_folderRestoredFromSnapshot_shouldThrowException() throws Exception {
+    // Given
+    crawl();
+    final Index result = crawl();
+    // When
+    final IllegalStateException exception = assertThrows(IllegalStateException.class,
+        () -> result.iterateFolderMessages("INBOX"));
+    // Then
+    assertThat(exception.getMessage(), equalTo("Messages of folder INBOX aren't kept in heap"));
+    assertThat(result.getFolderMessages("INBOX").size(), equalTo(3));
+  }
+
+  private Index crawl() throws Exception {
+    try (IMAPStore store = openStore(host, 1)) {
+      return populateFromStore(new Index(), store, Executors.newFixedThreadPool(1), snapshot);
+    }
+  }
+}
@@ -36,6 +36,7 @@ import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
@@ -109,6 +110,8 @@ class StoreCrawlerText {
     doReturn(Folder.READ_WRITE).when(mockFolder).getMode();
     doReturn(new IMAPFolder[0]).when(mockFolder).list();
     doReturn(new IMAPMessage[0]).when(mockFolder).getMessages(anyInt(), anyInt());
+    doReturn(new long[]{1L}).when(mockFolder).doCommand(any());
+    doReturn(new IMAPMessage[0]).when(mockFolder).getMessagesByUID(any(long[].class));
     return mockFolder;
   }
 }
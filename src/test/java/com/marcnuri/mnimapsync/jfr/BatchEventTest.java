@@ -0,0 +1,135 @@
+/*
+ * BatchEventTest.java
+ *
+ * Created on 2026-10-18, 16:05
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.jfr;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.marcnuri.mnimapsync.GreenMailPair;
+import com.marcnuri.mnimapsync.imap.IMAPUtils;
+import com.marcnuri.mnimapsync.metrics.ImapMetrics;
+import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.Folder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+
+class BatchEventTest {
+
+  @TempDir
+  Path tempDir;
+  private GreenMail server;
+
+  @BeforeEach
+  void setUp() {
+    server = new GreenMail(ServerSetup.IMAP.dynamicPort());
+    server.start();
+    server.setUser("user@localhost", GreenMailPair.USER, GreenMailPair.PASSWORD);
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop();
+    server = null;
+  }
+
+  @Test
+  void finish_withRecording_shouldCommitBatchWithTrafficOfItsCommands() throws Exception {
+    // Given
+    final Path dump = tempDir.resolve("recording.jfr");
+    try (Recording recording = new Recording(); IMAPStore store = openStore()) {
+      recording.enable(IndexBatchEvent.class);
+      recording.enable(ImapCommandEvent.class);
+      recording.start();
+      // When
+      final IndexBatchEvent event = new IndexBatchEvent();
+      event.start();
+      final Folder inbox = store.getFolder("INBOX");
+      inbox.open(Folder.READ_ONLY);
+      inbox.close(false);
+      // UIDs are unsigned 32-bit values
+      event.finish("INBOX", 1L, 4_000_000_000L, 150L, 50L, false);
+      recording.stop();
+      recording.dump(dump);
+    }
+    // Then
+    final List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+    final List<RecordedEvent> batches = events.stream()
+        .filter(e -> e.getEventType().getName().equals("com.marcnuri.mnimapsync.IndexBatch"))
+        .collect(Collectors.toList());
+    assertThat(batches, hasSize(1));
+    final RecordedEvent batch = batches.iterator().next();
+    assertThat(batch.getString("folder"), equalTo("INBOX"));
+    assertThat(batch.getLong("end"), equalTo(4_000_000_000L));
+    assertThat(batch.getLong("processed"), equalTo(150L));
+    assertThat(batch.getLong("bytesIn"), greaterThan(0L));
+    assertThat(batch.getLong("bytesOut"), greaterThan(0L));
+    assertThat(events.stream()
+        .filter(e -> e.getEventType().getName().equals("com.marcnuri.mnimapsync.ImapCommand"))
+        .map(e -> e.getString("command"))
+        .collect(Collectors.toList()), hasItem("EXAMINE"));
+  }
+
+  @Test
+  void finish_eventNotEnabled_shouldNotCommit() throws Exception {
+    // Given
+    final Path dump = tempDir.resolve("recording.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(FolderEvent.class);
+      recording.disable(DeleteBatchEvent.class);
+      recording.start();
+      // When
+      final DeleteBatchEvent event = new DeleteBatchEvent();
+      event.start();
+      event.finish("INBOX", 1, 200, 1L, 0L, false);
+      final FolderEvent folderEvent = new FolderEvent();
+      folderEvent.begin();
+      folderEvent.finish(FolderEvent.DELETE, "INBOX", 200, 1);
+      recording.stop();
+      recording.dump(dump);
+    }
+    // Then
+    final List<String> types = RecordingFile.readAllEvents(dump).stream()
+        .map(e -> e.getEventType().getName())
+        .filter(name -> name.startsWith("com.marcnuri.mnimapsync."))
+        .collect(Collectors.toList());
+    assertThat(types, equalTo(Collections.singletonList("com.marcnuri.mnimapsync.Folder")));
+  }
+
+  private IMAPStore openStore() throws Exception {
+    return IMAPUtils.openStore(GreenMailPair.host(server), 1, new ImapMetrics(),
+        ImapMetrics.TARGET);
+  }
+}
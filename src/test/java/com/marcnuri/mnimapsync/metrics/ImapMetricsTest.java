@@ -0,0 +1,69 @@
+/*
+ * ImapMetricsTest.java
+ *
+ * Created on 2026-10-18, 13:45
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.metrics;
+
+import com.marcnuri.mnimapsync.metrics.ImapMetrics.Key;
+import org.junit.jupiter.api.Test;
+
+import java.util.SortedMap;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class ImapMetricsTest {
+
+  @Test
+  void getCommandsBySide_severalFoldersAndHosts_shouldAggregateBySideAndCommand() {
+    // Given
+    final ImapMetrics metrics = new ImapMetrics();
+    metrics.record("source", "host1", "INBOX", "FETCH", 100L, 1000L, 10L, false);
+    metrics.record("source", "host1", "Sent", "FETCH", 300L, 2000L, 20L, true);
+    metrics.record("target", "host2", "INBOX", "APPEND", 500L, 5L, 4000L, false);
+    // When
+    final SortedMap<Key, CommandMetrics> result = metrics.getCommandsBySide();
+    // Then
+    assertThat(metrics.getCommands().size(), equalTo(3));
+    assertThat(result.size(), equalTo(2));
+    final CommandMetrics fetch = result.get(new Key("source", "", "", "FETCH"));
+    assertThat(fetch.getCount(), equalTo(2L));
+    assertThat(fetch.getFailures(), equalTo(1L));
+    assertThat(fetch.getBytesIn(), equalTo(3000L));
+    assertThat(fetch.getBytesOut(), equalTo(30L));
+    assertThat(fetch.getLatency().getMax(), equalTo(300L));
+    assertThat(result.firstKey().getSide(), equalTo("source"));
+  }
+
+  @Test
+  void toJson_recordedCommand_shouldSerializeKeyCountersAndBuckets() {
+    // Given
+    final ImapMetrics metrics = new ImapMetrics();
+    metrics.record("target", "mail.host", "Folder \"quoted\"", "UID FETCH", 20L, 7L, 3L, false);
+    // When
+    final String result = metrics.toJson();
+    // Then
+    assertThat(result, containsString("{\"side\":\"target\",\"host\":\"mail.host\","
+        + "\"folder\":\"Folder \\\"quoted\\\"\",\"command\":\"UID FETCH\",\"count\":1,"
+        + "\"failures\":0,\"bytesIn\":7,\"bytesOut\":3,"));
+    assertThat(result, containsString("\"p50\":20,\"p90\":20,\"p95\":20,\"p99\":20,\"p999\":20"));
+    assertThat(result, containsString("\"buckets\":[[20,1]]"));
+  }
+}
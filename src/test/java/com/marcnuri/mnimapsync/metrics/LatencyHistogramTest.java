@@ -0,0 +1,106 @@
+/*
+ * LatencyHistogramTest.java
+ *
+ * Created on 2026-10-18, 13:32
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+class LatencyHistogramTest {
+
+  @Test
+  void bucketIndex_everyValue_shouldBeContainedInBucketWithBoundedError() {
+    for (long value = 0; value < LatencyHistogram.MAX_VALUE; value = value * 3 / 2 + 1) {
+      // When
+      final int index = LatencyHistogram.bucketIndex(value);
+      final long upperBound = LatencyHistogram.bucketUpperBound(index);
+      // Then
+      assertThat(index < LatencyHistogram.BUCKET_COUNT, equalTo(true));
+      assertThat(upperBound, greaterThanOrEqualTo(value));
+      assertThat((double) upperBound, lessThanOrEqualTo(value * 1.0625D + 1D));
+    }
+  }
+
+  @Test
+  void getValueAtPercentile_uniformValues_shouldReturnApproximatePercentiles() {
+    // Given
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 10_000; value++) {
+      histogram.record(value);
+    }
+    // When
+    final long p50 = histogram.getValueAtPercentile(50D);
+    final long p99 = histogram.getValueAtPercentile(99D);
+    // Then
+    assertThat(histogram.getCount(), equalTo(10_000L));
+    assertThat(histogram.getMin(), equalTo(1L));
+    assertThat(histogram.getMax(), equalTo(10_000L));
+    assertThat(histogram.getMean(), closeTo(5000.5D, 0.01D));
+    assertThat((double) p50, closeTo(5000D, 5000D * 0.0625D));
+    assertThat((double) p99, closeTo(9900D, 9900D * 0.0625D));
+    assertThat(histogram.getValueAtPercentile(100D), equalTo(10_000L));
+  }
+
+  @Test
+  void record_negativeAndHugeValues_shouldBeClamped() {
+    // Given
+    final LatencyHistogram histogram = new LatencyHistogram();
+    // When
+    histogram.record(-5L);
+    histogram.record(Long.MAX_VALUE);
+    // Then
+    assertThat(histogram.getMin(), equalTo(0L));
+    assertThat(histogram.getMax(), equalTo(LatencyHistogram.MAX_VALUE));
+  }
+
+  @Test
+  void add_twoHistograms_shouldMergeDistributions() {
+    // Given
+    final LatencyHistogram first = new LatencyHistogram();
+    first.record(10L);
+    first.record(20L);
+    final LatencyHistogram second = new LatencyHistogram();
+    second.record(5000L);
+    // When
+    first.add(second);
+    // Then
+    assertThat(first.getCount(), equalTo(3L));
+    assertThat(first.getTotal(), equalTo(5030L));
+    assertThat(first.getMin(), equalTo(10L));
+    assertThat(first.getMax(), equalTo(5000L));
+    assertThat(first.getValueAtPercentile(50D), equalTo(20L));
+  }
+
+  @Test
+  void getValueAtPercentile_empty_shouldReturnZero() {
+    // Given
+    final LatencyHistogram histogram = new LatencyHistogram();
+    // When
+    final long result = histogram.getValueAtPercentile(99D);
+    // Then
+    assertThat(result, equalTo(0L));
+    assertThat(histogram.getMin(), equalTo(0L));
+  }
+}
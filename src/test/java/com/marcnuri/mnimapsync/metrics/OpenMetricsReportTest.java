@@ -0,0 +1,192 @@
+/*
+ * OpenMetricsReportTest.java
+ *
+ * Created on 2026-10-18, 15:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.metrics;
+
+import com.marcnuri.mnimapsync.MNIMAPSync;
+import com.marcnuri.mnimapsync.MNIMAPSync.Phase;
+import com.marcnuri.mnimapsync.store.StoreCopier;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static com.marcnuri.mnimapsync.metrics.OpenMetricsReport.getMetricsAsText;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+class OpenMetricsReportTest {
+
+  @Test
+  void getMetricsAsText_nullStores_shouldPrintZeroCountersAndEof() {
+    // Given
+    final MNIMAPSync syncInstance = mock(MNIMAPSync.class);
+    doReturn(Phase.INDEXING).when(syncInstance).getPhase();
+    // When
+    final String result = getMetricsAsText(syncInstance);
+    // Then
+    assertThat(result, containsString("# TYPE mnimapsync_phase stateset\n"));
+    assertThat(result, containsString("mnimapsync_phase{mnimapsync_phase=\"INDEXING\"} 1\n"));
+    assertThat(result, containsString("mnimapsync_phase{mnimapsync_phase=\"COPYING\"} 0\n"));
+    assertThat(result, containsString("mnimapsync_copy_messages_total{result=\"copied\"} 0\n"));
+    assertThat(result, containsString("mnimapsync_jvm_heap_bytes{area=\"used\"} "));
+    assertThat(result, endsWith("# EOF\n"));
+  }
+
+  @Test
+  void getMetricsAsText_copyInProgress_shouldPrintCountersRatesAndQueues() {
+    // Given
+    final MNIMAPSync syncInstance = mock(MNIMAPSync.class);
+    final StoreCopier storeCopier = mock(StoreCopier.class);
+    doReturn(Phase.COPYING).when(syncInstance).getPhase();
+    doReturn(storeCopier).when(syncInstance).getSourceCopier();
+    doReturn(4000L).when(syncInstance).getPhaseElapsedTimeInMillis(Phase.COPYING);
+    doReturn(30L).when(storeCopier).getMessagesCopiedCount();
+    doReturn(10L).when(storeCopier).getMessagesSkippedCount();
+    doReturn(3L).when(storeCopier).getBatchesRetriedCount();
+    doReturn(7).when(storeCopier).getQueuedBatchCount();
+    doReturn(5).when(storeCopier).getActiveBatchCount();
+    // When
+    final String result = getMetricsAsText(syncInstance);
+    // Then
+    assertThat(result, containsString("mnimapsync_phase_duration_seconds{phase=\"COPYING\"} 4\n"));
+    assertThat(result, containsString("mnimapsync_phase_messages_per_second{phase=\"COPYING\"} 10\n"));
+    assertThat(result, containsString("mnimapsync_copy_messages_total{result=\"copied\"} 30\n"
+        + "mnimapsync_copy_messages_total{result=\"skipped\"} 10\n"));
+    assertThat(result, containsString("mnimapsync_copy_batches_retried_total 3\n"));
+    assertThat(result, containsString("mnimapsync_copy_batches{state=\"queued\"} 7\n"
+        + "mnimapsync_copy_batches{state=\"active\"} 5\n"));
+  }
+
+  @Test
+  void getMetricsAsText_withImapMetrics_shouldPrintCommandFamilies() {
+    // Given
+    final MNIMAPSync syncInstance = mock(MNIMAPSync.class);
+    final ImapMetrics imapMetrics = new ImapMetrics();
+    imapMetrics.connectionOpened(ImapMetrics.SOURCE);
+    imapMetrics.connectionOpened(ImapMetrics.SOURCE);
+    imapMetrics.connectionClosed(ImapMetrics.SOURCE);
+    imapMetrics.record("source", "host", "INBOX", "UID FETCH", 2000L, 1024L, 64L, true);
+    doReturn(imapMetrics).when(syncInstance).getImapMetrics();
+    // When
+    final String result = getMetricsAsText(syncInstance);
+    // Then
+    assertThat(result, containsString("mnimapsync_imap_open_connections{side=\"source\"} 1\n"));
+    assertThat(result, containsString("# TYPE mnimapsync_imap_command_latency_seconds summary\n"
+        + "# HELP mnimapsync_imap_command_latency_seconds IMAP command latency\n"
+        + "mnimapsync_imap_command_latency_seconds{side=\"source\",command=\"UID FETCH\",quantile=\"0.5\"} 0.002000\n"));
+    assertThat(result, containsString(
+        "mnimapsync_imap_command_latency_seconds_count{side=\"source\",command=\"UID FETCH\"} 1\n"));
+    assertThat(result, containsString(
+        "mnimapsync_imap_command_failures_total{side=\"source\",command=\"UID FETCH\"} 1\n"));
+    assertThat(result, containsString(
+        "mnimapsync_imap_received_bytes_total{side=\"source\",command=\"UID FETCH\"} 1024\n"));
+  }
+
+  @Test
+  void getMetricsAsText_withCompressedConnections_shouldPrintCompressionRatio() {
+    // Given
+    final MNIMAPSync syncInstance = mock(MNIMAPSync.class);
+    final ImapMetrics imapMetrics = new ImapMetrics();
+    imapMetrics.compressionStarted(ImapMetrics.SOURCE);
+    imapMetrics.recordCompression(ImapMetrics.SOURCE, 1000L, 4000L);
+    imapMetrics.compressionClosed(ImapMetrics.SOURCE, 4D);
+    doReturn(imapMetrics).when(syncInstance).getImapMetrics();
+    // When
+    final String result = getMetricsAsText(syncInstance);
+    // Then
+    assertThat(result, containsString(
+        "mnimapsync_imap_compressed_connections_total{side=\"source\"} 1\n"));
+    assertThat(result, containsString(
+        "mnimapsync_imap_compression_ratio{side=\"source\",connection=\"all\"} 4\n"));
+    assertThat(result, containsString(
+        "mnimapsync_imap_compression_ratio{side=\"source\",connection=\"min\"} 4\n"));
+  }
+
+  @Test
+  void getMetricsAsText_withWarmPools_shouldPrintPoolCounters() {
+    // Given
+    final MNIMAPSync syncInstance = mock(MNIMAPSync.class);
+    final ImapMetrics imapMetrics = new ImapMetrics();
+    imapMetrics.poolWarmedUp(ImapMetrics.TARGET, 5, 1_500_000L);
+    imapMetrics.poolConnectionBroken(ImapMetrics.TARGET);
+    doReturn(imapMetrics).when(syncInstance).getImapMetrics();
+    // When
+    final String result = getMetricsAsText(syncInstance);
+    // Then
+    assertThat(result, containsString(
+        "mnimapsync_imap_pool_warmed_up_connections_total{side=\"target\"} 5\n"));
+    assertThat(result, containsString(
+        "mnimapsync_imap_pool_warm_up_seconds_count{side=\"target\"} 1\n"));
+    assertThat(result, containsString(
+        "mnimapsync_imap_pool_broken_connections_total{side=\"target\"} 1\n"));
+  }
+
+  @Test
+  void getMetricsAsText_withThrottles_shouldPrintThrottleCountersAndLimits() {
+    // Given
+    final MNIMAPSync syncInstance = mock(MNIMAPSync.class);
+    final ImapMetrics imapMetrics = new ImapMetrics();
+    imapMetrics.throttle(ImapMetrics.TARGET, true, true, 4, 65536L);
+    imapMetrics.throttle(ImapMetrics.TARGET, true, false, 4, 65536L);
+    doReturn(imapMetrics).when(syncInstance).getImapMetrics();
+    // When
+    final String result = getMetricsAsText(syncInstance);
+    // Then
+    assertThat(result, containsString(
+        "mnimapsync_imap_throttled_responses_total{side=\"target\"} 2\n"));
+    assertThat(result, containsString(
+        "mnimapsync_imap_throttle_decreases_total{side=\"target\"} 1\n"));
+    assertThat(result, containsString(
+        "mnimapsync_imap_throttle_in_flight_limit{side=\"target\"} 4\n"));
+    assertThat(result, containsString(
+        "mnimapsync_imap_throttle_bytes_per_second_limit{side=\"target\"} 65536\n"));
+  }
+
+  @Test
+  void metricsServer_get_shouldServeOpenMetrics() throws Exception {
+    // Given
+    final MNIMAPSync syncInstance = mock(MNIMAPSync.class);
+    try (MetricsServer server = MetricsServer.start(syncInstance, 0)) {
+      // When
+      final HttpURLConnection connection = (HttpURLConnection) new URL(
+          "http://127.0.0.1:" + server.getPort() + MetricsServer.PATH).openConnection();
+      final ByteArrayOutputStream body = new ByteArrayOutputStream();
+      try (InputStream is = connection.getInputStream()) {
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) >= 0) {
+          body.write(buffer, 0, read);
+        }
+      }
+      // Then
+      assertThat(connection.getResponseCode(), equalTo(200));
+      assertThat(connection.getContentType(), equalTo(OpenMetricsReport.CONTENT_TYPE));
+      assertThat(new String(body.toByteArray(), StandardCharsets.UTF_8), endsWith("# EOF\n"));
+    }
+  }
+}
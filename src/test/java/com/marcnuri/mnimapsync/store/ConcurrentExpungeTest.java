@@ -0,0 +1,188 @@
+/*
+ * ConcurrentExpungeTest.java
+ *
+ * Created on 2026-10-18, 18:10
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import com.marcnuri.mnimapsync.GreenMailPair;
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.index.Index;
+import com.marcnuri.mnimapsync.index.MessageId;
+import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.Flags;
+import jakarta.mail.Folder;
+import jakarta.mail.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.marcnuri.mnimapsync.MessageBuilder.message;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.openStore;
+import static com.marcnuri.mnimapsync.index.StoreCrawler.populateFromStore;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+
+/**
+ * Messages expunged by another client after the UIDs of a folder are searched, but before its
+ * batches are fetched, are skipped without shifting the rest of the batch.
+ */
+class ConcurrentExpungeTest {
+
+  private static final int MESSAGES = 6;
+
+  @RegisterExtension
+  final GreenMailPair servers = new GreenMailPair();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    for (int it = 0; it < MESSAGES; it++) {
+      servers.getSourceUser().deliver(message(it).build());
+    }
+  }
+
+  @Test
+  void populateFromStore_messagesExpungedBeforeBatch_shouldIndexRemainingMessagesOnce()
+      throws Exception {
+
+    // Given
+    final Index index = new Index();
+    // When
+    try (IMAPStore store = openStore(servers.getSourceHost(), 1)) {
+      populateFromStore(index, store, expungingExecutor(servers.getSourceHost(), 1, 3));
+    }
+    // Then
+    assertThat(index.getCrawlExceptions(), empty());
+    assertThat(index.getIndexedMessageCount(), equalTo(4L));
+    assertThat(index.getFolderMessages("INBOX").size(), equalTo(4));
+    for (int it : new int[]{0, 2, 4, 5}) {
+      assertThat(index.getFolderMessages("INBOX").contains(new MessageId(message(it).build())),
+          equalTo(true));
+    }
+  }
+
+  @Test
+  void copy_messagesExpungedBeforeBatch_shouldCopyRemainingMessagesOnce() throws Exception {
+    // Given
+    final Index targetIndex = new Index();
+    targetIndex.setFolderSeparator(".");
+    final StoreCopier storeCopier;
+    // When
+    try (
+        final IMAPStore sourceStore = openStore(servers.getSourceHost(), 1);
+        final IMAPStore targetStore = openStore(servers.getTargetHost(), 1)
+    ) {
+      storeCopier = new StoreCopier(sourceStore, new Index(), targetStore, targetIndex,
+          expungingExecutor(servers.getSourceHost(), 1, 3));
+      storeCopier.copy();
+    }
+    // Then
+    assertThat(storeCopier.getCopyExceptions(), empty());
+    assertThat(storeCopier.getMessagesCopiedCount(), equalTo(4L));
+    assertThat(storeCopier.getMessagesSkippedCount(), equalTo(0L));
+    assertThat(messageIds(servers.getTargetHost()),
+        equalTo(Arrays.asList("<0@localhost>", "<2@localhost>", "<4@localhost>",
+            "<5@localhost>")));
+  }
+
+  @Test
+  void delete_messagesExpungedBeforeBatch_shouldDeleteRemainingMessagesOnce() throws Exception {
+    // Given
+    for (int it = 0; it < MESSAGES; it++) {
+      servers.getTargetUser().deliver(message(it + MESSAGES).build());
+    }
+    final Index sourceIndex = new Index();
+    final Index targetIndex = new Index();
+    try (
+        final IMAPStore sourceStore = openStore(servers.getSourceHost(), 1);
+        final IMAPStore targetStore = openStore(servers.getTargetHost(), 1)
+    ) {
+      populateFromStore(sourceIndex, sourceStore, 1);
+      populateFromStore(targetIndex, targetStore, 1);
+      final StoreDeleter storeDeleter = new StoreDeleter(sourceIndex, targetIndex, targetStore,
+          expungingExecutor(servers.getTargetHost(), MESSAGES + 1, MESSAGES + 3));
+      // When
+      storeDeleter.delete();
+      // Then
+      assertThat(storeDeleter.getMessagesDeletedCount(), equalTo(4L));
+      assertThat(storeDeleter.getMessagesSkippedCount(), equalTo(0L));
+    }
+    assertThat(messageIds(servers.getTargetHost()), empty());
+  }
+
+  /**
+   * @return single thread executor that expunges the provided messages from the INBOX of the host
+   * right before its first batch runs
+   */
+  private static ThreadPoolExecutor expungingExecutor(HostDefinition host, int... expunged) {
+    final AtomicBoolean pending = new AtomicBoolean(true);
+    return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>()) {
+      @Override
+      protected void beforeExecute(Thread t, Runnable r) {
+        if (pending.getAndSet(false)) {
+          try {
+            expunge(host, expunged);
+          } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+          }
+        }
+      }
+    };
+  }
+
+  private static void expunge(HostDefinition host, int... expunged) throws Exception {
+    final List<String> ids = new ArrayList<>();
+    for (int it : expunged) {
+      ids.add("<" + it + "@localhost>");
+    }
+    try (IMAPStore store = openStore(host, 1)) {
+      final Folder inbox = store.getFolder("INBOX");
+      inbox.open(Folder.READ_WRITE);
+      for (Message message : inbox.getMessages()) {
+        if (ids.contains(message.getHeader("Message-ID")[0])) {
+          message.setFlags(new Flags(Flags.Flag.DELETED), true);
+        }
+      }
+      inbox.close(true);
+    }
+  }
+
+  private static List<String> messageIds(HostDefinition host) throws Exception {
+    final List<String> ret = new ArrayList<>();
+    try (IMAPStore store = openStore(host, 1)) {
+      final Folder inbox = store.getFolder("INBOX");
+      inbox.open(Folder.READ_ONLY);
+      for (Message message : inbox.getMessages()) {
+        ret.add(message.getHeader("Message-ID")[0]);
+      }
+      inbox.close(false);
+    }
+    Collections.sort(ret);
+    return ret;
+  }
+}
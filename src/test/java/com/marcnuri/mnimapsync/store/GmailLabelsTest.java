@@ -0,0 +1,92 @@
+/*
+ * GmailLabelsTest.java
+ *
+ * Created on 2026-10-18, 01:50
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class GmailLabelsTest {
+
+  private GmailLabels gmailLabels;
+
+  @BeforeEach
+  void setUp() {
+    final Map<String, String[]> folders = new HashMap<>();
+    folders.put("INBOX", new String[]{"\\HasNoChildren"});
+    folders.put("[Gmail]", new String[]{"\\HasChildren", "\\Noselect"});
+    folders.put("[Gmail]/Todos", new String[]{"\\All", "\\HasNoChildren"});
+    folders.put("[Gmail]/Enviados", new String[]{"\\HasNoChildren", "\\Sent"});
+    folders.put("[Gmail]/Destacados", new String[]{"\\Flagged", "\\HasNoChildren"});
+    folders.put("[Gmail]/Papelera", new String[]{"\\HasNoChildren", "\\Trash"});
+    folders.put("[Gmail]/Spam", new String[]{"\\HasNoChildren", "\\Junk"});
+    folders.put("Work", new String[]{"\\HasChildren"});
+    folders.put("Work/Projects", new String[]{"\\HasNoChildren"});
+    gmailLabels = GmailLabels.fromFolders(folders);
+  }
+
+  @Test
+  void fromFolders_allMailAttribute_shouldUseLocalizedFolder() {
+    // When
+    final String result = gmailLabels.getAllMailFolder();
+    // Then
+    assertThat(result, equalTo("[Gmail]/Todos"));
+  }
+
+  @Test
+  void fromFolders_noAllMailAttribute_shouldUseDefaultFolder() {
+    // When
+    final GmailLabels result = GmailLabels.fromFolders(
+        Collections.singletonMap("INBOX", new String[0]));
+    // Then
+    assertThat(result.getAllMailFolder(), equalTo(GmailLabels.DEFAULT_ALL_MAIL_FOLDER));
+  }
+
+  @Test
+  void isLabelFolder_specialUseFolders_shouldOnlyIncludeLabelViews() {
+    // Then
+    assertThat(gmailLabels.isLabelFolder("INBOX"), equalTo(true));
+    assertThat(gmailLabels.isLabelFolder("[Gmail]/Enviados"), equalTo(true));
+    assertThat(gmailLabels.isLabelFolder("Work/Projects"), equalTo(true));
+    assertThat(gmailLabels.isLabelFolder("[Gmail]/Todos"), equalTo(false));
+    assertThat(gmailLabels.isLabelFolder("[Gmail]/Papelera"), equalTo(false));
+    assertThat(gmailLabels.isLabelFolder("[Gmail]/Spam"), equalTo(false));
+    assertThat(gmailLabels.isLabelFolder("[Gmail]"), equalTo(false));
+  }
+
+  @Test
+  void toFolders_systemAndUserLabels_shouldReturnSourceFolders() {
+    // When
+    final List<String> result = gmailLabels.toFolders(new String[]{
+        "\\Inbox", "\\Starred", "\\Sent", "\\Important", "Work/Projects", "Unknown"});
+    // Then
+    assertThat(result, equalTo(Arrays.asList(
+        "INBOX", "[Gmail]/Destacados", "[Gmail]/Enviados", "Work/Projects")));
+  }
+}
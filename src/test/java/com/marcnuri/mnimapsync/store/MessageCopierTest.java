@@ -22,21 +22,24 @@ package com.marcnuri.mnimapsync.store;
 
 import com.marcnuri.mnimapsync.index.Index;
 import com.marcnuri.mnimapsync.index.MessageId;
+import com.marcnuri.mnimapsync.index.MessageIdIndex;
 import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPMessage;
 import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.FolderClosedException;
 import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
+import jakarta.mail.StoreClosedException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.*;
@@ -78,7 +81,8 @@ public class MessageCopierTest {
   void run_emptyFolder_shouldOnlyUpdateIndexes() throws Exception {
     // Given
     final MessageCopier messageCopier = new MessageCopier(
-        storeCopier, "Source Folder", "Target Folder", 0, 100, new HashSet<>());
+        storeCopier, "Source Folder", "Target Folder", 0, 100,
+        targetIndex.getFolderMessages("Target Folder"));
     doReturn(new Message[0]).when(imapFolder).getMessages(eq(0), eq(100));
     // When
     messageCopier.run();
@@ -91,7 +95,7 @@ public class MessageCopierTest {
   @Test
   void run_folderWithAlreadyCopiedMessages_shouldOnlyUpdateIndexes() throws Exception {
     // Given
-    final Set<MessageId> copiedMessages = new HashSet<>();
+    final MessageIdIndex copiedMessages = targetIndex.getFolderMessages("Target Folder");
     final MessageCopier messageCopier = new MessageCopier(
         storeCopier, "Source Folder", "Target Folder", 0, 100, copiedMessages);
     final IMAPMessage message = Mockito.mock(IMAPMessage.class);
@@ -110,7 +114,7 @@ public class MessageCopierTest {
   @Test
   void run_folderWithCopiedAndNonCopiedMessages_shouldUpdateIndexesAndCopy() throws Exception {
     // Given
-    final Set<MessageId> copiedMessages = new HashSet<>();
+    final MessageIdIndex copiedMessages = targetIndex.getFolderMessages("Target Folder");
     final MessageCopier messageCopier = new MessageCopier(
         storeCopier, "Source Folder", "Target Folder", 0, 100, copiedMessages);
     final IMAPMessage copiedMessage = Mockito.mock(IMAPMessage.class);
@@ -130,11 +134,107 @@ public class MessageCopierTest {
     assertThat(storeCopier.getMessagesCopiedCount(), equalTo(1L));
   }
 
+  @Test
+  void run_poisonMessage_shouldQuarantineMessageAndCopyTheRest() throws Exception {
+    // Given
+    final Message[] messages = new Message[4];
+    for (int it = 0; it < messages.length; it++) {
+      messages[it] = Mockito.mock(IMAPMessage.class);
+      doReturn(new String[]{"<" + it + "@local>"}).when(messages[it]).getHeader("Message-ID");
+    }
+    doAnswer(invocation -> Arrays.copyOfRange(messages,
+        invocation.<Integer>getArgument(0) - 1, invocation.<Integer>getArgument(1)))
+        .when(imapFolder).getMessages(anyInt(), anyInt());
+    doAnswer(invocation -> {
+      if (invocation.<Message[]>getArgument(0)[0] == messages[2]) {
+        throw new MessagingException("NO [PARSE] Invalid message");
+      }
+      return null;
+    }).when(imapFolder).appendMessages(any());
+    final MessageCopier messageCopier = new MessageCopier(
+        storeCopier, "Source Folder", "Target Folder", 1, 4,
+        targetIndex.getFolderMessages("Target Folder"));
+    // When
+    messageCopier.run();
+    // Then
+    assertThat(storeCopier.getCopyExceptions(), empty());
+    assertThat(storeCopier.getQuarantinedMessages(), hasSize(1));
+    assertThat(storeCopier.getQuarantinedMessages().get(0).getMessageNumber(), equalTo(3));
+    assertThat(storeCopier.getQuarantinedMessages().get(0).getMessageId(),
+        equalTo("<2@local>"));
+    assertThat(storeCopier.getMessagesCopiedCount(), equalTo(3L));
+    assertThat(storeCopier.getMessagesSkippedCount(), equalTo(0L));
+  }
+
+  @Test
+  void run_brokenConnection_shouldRetryBatch() throws Exception {
+    // Given
+    storeCopier.setRetryPolicy(new RetryPolicy(2, 0L, 0L));
+    final IMAPMessage message = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"<1337@local>"}).when(message).getHeader("Message-ID");
+    doReturn(new Message[]{message}).when(imapFolder).getMessages(eq(0), eq(100));
+    doThrow(new FolderClosedException(imapFolder, "* BYE Connection reset")).doNothing()
+        .when(imapFolder).appendMessages(any());
+    final MessageCopier messageCopier = new MessageCopier(
+        storeCopier, "Source Folder", "Target Folder", 0, 100,
+        targetIndex.getFolderMessages("Target Folder"));
+    // When
+    messageCopier.run();
+    // Then
+    verify(imapFolder, times(2)).appendMessages(any());
+    assertThat(storeCopier.getCopyExceptions(), empty());
+    assertThat(storeCopier.getQuarantinedMessages(), empty());
+    assertThat(storeCopier.getMessagesCopiedCount(), equalTo(1L));
+    assertThat(storeCopier.getBatchesRetriedCount(), equalTo(1L));
+  }
+
+  @Test
+  void run_brokenConnectionWithAlreadyCopiedMessages_shouldCountSkippedMessagesOnce()
+      throws Exception {
+    // Given
+    storeCopier.setRetryPolicy(new RetryPolicy(2, 0L, 0L));
+    final MessageIdIndex targetMessages = targetIndex.getFolderMessages("Target Folder");
+    final IMAPMessage copiedMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"<1337@local>"}).when(copiedMessage).getHeader("Message-ID");
+    targetMessages.add(new MessageId(copiedMessage));
+    final IMAPMessage newMessage = Mockito.mock(IMAPMessage.class);
+    doReturn(new String[]{"<313373@local>"}).when(newMessage).getHeader("Message-ID");
+    doReturn(new Message[]{copiedMessage, newMessage}).when(imapFolder)
+        .getMessages(eq(0), eq(100));
+    doThrow(new FolderClosedException(imapFolder, "* BYE Connection reset")).doNothing()
+        .when(imapFolder).appendMessages(any());
+    final MessageCopier messageCopier = new MessageCopier(
+        storeCopier, "Source Folder", "Target Folder", 0, 100, targetMessages);
+    // When
+    messageCopier.run();
+    // Then
+    verify(imapFolder, times(2)).appendMessages(any());
+    assertThat(storeCopier.getMessagesCopiedCount(), equalTo(1L));
+    assertThat(storeCopier.getMessagesSkippedCount(), equalTo(1L));
+  }
+
+  @Test
+  void run_brokenConnectionRetriesExhausted_shouldRecordException() throws Exception {
+    // Given
+    storeCopier.setRetryPolicy(new RetryPolicy(2, 0L, 0L));
+    doThrow(new StoreClosedException(imapStore)).when(imapFolder).open(anyInt());
+    final MessageCopier messageCopier = new MessageCopier(
+        storeCopier, "Source Folder", "Target Folder", 0, 100,
+        targetIndex.getFolderMessages("Target Folder"));
+    // When
+    messageCopier.run();
+    // Then
+    verify(imapFolder, times(3)).open(anyInt());
+    assertThat(storeCopier.getCopyExceptions(), hasSize(1));
+    assertThat(storeCopier.getQuarantinedMessages(), empty());
+  }
+
   @Test
   void run_folderThrowsException_shouldOnlyUpdateIndexes() throws Exception {
     // Given
     final MessageCopier messageCopier = new MessageCopier(
-        storeCopier, "Source Folder", "Target Folder", 0, 100, new HashSet<>());
+        storeCopier, "Source Folder", "Target Folder", 0, 100,
+        targetIndex.getFolderMessages("Target Folder"));
     doThrow(new MessagingException()).when(imapFolder).open(anyInt());
     // When
     messageCopier.run();
@@ -22,6 +22,7 @@ package com.marcnuri.mnimapsync.store;
 
 import com.marcnuri.mnimapsync.index.Index;
 import com.marcnuri.mnimapsync.index.MessageId;
+import com.marcnuri.mnimapsync.index.MessageIdIndex;
 import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPMessage;
 import com.sun.mail.imap.IMAPStore;
@@ -32,8 +33,6 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
-import java.util.HashSet;
-import java.util.Set;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
@@ -78,7 +77,7 @@ class MessageDeleterTest {
     // Given
     final MessageDeleter messageDeleter = new MessageDeleter(
         storeDeleter, "Target Folder",
-        0, 100, true, new HashSet<>());
+        0, 100, true, sourceIndex.getFolderMessages("Folder"));
     doReturn(new Message[0]).when(imapFolder).getMessages(eq(0), eq(100));
     // When
     messageDeleter.run();
@@ -90,7 +89,7 @@ class MessageDeleterTest {
   @Test
   void run_folderWithNonDeletableMessages_shouldOnlyUpdateIndexes() throws Exception {
     // Given
-    final Set<MessageId> sourceFolderMessages = new HashSet<>();
+    final MessageIdIndex sourceFolderMessages = sourceIndex.getFolderMessages("Folder");
     final MessageDeleter messageDeleter = new MessageDeleter(
         storeDeleter, "Target Folder",
         0, 100, true, sourceFolderMessages);
@@ -110,7 +109,7 @@ class MessageDeleterTest {
   @Test
   void run_folderWithAllMessageTypes_shouldOnlyUpdateIndexes() throws Exception {
     // Given
-    final Set<MessageId> sourceFolderMessages = new HashSet<>();
+    final MessageIdIndex sourceFolderMessages = sourceIndex.getFolderMessages("Folder");
     final MessageDeleter messageDeleter = new MessageDeleter(
         storeDeleter, "Target Folder",
         0, 100, true, sourceFolderMessages);
@@ -0,0 +1,68 @@
+/*
+ * RetryPolicyTest.java
+ *
+ * Created on 2026-10-18, 04:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import jakarta.mail.MessagingException;
+import org.junit.jupiter.api.Test;
+
+import java.net.SocketTimeoutException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+class RetryPolicyTest {
+
+  @Test
+  void isTransient_nestedIoException_shouldReturnTrue() {
+    // Given
+    final MessagingException failure = new MessagingException("FETCH failed",
+        new MessagingException("Read failed", new SocketTimeoutException("Read timed out")));
+    // When
+    final boolean result = RetryPolicy.isTransient(failure);
+    // Then
+    assertThat(result, equalTo(true));
+  }
+
+  @Test
+  void isTransient_unavailableResponseCode_shouldReturnTrue() {
+    assertThat(RetryPolicy.isTransient(
+        new MessagingException("A3 NO [UNAVAILABLE] Try again later")), equalTo(true));
+  }
+
+  @Test
+  void isTransient_rejectedMessage_shouldReturnFalse() {
+    assertThat(RetryPolicy.isTransient(
+        new MessagingException("A3 NO [PARSE] Invalid message")), equalTo(false));
+  }
+
+  @Test
+  void backoffMillis_manyAttempts_shouldBeCappedByMaxBackoff() {
+    // Given
+    final RetryPolicy retryPolicy = new RetryPolicy(100, 1_000L, 30_000L);
+    for (int attempt = 0; attempt < 100; attempt++) {
+      // When
+      final long result = retryPolicy.backoffMillis(attempt);
+      // Then
+      assertThat(result, lessThanOrEqualTo(Math.min(30_000L, 1_000L << Math.min(attempt, 20))));
+    }
+  }
+}
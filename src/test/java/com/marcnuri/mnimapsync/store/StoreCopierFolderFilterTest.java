@@ -0,0 +1,107 @@
+/*
+ * StoreCopierFolderFilterTest.java
+ *
+ * Created on 2026-10-18, 11:30
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import com.marcnuri.mnimapsync.GreenMailPair;
+import com.marcnuri.mnimapsync.imap.FolderFilter;
+import com.marcnuri.mnimapsync.index.Index;
+import com.sun.mail.imap.IMAPStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import static com.marcnuri.mnimapsync.GreenMailPair.append;
+import static com.marcnuri.mnimapsync.MessageBuilder.message;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.openStore;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class StoreCopierFolderFilterTest {
+
+  @RegisterExtension
+  final GreenMailPair servers = new GreenMailPair();
+  private FolderFilter folderFilter;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (IMAPStore store = openStore(servers.getSourceHost(), 1)) {
+      append(store, "INBOX", message("inbox").build());
+      append(store, "Trash", message("trash").build());
+      append(store, "Trash.Old", message("old").build());
+    }
+    folderFilter = new FolderFilter();
+    folderFilter.addExclude("Trash");
+  }
+
+  @Test
+  void copy_excludedFolder_shouldSkipFolderAndSubfolders() throws Exception {
+    // Given
+    final Index sourceIndex = new Index();
+    // When
+    final StoreCopier result = copy(sourceIndex, new Index());
+    // Then
+    assertThat(result.getMessagesCopiedCount(), equalTo(1L));
+    assertThat(sourceIndex.containsFolder("Trash"), equalTo(false));
+    assertThat(sourceIndex.containsFolder("Trash.Old"), equalTo(false));
+    try (IMAPStore store = openStore(servers.getTargetHost(), 1)) {
+      assertThat(store.getFolder("Trash").exists(), equalTo(false));
+    }
+  }
+
+  @Test
+  void delete_excludedTargetFolder_shouldKeepFolderAndMessages() throws Exception {
+    // Given
+    try (IMAPStore store = openStore(servers.getTargetHost(), 1)) {
+      append(store, "Trash", message("target-trash").build());
+    }
+    final Index sourceIndex = new Index();
+    final Index targetIndex = new Index();
+    targetIndex.addFolder("INBOX");
+    targetIndex.addFolder("Trash");
+    copy(sourceIndex, targetIndex);
+    try (IMAPStore targetStore = openStore(servers.getTargetHost(), 1)) {
+      final StoreDeleter storeDeleter = new StoreDeleter(sourceIndex, targetIndex, targetStore, 1);
+      storeDeleter.setFolderFilter(folderFilter);
+      // When
+      storeDeleter.delete();
+      // Then
+      assertThat(storeDeleter.getFoldersDeletedCount(), equalTo(0));
+      assertThat(storeDeleter.getMessagesDeletedCount(), equalTo(0L));
+    }
+    try (IMAPStore store = openStore(servers.getTargetHost(), 1)) {
+      assertThat(store.getFolder("Trash").exists(), equalTo(true));
+    }
+  }
+
+  private StoreCopier copy(Index sourceIndex, Index targetIndex) throws Exception {
+    targetIndex.setFolderSeparator(".");
+    try (
+        final IMAPStore sourceStore = openStore(servers.getSourceHost(), 1);
+        final IMAPStore targetStore = openStore(servers.getTargetHost(), 1)
+    ) {
+      final StoreCopier ret = new StoreCopier(sourceStore, sourceIndex, targetStore,
+          targetIndex, 1);
+      ret.setFolderFilter(folderFilter);
+      ret.copy();
+      return ret;
+    }
+  }
+}
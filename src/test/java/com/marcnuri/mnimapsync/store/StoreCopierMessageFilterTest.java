@@ -0,0 +1,132 @@
+/*
+ * StoreCopierMessageFilterTest.java
+ *
+ * Created on 2026-10-18, 09:50
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import com.marcnuri.mnimapsync.GreenMailPair;
+import com.marcnuri.mnimapsync.MessageBuilder;
+import com.marcnuri.mnimapsync.index.Index;
+import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.Folder;
+import jakarta.mail.Message;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.marcnuri.mnimapsync.GreenMailPair.append;
+import static com.marcnuri.mnimapsync.MessageBuilder.date;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.openStore;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class StoreCopierMessageFilterTest {
+
+  @RegisterExtension
+  final GreenMailPair servers = new GreenMailPair();
+  private MessageFilter messageFilter;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (IMAPStore store = openStore(servers.getSourceHost(), 1)) {
+      append(store, "INBOX",
+          message("old", 2010, 16), message("recent", 2024, 16), message("large", 2024, 8192));
+    }
+    messageFilter = new MessageFilter();
+    messageFilter.setSince(date(2020));
+    messageFilter.setMaxSize(4096L);
+  }
+
+  @Test
+  void copy_withMessageFilter_shouldOnlyCopyAndIndexMatchingMessages() throws Exception {
+    // Given
+    final Index sourceIndex = new Index();
+    // When
+    final StoreCopier result = copy(sourceIndex);
+    // Then
+    assertThat(result.getMessagesCopiedCount(), equalTo(1L));
+    assertThat(result.getMessagesSkippedCount(), equalTo(0L));
+    assertThat(sourceIndex.getFolderMessages("INBOX").size(), equalTo(1));
+    assertThat(targetMessageIds(), equalTo(Collections.singletonList("<recent@localhost>")));
+  }
+
+  @Test
+  void delete_withMessageFilter_shouldKeepTargetMessagesOutsideOfTheFilter() throws Exception {
+    // Given
+    try (IMAPStore store = openStore(servers.getTargetHost(), 1)) {
+      append(store, "INBOX", message("archived", 2012, 16), message("deleted", 2024, 16));
+    }
+    final Index sourceIndex = new Index();
+    copy(sourceIndex);
+    final Index targetIndex = new Index();
+    targetIndex.setFolderSeparator(".");
+    targetIndex.addFolder("INBOX");
+    try (IMAPStore targetStore = openStore(servers.getTargetHost(), 1)) {
+      final StoreDeleter storeDeleter = new StoreDeleter(sourceIndex, targetIndex, targetStore, 1);
+      storeDeleter.setMessageFilter(messageFilter);
+      // When
+      storeDeleter.delete();
+      // Then
+      assertThat(storeDeleter.getMessagesDeletedCount(), equalTo(1L));
+    }
+    assertThat(targetMessageIds(),
+        equalTo(Arrays.asList("<archived@localhost>", "<recent@localhost>")));
+  }
+
+  private StoreCopier copy(Index sourceIndex) throws Exception {
+    final Index targetIndex = new Index();
+    targetIndex.setFolderSeparator(".");
+    try (
+        final IMAPStore sourceStore = openStore(servers.getSourceHost(), 1);
+        final IMAPStore targetStore = openStore(servers.getTargetHost(), 1)
+    ) {
+      final StoreCopier ret = new StoreCopier(sourceStore, sourceIndex, targetStore,
+          targetIndex, 1);
+      ret.setMessageFilter(messageFilter);
+      ret.copy();
+      return ret;
+    }
+  }
+
+  private List<String> targetMessageIds() throws Exception {
+    final List<String> ret = new ArrayList<>();
+    try (IMAPStore store = openStore(servers.getTargetHost(), 1)) {
+      final Folder inbox = store.getFolder("INBOX");
+      inbox.open(Folder.READ_ONLY);
+      for (Message message : inbox.getMessages()) {
+        ret.add(message.getHeader("Message-ID")[0]);
+      }
+      inbox.close(false);
+    }
+    Collections.sort(ret);
+    return ret;
+  }
+
+  private static MimeMessage message(String id, int year, int bodyLength) throws Exception {
+    final char[] body = new char[bodyLength];
+    Arrays.fill(body, 'x');
+    return MessageBuilder.message(id).text(new String(body)).sentDate(date(year)).build();
+  }
+}
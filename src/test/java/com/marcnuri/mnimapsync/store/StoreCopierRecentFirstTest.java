@@ -0,0 +1,112 @@
+/*
+ * StoreCopierRecentFirstTest.java
+ *
+ * Created on 2026-10-18, 07:00
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import com.marcnuri.mnimapsync.GreenMailPair;
+import com.marcnuri.mnimapsync.index.Index;
+import com.sun.mail.imap.IMAPStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.marcnuri.mnimapsync.GreenMailPair.append;
+import static com.marcnuri.mnimapsync.MessageBuilder.date;
+import static com.marcnuri.mnimapsync.MessageBuilder.message;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.openStore;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class StoreCopierRecentFirstTest {
+
+  @RegisterExtension
+  final GreenMailPair servers = new GreenMailPair();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (IMAPStore store = openStore(servers.getSourceHost(), 1)) {
+      appendPair(store, "Archive", 2010, 0);
+      appendPair(store, "INBOX", 2020, 2);
+      appendPair(store, "Recent", 2026, 4);
+    }
+  }
+
+  @Test
+  void copy_recentFirst_shouldCopyInboxThenNewestFolders() throws Exception {
+    // When
+    final List<String> result = copy(true);
+    // Then
+    assertThat(result, equalTo(Arrays.asList("INBOX:1", "Recent:1", "Archive:1")));
+  }
+
+  @Test
+  void copy_notRecentFirst_shouldCopyFoldersInTreeOrder() throws Exception {
+    // When
+    final List<String> result = copy(false);
+    // Then
+    assertThat(result.size(), equalTo(3));
+    assertThat(result.indexOf("Archive:1") < result.indexOf("Recent:1"), equalTo(true));
+  }
+
+  /**
+   * @return source folder and first message of every batch in the order they were processed
+   */
+  private List<String> copy(boolean recentFirst) throws Exception {
+    final List<String> ret = Collections.synchronizedList(new ArrayList<>());
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>()) {
+      @Override
+      protected void beforeExecute(Thread t, Runnable r) {
+        final MessageCopier messageCopier = (MessageCopier) r;
+        ret.add(messageCopier.getSourceFolderName() + ":" + messageCopier.getStart());
+      }
+    };
+    final Index targetIndex = new Index();
+    targetIndex.setFolderSeparator(".");
+    try (
+        final IMAPStore sourceStore = openStore(servers.getSourceHost(), 1);
+        final IMAPStore targetStore = openStore(servers.getTargetHost(), 1)
+    ) {
+      final StoreCopier storeCopier = new StoreCopier(sourceStore, new Index(), targetStore,
+          targetIndex, executor);
+      storeCopier.setRecentFirst(recentFirst);
+      storeCopier.copy();
+      assertThat(storeCopier.getMessagesCopiedCount(), equalTo(6L));
+    }
+    return ret;
+  }
+
+  private static void appendPair(IMAPStore store, String folderName, int year, int firstIndex)
+      throws Exception {
+
+    final Date date = date(year);
+    append(store, folderName, message(firstIndex).sentDate(date).build(),
+        message(firstIndex + 1).sentDate(date).build());
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * StoreCopierServerSideTest.java
+ *
+ * Created on 2026-10-18, 01:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import com.marcnuri.mnimapsync.GreenMailPair;
+import com.marcnuri.mnimapsync.index.Index;
+import com.marcnuri.mnimapsync.index.MessageLocations;
+import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.Folder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import static com.marcnuri.mnimapsync.GreenMailPair.append;
+import static com.marcnuri.mnimapsync.MessageBuilder.message;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.openStore;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class StoreCopierServerSideTest {
+
+  @RegisterExtension
+  final GreenMailPair servers = new GreenMailPair();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (IMAPStore store = openStore(servers.getSourceHost(), 1)) {
+      append(store, "INBOX", message(0).build(), message(1).build());
+      append(store, "Labels", message(0).build(), message(2).build());
+    }
+  }
+
+  @Test
+  void copy_messageInSeveralFoldersWithLocations_shouldCopyServerSide() throws Exception {
+    // Given
+    final MessageLocations locations = new MessageLocations();
+    // When
+    final StoreCopier result = copy(locations, false);
+    // Then
+    assertThat(result.getMessagesCopiedCount(), equalTo(4L));
+    assertThat(result.getMessagesCopiedServerSideCount(), equalTo(1L));
+    assertThat(locations.size(), equalTo(3));
+    assertThat(targetMessageCount("INBOX"), equalTo(2));
+    assertThat(targetMessageCount("Labels"), equalTo(2));
+  }
+
+  @Test
+  void copy_messageInSeveralFoldersWithoutLocations_shouldAppendEveryMessage() throws Exception {
+    // When
+    final StoreCopier result = copy(null, false);
+    // Then
+    assertThat(result.getMessagesCopiedCount(), equalTo(4L));
+    assertThat(result.getMessagesCopiedServerSideCount(), equalTo(0L));
+    assertThat(targetMessageCount("Labels"), equalTo(2));
+  }
+
+  @Test
+  void copy_gmailAndSourceIsNotGmail_shouldCopyEveryFolder() throws Exception {
+    // When
+    final StoreCopier result = copy(null, true);
+    // Then
+    assertThat(result.getMessagesCopiedCount(), equalTo(4L));
+    assertThat(targetMessageCount("INBOX"), equalTo(2));
+    assertThat(targetMessageCount("Labels"), equalTo(2));
+  }
+
+  private StoreCopier copy(MessageLocations locations, boolean gmail) throws Exception {
+    final Index sourceIndex = new Index();
+    final Index targetIndex = new Index();
+    targetIndex.setFolderSeparator(".");
+    try (
+        final IMAPStore sourceStore = openStore(servers.getSourceHost(), 1);
+        final IMAPStore targetStore = openStore(servers.getTargetHost(), 1)
+    ) {
+      final StoreCopier ret = new StoreCopier(sourceStore, sourceIndex, targetStore, targetIndex,
+          1);
+      ret.setMessageLocations(locations);
+      ret.setGmail(gmail);
+      ret.copy();
+      return ret;
+    }
+  }
+
+  private int targetMessageCount(String folderName) throws Exception {
+    try (IMAPStore store = openStore(servers.getTargetHost(), 1)) {
+      final Folder folder = store.getFolder(folderName);
+      folder.open(Folder.READ_ONLY);
+      final int ret = folder.getMessageCount();
+      folder.close(false);
+      return ret;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * StoreFlaggerTest.java
+ *
+ * Created on 2026-10-18, 22:20
+ *
+ * Copyright 2026 Marc Nuri San Felix
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.mnimapsync.store;
+
+import com.marcnuri.mnimapsync.GreenMailPair;
+import com.marcnuri.mnimapsync.HostDefinition;
+import com.marcnuri.mnimapsync.index.Index;
+import com.sun.mail.imap.IMAPStore;
+import jakarta.mail.Flags;
+import jakarta.mail.Folder;
+import jakarta.mail.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.marcnuri.mnimapsync.MessageBuilder.message;
+import static com.marcnuri.mnimapsync.imap.IMAPUtils.openStore;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class StoreFlaggerTest {
+
+  @RegisterExtension
+  final GreenMailPair servers = new GreenMailPair();
+  private HostDefinition sourceHost;
+  private HostDefinition targetHost;
+  private Index sourceIndex;
+  private Index targetIndex;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    for (int it = 0; it < 4; it++) {
+      servers.getSourceUser().deliver(message(it).build());
+      servers.getTargetUser().deliver(message(it).build());
+    }
+    sourceHost = servers.getSourceHost();
+    targetHost = servers.getTargetHost();
+    sourceIndex = new Index();
+    sourceIndex.setFolderSeparator(".");
+    targetIndex = new Index();
+    targetIndex.setFolderSeparator(".");
+  }
+
+  @Test
+  void flag_flagsChangedInSourceAndTarget_shouldMakeTargetFlagsMatchSource() throws Exception {
+    // Given
+    setFlags(sourceHost, 1, new Flags(Flags.Flag.SEEN), true);
+    setFlags(sourceHost, 2, new Flags(Flags.Flag.SEEN), true);
+    setFlags(sourceHost, 2, new Flags("$Forwarded"), true);
+    setFlags(sourceHost, 3, new Flags(Flags.Flag.FLAGGED), true);
+    setFlags(targetHost, 4, new Flags(Flags.Flag.SEEN), true);
+    // When
+    final StoreFlagger result = flag();
+    // Then
+    final Map<String, Flags> targetFlags = flags(targetHost);
+    assertThat(targetFlags.get("Message 0").contains(Flags.Flag.SEEN), equalTo(true));
+    assertThat(targetFlags.get("Message 1").contains(Flags.Flag.SEEN), equalTo(true));
+    assertThat(targetFlags.get("Message 1").contains("$Forwarded"), equalTo(true));
+    assertThat(targetFlags.get("Message 2").contains(Flags.Flag.FLAGGED), equalTo(true));
+    assertThat(targetFlags.get("Message 2").contains(Flags.Flag.SEEN), equalTo(false));
+    assertThat(targetFlags.get("Message 3").contains(Flags.Flag.SEEN), equalTo(false));
+    assertThat(result.getMessagesFlaggedCount(), equalTo(4L));
+    assertThat(result.getMessagesSkippedCount(), equalTo(0L));
+    // +\Flagged, +\Seen (messages 1 and 2 as a single range), +$Forwarded, -\Seen
+    assertThat(result.getStoreCommandCount(), equalTo(4));
+  }
+
+  @Test
+  void flag_sameFlags_shouldIssueNoStoreCommands() throws Exception {
+    // Given
+    setFlags(sourceHost, 1, new Flags(Flags.Flag.SEEN), true);
+    setFlags(targetHost, 1, new Flags(Flags.Flag.SEEN), true);
+    // When
+    final StoreFlagger result = flag();
+    // Then
+    assertThat(result.getMessagesFlaggedCount(), equalTo(0L));
+    assertThat(result.getMessagesSkippedCount(), equalTo(4L));
+    assertThat(result.getStoreCommandCount(), equalTo(0));
+  }
+
+  private StoreFlagger flag() throws Exception {
+    try (
+        final IMAPStore sourceStore = openStore(sourceHost, 1);
+        final IMAPStore targetStore = openStore(targetHost, 1)
+    ) {
+      final StoreFlagger ret = new StoreFlagger(sourceStore, sourceIndex, targetStore, targetIndex,
+          1);
+      ret.flag();
+      return ret;
+    }
+  }
+
+  private static void setFlags(HostDefinition host, int messageNumber, Flags flags, boolean set)
+      throws Exception {
+
+    try (IMAPStore store = openStore(host, 1)) {
+      final Folder inbox = store.getFolder("INBOX");
+      inbox.open(Folder.READ_WRITE);
+      inbox.getMessage(messageNumber).setFlags(flags, set);
+      inbox.close(false);
+    }
+  }
+
+  private static Map<String, Flags> flags(HostDefinition host) throws Exception {
+    final Map<String, Flags> ret = new HashMap<>();
+    try (IMAPStore store = openStore(host, 1)) {
+      final Folder inbox = store.getFolder("INBOX");
+      inbox.open(Folder.READ_ONLY);
+      for (Message message : inbox.getMessages()) {
+        ret.put(message.getSubject(), message.getFlags());
+      }
+      inbox.close(false);
+    }
+    return ret;
+  }
+}